@@ -0,0 +1,57 @@
+package com.example.HanldeImg.benchmarks;
+
+import com.example.HanldeImg.scripts.ApkScripts;
+import com.example.HanldeImg.scripts.ApkScripts.ApkPlan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск APK в system/ и vendor/ обходом дерева и чтение их манифестов — то, что
+ * decodeApksToProjectRoot делает до запуска первого apktool, когда индекса нет.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ApkDiscoveryBenchmark {
+
+    @Param({"10000", "100000", "500000"})
+    int files;
+
+    private Path work;
+    private Path project;
+
+    @Setup(Level.Trial)
+    public void tree() throws Exception {
+        work = Workspace.create("discovery");
+        project = work.resolve("project");
+        SyntheticFirmware.generate(project, files, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() throws Exception {
+        Workspace.delete(work);
+    }
+
+    @Benchmark
+    public List<ApkPlan> planApks() {
+        return ApkScripts.planApks(project, ApkScripts.DecodeOptions.defaults());
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.HanldeImg.benchmarks;
+
+import com.example.HanldeImg.scripts.ImageScripts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение ro.build.display.id из system/build.prop перед коммитом.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BuildPropBenchmark {
+
+    // строк в build.prop: у типичной прошивки — сотни, у собранной с отладочными свойствами — тысячи
+    @Param({"250", "5000"})
+    int lines;
+
+    private Path work;
+    private Path project;
+
+    @Setup(Level.Trial)
+    public void buildProp() throws Exception {
+        work = Workspace.create("buildprop");
+        project = work.resolve("project");
+        SyntheticFirmware.writeBuildProp(project.resolve("system"), lines);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() throws Exception {
+        Workspace.delete(work);
+    }
+
+    @Benchmark
+    public String buildVersion() throws Exception {
+        return ImageScripts.buildVersion(project);
+    }
+}
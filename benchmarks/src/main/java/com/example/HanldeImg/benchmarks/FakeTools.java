@@ -0,0 +1,103 @@
+package com.example.HanldeImg.benchmarks;
+
+import com.example.HanldeImg.scripts.process.ProcessRunner;
+import com.example.HanldeImg.scripts.process.ToolClass;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Скрипты вместо 7z, apktool и git. Процессы по-прежнему запускаются через {@link ProcessRunner}
+ * и планировщик, но работа у них предсказуемая: прогон не зависит от версий программ и сети.
+ * <ul>
+ *     <li>7z x — копирует дерево раздела, путь к которому записан в «образе»;</li>
+ *     <li>apktool d — пишет манифест, apktool.yml и пару десятков smali, как небольшой декодированный APK;</li>
+ *     <li>git — init создаёт .git, push печатает строку прогресса, rev-parse — фиксированный id.</li>
+ * </ul>
+ */
+public final class FakeTools {
+
+    private static final String SEVEN_ZIP = """
+            #!/bin/sh
+            # x <image> -o<dir> -y: «образ» — текстовый файл с путём к готовому дереву раздела
+            [ "$1" = "x" ] || exit 0
+            image="$2"
+            out="${3#-o}"
+            mkdir -p "$out"
+            cp -R "$(cat "$image")/." "$out/"
+            """;
+
+    private static final String APKTOOL = """
+            #!/bin/sh
+            if [ "$1" = "--version" ]; then echo "2.9.3-bench"; exit 0; fi
+            out=""; apk=""
+            while [ $# -gt 0 ]; do
+              case "$1" in
+                -o) out="$2"; shift 2 ;;
+                d|-f|-J*) shift ;;
+                *) apk="$1"; shift ;;
+              esac
+            done
+            name=$(basename "$apk" .apk)
+            mkdir -p "$out/smali/com/bench/$name" "$out/res/values" "$out/original/META-INF"
+            printf '<?xml version="1.0" encoding="utf-8"?>\\n<manifest package="com.bench.%s"/>\\n' "$name" > "$out/AndroidManifest.xml"
+            printf 'version: 2.9.3-bench\\nversionInfo:\\n  versionCode: 1\\n  versionName: 1.0\\n' > "$out/apktool.yml"
+            printf '<resources/>\\n' > "$out/res/values/strings.xml"
+            cp "$apk" "$out/original/META-INF/CERT.RSA"
+            i=0
+            while [ $i -lt 20 ]; do
+              printf '.class public Lcom/bench/%s/C%d;\\n.super Ljava/lang/Object;\\n' "$name" $i > "$out/smali/com/bench/$name/C$i.smali"
+              i=$((i+1))
+            done
+            """;
+
+    private static final String GIT = """
+            #!/bin/sh
+            case "$1" in
+              init) mkdir -p .git ;;
+              push) echo "Writing objects: 100% (1/1), 1.00 KiB | 1.00 MiB/s, done." >&2 ;;
+              rev-parse) echo 0123456789abcdef0123456789abcdef01234567 ;;
+            esac
+            exit 0
+            """;
+
+    private FakeTools() {
+    }
+
+    /**
+     * Пишет скрипты в {@code dir} и подменяет ими программы для {@link ProcessRunner}.
+     */
+    public static void install(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        ProcessRunner.configureExecutables(Map.of(
+                ToolClass.SEVEN_ZIP, script(dir.resolve("7z"), SEVEN_ZIP),
+                ToolClass.APKTOOL, script(dir.resolve("apktool"), APKTOOL),
+                ToolClass.GIT, script(dir.resolve("git"), GIT)));
+    }
+
+    /**
+     * «Образы» разделов для заглушки 7z: {@code <раздел>.img} с путём к дереву раздела.
+     */
+    public static List<Path> images(SyntheticFirmware.Layout layout, Path imagesDir) throws IOException {
+        Files.createDirectories(imagesDir);
+        List<Path> images = new ArrayList<>();
+        for (Path partition : layout.partitions()) {
+            Path image = imagesDir.resolve(partition.getFileName() + ".img");
+            Files.writeString(image, partition.toAbsolutePath().toString(), StandardCharsets.UTF_8);
+            images.add(image);
+        }
+        return images;
+    }
+
+    private static String script(Path file, String body) throws IOException {
+        Files.writeString(file, body, StandardCharsets.UTF_8);
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rwxr-xr-x"));
+        return file.toAbsolutePath().toString();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.HanldeImg.benchmarks;
+
+import com.example.HanldeImg.scripts.IngestScripts;
+import com.example.HanldeImg.scripts.IngestScripts.IngestedImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Приём образа: копирование потока во временный файл с SHA-256 по ходу и rename на место.
+ * Источник — файл на диске, как у загрузки, которую контейнер сервлетов уже сохранил во временный файл.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IngestBenchmark {
+
+    @Param({"64", "1024"})
+    int sizeMb;
+
+    private Path work;
+    private Path source;
+    private Path ingestDir;
+    private IngestedImage last;
+
+    @Setup(Level.Trial)
+    public void source() throws Exception {
+        work = Workspace.create("ingest");
+        source = work.resolve("upload.tmp");
+        SplittableRandom random = new SplittableRandom(42);
+        byte[] block = new byte[1 << 20];
+        try (OutputStream out = Files.newOutputStream(source)) {
+            for (int i = 0; i < sizeMb; i++) {
+                random.nextBytes(block);
+                out.write(block);
+            }
+        }
+        ingestDir = work.resolve("ingest");
+    }
+
+    @TearDown(Level.Iteration)
+    public void dropIngested() throws Exception {
+        if (last != null) Files.deleteIfExists(last.path());
+        last = null;
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() throws Exception {
+        Workspace.delete(work);
+    }
+
+    @Benchmark
+    public IngestedImage ingest() throws Exception {
+        try (InputStream in = Files.newInputStream(source)) {
+            last = IngestScripts.ingest(in, "system.img", Files.size(source), ingestDir);
+        }
+        return last;
+    }
+}
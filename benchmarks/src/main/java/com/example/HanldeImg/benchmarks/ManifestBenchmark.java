@@ -0,0 +1,69 @@
+package com.example.HanldeImg.benchmarks;
+
+import com.example.HanldeImg.scripts.apk.ApkInfo;
+import com.example.HanldeImg.scripts.apk.ApkManifestReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Имя пакета и версия из бинарного манифеста APK без apktool. Читаем по кругу набор разных APK,
+ * чтобы не мерить один и тот же файл из page cache и один и тот же путь в коде.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManifestBenchmark {
+
+    private static final int APKS = 64;
+
+    // размер classes.dex перед манифестом: от него зависит, как далеко от конца архива лежит запись
+    @Param({"64", "8192"})
+    int dexKb;
+
+    private Path work;
+    private final List<Path> apks = new ArrayList<>();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void apks() throws Exception {
+        work = Workspace.create("manifest");
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < APKS; i++) {
+            Path apk = work.resolve("App" + i + ".apk");
+            SyntheticFirmware.writeApk(apk, "com.bench.app" + i, i + 1, "1." + i, dexKb * 1024, random);
+            apks.add(apk);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() throws Exception {
+        Workspace.delete(work);
+    }
+
+    @Benchmark
+    public ApkInfo read() throws Exception {
+        Path apk = apks.get(next);
+        next = (next + 1) % APKS;
+        return ApkManifestReader.read(apk);
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.HanldeImg.benchmarks;
+
+import com.example.HanldeImg.scripts.ApkScripts;
+import com.example.HanldeImg.scripts.ImageScripts;
+import com.example.HanldeImg.scripts.ImageScripts.Published;
+import com.example.HanldeImg.scripts.ImageScripts.UpdateMode;
+import com.example.HanldeImg.scripts.ImageScripts.UpdateOptions;
+import com.example.HanldeImg.scripts.PipelineListener;
+import com.example.HanldeImg.scripts.extract.ExtractProfile;
+import com.example.HanldeImg.scripts.extract.ImageExtractors;
+import com.example.HanldeImg.scripts.flow.FlowOptions;
+import com.example.HanldeImg.scripts.git.CliGitPublisher;
+import com.example.HanldeImg.scripts.index.FileIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пайплайн целиком на заглушках 7z/apktool/git: upload — первая загрузка проекта
+ * (распаковка, apktool и индекс одновременно, затем коммит), update — инкрементальное обновление
+ * уже загруженного проекта через staging. Шаги те же, что у ImageServiceImpl, без обращений к GitLab API.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class PipelineBenchmark {
+
+    private static final int EXTRACT_PARALLELISM = 3;
+
+    @Param({"10000", "100000", "500000"})
+    int files;
+
+    private Path work;
+    private List<Path> images;
+    private Path project;
+    private Path indexFile;
+
+    @Setup(Level.Trial)
+    public void firmware() throws Exception {
+        work = Workspace.create("pipeline");
+        FakeTools.install(work.resolve("bin"));
+        SyntheticFirmware.Layout layout = SyntheticFirmware.generate(work.resolve("firmware"), files, 42);
+        images = FakeTools.images(layout, work.resolve("images"));
+        project = work.resolve("projects").resolve("Bench");
+        indexFile = work.resolve("index").resolve("Bench.idx");
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() throws Exception {
+        Workspace.delete(work);
+    }
+
+    /**
+     * Для upload проекта ещё нет, для update — он загружен и проиндексирован заранее, вне замера.
+     */
+    @State(Scope.Benchmark)
+    public static class Fresh {
+        @Setup(Level.Iteration)
+        public void clear(PipelineBenchmark bench) throws Exception {
+            Workspace.delete(bench.project);
+            FileIndex.delete(bench.indexFile);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Uploaded {
+        @Setup(Level.Iteration)
+        public void upload(PipelineBenchmark bench) throws Exception {
+            Workspace.delete(bench.project);
+            FileIndex.delete(bench.indexFile);
+            FileIndex index = bench.upload();
+            index.write(bench.indexFile);
+        }
+    }
+
+    @Benchmark
+    public Published upload(Fresh fresh) throws Exception {
+        FileIndex index = upload();
+        return ImageScripts.pushToGitLab(project, new CliGitPublisher(), index, ExtractProfile.ALL);
+    }
+
+    @Benchmark
+    public Published update(Uploaded uploaded) throws Exception {
+        UpdateOptions options = new UpdateOptions(UpdateMode.INCREMENTAL, work.resolve("staging"),
+                EXTRACT_PARALLELISM, ImageExtractors.sevenZipOnly(), ApkScripts.DecodeOptions.defaults(),
+                new CliGitPublisher(), indexFile, ExtractProfile.ALL, FlowOptions.defaults());
+        return ImageScripts.updateImages(project, images, options, PipelineListener.NONE);
+    }
+
+    private FileIndex upload() throws Exception {
+        FileIndex.Builder index = FileIndex.builder(project);
+        ImageScripts.extractAndDecode(project, images, EXTRACT_PARALLELISM, ImageExtractors.sevenZipOnly(),
+                ExtractProfile.ALL, ApkScripts.DecodeOptions.defaults(), FlowOptions.defaults(), index,
+                PipelineListener.NONE);
+        return index.build();
+    }
+}
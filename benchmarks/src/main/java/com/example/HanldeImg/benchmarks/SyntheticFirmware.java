@@ -0,0 +1,216 @@
+package com.example.HanldeImg.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Синтетическая прошивка: разделы system/vendor/product с долей APK (вместе с odex/vdex), .so, .jar,
+ * конфигов и прочих мелких файлов, как в настоящих образах, и build.prop в system/.
+ * Дерево полностью определяется числом файлов и seed, поэтому его можно пересоздать вместо копирования.
+ */
+public final class SyntheticFirmware {
+
+    public static final String DISPLAY_ID = "BENCH.240101.001";
+
+    private static final String[] PARTITIONS = {"system", "vendor", "product"};
+    private static final double[] SHARE = {0.7, 0.2, 0.1};
+    // в настоящих system/vendor на один APK приходится порядка полутора сотен файлов
+    private static final int FILES_PER_APK = 150;
+    private static final int FILES_PER_DIR = 64;
+
+    private static final String[][] CATEGORIES = {
+            {"lib64", ".so"}, {"lib", ".so"}, {"framework", ".jar"}, {"etc/permissions", ".xml"},
+            {"etc/init", ".rc"}, {"usr/share/zoneinfo", ".dat"}, {"fonts", ".ttf"}, {"media/audio", ".ogg"},
+            {"bin", ""}, {"firmware", ".bin"}
+    };
+
+    private SyntheticFirmware() {
+    }
+
+    /**
+     * @param partitions корни разделов, по одному на будущий образ
+     */
+    public record Layout(Path root, List<Path> partitions, List<Path> apks, long files, long bytes) {}
+
+    public static Layout generate(Path root, int files, long seed) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Path> partitions = new ArrayList<>();
+        List<Path> apks = new ArrayList<>();
+        long written = 0;
+        long bytes = 0;
+
+        for (int p = 0; p < PARTITIONS.length; p++) {
+            String partition = PARTITIONS[p];
+            Path dir = root.resolve(partition);
+            Files.createDirectories(dir);
+            partitions.add(dir);
+
+            int quota = (int) Math.max(4, Math.round(files * SHARE[p]));
+            int apkCount = Math.max(1, quota / FILES_PER_APK);
+            for (int a = 0; a < apkCount; a++) {
+                String name = Character.toUpperCase(partition.charAt(0)) + partition.substring(1) + "App" + a;
+                Path base = dir.resolve(p == 0 && a % 3 == 0 ? "priv-app" : "app").resolve(name);
+                Path apk = base.resolve(name + ".apk");
+                bytes += writeApk(apk, "com.bench." + partition + ".app" + a, 1 + a, "1." + a,
+                        4096 + random.nextInt(60 * 1024), random);
+                bytes += writeRandom(base.resolve("oat/arm64/" + name + ".odex"), fileSize(random), random);
+                bytes += writeRandom(base.resolve("oat/arm64/" + name + ".vdex"), fileSize(random), random);
+                apks.add(apk);
+                written += 3;
+            }
+
+            int other = quota - apkCount * 3;
+            if (p == 0) {
+                bytes += writeBuildProp(dir, 250);
+                written++;
+                other--;
+            }
+            int[] perCategory = new int[CATEGORIES.length];
+            for (int i = 0; i < other; i++) {
+                int c = i % CATEGORIES.length;
+                int n = perCategory[c]++;
+                String[] category = CATEGORIES[c];
+                Path file = dir.resolve(category[0]).resolve("d" + n / FILES_PER_DIR).resolve("f" + n + category[1]);
+                bytes += writeRandom(file, fileSize(random), random);
+                written++;
+            }
+        }
+        return new Layout(root, partitions, apks, written, bytes);
+    }
+
+    /**
+     * build.prop примерно того размера, что в настоящем образе: ro.build.display.id не в начале файла.
+     */
+    public static long writeBuildProp(Path systemDir, int lines) throws IOException {
+        Files.createDirectories(systemDir);
+        Path file = systemDir.resolve("build.prop");
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("\n# begin common build properties\n# autogenerated by buildinfo.sh\n");
+            for (int i = 0; i < lines; i++) {
+                if (i == lines / 2) {
+                    w.write("ro.build.display.id=" + DISPLAY_ID + "\n");
+                } else if (i % 25 == 0) {
+                    w.write("# section " + i + "\n");
+                } else {
+                    w.write("ro.bench.property." + i + "=value-" + Integer.toHexString(i * 7919) + "\n");
+                }
+            }
+            w.write("# end common build properties\n");
+        }
+        return Files.size(file);
+    }
+
+    /**
+     * APK — настоящий zip: classes.dex, resources.arsc и бинарный AndroidManifest.xml в конце архива,
+     * как его кладёт сборка.
+     */
+    public static long writeApk(Path apk, String pkg, int versionCode, String versionName, int dexBytes,
+                                SplittableRandom random) throws IOException {
+        Files.createDirectories(apk.getParent());
+        try (OutputStream out = Files.newOutputStream(apk); ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("classes.dex"));
+            zip.write(randomBytes(dexBytes, random));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("resources.arsc"));
+            zip.write(randomBytes(2048, random));
+            zip.closeEntry();
+            for (int i = 0; i < 4; i++) {
+                zip.putNextEntry(new ZipEntry("res/drawable/icon" + i + ".png"));
+                zip.write(randomBytes(512, random));
+                zip.closeEntry();
+            }
+            zip.putNextEntry(new ZipEntry("AndroidManifest.xml"));
+            zip.write(axml(pkg, versionCode, versionName));
+            zip.closeEntry();
+        }
+        return Files.size(apk);
+    }
+
+    // 95% файлов до 2 КБ, остальные до 32 КБ: объём дерева растёт с числом файлов, а не с их размером
+    private static int fileSize(SplittableRandom random) {
+        return random.nextInt(100) < 95 ? 64 + random.nextInt(2048) : 2048 + random.nextInt(30 * 1024);
+    }
+
+    private static long writeRandom(Path file, int size, SplittableRandom random) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, randomBytes(size, random));
+        return size;
+    }
+
+    private static byte[] randomBytes(int size, SplittableRandom random) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Минимальный бинарный манифест в UTF-8: пул строк, карта ресурсов и start element {@code <manifest>}
+     * с versionCode, versionName и package.
+     */
+    static byte[] axml(String pkg, int versionCode, String versionName) {
+        List<String> strings = List.of("versionCode", "versionName", "package", "manifest", pkg, versionName);
+        int[] resourceIds = {0x0101021b, 0x0101021c};
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int[] offsets = new int[strings.size()];
+        for (int i = 0; i < strings.size(); i++) {
+            offsets[i] = data.size();
+            byte[] b = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            data.write(strings.get(i).length());
+            data.write(b.length);
+            data.writeBytes(b);
+            data.write(0);
+        }
+        while (data.size() % 4 != 0) data.write(0);
+
+        int poolHeader = 28;
+        int poolSize = poolHeader + strings.size() * 4 + data.size();
+        ByteBuffer pool = le(poolSize);
+        pool.putShort((short) 0x0001).putShort((short) poolHeader).putInt(poolSize)
+                .putInt(strings.size()).putInt(0).putInt(1 << 8)
+                .putInt(poolHeader + strings.size() * 4).putInt(0);
+        for (int off : offsets) pool.putInt(off);
+        pool.put(data.toByteArray());
+
+        int mapSize = 8 + resourceIds.length * 4;
+        ByteBuffer map = le(mapSize);
+        map.putShort((short) 0x0180).putShort((short) 8).putInt(mapSize);
+        for (int id : resourceIds) map.putInt(id);
+
+        int attrCount = 3;
+        int elemSize = 16 + 20 + attrCount * 20;
+        ByteBuffer elem = le(elemSize);
+        elem.putShort((short) 0x0102).putShort((short) 16).putInt(elemSize).putInt(1).putInt(-1);
+        elem.putInt(-1).putInt(3).putShort((short) 20).putShort((short) 20).putShort((short) attrCount)
+                .putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        attr(elem, 0, -1, 0x10, versionCode);
+        attr(elem, 1, 5, 0x03, 5);
+        attr(elem, 2, 4, 0x03, 4);
+
+        int total = 8 + poolSize + mapSize + elemSize;
+        ByteBuffer file = le(total);
+        file.putShort((short) 0x0003).putShort((short) 8).putInt(total);
+        file.put(pool.array()).put(map.array()).put(elem.array());
+        return file.array();
+    }
+
+    private static void attr(ByteBuffer b, int name, int raw, int type, int value) {
+        b.putInt(-1).putInt(name).putInt(raw).putShort((short) 8).put((byte) 0).put((byte) type).putInt(value);
+    }
+
+    private static ByteBuffer le(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.HanldeImg.benchmarks;
+
+import com.example.HanldeImg.scripts.ImageScripts;
+import com.example.HanldeImg.scripts.TreeDeleter;
+import com.example.HanldeImg.scripts.TreeDeleter.DeleteReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Очистка проекта перед полным обновлением (бывший wipeDirectoryExceptGit, теперь
+ * {@link TreeDeleter#clearExcept}). clearExcept — сколько ждёт пайплайн: перенос в корзину;
+ * clearExceptAndDelete — до конца фонового удаления.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WipeBenchmark {
+
+    @Param({"10000", "100000", "500000"})
+    int files;
+
+    private Path work;
+    private Path project;
+    private CompletableFuture<DeleteReport> pending;
+
+    @Setup(Level.Trial)
+    public void workspace() throws Exception {
+        work = Workspace.create("wipe");
+    }
+
+    @Setup(Level.Iteration)
+    public void tree() throws Exception {
+        project = work.resolve("project");
+        SyntheticFirmware.generate(project, files, 42);
+        Files.createDirectories(project.resolve(".git/objects"));
+        Files.writeString(project.resolve(".git/HEAD"), "ref: refs/heads/main\n");
+        Files.writeString(project.resolve(".gitattributes"), "*.apk filter=lfs\n");
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws Exception {
+        if (pending != null) pending.join();
+        pending = null;
+        Workspace.delete(project);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() throws Exception {
+        Workspace.delete(work);
+    }
+
+    @Benchmark
+    public CompletableFuture<DeleteReport> clearExcept() throws Exception {
+        pending = TreeDeleter.clearExcept(project, Set.of(ImageScripts.ignore));
+        return pending;
+    }
+
+    @Benchmark
+    public DeleteReport clearExceptAndDelete() throws Exception {
+        return TreeDeleter.clearExcept(project, Set.of(ImageScripts.ignore)).join();
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.HanldeImg.benchmarks;
+
+import com.example.HanldeImg.scripts.TreeDeleter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Рабочая папка бенчмарка: {@code -Dbench.dir}, по умолчанию во временной папке. Корзина
+ * {@link TreeDeleter} переносится туда же, чтобы удаление деревьев было переименованием на той же ФС.
+ */
+final class Workspace {
+
+    private Workspace() {
+    }
+
+    static Path create(String name) throws IOException {
+        Path root = Path.of(System.getProperty("bench.dir", System.getProperty("java.io.tmpdir") + "/handleimg-bench"));
+        Files.createDirectories(root);
+        Path dir = Files.createTempDirectory(root, name + "-");
+        TreeDeleter.trashRoot(dir.resolve(".trash"));
+        return dir;
+    }
+
+    static void delete(Path dir) throws IOException {
+        if (dir != null && Files.exists(dir)) {
+            TreeDeleter.deleteNow(dir);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.HanldeImg.config;
+
+import com.example.HanldeImg.scripts.metrics.PipelineMetrics;
+import com.example.HanldeImg.scripts.process.ProcessScheduler;
+import com.example.HanldeImg.scripts.process.ToolClass;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Скрипты статические: наблюдения (таймер + span) они создают в реестре, выставленном здесь,
+     * а счётчики пишут в глобальный реестр Micrometer, к которому Boot подключает Prometheus.
+     * Сам бин добавляет датчики пула пайплайна и запущенных внешних процессов.
+     */
+    @Bean
+    public MeterBinder pipelineMetrics(ObjectProvider<ObservationRegistry> observations,
+                                       ThreadPoolExecutor pipelineExecutor) {
+        PipelineMetrics.configure(observations.getIfAvailable(() -> ObservationRegistry.NOOP));
+        return registry -> {
+            // executor.active — потоки, занятые задачами, executor.queued — принятые, но не начатые задачи
+            new ExecutorServiceMetrics(pipelineExecutor, "pipeline", Tags.empty()).bindTo(registry);
+
+            for (ToolClass tool : ToolClass.values()) {
+                Tags tags = Tags.of("tool", tool.name().toLowerCase(Locale.ROOT));
+                Gauge.builder(PipelineMetrics.PROCESSES_RUNNING, () -> ProcessScheduler.global().stats(tool).running())
+                        .description("Запущенные внешние процессы")
+                        .tags(tags)
+                        .register(registry);
+                Gauge.builder(PipelineMetrics.PROCESSES_WAITING, () -> ProcessScheduler.global().stats(tool).waiting())
+                        .description("Процессы, ждущие слот планировщика")
+                        .tags(tags)
+                        .register(registry);
+            }
+        };
+    }
+}
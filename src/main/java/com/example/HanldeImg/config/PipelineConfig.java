@@ -0,0 +1,108 @@
+package com.example.HanldeImg.config;
+
+import com.example.HanldeImg.scripts.DecodeCache;
+import com.example.HanldeImg.scripts.process.ProcessRunner;
+import com.example.HanldeImg.scripts.process.ProcessScheduler;
+import com.example.HanldeImg.scripts.process.ToolClass;
+import jakarta.servlet.MultipartConfigElement;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.servlet.autoconfigure.MultipartProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+@EnableConfigurationProperties(PipelineProperties.class)
+public class PipelineConfig {
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor pipelineExecutor(PipelineProperties properties) {
+        int threads = Math.max(1, properties.getExecutor().getThreads());
+        int queueCapacity = Math.max(1, properties.getExecutor().getQueueCapacity());
+
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r, "pipeline-" + counter.incrementAndGet());
+            t.setDaemon(false);
+            return t;
+        };
+
+        // AbortPolicy: переполнение очереди превращается в 429, а не в блокировку request-потока
+        return new ThreadPoolExecutor(
+                threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "pipeline.decode.cache.enabled", havingValue = "true", matchIfMissing = true)
+    public DecodeCache decodeCache(PipelineProperties properties) throws IOException {
+        PipelineProperties.Decode.Cache cache = properties.getDecode().getCache();
+        return new DecodeCache(Path.of(cache.getDir()), cache.getMaxSize().toBytes());
+    }
+
+    /**
+     * Tomcat пишет части multipart-запроса в {@code spring.servlet.multipart.location} и сам папку не создаёт.
+     * Она лежит внутри uploads, поэтому приём забирает записанный файл rename'ом: байты образа пишутся
+     * на диск один раз. Остающееся чтение — подсчёт SHA-256; без второй записи принимают только
+     * /api/v1/uploads (чанки пишутся сразу на место).
+     */
+    @Bean
+    public MultipartConfigElement multipartConfigElement(MultipartProperties multipart) throws IOException {
+        if (multipart.getLocation() != null && !multipart.getLocation().isBlank()) {
+            Files.createDirectories(Path.of(multipart.getLocation()));
+        }
+        return multipart.createMultipartConfig();
+    }
+
+    /**
+     * Скрипты статические и берут планировщик через {@link ProcessScheduler#global()},
+     * поэтому бин только выставляет лимиты, таймауты и пути программ из настроек.
+     */
+    @Bean
+    public ProcessScheduler processScheduler(PipelineProperties properties) {
+        PipelineProperties.Processes processes = properties.getProcesses();
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        Map<ToolClass, ProcessScheduler.Limits> limits = new EnumMap<>(ToolClass.class);
+        limits.put(ToolClass.SEVEN_ZIP, limits(processes.getSevenZip(), 1));
+        limits.put(ToolClass.APKTOOL, limits(processes.getApktool(), cores));
+        limits.put(ToolClass.GIT, limits(processes.getGit(), 1));
+
+        Map<ToolClass, Duration> timeouts = new EnumMap<>(ToolClass.class);
+        timeouts.put(ToolClass.SEVEN_ZIP, processes.getSevenZip().getTimeout());
+        timeouts.put(ToolClass.APKTOOL, processes.getApktool().getTimeout());
+        timeouts.put(ToolClass.GIT, processes.getGit().getTimeout());
+        ProcessRunner.configure(timeouts);
+
+        Map<ToolClass, String> executables = new EnumMap<>(ToolClass.class);
+        executables.put(ToolClass.SEVEN_ZIP, processes.getSevenZip().getPath());
+        executables.put(ToolClass.APKTOOL, processes.getApktool().getPath());
+        executables.put(ToolClass.GIT, processes.getGit().getPath());
+        ProcessRunner.configureExecutables(executables);
+
+        return ProcessScheduler.configure(limits);
+    }
+
+    private static ProcessScheduler.Limits limits(PipelineProperties.Processes.Tool tool, int defaultConcurrent) {
+        return new ProcessScheduler.Limits(
+                tool.getMaxConcurrent() > 0 ? tool.getMaxConcurrent() : defaultConcurrent,
+                tool.getMemoryBudget().toMegabytes(),
+                tool.getProcessMemory().toMegabytes());
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.HanldeImg.config;
+
+import com.example.HanldeImg.scripts.ImageScripts.UpdateMode;
+import com.example.HanldeImg.scripts.extract.ExtractEngine;
+import com.example.HanldeImg.scripts.extract.SparseMode;
+import com.example.HanldeImg.scripts.git.GitBackend;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "pipeline")
+public class PipelineProperties {
+
+    private final Executor executor = new Executor();
+    private final Jobs jobs = new Jobs();
+    private final Decode decode = new Decode();
+    private final Update update = new Update();
+    private final Extract extract = new Extract();
+    private final Sparse sparse = new Sparse();
+    private final Git git = new Git();
+    private final Lfs lfs = new Lfs();
+    private final GitLab gitlab = new GitLab();
+    private final Processes processes = new Processes();
+    private final Uploads uploads = new Uploads();
+    private final Flow flow = new Flow();
+    private final Builds builds = new Builds();
+
+    @Getter
+    @Setter
+    public static class Executor {
+        // сколько пайплайнов (7z -> apktool -> git) выполняется одновременно
+        private int threads = 2;
+        // сколько принятых задач может ждать в очереди, дальше отвечаем 429
+        private int queueCapacity = 4;
+    }
+
+    @Getter
+    @Setter
+    public static class Jobs {
+        // сколько держим завершённые задачи для GET /api/v1/jobs/{id}
+        private Duration retention = Duration.ofHours(24);
+    }
+
+    @Getter
+    @Setter
+    public static class Decode {
+        // сколько apktool запускаем параллельно, 0 — по числу ядер
+        private int workers = 0;
+        // -Xmx для каждого процесса apktool в мегабайтах, 0 — значение из обёртки apktool
+        private int maxHeapMb = 1024;
+        // не декодировать APK заново, если в проекте уже есть результат для той же версии
+        private boolean skipUnchanged = false;
+
+        private final Cache cache = new Cache();
+
+        @Getter
+        @Setter
+        public static class Cache {
+            private boolean enabled = true;
+            private String dir = "uploads/.apktool-cache";
+            private DataSize maxSize = DataSize.ofGigabytes(20);
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Update {
+        // INCREMENTAL — staging + перенос только изменённых файлов, WIPE — старое поведение
+        private UpdateMode mode = UpdateMode.INCREMENTAL;
+    }
+
+    @Getter
+    @Setter
+    public static class Extract {
+        // сколько разделов (system/vendor/product...) распаковываем одновременно
+        private int parallelism = 3;
+        // AUTO — ext4 читаем внутри процесса, остальное через 7z
+        private ExtractEngine engine = ExtractEngine.AUTO;
+        // потоков для распаковки одного ext4 образа, 0 — по числу ядер
+        private int javaThreads = 0;
+        // именованные профили выборочной распаковки, glob'ы от корня проекта: system/media/**, **/*.odex
+        private Map<String, Profile> profiles = new LinkedHashMap<>();
+        // проект -> имя профиля
+        private Map<String, String> projectProfiles = new LinkedHashMap<>();
+        // профиль для проектов без своего, пусто — распаковывать всё
+        private String defaultProfile = "";
+
+        @Getter
+        @Setter
+        public static class Profile {
+            private List<String> include = new ArrayList<>();
+            private List<String> exclude = new ArrayList<>();
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Sparse {
+        // EXPAND — разворачиваем при приёме, DIRECT — ext4 читаем прямо из sparse образа
+        private SparseMode mode = SparseMode.EXPAND;
+        private boolean verifyCrc = true;
+    }
+
+    @Getter
+    @Setter
+    public static class Git {
+        // CLI — внешний git, JGIT — коммит и push внутри процесса
+        private GitBackend backend = GitBackend.CLI;
+        // потоки для хэширования blob'ов в JGIT, 0 — по числу ядер
+        private int threads = 0;
+    }
+
+    @Getter
+    @Setter
+    public static class Lfs {
+        private boolean enabled = false;
+        // файлы не меньше этого размера идут в LFS при любом расширении, 0 — только по расширению
+        private DataSize minSize = DataSize.ofMegabytes(10);
+        private List<String> extensions = new ArrayList<>(List.of("so", "apk", "odex", "vdex", "jar", "oat", "art"));
+        // базовый адрес GitLab для LFS API, пусто — из GIT_URL
+        private String url;
+        private String username = "oauth2";
+        // сколько объектов загружается одновременно (только JGIT, в CLI загружает git-lfs)
+        private int uploadThreads = 4;
+    }
+
+    @Getter
+    @Setter
+    public static class GitLab {
+        private String url;
+        private String token;
+        // сколько помним найденные/созданные группы и проекты
+        private Duration cacheTtl = Duration.ofMinutes(10);
+    }
+
+    @Getter
+    @Setter
+    public static class Processes {
+        private final Tool sevenZip = new Tool(4, DataSize.ofMegabytes(0), DataSize.ofMegabytes(256), Duration.ofHours(2));
+        // 0 — по числу ядер; память одного процесса берётся из pipeline.decode.max-heap-mb
+        private final Tool apktool = new Tool(0, DataSize.ofMegabytes(0), DataSize.ofMegabytes(1024), Duration.ofMinutes(30));
+        private final Tool git = new Tool(4, DataSize.ofMegabytes(0), DataSize.ofMegabytes(256), Duration.ofHours(1));
+
+        @Getter
+        @Setter
+        public static class Tool {
+            // сколько процессов этого класса работает одновременно на весь сервис
+            private int maxConcurrent;
+            // сколько памяти все процессы класса могут занимать вместе, 0 — без ограничения
+            private DataSize memoryBudget;
+            // сколько памяти закладываем на процесс, если вызов не сказал сам
+            private DataSize processMemory;
+            // сколько ждём один процесс, потом убиваем его вместе с потомками; 0 — без ограничения
+            private Duration timeout;
+            // путь к программе, пусто — путь по умолчанию
+            private String path = "";
+
+            public Tool(int maxConcurrent, DataSize memoryBudget, DataSize processMemory, Duration timeout) {
+                this.maxConcurrent = maxConcurrent;
+                this.memoryBudget = memoryBudget;
+                this.processMemory = processMemory;
+                this.timeout = timeout;
+            }
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Uploads {
+        // куда пишутся файлы сессий докачки, та же ФС, что и uploads, чтобы приём был rename'ом
+        private String dir = "uploads/.uploads";
+        // больше одного чанка за запрос не принимаем
+        private DataSize maxChunkSize = DataSize.ofMegabytes(64);
+        // потолок размера одного файла сессии; файл создаётся разреженным, место на диске заранее не выделяется
+        private DataSize maxFileSize = DataSize.ofGigabytes(64);
+        // через сколько без новых чанков сессия и её файлы удаляются
+        private Duration sessionTtl = Duration.ofHours(24);
+    }
+
+    @Getter
+    @Setter
+    public static class Flow {
+        // потоков, считающих хэши файлов для индекса, 0 — по числу ядер
+        private int hashWorkers = 0;
+        // сколько готовых файлов может ждать хэширования, дальше распаковка ждёт
+        private int hashQueue = 4096;
+        // сколько найденных APK может ждать apktool, дальше распаковка ждёт
+        private int decodeQueue = 256;
+    }
+
+    @Getter
+    @Setter
+    public static class Builds {
+        // сколько последних сборок каждого проекта хранит индекс сборок
+        private int history = 20;
+    }
+}
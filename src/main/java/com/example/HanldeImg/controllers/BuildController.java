@@ -0,0 +1,77 @@
+package com.example.HanldeImg.controllers;
+
+import com.example.HanldeImg.services.build_index_service.ApkMatch;
+import com.example.HanldeImg.services.build_index_service.BuildDetails;
+import com.example.HanldeImg.services.build_index_service.BuildIndexService;
+import com.example.HanldeImg.services.build_index_service.BuildSummary;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+/**
+ * Запросы к индексу сборок: что лежит в опубликованных прошивках, без клонирования репозиториев.
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/v1/builds")
+public class BuildController {
+
+    private static final int MAX_LIMIT = 1000;
+
+    private final BuildIndexService buildIndex;
+
+    /**
+     * Сборки проекта, новые первыми; без project — последняя сборка каждого проекта.
+     */
+    @GetMapping
+    public List<BuildSummary> getBuilds(@RequestParam(value = "project", required = false) String project,
+                                        @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return buildIndex.builds(project, limit(limit));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<BuildDetails> getBuild(@PathVariable("id") long id) {
+        return buildIndex.find(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * В каких сборках есть пакет с versionCode не меньше minVersionCode.
+     */
+    @GetMapping("/packages")
+    public List<ApkMatch> findPackage(@RequestParam("name") String name,
+                                      @RequestParam(value = "minVersionCode", defaultValue = "0") long minVersionCode,
+                                      @RequestParam(value = "latest", defaultValue = "true") boolean latest,
+                                      @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        if (name.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Не указан пакет");
+        }
+        return buildIndex.findPackage(name, minVersionCode, latest, limit(limit));
+    }
+
+    /**
+     * Сборки со свойством build.prop name=value, например ro.build.fingerprint.
+     */
+    @GetMapping("/properties")
+    public List<BuildSummary> findByProperty(@RequestParam("name") String name,
+                                             @RequestParam("value") String value,
+                                             @RequestParam(value = "latest", defaultValue = "true") boolean latest,
+                                             @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        if (name.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Не указано свойство");
+        }
+        return buildIndex.findByProperty(name, value, latest, limit(limit));
+    }
+
+    private static int limit(int limit) {
+        if (limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit должен быть больше 0");
+        }
+        return Math.min(limit, MAX_LIMIT);
+    }
+}
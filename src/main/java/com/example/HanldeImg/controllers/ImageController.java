@@ -1,33 +1,59 @@
 package com.example.HanldeImg.controllers;
 
-import com.example.HanldeImg.services.image_service.ImageService;
+import com.example.HanldeImg.services.job_service.Job;
+import com.example.HanldeImg.services.job_service.JobService;
+import com.example.HanldeImg.services.job_service.JobState;
+import com.example.HanldeImg.services.job_service.JobType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+
+import java.net.URI;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequiredArgsConstructor
 @RequestMapping("/api/v1")
 public class ImageController {
 
-    private final ImageService imageService;
+    private final JobService jobService;
 
     @PostMapping(value = "/loadImages", consumes = "multipart/form-data")
     public ResponseEntity<?> loadImages(
             @RequestPart("files") List<MultipartFile> files,
-            @RequestPart("projectName") String projectName) {
-            imageService.uploadProject(files, projectName);
-            return ResponseEntity.ok().build();
+            @RequestPart("projectName") String projectName,
+            @RequestParam(value = "force", defaultValue = "false") boolean force) {
+            Job job = jobService.submit(JobType.LOAD, projectName, force, files);
+            return submitted(job);
     }
 
     @PostMapping(value = "/updateImages", consumes = "multipart/form-data")
     public ResponseEntity<?> updateImages(
             @RequestPart("files") List<MultipartFile> files,
-            @RequestPart("projectName") String projectName){
+            @RequestPart("projectName") String projectName,
+            @RequestParam(value = "force", defaultValue = "false") boolean force){
+
+        Job job = jobService.submit(JobType.UPDATE, projectName, force, files);
+        return submitted(job);
+    }
 
-        imageService.updateProject(files, projectName);
-        return ResponseEntity.ok().build();
+    /**
+     * 202 для поставленной в очередь задачи; 200, если те же образы уже опубликованы и делать нечего.
+     */
+    static ResponseEntity<?> submitted(Job job) {
+        if (job.getState() == JobState.UNCHANGED) {
+            return ResponseEntity.ok()
+                    .location(URI.create("/api/v1/jobs/" + job.getId()))
+                    .body(Map.of(
+                            "jobId", job.getId(),
+                            "state", job.getState(),
+                            "commit", job.getUnchangedBuild().commit(),
+                            "buildId", job.getUnchangedBuild().buildId()));
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/v1/jobs/" + job.getId()))
+                .body(Map.of("jobId", job.getId()));
     }
 }
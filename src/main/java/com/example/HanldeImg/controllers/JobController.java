@@ -0,0 +1,45 @@
+package com.example.HanldeImg.controllers;
+
+import com.example.HanldeImg.scripts.flow.FlowMonitor;
+import com.example.HanldeImg.scripts.flow.Stage;
+import com.example.HanldeImg.scripts.process.ProcessRunner;
+import com.example.HanldeImg.scripts.process.ProcessScheduler;
+import com.example.HanldeImg.scripts.process.ToolClass;
+import com.example.HanldeImg.services.job_service.JobService;
+import com.example.HanldeImg.services.job_service.JobStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/v1")
+public class JobController {
+
+    private final JobService jobService;
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<JobStatus> getJob(@PathVariable("id") String id) {
+        return jobService.find(id)
+                .map(JobStatus::of)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/processes")
+    public Map<String, Map<ToolClass, ?>> getProcesses() {
+        return Map.of(
+                "scheduling", ProcessScheduler.global().stats(),
+                "runs", ProcessRunner.stats());
+    }
+
+    @GetMapping("/flow")
+    public Map<String, List<Stage.Stats>> getFlow() {
+        return Map.of(
+                "active", FlowMonitor.active(),
+                "recent", FlowMonitor.recent());
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.HanldeImg.controllers;
+
+import com.example.HanldeImg.services.job_service.Job;
+import com.example.HanldeImg.services.upload_service.UploadRequest;
+import com.example.HanldeImg.services.upload_service.UploadService;
+import com.example.HanldeImg.services.upload_service.UploadStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * Докачиваемая загрузка: POST создаёт сессию, PUT присылает чанк файла (можно параллельно и в любом
+ * порядке, с SHA-256 чанка в X-Chunk-Sha256), GET показывает недостающие диапазоны,
+ * POST .../complete ставит задачу в очередь.
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/v1/uploads")
+public class UploadController {
+
+    private final UploadService uploadService;
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<UploadStatus> create(@RequestBody UploadRequest request) {
+        UploadStatus status = uploadService.create(request);
+        return ResponseEntity.created(URI.create("/api/v1/uploads/" + status.id())).body(status);
+    }
+
+    @PutMapping(value = "/{id}/files/{name}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public UploadStatus.FileStatus putChunk(
+            @PathVariable("id") String id,
+            @PathVariable("name") String name,
+            @RequestParam("offset") long offset,
+            @RequestHeader(HttpHeaders.CONTENT_LENGTH) long length,
+            @RequestHeader("X-Chunk-Sha256") String sha256,
+            InputStream body) {
+        return uploadService.writeChunk(id, name, offset, length, sha256, body);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<UploadStatus> getUpload(@PathVariable("id") String id) {
+        return uploadService.find(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<?> complete(
+            @PathVariable("id") String id,
+            @RequestParam(value = "force", defaultValue = "false") boolean force) {
+        Job job = uploadService.complete(id, force);
+        return ImageController.submitted(job);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> abort(@PathVariable("id") String id) {
+        uploadService.abort(id);
+        return ResponseEntity.noContent().build();
+    }
+}
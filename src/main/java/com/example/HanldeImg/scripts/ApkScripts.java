@@ -1,14 +1,37 @@
 package com.example.HanldeImg.scripts;
 
+import com.example.HanldeImg.scripts.apk.ApkInfo;
+import com.example.HanldeImg.scripts.apk.ApkManifestReader;
+import com.example.HanldeImg.scripts.flow.Stage;
+import com.example.HanldeImg.scripts.index.FileIndex;
+import com.example.HanldeImg.scripts.metrics.PipelineMetrics;
+import com.example.HanldeImg.scripts.process.ProcessRunner;
+import com.example.HanldeImg.scripts.process.ProcessRunner.Command;
+import com.example.HanldeImg.scripts.process.ProcessRunner.Result;
+import com.example.HanldeImg.scripts.process.ProcessTimeoutException;
+import com.example.HanldeImg.scripts.process.ToolClass;
+import io.micrometer.observation.Observation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -17,9 +40,279 @@ import java.util.stream.Stream;
 public class ApkScripts {
 
     private static final Logger log = LoggerFactory.getLogger(ApkScripts.class);
-    private static final String APKTOOL = "/usr/local/bin/apktool";
+    private static final Pattern PKG_PATTERN = Pattern.compile("package\\s*=\\s*\"([^\"]+)\"");
+    private static final List<String> DECODE_FLAGS = List.of("d", "-f");
+    private static final int JVM_OVERHEAD_MB = 128;
+    private static final Pattern YML_VERSION_CODE = Pattern.compile("(?m)^\\s*versionCode:\\s*'?([^'\\s]*)'?\\s*$");
+    private static final Pattern YML_VERSION_NAME = Pattern.compile("(?m)^\\s*versionName:\\s*(.*?)\\s*$");
 
-    public static void decodeApksToProjectRoot(Path projectDir) {
+    private static volatile String apktoolVersion;
+    // неудачный apktool --version не запоминается: следующая попытка не раньше этого момента (System.nanoTime)
+    private static long apktoolVersionRetryAt;
+    private static Duration apktoolVersionRetry = Duration.ofMinutes(1);
+
+    /**
+     * @param workers     сколько apktool запускаем одновременно, 0 — по числу ядер
+     * @param maxHeapMb   -Xmx для каждого процесса apktool, 0 — оставить значение из обёртки apktool
+     * @param cache       кэш результатов декодирования, null — без кэша
+     * @param skipUnchanged не запускать apktool, если в рабочей копии уже лежит результат для той же версии APK
+     * @param previous      рабочая копия проекта, когда декодируем в staging: там ищется прошлый результат,
+     *                      и оттуда он переносится в staging жёсткими ссылками. null — рабочая копия и есть
+     *                      папка декодирования (LOAD); после WIPE прошлого результата нет и пропусков не будет
+     */
+    public record DecodeOptions(int workers, int maxHeapMb, DecodeCache cache, boolean skipUnchanged, Path previous) {
+        public DecodeOptions(int workers, int maxHeapMb, DecodeCache cache, boolean skipUnchanged) {
+            this(workers, maxHeapMb, cache, skipUnchanged, null);
+        }
+
+        public static DecodeOptions defaults() {
+            return new DecodeOptions(0, 0, null, false);
+        }
+
+        public DecodeOptions withPrevious(Path previous) {
+            return new DecodeOptions(workers, maxHeapMb, cache, skipUnchanged, previous);
+        }
+
+        public int effectiveWorkers() {
+            return workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    public record ApkFailure(Path apk, String error) {}
+
+    /**
+     * То, что известно об APK до запуска apktool. info == null, если манифест не удалось прочитать —
+     * тогда имя папки определяется уже по декодированному манифесту.
+     */
+    public record ApkPlan(Path apk, ApkInfo info, String outName, boolean skip) {}
+
+    public record DecodeReport(int total, int decoded, int cacheHits, int skipped,
+                               List<ApkPlan> apks, List<ApkFailure> failures) {
+        public boolean hasFailures() {
+            return !failures.isEmpty();
+        }
+    }
+
+    public static DecodeReport decodeApksToProjectRoot(Path projectDir) {
+        return decodeApksToProjectRoot(projectDir, DecodeOptions.defaults());
+    }
+
+    public static DecodeReport decodeApksToProjectRoot(Path projectDir, DecodeOptions options) {
+        return decodeApksToProjectRoot(projectDir, options, PipelineListener.NONE);
+    }
+
+    public static DecodeReport decodeApksToProjectRoot(Path projectDir, DecodeOptions options,
+                                                       PipelineListener listener) {
+        return decodeApksToProjectRoot(projectDir, options, listener, null);
+    }
+
+    /**
+     * @param index файлы, распакованные из образов; APK ищутся в нём вместо обхода проекта,
+     *              а папки с результатом apktool дописываются в него. null — обходим дерево
+     */
+    public static DecodeReport decodeApksToProjectRoot(Path projectDir, DecodeOptions options,
+                                                       PipelineListener listener, FileIndex.Builder index) {
+        List<ApkPlan> plans = index != null
+                ? planApks(projectDir, options, apksFromIndex(projectDir, index.build()))
+                : planApks(projectDir, options);
+        listener.planned(plans);
+
+        List<ApkPlan> toDecode = plans.stream().filter(p -> !p.skip()).toList();
+        int skipped = plans.size() - toDecode.size();
+        List<Path> apks = toDecode.stream().map(ApkPlan::apk).toList();
+
+        int workers = Math.min(options.effectiveWorkers(), Math.max(1, apks.size()));
+        log.info("Найдено APK в system/vendor: {}, без изменений: {}, потоков apktool: {}",
+                plans.size(), skipped, workers);
+
+        List<ApkFailure> failures = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger decoded = new AtomicInteger();
+        AtomicInteger cacheHits = new AtomicInteger();
+        // несколько APK могут дать одно и то же имя папки — перенос в неё делаем по очереди
+        ConcurrentHashMap<Path, Object> outputLocks = new ConcurrentHashMap<>();
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "apktool-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            List<Future<?>> futures = new ArrayList<>(apks.size());
+            for (ApkPlan plan : toDecode) {
+                Path apk = plan.apk();
+                futures.add(pool.submit(() -> {
+                    try {
+                        if (observedDecode(projectDir, plan, options, outputLocks, index != null ? index::add : null)) {
+                            cacheHits.incrementAndGet();
+                        }
+                        decoded.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        failures.add(new ApkFailure(apk, "interrupted"));
+                    } catch (Exception e) {
+                        log.warn("Не удалось декодировать {}: {}", apk, e.getMessage());
+                        failures.add(new ApkFailure(apk, e.getMessage()));
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("APK decoding interrupted in: " + projectDir, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("ERROR WHILE DECODING APKs IN: " + projectDir, e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // результат прошлого декодирования остаётся в проекте — он тоже часть дерева
+        for (ApkPlan plan : plans) {
+            if (!plan.skip()) continue;
+            try {
+                carryOver(projectDir, plan, options, outputLocks);
+                if (index != null) index.addTree(projectDir.resolve(plan.outName()));
+            } catch (IOException e) {
+                throw new RuntimeException("Не смог перенести прошлый результат " + plan.outName(), e);
+            }
+        }
+
+        return logReport(new DecodeReport(plans.size(), decoded.get(), cacheHits.get(), skipped,
+                plans, List.copyOf(failures)));
+    }
+
+    private static DecodeReport logReport(DecodeReport report) {
+        if (report.hasFailures()) {
+            log.warn("APK декодировано {}/{} (из кэша {}, пропущено {}), ошибок: {}",
+                    report.decoded(), report.total(), report.cacheHits(), report.skipped(), report.failures().size());
+            for (ApkFailure f : report.failures()) {
+                log.warn("  {} -> {}", f.apk(), f.error());
+            }
+        } else {
+            log.info("APK декодировано {}/{} (из кэша {}, пропущено {})",
+                    report.decoded(), report.total(), report.cacheHits(), report.skipped());
+        }
+        return report;
+    }
+
+    /**
+     * Декодирование по мере появления APK: распаковка отдаёт каждый готовый файл в {@link DecodeFlow#offer},
+     * APK из system/ и vendor/ сразу уходят в ограниченную очередь apktool, не дожидаясь остальных разделов.
+     *
+     * @param onFile     куда отдавать файлы результата apktool (стадия хэширования), null — никуда
+     * @param queueDepth сколько APK может ждать apktool; распаковка, упёршаяся в полную очередь, ждёт
+     */
+    public static DecodeFlow decodeFlow(Path projectDir, DecodeOptions options, PipelineListener listener,
+                                        Consumer<Path> onFile, int queueDepth) {
+        return new DecodeFlow(projectDir, options, listener, onFile, queueDepth);
+    }
+
+    public static final class DecodeFlow implements AutoCloseable {
+        private final Path projectDir;
+        private final Path systemDir;
+        private final Path vendorDir;
+        private final DecodeOptions options;
+        private final PipelineListener listener;
+        private final Consumer<Path> onFile;
+        private final Stage<Path> stage;
+
+        private final List<ApkPlan> plans = new ArrayList<>();
+        private final List<ApkFailure> failures = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger decoded = new AtomicInteger();
+        private final AtomicInteger cacheHits = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final ConcurrentHashMap<Path, Object> outputLocks = new ConcurrentHashMap<>();
+
+        private DecodeFlow(Path projectDir, DecodeOptions options, PipelineListener listener,
+                           Consumer<Path> onFile, int queueDepth) {
+            this.projectDir = projectDir;
+            this.systemDir = projectDir.resolve("system");
+            this.vendorDir = projectDir.resolve("vendor");
+            this.options = options;
+            this.listener = listener;
+            this.onFile = onFile;
+            this.stage = new Stage<>(projectDir.getFileName().toString(), "apktool", options.effectiveWorkers(),
+                    queueDepth, this::decode);
+        }
+
+        /**
+         * Файл из распаковки; в очередь попадают только APK из system/ и vendor/.
+         */
+        public void offer(Path file) {
+            if (!file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".apk")) return;
+            if (!file.startsWith(systemDir) && !file.startsWith(vendorDir)) return;
+            stage.accept(file);
+        }
+
+        private void decode(Path apk) throws Exception {
+            ApkPlan plan = plan(projectDir, apk, options);
+            List<ApkPlan> known;
+            synchronized (plans) {
+                plans.add(plan);
+                known = List.copyOf(plans);
+            }
+            listener.planned(known);
+
+            if (plan.skip()) {
+                skipped.incrementAndGet();
+                // результат прошлого декодирования остаётся в проекте — он тоже часть дерева
+                carryOver(projectDir, plan, options, outputLocks);
+                if (onFile != null) feedTree(projectDir.resolve(plan.outName()), onFile);
+                return;
+            }
+            try {
+                if (observedDecode(projectDir, plan, options, outputLocks, onFile)) {
+                    cacheHits.incrementAndGet();
+                }
+                decoded.incrementAndGet();
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                log.warn("Не удалось декодировать {}: {}", apk, e.getMessage());
+                failures.add(new ApkFailure(apk, e.getMessage()));
+            }
+        }
+
+        /**
+         * Распаковка закончена: дожидается очереди apktool.
+         */
+        public DecodeReport finish() throws InterruptedException {
+            try {
+                stage.finish();
+            } catch (ExecutionException e) {
+                throw new RuntimeException("ERROR WHILE DECODING APKs IN: " + projectDir, e.getCause());
+            }
+
+            List<ApkPlan> all;
+            synchronized (plans) {
+                plans.sort(Comparator.comparing(p -> p.apk().toString()));
+                all = List.copyOf(plans);
+            }
+            if (all.isEmpty() && !Files.isDirectory(systemDir) && !Files.isDirectory(vendorDir)) {
+                throw new RuntimeException("No system/ or vendor/ directories in: " + projectDir);
+            }
+            listener.planned(all);
+            return logReport(new DecodeReport(all.size(), decoded.get(), cacheHits.get(), skipped.get(),
+                    all, List.copyOf(failures)));
+        }
+
+        /**
+         * Останавливает apktool, если {@link #finish()} не был вызван (распаковка упала).
+         */
+        @Override
+        public void close() {
+            stage.close();
+        }
+    }
+
+    /**
+     * Находит APK в system/ и vendor/ и читает их манифесты без apktool: имя выходной папки
+     * и решение о пропуске известны до запуска первого процесса.
+     */
+    public static List<ApkPlan> planApks(Path projectDir, DecodeOptions options) {
         if (projectDir == null || !Files.isDirectory(projectDir)) {
             throw new RuntimeException("NOT FOUND DIRECTORY: " + projectDir);
         }
@@ -31,95 +324,287 @@ public class ApkScripts {
             throw new RuntimeException("No system/ or vendor/ directories in: " + projectDir);
         }
 
-        Pattern pkgPattern = Pattern.compile("package\\s*=\\s*\"([^\"]+)\"");
-
+        List<Path> apks;
         try (Stream<Path> walk = Files.walk(projectDir)) {
-
-            var apks = walk
+            apks = walk
                     .filter(Files::isRegularFile)
                     .filter(p -> p.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".apk"))
                     .filter(p -> p.startsWith(systemDir) || p.startsWith(vendorDir))
                     .sorted(Comparator.comparing(Path::toString))
                     .collect(Collectors.toList());
+        } catch (Exception e) {
+            throw new RuntimeException("ERROR WHILE DECODING APKs IN: " + projectDir, e);
+        }
 
-            log.info("Найдено APK в system/vendor: {}", apks.size());
+        return planApks(projectDir, options, apks);
+    }
 
-            for (Path apk : apks) {
-                String apkFileName = apk.getFileName().toString();
-                String baseName = apkFileName;
-                int dot = baseName.lastIndexOf('.');
-                if (dot > 0) baseName = baseName.substring(0, dot);
+    private static List<Path> apksFromIndex(Path projectDir, FileIndex index) {
+        List<String> paths = index.pathsUnder(List.of("system/", "vendor/"), ".apk");
+        if (paths.isEmpty() && !Files.isDirectory(projectDir.resolve("system"))
+                && !Files.isDirectory(projectDir.resolve("vendor"))) {
+            throw new RuntimeException("No system/ or vendor/ directories in: " + projectDir);
+        }
+        return paths.stream().sorted().map(projectDir::resolve).toList();
+    }
 
-                Path tmpOut = projectDir.resolve("_tmp_decode_" + baseName + "_" + Math.abs(apk.toAbsolutePath().toString().hashCode()));
+    private static List<ApkPlan> planApks(Path projectDir, DecodeOptions options, List<Path> apks) {
+        return apks.parallelStream()
+                .map(apk -> plan(projectDir, apk, options))
+                .toList();
+    }
 
-                if (Files.exists(tmpOut)) {
-                    try (Stream<Path> del = Files.walk(tmpOut).sorted(Comparator.reverseOrder())) {
-                        del.forEach(p -> {
-                            try { Files.deleteIfExists(p); } catch (Exception ignored) {}
-                        });
-                    }
-                }
+    private static ApkPlan plan(Path projectDir, Path apk, DecodeOptions options) {
+        ApkInfo info;
+        try {
+            info = ApkManifestReader.read(apk);
+        } catch (Exception e) {
+            log.debug("Манифест {} не прочитан без apktool: {}", apk, e.getMessage());
+            return new ApkPlan(apk, null, null, false);
+        }
+        if (info.packageName() == null) {
+            return new ApkPlan(apk, info, null, false);
+        }
 
-                log.info("apktool decode (tmp): {} -> {}", apk.toAbsolutePath(), tmpOut.toAbsolutePath());
-
-                ProcessBuilder decodePb = new ProcessBuilder(
-                        APKTOOL, "d",
-                        "-f",
-                        "-o", tmpOut.toAbsolutePath().toString(),
-                        apk.toAbsolutePath().toString()
-                );
-                decodePb.redirectErrorStream(true);
-                Process decodeProc = decodePb.start();
-
-                StringBuilder apktoolOut = new StringBuilder();
-                try (BufferedReader br = new BufferedReader(new InputStreamReader(decodeProc.getInputStream(), StandardCharsets.UTF_8))) {
-                    String line;
-                    while ((line = br.readLine()) != null) {
-                        apktoolOut.append(line).append("\n");
-                        log.info("[apktool] {}", line);
-                    }
-                }
+        String outName = outName(info.packageName(), baseName(apk));
+        Path previous = options.previous() != null ? options.previous() : projectDir;
+        boolean skip = options.skipUnchanged() && isUpToDate(previous.resolve(outName), info);
+        return new ApkPlan(apk, info, outName, skip);
+    }
 
-                int decodeCode = decodeProc.waitFor();
-                if (decodeCode != 0) {
-                    throw new RuntimeException(
-                            "apktool failed (" + decodeCode + ") for " + apk + "\n" + apktoolOut
-                    );
-                }
+    /**
+     * Пропущенный APK при декодировании в staging: прошлый результат из рабочей копии переносится туда
+     * жёсткими ссылками, иначе синхронизация сочла бы папку удалённой. Файлы не переписываются,
+     * так что общие inode с рабочей копией ей не вредят.
+     */
+    private static void carryOver(Path projectDir, ApkPlan plan, DecodeOptions options,
+                                  ConcurrentHashMap<Path, Object> outputLocks) throws IOException {
+        Path previous = options.previous();
+        if (previous == null || previous.equals(projectDir)) return;
 
-                Path manifest = tmpOut.resolve("AndroidManifest.xml");
-                if (!Files.exists(manifest)) {
-                    throw new RuntimeException("AndroidManifest.xml not found after decode: " + manifest);
-                }
+        Path out = projectDir.resolve(plan.outName());
+        synchronized (outputLocks.computeIfAbsent(out, k -> new Object())) {
+            // другой APK с тем же именем папки уже декодирован заново
+            if (Files.exists(out, LinkOption.NOFOLLOW_LINKS)) return;
+            DecodeCache.linkTree(previous.resolve(plan.outName()), out);
+        }
+    }
 
-                String manifestText = Files.readString(manifest, StandardCharsets.UTF_8);
-                Matcher m = pkgPattern.matcher(manifestText);
-                String pkg = m.find() ? m.group(1) : "unknown.package";
+    /**
+     * Декодированная папка считается актуальной, если apktool.yml в ней записан для той же версии APK.
+     */
+    private static boolean isUpToDate(Path decodedDir, ApkInfo info) {
+        Path yml = decodedDir.resolve("apktool.yml");
+        if (!Files.isRegularFile(yml) || !Files.exists(decodedDir.resolve("AndroidManifest.xml"))) {
+            return false;
+        }
+        try {
+            String text = Files.readString(yml, StandardCharsets.UTF_8);
+            Matcher code = YML_VERSION_CODE.matcher(text);
+            Matcher name = YML_VERSION_NAME.matcher(text);
+            String ymlCode = code.find() ? code.group(1) : null;
+            String ymlName = name.find() ? unquote(name.group(1)) : null;
+            return String.valueOf(info.versionCode()).equals(ymlCode)
+                    && Objects.equals(info.versionName(), ymlName);
+        } catch (IOException e) {
+            return false;
+        }
+    }
 
-                String safePkg = pkg.replaceAll("[\\\\/\\s:]+", "_");
-                String outName = safePkg + "_" + baseName;
+    private static String unquote(String s) {
+        if (s.length() >= 2 && (s.startsWith("'") && s.endsWith("'") || s.startsWith("\"") && s.endsWith("\""))) {
+            return s.substring(1, s.length() - 1);
+        }
+        return s;
+    }
 
-                Path finalOut = projectDir.resolve(outName);
+    private static String baseName(Path apk) {
+        String baseName = apk.getFileName().toString();
+        int dot = baseName.lastIndexOf('.');
+        return dot > 0 ? baseName.substring(0, dot) : baseName;
+    }
 
-                if (Files.exists(finalOut)) {
-                    try (Stream<Path> del = Files.walk(finalOut).sorted(Comparator.reverseOrder())) {
-                        del.forEach(p -> {
-                            try { Files.deleteIfExists(p); } catch (Exception ignored) {}
-                        });
-                    }
-                }
-                try {
-                    Files.move(tmpOut, finalOut, StandardCopyOption.ATOMIC_MOVE);
-                } catch (AtomicMoveNotSupportedException ex) {
-                    Files.move(tmpOut, finalOut);
-                }
+    private static String outName(String pkg, String baseName) {
+        String safePkg = pkg.replaceAll("[\\\\/\\s:]+", "_");
+        return safePkg + "_" + baseName;
+    }
 
-                log.info("Готово: {} -> {}", apkFileName, finalOut.toAbsolutePath());
+    /**
+     * Отдаёт все файлы дерева в {@code onFile} — результат apktool появляется целой папкой.
+     */
+    private static void feedTree(Path dir, Consumer<Path> onFile) throws IOException {
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) return;
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                onFile.accept(file);
+                return FileVisitResult.CONTINUE;
             }
+        });
+    }
 
+    /**
+     * {@link #decodeApk} под таймером и span'ом: outcome — cache, decoded или failed.
+     */
+    private static boolean observedDecode(Path projectDir, ApkPlan plan, DecodeOptions options,
+                                          ConcurrentHashMap<Path, Object> outputLocks, Consumer<Path> onFile)
+            throws Exception {
+        Observation observation = PipelineMetrics.start(PipelineMetrics.APK_DECODE,
+                "apktool " + plan.apk().getFileName());
+        try (Observation.Scope scope = observation.openScope()) {
+            boolean fromCache = decodeApk(projectDir, plan, options, outputLocks, onFile);
+            observation.lowCardinalityKeyValue("outcome", fromCache ? "cache" : "decoded");
+            return fromCache;
         } catch (Exception e) {
-            throw new RuntimeException("ERROR WHILE DECODING APKs IN: " + projectDir, e);
+            observation.lowCardinalityKeyValue("outcome", "failed");
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
         }
     }
-}
 
+    /**
+     * @return true, если результат взят из кэша и apktool не запускался
+     */
+    private static boolean decodeApk(Path projectDir, ApkPlan plan, DecodeOptions options,
+                                     ConcurrentHashMap<Path, Object> outputLocks, Consumer<Path> onFile)
+            throws Exception {
+        Path apk = plan.apk();
+        String apkFileName = apk.getFileName().toString();
+        String baseName = baseName(apk);
+
+        Path tmpOut = projectDir.resolve("_tmp_decode_" + baseName + "_" + Math.abs(apk.toAbsolutePath().toString().hashCode()));
+
+        if (Files.exists(tmpOut)) {
+            deleteTree(tmpOut);
+        }
+
+        // без известной версии apktool кэшу доверять нельзя
+        DecodeCache cache = options.cache();
+        String version = cache != null ? apktoolVersion() : null;
+        String cacheKey = cache != null && !"unknown".equals(version) ? cache.key(apk, version, DECODE_FLAGS) : null;
+        boolean fromCache = cacheKey != null && cache.restore(cacheKey, tmpOut);
+
+        if (fromCache) {
+            log.info("apktool decode (cache): {} -> {}", apk.toAbsolutePath(), tmpOut.toAbsolutePath());
+        } else {
+            runApktool(apk, tmpOut, options);
+        }
+
+        Path manifest = tmpOut.resolve("AndroidManifest.xml");
+        if (!Files.exists(manifest)) {
+            deleteTree(tmpOut);
+            throw new RuntimeException("AndroidManifest.xml not found after decode: " + manifest);
+        }
+
+        if (cacheKey != null && !fromCache) {
+            cache.store(cacheKey, tmpOut);
+        }
+
+        String outName = plan.outName();
+        if (outName == null) {
+            String manifestText = Files.readString(manifest, StandardCharsets.UTF_8);
+            Matcher m = PKG_PATTERN.matcher(manifestText);
+            outName = outName(m.find() ? m.group(1) : "unknown.package", baseName);
+        }
+
+        Path finalOut = projectDir.resolve(outName);
+
+        synchronized (outputLocks.computeIfAbsent(finalOut, k -> new Object())) {
+            if (Files.exists(finalOut)) {
+                deleteTree(finalOut);
+            }
+            try {
+                Files.move(tmpOut, finalOut, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmpOut, finalOut);
+            }
+            if (onFile != null) feedTree(finalOut, onFile);
+        }
+
+        log.info("Готово: {} -> {}", apkFileName, finalOut.toAbsolutePath());
+        return fromCache;
+    }
+
+    private static void runApktool(Path apk, Path tmpOut, DecodeOptions options) throws Exception {
+        log.info("apktool decode (tmp): {} -> {}", apk.toAbsolutePath(), tmpOut.toAbsolutePath());
+
+        List<String> cmd = new ArrayList<>();
+        cmd.add(ProcessRunner.executable(ToolClass.APKTOOL));
+        if (options.maxHeapMb() > 0) {
+            // обёртка apktool превращает -J<opt> в опцию JVM
+            cmd.add("-JXmx" + options.maxHeapMb() + "m");
+        }
+        cmd.addAll(DECODE_FLAGS);
+        cmd.addAll(List.of(
+                "-o", tmpOut.toAbsolutePath().toString(),
+                apk.toAbsolutePath().toString()
+        ));
+
+        // куча JVM плюс запас на metaspace и нативную память
+        long memoryMb = options.maxHeapMb() > 0 ? options.maxHeapMb() + JVM_OVERHEAD_MB : -1;
+        Result result;
+        try {
+            result = ProcessRunner.run(Command.of(ToolClass.APKTOOL, "apktool " + apk.getFileName(), cmd)
+                    .memoryMb(memoryMb));
+        } catch (ProcessTimeoutException e) {
+            deleteTree(tmpOut);
+            throw e;
+        }
+        int decodeCode = result.exitCode();
+        if (decodeCode != 0) {
+            deleteTree(tmpOut);
+            throw new RuntimeException(
+                    "apktool failed (" + decodeCode + ") for " + apk + "\n" + result.tail()
+            );
+        }
+    }
+
+    /**
+     * Версия apktool для ключа кэша. Удачный ответ запоминается до перезапуска, неудачный — нет: пока
+     * версия неизвестна, кэш не используется, а через {@code apktoolVersionRetry} apktool спрашивается снова.
+     */
+    public static String apktoolVersion() {
+        String version = apktoolVersion;
+        if (version != null) return version;
+
+        synchronized (ApkScripts.class) {
+            if (apktoolVersion != null) return apktoolVersion;
+            if (apktoolVersionRetryAt != 0 && System.nanoTime() - apktoolVersionRetryAt < 0) return "unknown";
+
+            try {
+                Result result = ProcessRunner.run(Command.of(ToolClass.APKTOOL, "apktool --version",
+                        List.of(ProcessRunner.executable(ToolClass.APKTOOL), "--version")).timeout(Duration.ofMinutes(1)));
+                String out = result.tail().trim();
+                if (result.ok() && !out.isEmpty()) {
+                    apktoolVersion = out;
+                    log.info("Версия apktool: {}", out);
+                    return out;
+                }
+                log.warn("apktool --version завершился с кодом {}, кэш apktool отключён до следующей попытки:\n{}",
+                        result.exitCode(), result.tail());
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+                log.warn("apktool --version не выполнен, кэш apktool отключён до следующей попытки: {}", e.toString());
+            }
+            apktoolVersionRetryAt = System.nanoTime() + apktoolVersionRetry.toNanos();
+            return "unknown";
+        }
+    }
+
+    /**
+     * Забывает версию apktool; {@code retry} — пауза перед повтором после неудачного запроса версии.
+     */
+    static synchronized void resetApktoolVersion(Duration retry) {
+        apktoolVersion = null;
+        apktoolVersionRetryAt = 0;
+        apktoolVersionRetry = retry;
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        // переименование в корзину: следующий шаг не ждёт удаления сотен тысяч файлов
+        TreeDeleter.discard(root);
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.example.HanldeImg.scripts;
+
+import com.example.HanldeImg.scripts.ApkScripts.ApkPlan;
+import com.example.HanldeImg.scripts.index.FileIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Что известно о сборке после распаковки: все свойства из build.prop разделов, пакеты и версии APK
+ * и размеры разделов. Собирается один раз, пока дерево на диске, дальше запросы идут к индексу сборок.
+ */
+public record BuildMetadata(List<Property> properties, List<Apk> apks, List<Partition> partitions) {
+
+    private static final Logger log = LoggerFactory.getLogger(BuildMetadata.class);
+
+    // где лежит build.prop в разделе: system/ и vendor/ — в корне, product/odm/system_ext — в etc/
+    private static final List<String> BUILD_PROP_LOCATIONS = List.of("build.prop", "etc/build.prop");
+
+    public record Property(String partition, String name, String value) {}
+
+    /**
+     * @param path путь APK от корня проекта
+     */
+    public record Apk(String path, String packageName, long versionCode, String versionName) {}
+
+    public record Partition(String name, long files, long bytes) {}
+
+    /**
+     * Первое значение свойства из system, затем из остальных разделов по порядку.
+     */
+    public String property(String name) {
+        return properties.stream()
+                .filter(p -> p.name().equals(name))
+                .sorted(Comparator.comparing((Property p) -> !p.partition().equals("system")))
+                .map(Property::value)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * @param partitions имена папок разделов, распакованных из образов
+     * @param index      файлы проекта; null — размеры считаются обходом папок разделов
+     * @param apks       манифесты из отчёта декодирования; APK с нечитаемым манифестом пропускаются
+     */
+    public static BuildMetadata collect(Path projectDir, List<String> partitions, FileIndex index, List<ApkPlan> apks)
+            throws IOException {
+        List<Property> properties = new ArrayList<>();
+        for (String partition : partitions) {
+            for (String location : BUILD_PROP_LOCATIONS) {
+                Path file = projectDir.resolve(partition).resolve(location);
+                if (Files.isRegularFile(file)) {
+                    parseBuildProp(file).forEach((name, value) -> properties.add(new Property(partition, name, value)));
+                }
+            }
+        }
+
+        List<Apk> apkList = new ArrayList<>();
+        for (ApkPlan plan : apks) {
+            if (plan.info() == null) continue;
+            apkList.add(new Apk(projectDir.relativize(plan.apk()).toString().replace('\\', '/'),
+                    plan.info().packageName(), plan.info().versionCode(), plan.info().versionName()));
+        }
+        if (apkList.size() < apks.size()) {
+            log.info("Манифест не прочитан у {} APK из {}, в индекс сборок они не попадут",
+                    apks.size() - apkList.size(), apks.size());
+        }
+
+        List<Partition> sizes = new ArrayList<>();
+        for (String partition : partitions) {
+            sizes.add(index != null ? sizeFromIndex(index, partition) : sizeOnDisk(projectDir.resolve(partition)));
+        }
+        return new BuildMetadata(List.copyOf(properties), List.copyOf(apkList), List.copyOf(sizes));
+    }
+
+    /**
+     * build.prop — строки {@code имя=значение}; значения могут содержать ':' и '\', поэтому не Properties.
+     * Повторное свойство перекрывает прежнее, как при загрузке в Android.
+     */
+    static Map<String, String> parseBuildProp(Path file) throws IOException {
+        Map<String, String> props = new LinkedHashMap<>();
+        // InputStreamReader заменяет битые байты, а не падает, как Files.newBufferedReader
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.strip();
+                int eq = line.indexOf('=');
+                if (line.isEmpty() || line.startsWith("#") || eq <= 0) continue;
+                props.put(line.substring(0, eq).strip(), line.substring(eq + 1).strip());
+            }
+        }
+        return props;
+    }
+
+    private static Partition sizeFromIndex(FileIndex index, String partition) {
+        String prefix = partition + "/";
+        long files = 0;
+        long bytes = 0;
+        for (int i = 0; i < index.size(); i++) {
+            if (index.path(i).startsWith(prefix)) {
+                files++;
+                bytes += index.size(i);
+            }
+        }
+        return new Partition(partition, files, bytes);
+    }
+
+    private static Partition sizeOnDisk(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return new Partition(dir.getFileName().toString(), 0, 0);
+        long[] total = new long[2];
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.forEach(p -> {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isDirectory()) return;
+                    total[0]++;
+                    total[1] += attrs.size();
+                } catch (IOException ignored) {
+                    // файл успел исчезнуть — размер раздела от этого не пострадает заметно
+                }
+            });
+        }
+        return new Partition(dir.getFileName().toString(), total[0], total[1]);
+    }
+}
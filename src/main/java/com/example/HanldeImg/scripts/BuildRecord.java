@@ -0,0 +1,145 @@
+package com.example.HanldeImg.scripts;
+
+import com.example.HanldeImg.scripts.IngestScripts.IngestedImage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Что последним опубликовано в проекте: SHA-256 принятых образов, коммит и ro.build.display.id.
+ * Если тот же набор образов приходит снова, пайплайн можно не запускать — получится тот же коммит.
+ *
+ * @param imagesDigest SHA-256 от отсортированных пар имя/SHA-256 образов, см. {@link #digest(List)}
+ * @param filter       трейлеры профиля распаковки; те же образы с другим профилем — другая сборка
+ */
+public record BuildRecord(String imagesDigest, List<Image> images, String commit, String buildId, String filter,
+                          Instant recordedAt) {
+
+    private static final Logger log = LoggerFactory.getLogger(BuildRecord.class);
+
+    public record Image(String name, long size, String sha256) {}
+
+    public static BuildRecord of(List<IngestedImage> images, String commit, String buildId) {
+        return of(images, commit, buildId, "");
+    }
+
+    public static BuildRecord of(List<IngestedImage> images, String commit, String buildId, String filter) {
+        List<Image> sorted = images.stream()
+                .map(i -> new Image(i.name(), i.size(), i.sha256()))
+                .sorted(Comparator.comparing(Image::name))
+                .toList();
+        return new BuildRecord(digest(images), sorted, commit, buildId, filter, Instant.now());
+    }
+
+    /**
+     * Хэш набора образов. Имя входит в хэш: по нему образ распаковывается в свою папку.
+     */
+    public static String digest(List<IngestedImage> images) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        images.stream()
+                .sorted(Comparator.comparing(IngestedImage::name))
+                .forEach(i -> md.update((i.name() + '\0' + i.sha256() + '\n').getBytes(StandardCharsets.UTF_8)));
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    public boolean matches(List<IngestedImage> images) {
+        return matches(images, "");
+    }
+
+    public boolean matches(List<IngestedImage> images, String filter) {
+        return !images.isEmpty() && imagesDigest.equals(digest(images)) && this.filter.equals(filter);
+    }
+
+    public void write(Path file) throws IOException {
+        Properties p = new Properties();
+        p.setProperty("images.digest", imagesDigest);
+        p.setProperty("commit", commit);
+        p.setProperty("build.id", buildId);
+        p.setProperty("filter", filter);
+        p.setProperty("recorded.at", recordedAt.toString());
+        for (int i = 0; i < images.size(); i++) {
+            Image image = images.get(i);
+            p.setProperty("image." + i, image.sha256() + " " + image.size() + " " + image.name());
+        }
+
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            p.store(out, null);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return null, если записи нет или она повреждена
+     */
+    public static BuildRecord read(Path file) {
+        if (file == null) return null;
+        Properties p = new Properties();
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            p.load(in);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.warn("Не смог прочитать запись о сборке {}", file, e);
+            return null;
+        }
+
+        String digest = p.getProperty("images.digest");
+        String commit = p.getProperty("commit");
+        String buildId = p.getProperty("build.id");
+        String recordedAt = p.getProperty("recorded.at");
+        if (digest == null || commit == null || buildId == null || recordedAt == null) {
+            log.warn("Запись о сборке {} неполная, игнорируем", file);
+            return null;
+        }
+
+        try {
+            List<Image> images = new ArrayList<>();
+            for (int i = 0; p.getProperty("image." + i) != null; i++) {
+                String[] parts = p.getProperty("image." + i).split(" ", 3);
+                images.add(new Image(parts[2], Long.parseLong(parts[1]), parts[0]));
+            }
+            return new BuildRecord(digest, List.copyOf(images), commit, buildId, p.getProperty("filter", ""),
+                    Instant.parse(recordedAt));
+        } catch (RuntimeException e) {
+            log.warn("Запись о сборке {} повреждена, игнорируем", file, e);
+            return null;
+        }
+    }
+
+    public static void delete(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Не смог удалить запись о сборке {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.HanldeImg.scripts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Кэш результатов apktool d, общий для всех проектов. Ключ — SHA-256 APK + версия apktool + флаги,
+ * деревья восстанавливаются жёсткими ссылками (копированием, если ФС их не умеет).
+ * Вытеснение — LRU по суммарному размеру.
+ */
+public class DecodeCache {
+
+    private static final Logger log = LoggerFactory.getLogger(DecodeCache.class);
+    private static final String META_SUFFIX = ".meta";
+
+    private final Path root;
+    private final long maxBytes;
+
+    // access-order: первым идёт давно не использованный ключ
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    public DecodeCache(Path root, long maxBytes) throws IOException {
+        this.root = root;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(root);
+        load();
+    }
+
+    public String key(Path apk, String toolVersion, List<String> flags) throws IOException {
+        MessageDigest sha256 = newSha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(apk), sha256)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        String apkHash = HexFormat.of().formatHex(sha256.digest());
+
+        MessageDigest keyDigest = newSha256();
+        keyDigest.update((apkHash + "\n" + toolVersion + "\n" + String.join(" ", flags)).getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(keyDigest.digest());
+    }
+
+    /**
+     * Восстанавливает закэшированное дерево в {@code target} (которого ещё не должно быть).
+     * Файлы target — жёсткие ссылки на файлы кэша: их можно заменять и удалять, но не переписывать на месте.
+     * @return false, если ключа нет, запись вытеснили во время восстановления или она повреждена
+     */
+    public boolean restore(String key, Path target) {
+        Path entry;
+        long expected;
+        synchronized (this) {
+            Long size = entries.get(key);
+            if (size == null) return false;
+            expected = size;
+            entry = root.resolve(key);
+        }
+        try {
+            long size = linkTree(entry, target);
+            if (size != expected) {
+                throw new IOException("в записи " + size + " байт вместо " + expected);
+            }
+            Files.setLastModifiedTime(root.resolve(key + META_SUFFIX), FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (IOException e) {
+            // недописанную или побитую запись больше не отдаём — apktool перезапишет её при store
+            log.warn("Не удалось восстановить {} из кэша apktool, запись удалена: {}", key, e.getMessage());
+            deleteQuietly(target);
+            drop(key);
+            return false;
+        }
+    }
+
+    private void drop(String key) {
+        Path trash = root.resolve(key + ".evicted-" + UUID.randomUUID());
+        synchronized (this) {
+            Long size = entries.remove(key);
+            if (size == null) return;
+            totalBytes -= size;
+            try {
+                Files.deleteIfExists(root.resolve(key + META_SUFFIX));
+                Files.move(root.resolve(key), trash, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                trash = root.resolve(key);
+            }
+        }
+        deleteQuietly(trash);
+    }
+
+    public void store(String key, Path decodedDir) {
+        synchronized (this) {
+            if (entries.containsKey(key)) return;
+        }
+        Path tmp = root.resolve(key + ".tmp-" + UUID.randomUUID());
+        Path entry = root.resolve(key);
+        try {
+            long size = linkTree(decodedDir, tmp);
+            synchronized (this) {
+                if (entries.containsKey(key)) {
+                    deleteQuietly(tmp);
+                    return;
+                }
+                deleteQuietly(entry);
+                Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE);
+                Files.writeString(root.resolve(key + META_SUFFIX), Long.toString(size));
+                entries.put(key, size);
+                totalBytes += size;
+            }
+            evict();
+        } catch (IOException e) {
+            log.warn("Не удалось сохранить {} в кэш apktool: {}", key, e.getMessage());
+            deleteQuietly(tmp);
+        }
+    }
+
+    private void evict() {
+        List<Path> evicted = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, Long> e = it.next();
+                it.remove();
+                totalBytes -= e.getValue();
+                Path dir = root.resolve(e.getKey());
+                Path trash = root.resolve(e.getKey() + ".evicted-" + UUID.randomUUID());
+                try {
+                    Files.deleteIfExists(root.resolve(e.getKey() + META_SUFFIX));
+                    Files.move(dir, trash, StandardCopyOption.ATOMIC_MOVE);
+                    evicted.add(trash);
+                } catch (IOException ex) {
+                    evicted.add(dir);
+                }
+            }
+        }
+        // удаляем уже вне блокировки
+        for (Path p : evicted) {
+            deleteQuietly(p);
+        }
+        if (!evicted.isEmpty()) {
+            log.info("Кэш apktool: вытеснено записей {}, занято {} байт", evicted.size(), totalBytes);
+        }
+    }
+
+    private synchronized void load() throws IOException {
+        record Loaded(String key, long size, FileTime lastUsed) {}
+        List<Loaded> loaded = new ArrayList<>();
+
+        try (Stream<Path> list = Files.list(root)) {
+            for (Path p : list.toList()) {
+                String name = p.getFileName().toString();
+                if (name.contains(".tmp-") || name.contains(".evicted-")) {
+                    deleteQuietly(p);
+                    continue;
+                }
+                if (!name.endsWith(META_SUFFIX)) continue;
+
+                String key = name.substring(0, name.length() - META_SUFFIX.length());
+                if (!Files.isDirectory(root.resolve(key))) {
+                    Files.deleteIfExists(p);
+                    continue;
+                }
+                try {
+                    long size = Long.parseLong(Files.readString(p).trim());
+                    loaded.add(new Loaded(key, size, Files.getLastModifiedTime(p)));
+                } catch (NumberFormatException e) {
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+
+        loaded.sort(Comparator.comparing(Loaded::lastUsed));
+        for (Loaded l : loaded) {
+            entries.put(l.key(), l.size());
+            totalBytes += l.size();
+        }
+        log.info("Кэш apktool {}: записей {}, {} байт", root.toAbsolutePath(), entries.size(), totalBytes);
+    }
+
+    /**
+     * Повторяет дерево {@code source} в {@code target} жёсткими ссылками (копированием, если ФС их не умеет).
+     * @return суммарный размер файлов
+     */
+    static long linkTree(Path source, Path target) throws IOException {
+        AtomicLong size = new AtomicLong();
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path dst = target.resolve(source.relativize(file).toString());
+                if (attrs.isSymbolicLink()) {
+                    Files.createSymbolicLink(dst, Files.readSymbolicLink(file));
+                    return FileVisitResult.CONTINUE;
+                }
+                try {
+                    Files.createLink(dst, file);
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    Files.copy(file, dst, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+                size.addAndGet(attrs.size());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return size.get();
+    }
+
+    private static void deleteQuietly(Path root) {
+        try {
+            TreeDeleter.discard(root);
+        } catch (IOException ignored) {
+        }
+    }
+
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,381 +1,291 @@
 package com.example.HanldeImg.scripts;
 
-import org.gitlab4j.api.GitLabApi;
+import com.example.HanldeImg.scripts.extract.ExtractProfile;
+import com.example.HanldeImg.scripts.extract.ExtractSelection;
+import com.example.HanldeImg.scripts.extract.ImageExtractor;
+import com.example.HanldeImg.scripts.extract.ImageExtractors;
+import com.example.HanldeImg.scripts.extract.SevenZipExtractor;
+import com.example.HanldeImg.scripts.extract.SparseImage;
+import com.example.HanldeImg.scripts.flow.FlowOptions;
+import com.example.HanldeImg.scripts.flow.Stage;
+import com.example.HanldeImg.scripts.git.CliGitPublisher;
+import com.example.HanldeImg.scripts.git.GitPublisher;
+import com.example.HanldeImg.scripts.index.FileIndex;
+import com.example.HanldeImg.scripts.metrics.PipelineMetrics;
+import io.micrometer.observation.Observation;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.gitlab4j.api.GitLabApiException;
-import org.gitlab4j.api.models.Group;
-import org.gitlab4j.api.models.Project;
-import org.gitlab4j.models.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 public class ImageScripts {
 
-    private static final String DEFAULT_7Z_PATH = "/usr/local/bin/7z";
     private static final String GIT_GROUP = System.getenv("GIT_GROUP_NAME");
     private static final Logger log = LoggerFactory.getLogger(ImageScripts.class.getName());
     public static final String[] ignore = new String[] {".gitignore", ".git", ".gitattributes"};
 
-    private static String findArchivator() {
-        Path p = Paths.get(DEFAULT_7Z_PATH);
-        if (Files.exists(p) && Files.isExecutable(p)) {
-            return p.toString();
-        }
-        return "7z";
+    public enum UpdateMode {
+        // удалить всё кроме .git и распаковать заново
+        WIPE,
+        // распаковать в staging и перенести только отличающиеся файлы
+        INCREMENTAL
     }
 
-    public static void extractImgWith7z(Path imgPath, Path targetDir) throws IOException, InterruptedException {
-        Files.createDirectories(targetDir);
-
-        ProcessBuilder pb = new ProcessBuilder(
-                findArchivator(),
-                "x",
-                imgPath.toAbsolutePath().toString(),
-                "-o" + targetDir.toAbsolutePath(),
-                "-y"
-        );
-
-        pb.redirectErrorStream(true);
-        Process process = pb.start();
-
-        StringBuilder output = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                output.append(line).append("\n");
-            }
-        }
-
-        int exitCode = process.waitFor();
-        String out = output.toString();
-
-        if (exitCode == 0) {
-            return;
+    /**
+     * @param indexFile где хранится индекс файлов проекта между обновлениями, null — без индекса
+     * @param profile   что распаковывать из образов
+     * @param flow      очереди между распаковкой, apktool и хэшированием
+     */
+    public record UpdateOptions(UpdateMode mode, Path stagingRoot, int extractParallelism,
+                                ImageExtractors extractors, ApkScripts.DecodeOptions decodeOptions,
+                                GitPublisher git, Path indexFile, ExtractProfile profile, FlowOptions flow) {
+        public static UpdateOptions defaults(Path targetDir) {
+            Path parent = targetDir.toAbsolutePath().getParent();
+            return new UpdateOptions(UpdateMode.INCREMENTAL, parent.resolve(".staging"), 1,
+                    ImageExtractors.sevenZipOnly(), ApkScripts.DecodeOptions.defaults(), new CliGitPublisher(), null,
+                    ExtractProfile.ALL, FlowOptions.defaults());
         }
-
-        // Игнорируем ошибку из-за ссылок некоторых
-        if (exitCode == 2 && out.contains("Sub items Errors")) {
-            log.warn("7z завершился с предупреждениями (exit=2), но продолжаем:\n{}", out);
-            return;
-        }
-
-        throw new RuntimeException("Ошибка 7z (" + exitCode + "):\n" + out);
     }
 
+    public record Partition(Path image, Path outDir) {}
 
-    public static void pushToGitLab(Path folder) throws Exception {
+    /**
+     * @param buildId ro.build.display.id, он же сообщение коммита
+     */
+    public record Published(String commit, String buildId) {}
 
-        String repoName = folder.getFileName().toString();
-        String gitRemote = "git@100.98.83.30:" + GIT_GROUP + "/" + repoName.toLowerCase() + ".git";
+    public static void extractImgWith7z(Path imgPath, Path targetDir) throws IOException, InterruptedException {
+        new SevenZipExtractor().extract(imgPath, targetDir);
+    }
 
-        log.info("Pushing to GitLab at {}", gitRemote);
+    /**
+     * Распаковывает разделы параллельно (не больше {@code parallelism} 7z одновременно).
+     * Если один раздел упал — остальные прерываются, а папки, созданные этим запуском, удаляются.
+     */
+    public static void extractPartitions(List<Partition> partitions, int parallelism, ImageExtractors extractors)
+            throws IOException, InterruptedException {
+        extractPartitions(partitions, parallelism, extractors, p -> {}, ExtractProfile.ALL);
+    }
 
-        Path gitDir = folder.resolve(".git");
+    /**
+     * @param index   куда записывать распакованные файлы (с хэшем), null — не индексировать
+     * @param profile что распаковывать; фильтрует сам распаковщик, лишние файлы на диск не попадают
+     */
+    public static void extractPartitions(List<Partition> partitions, int parallelism, ImageExtractors extractors,
+                                         FileIndex.Builder index, ExtractProfile profile)
+            throws IOException, InterruptedException {
+        extractPartitions(partitions, parallelism, extractors, index != null ? index::add : p -> {}, profile);
+    }
 
-        // ===== 1. "Очистка директории" =====
-        if (Files.exists(gitDir)) {
-            log.info("Очистка директории: .git уже существует, не удаляем (используем существующий репозиторий)");
-        } else {
-            log.info("Очистка директории: .git ещё нет, пропускаем удаление");
+    /**
+     * @param onFile получает каждый записанный файл, как только он готов (из потоков распаковки)
+     */
+    public static void extractPartitions(List<Partition> partitions, int parallelism, ImageExtractors extractors,
+                                         Consumer<Path> onFile, ExtractProfile profile)
+            throws IOException, InterruptedException {
+        if (partitions.isEmpty()) return;
+
+        int threads = Math.max(1, Math.min(parallelism, partitions.size()));
+        log.info("Распаковка разделов: {}, одновременно: {}", partitions.size(), threads);
+
+        // при LOAD в существующий проект папки разделов — живое дерево прошлой сборки: при ошибке его не удаляем,
+        // недописанные файлы перезапишет следующий запуск
+        List<Path> created = new ArrayList<>();
+        for (Partition partition : partitions) {
+            if (!Files.exists(partition.outDir(), LinkOption.NOFOLLOW_LINKS)) created.add(partition.outDir());
         }
 
-        // ===== 2. "Инициализация гит проекта" =====
-        if (!Files.exists(gitDir)) {
-            log.info("Инициализация гит проекта");
-            ProcessBuilder initPb = new ProcessBuilder("git", "init");
-            initPb.directory(folder.toFile());
-            initPb.redirectErrorStream(true);
-            int initCode = initPb.start().waitFor();
-            if (initCode != 0) {
-                throw new RuntimeException("git init failed with code " + initCode);
-            }
-
-            // ===== 3. "Создание ветки: main" =====
-            log.info("Создание ветки: main");
-            ProcessBuilder branchPb = new ProcessBuilder("git", "branch", "-M", "main");
-            branchPb.directory(folder.toFile());
-            branchPb.redirectErrorStream(true);
-            int branchCode = branchPb.start().waitFor();
-            if (branchCode != 0) {
-                throw new RuntimeException("git branch -M main failed with code " + branchCode);
-            }
-
-            // ===== 4. "Создание подключения к проекту в GitLab" =====
-            log.info("Создание подключения к проекту в GitLab");
-            ProcessBuilder remotePb = new ProcessBuilder("git", "remote", "add", "origin", gitRemote);
-            remotePb.directory(folder.toFile());
-            remotePb.redirectErrorStream(true);
-            int remoteCode = remotePb.start().waitFor();
-            if (remoteCode != 0) {
-                throw new RuntimeException("git remote add origin failed with code " + remoteCode);
+        String flow = partitions.get(0).outDir().toAbsolutePath().getParent().getFileName().toString();
+        // все разделы известны заранее — очередь вмещает их целиком
+        Stage<Partition> stage = new Stage<>(flow, "extract", threads, partitions.size(), partition -> {
+            extractPartition(partition, extractors, onFile, profile);
+            log.info("Раздел распакован: {}", partition.outDir().getFileName());
+        });
+        try {
+            partitions.forEach(stage);
+            stage.finish();
+        } catch (ExecutionException | InterruptedException | RuntimeException e) {
+            stage.close();
+            for (Path dir : created) {
+                deleteTree(dir);
             }
-        } else {
-            log.info("Гит-проект уже инициализирован, пропускаем init/branch/remote");
+            if (e instanceof InterruptedException ie) throw ie;
+            if (e instanceof RuntimeException re) throw re;
+
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof InterruptedException ie) throw ie;
+            if (cause instanceof RuntimeException re) throw re;
+            throw new RuntimeException(cause);
         }
+    }
 
-        // ===== 5. "Добавление файлов образа в проект" =====
-        log.info("Добавление файлов образа в проект");
-        ProcessBuilder addPb = new ProcessBuilder("git", "add", ".");
-        addPb.directory(folder.toFile());
-        addPb.redirectErrorStream(true);
-        int addCode = addPb.start().waitFor();
-        if (addCode != 0) {
-            throw new RuntimeException("git add . failed with code " + addCode);
+    /**
+     * Распаковка, apktool и хэширование для индекса одним потоком данных. Каждый готовый файл сразу
+     * уходит в очередь хэширования, APK из system/ и vendor/ — ещё и в очередь apktool: декодирование
+     * идёт, пока другие разделы ещё распаковываются, а хэши результатов apktool считаются параллельно
+     * с декодированием следующих APK. Очереди ограничены, быстрая стадия ждёт медленную.
+     *
+     * @param index куда записывать файлы с хэшами, null — без индекса и без стадии хэширования
+     */
+    public static ApkScripts.DecodeReport extractAndDecode(Path projectDir, List<Path> images, int parallelism,
+                                                           ImageExtractors extractors, ExtractProfile profile,
+                                                           ApkScripts.DecodeOptions decodeOptions, FlowOptions flow,
+                                                           FileIndex.Builder index, PipelineListener listener)
+            throws IOException, InterruptedException {
+        List<Partition> partitions = new ArrayList<>();
+        for (Path img : images) {
+            if (img == null) continue;
+            partitions.add(new Partition(img, partitionDir(projectDir, img)));
         }
 
-        // ===== 6. "Коммитим изменения" =====
-
-
-        String buildVersion;
-
-        Path buildProp = folder.resolve("system").resolve("build.prop");
-        if (!Files.exists(buildProp)) {
-            throw new RuntimeException("build.prop not found: " + buildProp);
+        Stage<Path> hash = index != null
+                ? new Stage<>(projectDir.getFileName().toString(), "hash", flow.effectiveHashWorkers(),
+                        flow.hashQueue(), index::add)
+                : null;
+        Consumer<Path> sink = hash != null ? hash : p -> {};
+        // все файлы дерева: распакованные, результаты apktool и оставшиеся с прошлого раза
+        AtomicLong files = new AtomicLong();
+        Consumer<Path> toIndex = file -> {
+            files.incrementAndGet();
+            sink.accept(file);
+        };
+
+        try (ApkScripts.DecodeFlow decode = ApkScripts.decodeFlow(projectDir, decodeOptions, listener, toIndex,
+                flow.decodeQueue())) {
+            extractPartitions(partitions, parallelism, extractors, file -> {
+                toIndex.accept(file);
+                decode.offer(file);
+            }, profile);
+
+            // дальше ждём только apktool, распаковка закончилась
+            listener.stage(PipelineStage.DECODE);
+            ApkScripts.DecodeReport report = decode.finish();
+            if (hash != null) hash.finish();
+            PipelineMetrics.build(report.total(), files.get());
+            return report;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException io) throw io.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            throw new RuntimeException("Ошибка при хэшировании файлов " + projectDir, cause);
+        } finally {
+            if (hash != null) hash.close();
         }
+    }
 
-        try (Stream<String> lines = Files.lines(buildProp)) {
-            buildVersion = lines
-                    .filter(l -> !l.startsWith("#"))
-                    .filter(l -> l.startsWith("ro.build.display.id="))
-                    .map(l -> l.substring(l.indexOf('=') + 1))
-                    .findFirst()
-                    .orElseThrow(() ->
-                            new RuntimeException("ro.build.display.id not found in build.prop"));
+    private static void extractPartition(Partition partition, ImageExtractors extractors, Consumer<Path> onFile,
+                                         ExtractProfile profile) throws IOException, InterruptedException {
+        Path image = partition.image();
+        Optional<ExtractSelection> selection = profile.forPartition(partition.outDir().getFileName().toString());
+        if (selection.isEmpty()) {
+            log.info("Раздел {} не нужен по профилю {}, не распаковываем", partition.outDir().getFileName(), profile.name());
+            Files.createDirectories(partition.outDir());
+            return;
         }
 
-        log.info("Build version for commit: {}", buildVersion);
-
-
-        log.info("Коммитим изменения");
-        ProcessBuilder commitPb = new ProcessBuilder("git", "commit", "--allow-empty", "-m", buildVersion);
-        commitPb.directory(folder.toFile());
-        commitPb.redirectErrorStream(true);
-
-        Process commitProcess = commitPb.start();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(commitProcess.getInputStream()))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                log.info("[git commit] {}", line);
-            }
-        }
-        int commitCode = commitProcess.waitFor();
-        if (commitCode != 0) {
-            log.warn("git commit завершился с кодом {} (возможно, нечего коммитить)", commitCode);
-        }
+        ImageExtractor extractor = extractors.forImage(image);
 
-        // ===== 7. "Пушим содержимое в репозиторий" =====
-        log.info("Пушим содержимое в репозиторий");
-        ProcessBuilder pushPb = new ProcessBuilder("git", "push", "-u", "origin", "main", "-v");
-        pushPb.directory(folder.toFile());
-        pushPb.redirectErrorStream(true);
-        pushPb.environment().put("GIT_SSH_COMMAND", "ssh -oBatchMode=yes");
-
-        Process pushProcess = pushPb.start();
-        StringBuilder output = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(pushProcess.getInputStream()))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                output.append(line).append("\n");
-                log.info("[git push] {}", line);
-            }
+        Path expanded = null;
+        if (!extractor.readsSparse() && SparseImage.isSparse(image)) {
+            expanded = image.resolveSibling(image.getFileName() + ".raw");
+            log.info("Разворачиваем sparse образ {} -> {}", image.getFileName(), expanded.getFileName());
+            SparseImage.expand(image, expanded, extractors.verifySparseCrc());
+            image = expanded;
         }
-        int pushCode = pushProcess.waitFor();
-        log.info("git push exit code = {}", pushCode);
 
-        if (pushCode != 0) {
-            throw new RuntimeException("git push failed with exit code " + pushCode + "\nOutput:\n" + output);
+        Observation observation = PipelineMetrics.start(PipelineMetrics.EXTRACT,
+                "extract " + partition.outDir().getFileName(), "engine", extractor.name());
+        try (Observation.Scope scope = observation.openScope()) {
+            log.info("Распаковка ({}): {} -> {}", extractor.name(),
+                    image.toAbsolutePath(), partition.outDir().toAbsolutePath());
+            extractor.extract(image, partition.outDir(), selection.get(), onFile);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+            if (expanded != null) Files.deleteIfExists(expanded);
         }
     }
 
-    public static void ensure(String groupName, String projectName) throws GitLabApiException {
-        GitLabApi api = new GitLabApi(
-                System.getenv("GIT_URL"),
-                Constants.TokenType.PRIVATE,
-                System.getenv("GIT_TOKEN")
-        );
-
-        Group group = api.getGroupApi().getGroups(groupName).stream().
-                filter(g -> g.getName().equalsIgnoreCase(groupName)).findFirst().orElseGet(() -> {
-                    try{
-                        return api.getGroupApi().addGroup(
-                                groupName,
-                                groupName.toLowerCase()
-                        );
-                    }catch (Exception e){
-                        throw new RuntimeException(e);
-                    }
-                });
-
-        String projectPath = projectName.toLowerCase();
-        String fullPath = group.getFullPath() + "/" + projectName.toLowerCase();
-        try{
-            api.getProjectApi().getProject(fullPath);
-        }catch (GitLabApiException e){
-            if (e.getHttpStatus() == 404) {
-                Project p = new Project()
-                        .withName(projectName)
-                        .withPath(projectPath)
-                        .withNamespaceId(group.getId())
-                        .withLfsEnabled(true);
-
-                try{
-                    api.getProjectApi().createProject(p);
-                }catch(Exception ex){
-                    throw new RuntimeException(ex);
-                }
-            }
-        }
+    public static Path partitionDir(Path projectDir, Path image) {
+        String fileName = image.getFileName().toString();
+        String folderName = fileName.contains(".")
+                ? fileName.substring(0, fileName.lastIndexOf('.'))
+                : fileName;
+        return projectDir.resolve(folderName); // system / vendor
     }
 
-    public static void updateImages(Path targetDir, List<Path> images) throws GitLabApiException, Exception {
 
-        String repoName = targetDir.getFileName().toString();
-        String gitRemote = "git@100.98.83.30:" + GIT_GROUP + "/" + repoName.toLowerCase() + ".git";
-
-        log.info("Updating to gitlab");
-
-        Path gitDir = targetDir.resolve(".git");
-
-        Files.createDirectories(targetDir);
-
-        if (!Files.exists(gitDir)) {
-            log.info("Локальный репозиторий не найден — инициализируем");
-
-            log.info("Инициализация гит проекта");
-            ProcessBuilder initPb = new ProcessBuilder("git", "init");
-            initPb.directory(targetDir.toFile());
-            initPb.redirectErrorStream(true);
-            int initCode = initPb.start().waitFor();
-            if (initCode != 0) throw new RuntimeException("git init failed with code " + initCode);
-
-            log.info("Создание ветки: main");
-            ProcessBuilder branchPb = new ProcessBuilder("git", "branch", "-M", "main");
-            branchPb.directory(targetDir.toFile());
-            branchPb.redirectErrorStream(true);
-            int branchCode = branchPb.start().waitFor();
-            if (branchCode != 0) throw new RuntimeException("git branch -M main failed with code " + branchCode);
-
-            log.info("Создание подключения к проекту в GitLab");
-            ProcessBuilder remotePb = new ProcessBuilder("git", "remote", "add", "origin", gitRemote);
-            remotePb.directory(targetDir.toFile());
-            remotePb.redirectErrorStream(true);
-            int remoteCode = remotePb.start().waitFor();
-            if (remoteCode != 0) throw new RuntimeException("git remote add origin failed with code " + remoteCode);
-
-        } else {
-            log.info("Локальный репозиторий уже существует — используем существующий");
-
-            log.info("Проверяем/обновляем origin");
-            ProcessBuilder setUrlPb = new ProcessBuilder("git", "remote", "set-url", "origin", gitRemote);
-            setUrlPb.directory(targetDir.toFile());
-            setUrlPb.redirectErrorStream(true);
-            int setUrlCode = setUrlPb.start().waitFor();
-            if (setUrlCode != 0) {
-                log.warn("git remote set-url origin завершился с кодом {}, продолжаем", setUrlCode);
-            }
-        }
-
-
-        log.info("Подтягиваем изменения из origin (fetch)");
-        ProcessBuilder fetchPb = new ProcessBuilder("git", "fetch", "origin", "-v");
-        fetchPb.directory(targetDir.toFile());
-        fetchPb.redirectErrorStream(true);
-        fetchPb.environment().put("GIT_SSH_COMMAND", "ssh -oBatchMode=yes");
-
-        Process fetchProcess = fetchPb.start();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(fetchProcess.getInputStream()))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                log.info("[git fetch] {}", line);
-            }
-        }
-        int fetchCode = fetchProcess.waitFor();
-        log.info("git fetch exit code = {}", fetchCode);
-        if (fetchCode != 0) {
-            throw new RuntimeException("git fetch failed with exit code " + fetchCode);
-        }
-
-        log.info("Переключаемся на main");
-        ProcessBuilder checkoutPb = new ProcessBuilder("git", "checkout", "-B", "main");
-        checkoutPb.directory(targetDir.toFile());
-        checkoutPb.redirectErrorStream(true);
-        int checkoutCode = checkoutPb.start().waitFor();
-        if (checkoutCode != 0) {
-            throw new RuntimeException("git checkout -B main failed with code " + checkoutCode);
-        }
-
-        log.info("Сбрасываем локальные изменения в состояние origin/main (если ветка существует)");
-        ProcessBuilder resetPb = new ProcessBuilder("git", "reset", "--hard", "origin/main");
-        resetPb.directory(targetDir.toFile());
-        resetPb.redirectErrorStream(true);
-        Process resetProcess = resetPb.start();
-
-        StringBuilder resetOut = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(resetProcess.getInputStream()))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                resetOut.append(line).append("\n");
-                log.info("[git reset] {}", line);
-            }
-        }
-        int resetCode = resetProcess.waitFor();
-        if (resetCode != 0) {
-            // Это нормально, если remote пустой и ветки main ещё нет
-            log.warn("git reset --hard origin/main завершился с кодом {} (возможно, remote ещё пустой). Продолжаем.\n{}",
-                    resetCode, resetOut);
-        }
-
-        // ===== 3. Полная очистка папки (кроме .git и ignore) =====
-        log.info("Очищаем папку проекта (кроме .git/.gitignore/.gitattributes)");
-        wipeDirectoryExceptGit(targetDir);
+    public static Published pushToGitLab(Path folder) throws Exception {
+        return pushToGitLab(folder, new CliGitPublisher());
+    }
 
-        // ===== 4. Распаковка новых образов =====
-        log.info("Распаковываем новые образы в {}", targetDir.toAbsolutePath());
-        for (Path img : images) {
-            if (img == null) continue;
+    public static Published pushToGitLab(Path folder, GitPublisher git) throws Exception {
+        return pushToGitLab(folder, git, null, ExtractProfile.ALL);
+    }
 
-            String fileName = img.getFileName().toString();
-            String folderName = fileName.contains(".")
-                    ? fileName.substring(0, fileName.lastIndexOf('.'))
-                    : fileName;
+    /**
+     * @param profile с каким профилем распакован снимок, записывается трейлерами в коммит
+     */
+    public static Published pushToGitLab(Path folder, GitPublisher git, FileIndex index, ExtractProfile profile)
+            throws Exception {
 
-            Path outDir = targetDir.resolve(folderName); // system / vendor
-            log.info("Распаковка: {} -> {}", img.toAbsolutePath(), outDir.toAbsolutePath());
+        String gitRemote = remoteFor(folder);
 
-            extractImgWith7z(img, outDir);
-        }
+        log.info("Pushing to GitLab at {} ({})", gitRemote, git.name());
 
-        ApkScripts.decodeApksToProjectRoot(targetDir);
+        // ===== 1-4. Инициализация гит проекта, ветка main, origin =====
+        git.prepare(folder, gitRemote, false);
 
-        // ===== 5. git add =====
-        log.info("Добавление файлов образа в проект");
-        ProcessBuilder addPb = new ProcessBuilder("git", "add", ".");
-        addPb.directory(targetDir.toFile());
-        addPb.redirectErrorStream(true);
-        int addCode = addPb.start().waitFor();
-        if (addCode != 0) throw new RuntimeException("git add . failed with code " + addCode);
+        // ===== 5-7. Добавление файлов, коммит, push =====
+        String buildVersion = buildVersion(folder);
+        log.info("Build version for commit: {}", buildVersion);
 
-        // ===== 6. commit =====
+        String commit = git.publish(folder, commitMessage(buildVersion, profile), false, index);
+        log.info("Опубликован коммит {}", commit);
+        return new Published(commit, buildVersion);
+    }
 
+    private static String remoteFor(Path projectDir) {
+        String repoName = projectDir.getFileName().toString();
+        return "git@100.98.83.30:" + GIT_GROUP + "/" + repoName.toLowerCase() + ".git";
+    }
 
-        String buildVersion;
+    private static String commitMessage(String buildVersion, ExtractProfile profile) {
+        String trailers = profile.trailers();
+        return trailers.isEmpty() ? buildVersion : buildVersion + "\n\n" + trailers;
+    }
 
-        Path buildProp = targetDir.resolve("system").resolve("build.prop");
+    /**
+     * ro.build.display.id из system/build.prop.
+     */
+    public static String buildVersion(Path projectDir) throws IOException {
+        Path buildProp = projectDir.resolve("system").resolve("build.prop");
         if (!Files.exists(buildProp)) {
             throw new RuntimeException("build.prop not found: " + buildProp);
         }
 
         try (Stream<String> lines = Files.lines(buildProp)) {
-            buildVersion = lines
+            return lines
                     .filter(l -> !l.startsWith("#"))
                     .filter(l -> l.startsWith("ro.build.display.id="))
                     .map(l -> l.substring(l.indexOf('=') + 1))
@@ -383,99 +293,112 @@ public class ImageScripts {
                     .orElseThrow(() ->
                             new RuntimeException("ro.build.display.id not found in build.prop"));
         }
+    }
 
-        log.info("Build version for commit: {}", buildVersion);
+    public static Published updateImages(Path targetDir, List<Path> images) throws GitLabApiException, Exception {
+        return updateImages(targetDir, images, UpdateOptions.defaults(targetDir), PipelineListener.NONE);
+    }
 
-        log.info("Коммитим изменения");
-        ProcessBuilder commitPb = new ProcessBuilder("git", "commit", "--allow-empty", "-m", buildVersion);
-        commitPb.directory(targetDir.toFile());
-        commitPb.redirectErrorStream(true);
+    public static Published updateImages(Path targetDir, List<Path> images, UpdateOptions options,
+                                    PipelineListener listener) throws GitLabApiException, Exception {
 
-        Process commitProcess = commitPb.start();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(commitProcess.getInputStream()))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                log.info("[git commit] {}", line);
+        String repoName = targetDir.getFileName().toString();
+        String gitRemote = remoteFor(targetDir);
+
+        log.info("Updating to gitlab ({})", options.git().name());
+
+        // ===== 1-2. init/origin, fetch и сброс на origin/main =====
+        options.git().prepare(targetDir, gitRemote, true);
+
+        // индекс прошлого обновления описывает текущее дерево; до записи нового его не должно быть на диске,
+        // чтобы упавшее посреди обновление не оставило индекс, не совпадающий с деревом
+        FileIndex previousIndex = options.indexFile() != null ? FileIndex.read(options.indexFile()) : null;
+        if (previousIndex != null) {
+            // после сброса на ушедший вперёд origin/main в дереве есть файлы, которых индекс не знает
+            String indexed = FileIndex.readCommit(options.indexFile());
+            String head = headCommit(targetDir);
+            if (indexed == null || !indexed.equals(head)) {
+                log.info("Индекс описывает коммит {}, а рабочее дерево на {} — удалённые файлы ищем обходом",
+                        indexed, head);
+                previousIndex = null;
             }
         }
-        int commitCode = commitProcess.waitFor();
-        if (commitCode != 0) {
-            log.warn("git commit завершился с кодом {} (возможно, нечего коммитить)", commitCode);
+        FileIndex.delete(options.indexFile());
+
+        listener.stage(PipelineStage.EXTRACT);
+        Path workDir = targetDir;
+        if (options.mode() == UpdateMode.INCREMENTAL) {
+            // ===== 3. Распаковка во временную папку рядом с проектом =====
+            Files.createDirectories(options.stagingRoot());
+            workDir = Files.createTempDirectory(options.stagingRoot(), repoName + "_");
+            log.info("Инкрементальное обновление: распаковываем в staging {}", workDir.toAbsolutePath());
+        } else {
+            // ===== 3. Полная очистка папки (кроме .git и ignore) =====
+            log.info("Очищаем папку проекта (кроме .git/.gitignore/.gitattributes)");
+            TreeDeleter.clearExcept(targetDir, Set.of(ignore));
         }
 
-        // ===== 7. pull --rebase (чтобы не словить fetch first) =====
-        log.info("Делаем pull --rebase перед push (чтобы не было fetch first)");
-        ProcessBuilder pullPb = new ProcessBuilder("git", "pull", "--rebase", "origin", "main", "-v");
-        pullPb.directory(targetDir.toFile());
-        pullPb.redirectErrorStream(true);
-        pullPb.environment().put("GIT_SSH_COMMAND", "ssh -oBatchMode=yes");
-
-        Process pullProcess = pullPb.start();
-        StringBuilder pullOut = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(pullProcess.getInputStream()))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                pullOut.append(line).append("\n");
-                log.info("[git pull] {}", line);
+        FileIndex index = null;
+        try {
+            // ===== 4. Распаковка новых образов =====
+            log.info("Распаковываем новые образы в {}", workDir.toAbsolutePath());
+            FileIndex.Builder indexBuilder = options.indexFile() != null ? FileIndex.builder(workDir) : null;
+            // прошлые результаты apktool ищутся в рабочей копии, а не в пустом staging
+            ApkScripts.DecodeOptions decodeOptions = workDir != targetDir
+                    ? options.decodeOptions().withPrevious(targetDir)
+                    : options.decodeOptions();
+            listener.decoded(extractAndDecode(workDir, images, options.extractParallelism(), options.extractors(),
+                    options.profile(), decodeOptions, options.flow(), indexBuilder, listener));
+            index = indexBuilder != null ? indexBuilder.build() : null;
+
+            if (workDir != targetDir) {
+                log.info("Переносим изменения из staging в {}", targetDir.toAbsolutePath());
+                if (index != null) {
+                    index = TreeSync.sync(workDir, targetDir, Set.of(ignore), index, previousIndex).index();
+                } else {
+                    TreeSync.sync(workDir, targetDir, Set.of(ignore));
+                }
             }
-        }
-        int pullCode = pullProcess.waitFor();
-        if (pullCode != 0) {
-            // бывает, если remote пустой/нет main — не критично
-            log.warn("git pull --rebase завершился с кодом {}. Продолжаем.\n{}", pullCode, pullOut);
-        }
-
-        // ===== 8. push =====
-        log.info("Пушим обновления в репозиторий");
-        ProcessBuilder pushPb = new ProcessBuilder("git", "push", "-u", "origin", "main", "-v");
-        pushPb.directory(targetDir.toFile());
-        pushPb.redirectErrorStream(true);
-        pushPb.environment().put("GIT_SSH_COMMAND", "ssh -oBatchMode=yes");
-
-        Process pushProcess = pushPb.start();
-        StringBuilder pushOut = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(pushProcess.getInputStream()))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                pushOut.append(line).append("\n");
-                log.info("[git push] {}", line);
+            if (index != null) {
+                index.write(options.indexFile());
+                log.info("Индекс проекта: файлов {}, {} МБ", index.size(), index.totalBytes() / (1024 * 1024));
+            }
+        } finally {
+            if (workDir != targetDir) {
+                deleteTree(workDir);
             }
         }
-        int pushCode = pushProcess.waitFor();
-        log.info("git push exit code = {}", pushCode);
 
-        if (pushCode != 0) {
-            throw new RuntimeException("git push failed with exit code " + pushCode + "\nOutput:\n" + pushOut);
-        }
+        // ===== 5-8. add, commit, pull --rebase, push =====
+        listener.stage(PipelineStage.PUBLISH);
+        String buildVersion = buildVersion(targetDir);
+        log.info("Build version for commit: {}", buildVersion);
+
+        String commit = options.git().publish(targetDir, commitMessage(buildVersion, options.profile()), true, index);
+        log.info("Опубликован коммит {}", commit);
+        if (index != null) FileIndex.writeCommit(options.indexFile(), commit);
+        return new Published(commit, buildVersion);
     }
 
-    private static void wipeDirectoryExceptGit(Path folder) throws IOException {
-        if (!Files.exists(folder)) return;
-
-        try (Stream<Path> walk = Files.walk(folder)) {
-            walk.sorted(Comparator.reverseOrder())
-                    .filter(p -> !p.equals(folder))
-                    .filter(p -> {
-                        String name = p.getFileName().toString();
-                        // не трогаем .git и всё внутри
-                        if (name.equals(".git")) return false;
-                        if (p.startsWith(folder.resolve(".git"))) return false;
-                        // не трогаем явные ignore-файлы в корне
-                        for (String ig : ignore) {
-                            if (name.equals(ig) && p.getParent() != null && p.getParent().equals(folder)) {
-                                return false;
-                            }
-                        }
-                        return true;
-                    })
-                    .forEach(p -> {
-                        try {
-                            Files.deleteIfExists(p);
-                        } catch (IOException e) {
-                            throw new RuntimeException("Не смог удалить: " + p, e);
-                        }
-                    });
+    /**
+     * @return id коммита HEAD рабочего дерева, null — если его нет или репозиторий не читается
+     */
+    private static String headCommit(Path workTree) {
+        try (Repository repo = new FileRepositoryBuilder().setGitDir(workTree.resolve(".git").toFile())
+                .setMustExist(true).build()) {
+            ObjectId head = repo.resolve(Constants.HEAD);
+            return head != null ? head.name() : null;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не прочитан HEAD {}: {}", workTree, e.toString());
+            return null;
         }
     }
 
-}
\ No newline at end of file
+    private static void deleteTree(Path root) {
+        try {
+            TreeDeleter.discard(root);
+        } catch (IOException e) {
+            log.warn("Не смог удалить {}", root, e);
+        }
+    }
+}
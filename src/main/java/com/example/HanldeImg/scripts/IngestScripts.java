@@ -0,0 +1,341 @@
+package com.example.HanldeImg.scripts;
+
+import com.example.HanldeImg.scripts.compress.Compression;
+import com.example.HanldeImg.scripts.compress.PipedDecompressor;
+import com.example.HanldeImg.scripts.extract.SparseImage;
+import com.example.HanldeImg.scripts.metrics.PipelineMetrics;
+import io.micrometer.observation.Observation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+public class IngestScripts {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestScripts.class);
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    public record IngestedImage(String name, Path path, long size, String sha256) {}
+
+    /**
+     * @param expandSparse    разворачивать Android sparse образы прямо во время приёма
+     * @param verifySparseCrc проверять CRC32 sparse образа при разворачивании
+     */
+    public record IngestOptions(boolean expandSparse, boolean verifySparseCrc) {
+        public static final IngestOptions DEFAULT = new IngestOptions(false, true);
+    }
+
+    public static IngestedImage ingest(InputStream in, String fileName, long expectedSize, Path ingestDir) throws IOException {
+        return ingest(in, fileName, expectedSize, ingestDir, IngestOptions.DEFAULT);
+    }
+
+    /**
+     * Пишет поток образа один раз в {@code ingestDir/<name>}: последовательное NIO-копирование,
+     * SHA-256 считается по ходу копирования, в конце — rename в пределах
+     * той же файловой системы. Sparse образ при {@code expandSparse} сразу разворачивается.
+     * Сжатый (gz, xz, zstd — по первым байтам) распаковывается на лету в отдельном потоке,
+     * сжатая копия нигде не сохраняется; SHA-256 считается по распакованному образу.
+     */
+    public static IngestedImage ingest(InputStream in, String fileName, long expectedSize, Path ingestDir,
+                                       IngestOptions options) throws IOException {
+        return observed("stream", fileName, () -> receive(in, fileName, expectedSize, ingestDir, options));
+    }
+
+    private static IngestedImage receive(InputStream in, String fileName, long expectedSize, Path ingestDir,
+                                         IngestOptions options) throws IOException {
+        BufferedInputStream raw = new BufferedInputStream(in, BUFFER_SIZE);
+        Compression compression = Compression.detect(peek(raw, Compression.MAGIC_LENGTH));
+
+        String name = safeFileName(compression.stripSuffix(fileName));
+        Files.createDirectories(ingestDir);
+
+        Path part = ingestDir.resolve(name + ".part");
+        Path target = ingestDir.resolve(name);
+
+        // для сжатого образа размер запроса — это размер сжатых данных, их и сверяем
+        CountingInputStream compressed = null;
+        PipedDecompressor decompressor = null;
+        BufferedInputStream buffered = raw;
+        if (compression != Compression.NONE) {
+            compressed = new CountingInputStream(raw);
+            decompressor = new PipedDecompressor(compression, compressed);
+            buffered = new BufferedInputStream(decompressor, BUFFER_SIZE);
+        }
+        byte[] head = peek(buffered, 4);
+
+        HashingInputStream hashing = new HashingInputStream(buffered, newSha256());
+        boolean sparse = options.expandSparse() && SparseImage.hasSparseMagic(head);
+        long stored;
+
+        try (ReadableByteChannel src = Channels.newChannel(hashing);
+             FileChannel dst = FileChannel.open(part,
+                     StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING,
+                     StandardOpenOption.WRITE)) {
+
+            if (sparse) {
+                stored = SparseImage.expand(src, dst, options.verifySparseCrc());
+                // хвост после последнего чанка тоже должен попасть в хэш
+                hashing.transferTo(OutputStream.nullOutputStream());
+            } else {
+                stored = copy(src, dst);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        } finally {
+            if (decompressor != null) decompressor.close();
+        }
+
+        long received = compressed != null ? compressed.count() : hashing.count();
+        if (expectedSize > 0 && received != expectedSize) {
+            Files.deleteIfExists(part);
+            throw new IOException("Размер загруженного файла " + name + " не совпадает: ожидали "
+                    + expectedSize + ", получили " + received);
+        }
+
+        try {
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        PipelineMetrics.ingestBytes(received, compression.name().toLowerCase());
+        String digest = HexFormat.of().formatHex(hashing.digest());
+        String format = (compression != Compression.NONE ? compression.name().toLowerCase() + " " : "")
+                + (sparse ? "sparse " : "");
+        if (!format.isEmpty()) {
+            log.info("Образ {} принят: {} байт {}-> {} байт, sha256={}", name, received, format, stored, digest);
+        } else {
+            log.info("Образ {} принят: {} байт, sha256={}", name, stored, digest);
+        }
+        return new IngestedImage(name, target, stored, digest);
+    }
+
+    private static byte[] peek(BufferedInputStream in, int n) throws IOException {
+        in.mark(n);
+        byte[] head = in.readNBytes(n);
+        in.reset();
+        return head;
+    }
+
+    /**
+     * Принимает образ, который уже целиком лежит на диске (собран из чанков или записан контейнером
+     * как часть multipart-запроса): данные не копируются, SHA-256 считается одним последовательным
+     * чтением, файл переносится rename'ом в {@code ingestDir}.
+     * Сжатый и sparse (при {@code expandSparse}) образы разворачиваются обычным приёмом, исходник удаляется.
+     */
+    public static IngestedImage adopt(Path file, String fileName, Path ingestDir, IngestOptions options) throws IOException {
+        return adopt(file, fileName, ingestDir, options, "chunks");
+    }
+
+    /**
+     * @param source откуда файл: chunks — собран из чанков, multipart — часть запроса, которую контейнер уже записал на диск
+     */
+    public static IngestedImage adopt(Path file, String fileName, Path ingestDir, IngestOptions options, String source)
+            throws IOException {
+        return observed(source, fileName, () -> adoptFile(file, fileName, ingestDir, options, source));
+    }
+
+    private static IngestedImage adoptFile(Path file, String fileName, Path ingestDir, IngestOptions options,
+                                           String source) throws IOException {
+        if (isCompressed(file) || options.expandSparse() && SparseImage.isSparse(file)) {
+            IngestedImage image;
+            try (InputStream in = Files.newInputStream(file)) {
+                image = ingest(in, fileName, Files.size(file), ingestDir, options);
+            }
+            Files.deleteIfExists(file);
+            return image;
+        }
+
+        String name = safeFileName(fileName);
+        Files.createDirectories(ingestDir);
+        Path target = ingestDir.resolve(name);
+
+        MessageDigest sha256 = newSha256();
+        long size = 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            while (ch.read(buf) != -1) {
+                buf.flip();
+                size += buf.remaining();
+                sha256.update(buf);
+                buf.clear();
+            }
+        }
+
+        try {
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        PipelineMetrics.ingestBytes(size, "none");
+        String digest = HexFormat.of().formatHex(sha256.digest());
+        log.info("Образ {} принят без копирования ({}): {} байт, sha256={}", name, source, size, digest);
+        return new IngestedImage(name, target, size, digest);
+    }
+
+    @FunctionalInterface
+    private interface IoAction<T> {
+        T run() throws IOException;
+    }
+
+    private static <T> T observed(String source, String fileName, IoAction<T> action) throws IOException {
+        Observation observation = PipelineMetrics.start(PipelineMetrics.INGEST, "ingest " + fileName,
+                "source", source);
+        try (Observation.Scope scope = observation.openScope()) {
+            return action.run();
+        } catch (IOException | RuntimeException e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+        }
+    }
+
+    private static boolean isCompressed(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return Compression.detect(in.readNBytes(Compression.MAGIC_LENGTH)) != Compression.NONE;
+        }
+    }
+
+    /**
+     * Запись строго последовательная: место не резервируется заранее — запись байта в конец дала бы
+     * только разреженный файл, а честное заполнение нулями удвоило бы запись образа.
+     */
+    private static long copy(ReadableByteChannel src, FileChannel dst) throws IOException {
+        long written = 0;
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        while (src.read(buf) != -1) {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                written += dst.write(buf, written);
+            }
+            buf.clear();
+        }
+        return written;
+    }
+
+    public static String safeFileName(String fileName) {
+        if (fileName == null || fileName.isBlank()) return "unknown.img";
+        String name = fileName.replace('\\', '/');
+        name = name.substring(name.lastIndexOf('/') + 1);
+        if (name.isBlank() || name.equals(".") || name.equals("..")) return "unknown.img";
+        return name;
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Считает прочитанные байты.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long count() {
+            return count;
+        }
+    }
+
+    /**
+     * Считает SHA-256 и число прочитанных байт по мере чтения.
+     */
+    private static final class HashingInputStream extends FilterInputStream {
+        private final MessageDigest digest;
+        private long count;
+
+        HashingInputStream(InputStream in, MessageDigest digest) {
+            super(in);
+            this.digest = digest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                digest.update((byte) b);
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                digest.update(b, off, n);
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // пропуск сломал бы хэш — читаем через буфер
+            byte[] buf = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int r = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+                if (r < 0) break;
+                skipped += r;
+            }
+            return skipped;
+        }
+
+        long count() {
+            return count;
+        }
+
+        byte[] digest() {
+            return digest.digest();
+        }
+    }
+}
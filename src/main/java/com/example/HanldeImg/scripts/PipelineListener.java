@@ -0,0 +1,21 @@
+package com.example.HanldeImg.scripts;
+
+import com.example.HanldeImg.scripts.ApkScripts.ApkPlan;
+import com.example.HanldeImg.scripts.ApkScripts.DecodeReport;
+
+import java.util.List;
+
+public interface PipelineListener {
+
+    PipelineListener NONE = new PipelineListener() {};
+
+    default void stage(PipelineStage stage) {}
+
+    /**
+     * Прочитанные манифесты APK. При декодировании по ходу распаковки вызывается по мере появления APK
+     * со всеми известными на этот момент, в конце — с полным списком.
+     */
+    default void planned(List<ApkPlan> apks) {}
+
+    default void decoded(DecodeReport report) {}
+}
@@ -0,0 +1,9 @@
+package com.example.HanldeImg.scripts;
+
+public enum PipelineStage {
+    INGEST,
+    GIT_PREPARE,
+    EXTRACT,
+    DECODE,
+    PUBLISH
+}
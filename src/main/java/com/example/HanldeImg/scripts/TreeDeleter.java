@@ -0,0 +1,228 @@
+package com.example.HanldeImg.scripts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Удаление больших деревьев. Для пайплайна удаление — это переименование в корзину на той же ФС,
+ * а сами файлы удаляются в фоне параллельным обходом без сортировки и без списка всех путей в памяти.
+ * Если переименовать нельзя (другая ФС), дерево удаляется тем же обходом, но синхронно.
+ */
+public class TreeDeleter {
+
+    private static final Logger log = LoggerFactory.getLogger(TreeDeleter.class);
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+            Math.min(8, Math.max(2, Runtime.getRuntime().availableProcessors())),
+            pool -> {
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                t.setName("tree-delete-" + t.getPoolIndex());
+                t.setDaemon(true);
+                return t;
+            },
+            null, false);
+
+    private static final AtomicLong counter = new AtomicLong();
+    private static final AtomicBoolean purged = new AtomicBoolean();
+    private static volatile Path trashRoot = Path.of("uploads", ".trash");
+
+    public record DeleteReport(long files, long directories, long bytes) {
+        DeleteReport plus(DeleteReport other) {
+            return new DeleteReport(files + other.files, directories + other.directories, bytes + other.bytes);
+        }
+    }
+
+    /**
+     * Корзина должна лежать на той же ФС, что и удаляемые деревья, иначе удаление будет синхронным.
+     */
+    public static void trashRoot(Path root) {
+        trashRoot = root;
+        purged.set(false);
+    }
+
+    /**
+     * Убирает дерево с его места сразу, а содержимое удаляет в фоне.
+     *
+     * @return завершается, когда дерево удалено полностью
+     */
+    public static CompletableFuture<DeleteReport> discard(Path root) throws IOException {
+        if (!Files.exists(root, LinkOption.NOFOLLOW_LINKS)) {
+            return CompletableFuture.completedFuture(new DeleteReport(0, 0, 0));
+        }
+        Path trashed = moveToTrash(root);
+        if (trashed == null) {
+            return CompletableFuture.completedFuture(deleteNow(root));
+        }
+        return deleteInBackground(trashed, root);
+    }
+
+    /**
+     * Очищает папку, не трогая имена из keepAtRoot в её корне. Дерево не обходится —
+     * в корзину уходят только элементы верхнего уровня.
+     */
+    public static CompletableFuture<DeleteReport> clearExcept(Path dir, Set<String> keepAtRoot) throws IOException {
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+            return CompletableFuture.completedFuture(new DeleteReport(0, 0, 0));
+        }
+
+        Path batch = newTrashDir(dir.getFileName().toString());
+        List<Path> leftovers = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+            for (Path child : children) {
+                if (keepAtRoot.contains(child.getFileName().toString())) continue;
+                if (batch == null || !rename(child, batch.resolve(child.getFileName().toString()))) {
+                    leftovers.add(child);
+                }
+            }
+        }
+
+        DeleteReport sync = new DeleteReport(0, 0, 0);
+        for (Path child : leftovers) {
+            sync = sync.plus(deleteNow(child));
+        }
+        if (batch == null) {
+            return CompletableFuture.completedFuture(sync);
+        }
+        DeleteReport inline = sync;
+        return deleteInBackground(batch, dir).thenApply(r -> r.plus(inline));
+    }
+
+    /**
+     * Удаляет дерево сразу, параллельным обходом.
+     */
+    public static DeleteReport deleteNow(Path root) throws IOException {
+        if (!Files.exists(root, LinkOption.NOFOLLOW_LINKS)) return new DeleteReport(0, 0, 0);
+        try {
+            return POOL.invoke(new DeleteTask(root));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static CompletableFuture<DeleteReport> deleteInBackground(Path trashed, Path original) {
+        long started = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> POOL.invoke(new DeleteTask(trashed)), POOL)
+                // сама папка корзины в отчёт не входит
+                .thenApply(r -> new DeleteReport(r.files(), Math.max(0, r.directories() - 1), r.bytes()))
+                .whenComplete((report, error) -> {
+                    if (error != null) {
+                        log.warn("Не смог до конца удалить {} (было {}), остаток удалится при следующем запуске",
+                                trashed, original, error);
+                    } else {
+                        log.info("Удалено {}: файлов {}, папок {}, освобождено {} МБ за {} мс",
+                                original, report.files(), report.directories(), report.bytes() / (1024 * 1024),
+                                (System.nanoTime() - started) / 1_000_000);
+                    }
+                });
+    }
+
+    private static Path moveToTrash(Path root) throws IOException {
+        Path batch = newTrashDir(root.getFileName().toString());
+        if (batch == null) return null;
+        Path target = batch.resolve(root.getFileName().toString());
+        if (rename(root, target)) return batch;
+        Files.deleteIfExists(batch);
+        return null;
+    }
+
+    private static Path newTrashDir(String name) throws IOException {
+        Path trash = trashRoot;
+        try {
+            Files.createDirectories(trash);
+        } catch (IOException e) {
+            log.warn("Не смог создать корзину {}, удаляем синхронно", trash, e);
+            return null;
+        }
+        purgeLeftovers(trash);
+        Path batch = trash.resolve(System.currentTimeMillis() + "-" + counter.incrementAndGet() + "-" + name);
+        Files.createDirectory(batch);
+        return batch;
+    }
+
+    private static boolean rename(Path from, Path to) {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            // другая ФС или нет прав — вызывающий удалит на месте
+            log.debug("Не смог переместить {} в корзину: {}", from, e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * То, что осталось в корзине после прошлого запуска (процесс упал посреди удаления), удаляем один раз в фоне.
+     */
+    private static void purgeLeftovers(Path trash) throws IOException {
+        if (!purged.compareAndSet(false, true)) return;
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(trash)) {
+            for (Path leftover : leftovers) {
+                deleteInBackground(leftover, leftover);
+            }
+        }
+    }
+
+    private static final class DeleteTask extends RecursiveTask<DeleteReport> {
+        private final Path path;
+
+        DeleteTask(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        protected DeleteReport compute() {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (!attrs.isDirectory()) {
+                    Files.deleteIfExists(path);
+                    return new DeleteReport(1, 0, attrs.size());
+                }
+
+                // файлы удаляем сами, подпапки отдаём другим потокам
+                long files = 0;
+                long bytes = 0;
+                List<DeleteTask> subtasks = new ArrayList<>();
+                try (DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+                    for (Path child : children) {
+                        BasicFileAttributes childAttrs =
+                                Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        if (childAttrs.isDirectory()) {
+                            DeleteTask task = new DeleteTask(child);
+                            task.fork();
+                            subtasks.add(task);
+                        } else {
+                            Files.deleteIfExists(child);
+                            files++;
+                            bytes += childAttrs.size();
+                        }
+                    }
+                }
+
+                DeleteReport report = new DeleteReport(files, 1, bytes);
+                for (DeleteTask task : subtasks) {
+                    report = report.plus(task.join());
+                }
+                Files.deleteIfExists(path);
+                return report;
+            } catch (NoSuchFileException e) {
+                return new DeleteReport(0, 0, 0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
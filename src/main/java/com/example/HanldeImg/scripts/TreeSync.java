@@ -0,0 +1,295 @@
+package com.example.HanldeImg.scripts;
+
+import com.example.HanldeImg.scripts.index.FileIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Переносит подготовленное в staging дерево поверх рабочей копии проекта, трогая только
+ * добавленные/изменённые/удалённые файлы. Неизменённые файлы сохраняют inode и stat,
+ * поэтому индекс git остаётся валидным и git add работает пропорционально диффу.
+ */
+public class TreeSync {
+
+    private static final Logger log = LoggerFactory.getLogger(TreeSync.class);
+
+    /**
+     * @param index содержимое target после синхронизации, если синхронизация шла по индексам, иначе null
+     */
+    public record SyncReport(long added, long changed, long removed, long unchanged, FileIndex index) {}
+
+    /**
+     * @param keepAtRoot имена в корне target, которые не трогаем (.git, .gitignore, ...)
+     */
+    public static SyncReport sync(Path source, Path target, Set<String> keepAtRoot) throws IOException {
+        Files.createDirectories(target);
+
+        AtomicLong removed = new AtomicLong();
+        removeMissing(source, target, keepAtRoot, removed);
+
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Path dst = target.resolve(source.relativize(dir).toString());
+                if (Files.exists(dst, LinkOption.NOFOLLOW_LINKS)
+                        && !Files.isDirectory(dst, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.delete(dst);
+                }
+                Files.createDirectories(dst);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(source.relativize(file));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        AtomicLong added = new AtomicLong();
+        AtomicLong changed = new AtomicLong();
+        AtomicLong unchanged = new AtomicLong();
+
+        try {
+            files.parallelStream().forEach(rel -> {
+                try {
+                    Path src = source.resolve(rel.toString());
+                    Path dst = target.resolve(rel.toString());
+                    switch (syncFile(src, dst)) {
+                        case ADDED -> added.incrementAndGet();
+                        case CHANGED -> changed.incrementAndGet();
+                        case UNCHANGED -> unchanged.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        SyncReport report = new SyncReport(added.get(), changed.get(), removed.get(), unchanged.get(), null);
+        log.info("Синхронизация {} -> {}: добавлено {}, изменено {}, удалено {}, без изменений {}",
+                source, target, report.added(), report.changed(), report.removed(), report.unchanged());
+        return report;
+    }
+
+    /**
+     * То же, но без обхода деревьев: список файлов staging берётся из его индекса, удалённые файлы —
+     * из индекса прошлой синхронизации, а файл с тем же хэшем и неизменённым stat не перечитывается.
+     *
+     * @param targetIndex индекс текущего содержимого target, null — удалённые ищем обходом
+     */
+    public static SyncReport sync(Path source, Path target, Set<String> keepAtRoot,
+                                  FileIndex sourceIndex, FileIndex targetIndex) throws IOException {
+        Files.createDirectories(target);
+
+        AtomicLong removed = new AtomicLong();
+        if (targetIndex != null) {
+            removeMissing(source, target, keepAtRoot, sourceIndex, targetIndex, removed);
+        } else {
+            removeMissing(source, target, keepAtRoot, removed);
+        }
+
+        AtomicLong added = new AtomicLong();
+        AtomicLong changed = new AtomicLong();
+        AtomicLong unchanged = new AtomicLong();
+        Set<String> createdDirs = ConcurrentHashMap.newKeySet();
+        // время изменения файлов, оставшихся на месте: в итоговом индексе должно быть их время, а не staging
+        long[] keptMtimes = new long[sourceIndex.size()];
+        Arrays.fill(keptMtimes, -1);
+
+        try {
+            IntStream.range(0, sourceIndex.size()).parallel().forEach(i -> {
+                try {
+                    String rel = sourceIndex.path(i);
+                    Path src = source.resolve(rel);
+                    Path dst = target.resolve(rel);
+                    int j = targetIndex != null ? targetIndex.find(rel) : -1;
+                    if (j >= 0 && sourceIndex.sameContent(i, targetIndex, j) && targetIndex.matchesDisk(j, target)) {
+                        keptMtimes[i] = targetIndex.mtime(j);
+                        unchanged.incrementAndGet();
+                        return;
+                    }
+
+                    ensureParent(target, rel, createdDirs);
+                    switch (syncFile(src, dst)) {
+                        case ADDED -> added.incrementAndGet();
+                        case CHANGED -> changed.incrementAndGet();
+                        case UNCHANGED -> {
+                            keptMtimes[i] = Files.getLastModifiedTime(dst, LinkOption.NOFOLLOW_LINKS).toMillis();
+                            unchanged.incrementAndGet();
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        SyncReport report = new SyncReport(added.get(), changed.get(), removed.get(), unchanged.get(),
+                sourceIndex.withMtimes(keptMtimes));
+        log.info("Синхронизация по индексу {} -> {}: добавлено {}, изменено {}, удалено {}, без изменений {}",
+                source, target, report.added(), report.changed(), report.removed(), report.unchanged());
+        return report;
+    }
+
+    /**
+     * Создаёт папки до файла; если на месте папки в target лежит файл — он удаляется.
+     */
+    private static void ensureParent(Path target, String rel, Set<String> createdDirs) throws IOException {
+        int slash = rel.lastIndexOf('/');
+        if (slash < 0) return;
+        String parent = rel.substring(0, slash);
+        if (createdDirs.contains(parent)) return;
+
+        Path dir = target;
+        for (String part : parent.split("/")) {
+            dir = dir.resolve(part);
+            if (Files.exists(dir, LinkOption.NOFOLLOW_LINKS) && !Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+                Files.delete(dir);
+            }
+        }
+        Files.createDirectories(target.resolve(parent));
+        createdDirs.add(parent);
+    }
+
+    private static void removeMissing(Path source, Path target, Set<String> keepAtRoot,
+                                      FileIndex sourceIndex, FileIndex targetIndex, AtomicLong removed)
+            throws IOException {
+        Set<String> parents = new HashSet<>();
+        for (int i = 0; i < targetIndex.size(); i++) {
+            String rel = targetIndex.path(i);
+            int slash = rel.indexOf('/');
+            if (keepAtRoot.contains(slash < 0 ? rel : rel.substring(0, slash))) continue;
+            if (sourceIndex.find(rel) >= 0) continue;
+
+            Path file = target.resolve(rel);
+            if (Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) continue;
+            if (Files.deleteIfExists(file)) removed.incrementAndGet();
+            for (int s = rel.lastIndexOf('/'); s > 0; s = rel.lastIndexOf('/', s - 1)) {
+                if (!parents.add(rel.substring(0, s))) break;
+            }
+        }
+
+        // опустевшие папки, которых нет в staging, убираем снизу вверх
+        List<String> dirs = new ArrayList<>(parents);
+        dirs.sort(Comparator.comparingInt(String::length).reversed());
+        for (String dir : dirs) {
+            if (Files.isDirectory(source.resolve(dir), LinkOption.NOFOLLOW_LINKS)) continue;
+            try {
+                Files.deleteIfExists(target.resolve(dir));
+            } catch (DirectoryNotEmptyException ignored) {
+                // в папке остались файлы, которых нет в индексе
+            }
+        }
+    }
+
+    private enum Outcome { ADDED, CHANGED, UNCHANGED }
+
+    private static Outcome syncFile(Path src, Path dst) throws IOException {
+        boolean exists = Files.exists(dst, LinkOption.NOFOLLOW_LINKS);
+
+        if (exists && Files.isDirectory(dst, LinkOption.NOFOLLOW_LINKS)) {
+            deleteTree(dst);
+            exists = false;
+        }
+
+        if (exists && sameContent(src, dst)) {
+            syncPermissions(src, dst);
+            return Outcome.UNCHANGED;
+        }
+
+        // staging лежит на той же ФС, так что это переименование, а не копирование
+        try {
+            Files.move(src, dst, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(src, dst, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return exists ? Outcome.CHANGED : Outcome.ADDED;
+    }
+
+    private static boolean sameContent(Path src, Path dst) throws IOException {
+        boolean srcLink = Files.isSymbolicLink(src);
+        boolean dstLink = Files.isSymbolicLink(dst);
+        if (srcLink || dstLink) {
+            return srcLink && dstLink && Files.readSymbolicLink(src).equals(Files.readSymbolicLink(dst));
+        }
+        if (Files.size(src) != Files.size(dst)) {
+            return false;
+        }
+        // побайтовое сравнение дешевле, чем считать хэши обоих файлов
+        return Files.mismatch(src, dst) == -1L;
+    }
+
+    private static void syncPermissions(Path src, Path dst) throws IOException {
+        if (Files.isSymbolicLink(src)) return;
+        PosixFileAttributeView srcView = Files.getFileAttributeView(src, PosixFileAttributeView.class);
+        PosixFileAttributeView dstView = Files.getFileAttributeView(dst, PosixFileAttributeView.class);
+        if (srcView == null || dstView == null) return;
+
+        Set<PosixFilePermission> wanted = srcView.readAttributes().permissions();
+        if (!wanted.equals(dstView.readAttributes().permissions())) {
+            dstView.setPermissions(wanted);
+        }
+    }
+
+    private static void removeMissing(Path source, Path target, Set<String> keepAtRoot, AtomicLong removed) throws IOException {
+        Files.walkFileTree(target, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.equals(target)) return FileVisitResult.CONTINUE;
+                if (isKept(dir)) return FileVisitResult.SKIP_SUBTREE;
+
+                Path counterpart = source.resolve(target.relativize(dir).toString());
+                if (!Files.isDirectory(counterpart, LinkOption.NOFOLLOW_LINKS)) {
+                    removed.addAndGet(deleteTree(dir));
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (isKept(file)) return FileVisitResult.CONTINUE;
+
+                Path counterpart = source.resolve(target.relativize(file).toString());
+                // файл, на месте которого в staging папка, тоже удалён — как и при синхронизации по индексу
+                if (!Files.exists(counterpart, LinkOption.NOFOLLOW_LINKS)
+                        || Files.isDirectory(counterpart, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.deleteIfExists(file);
+                    removed.incrementAndGet();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            private boolean isKept(Path p) {
+                return target.equals(p.getParent()) && keepAtRoot.contains(p.getFileName().toString());
+            }
+        });
+    }
+
+    private static long deleteTree(Path root) throws IOException {
+        return TreeDeleter.deleteNow(root).files();
+    }
+
+}
@@ -0,0 +1,7 @@
+package com.example.HanldeImg.scripts.apk;
+
+/**
+ * Метаданные из бинарного AndroidManifest.xml. versionName может быть null,
+ * если в манифесте ссылка на ресурс.
+ */
+public record ApkInfo(String packageName, long versionCode, String versionName) {}
@@ -0,0 +1,272 @@
+package com.example.HanldeImg.scripts.apk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Достаёт package/versionCode/versionName из APK без apktool: central directory zip читается
+ * через отображение файла в память, AndroidManifest.xml разбирается как бинарный AXML.
+ */
+public final class ApkManifestReader {
+
+    private static final String MANIFEST = "AndroidManifest.xml";
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int EOCD_MIN_SIZE = 22;
+    private static final int MAX_COMMENT = 0xFFFF;
+
+    private static final int RES_STRING_POOL_TYPE = 0x0001;
+    private static final int RES_XML_TYPE = 0x0003;
+    private static final int RES_XML_START_ELEMENT_TYPE = 0x0102;
+    private static final int RES_XML_RESOURCE_MAP_TYPE = 0x0180;
+    private static final int UTF8_FLAG = 1 << 8;
+
+    private static final int ATTR_VERSION_CODE = 0x0101021b;
+    private static final int ATTR_VERSION_NAME = 0x0101021c;
+
+    private static final int TYPE_STRING = 0x03;
+    private static final int TYPE_INT_DEC = 0x10;
+    private static final int TYPE_INT_HEX = 0x11;
+
+    private ApkManifestReader() {
+    }
+
+    public static ApkInfo read(Path apk) throws IOException {
+        return parseManifest(readManifestBytes(apk));
+    }
+
+    static byte[] readManifestBytes(Path apk) throws IOException {
+        try (FileChannel ch = FileChannel.open(apk, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) {
+                return readWithZipFile(apk);
+            }
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+
+            int eocd = findEocd(map);
+            if (eocd < 0) throw new IOException("Не zip архив: " + apk);
+
+            long cdOffset = Integer.toUnsignedLong(map.getInt(eocd + 16));
+            int entries = Short.toUnsignedInt(map.getShort(eocd + 10));
+            if (cdOffset == 0xFFFFFFFFL || entries == 0xFFFF) {
+                // zip64 — редкость для APK, отдаём стандартной реализации
+                return readWithZipFile(apk);
+            }
+
+            int pos = (int) cdOffset;
+            for (int i = 0; i < entries; i++) {
+                if (map.getInt(pos) != CEN_SIGNATURE) throw new IOException("Повреждён central directory: " + apk);
+                int method = Short.toUnsignedInt(map.getShort(pos + 10));
+                int compressedSize = map.getInt(pos + 20);
+                int size0 = map.getInt(pos + 24);
+                int nameLen = Short.toUnsignedInt(map.getShort(pos + 28));
+                int extraLen = Short.toUnsignedInt(map.getShort(pos + 30));
+                int commentLen = Short.toUnsignedInt(map.getShort(pos + 32));
+                int localOffset = map.getInt(pos + 42);
+
+                if (nameLen == MANIFEST.length() && MANIFEST.equals(ascii(map, pos + 46, nameLen))) {
+                    return readEntry(map, localOffset, method, compressedSize, size0, apk);
+                }
+                pos += 46 + nameLen + extraLen + commentLen;
+            }
+            throw new IOException(MANIFEST + " не найден в " + apk);
+        }
+    }
+
+    private static byte[] readEntry(ByteBuffer map, int localOffset, int method, int compressedSize,
+                                    int size, Path apk) throws IOException {
+        if (map.getInt(localOffset) != LOC_SIGNATURE) throw new IOException("Повреждён local header: " + apk);
+        int nameLen = Short.toUnsignedInt(map.getShort(localOffset + 26));
+        int extraLen = Short.toUnsignedInt(map.getShort(localOffset + 28));
+        int dataStart = localOffset + 30 + nameLen + extraLen;
+        ByteBuffer data = map.slice(dataStart, compressedSize);
+
+        if (method == 0) {
+            byte[] out = new byte[compressedSize];
+            data.get(out);
+            return out;
+        }
+        if (method != 8) throw new IOException("Неподдерживаемый метод сжатия " + method + " в " + apk);
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            byte[] out = new byte[size];
+            int n = 0;
+            while (n < size && !inflater.finished()) {
+                int r = inflater.inflate(out, n, size - n);
+                if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += r;
+            }
+            if (n != size) throw new IOException("Не удалось распаковать " + MANIFEST + " из " + apk);
+            return out;
+        } catch (DataFormatException e) {
+            throw new IOException("Повреждён " + MANIFEST + " в " + apk, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] readWithZipFile(Path apk) throws IOException {
+        try (ZipFile zip = new ZipFile(apk.toFile())) {
+            ZipEntry entry = zip.getEntry(MANIFEST);
+            if (entry == null) throw new IOException(MANIFEST + " не найден в " + apk);
+            try (InputStream in = zip.getInputStream(entry)) {
+                return in.readAllBytes();
+            }
+        }
+    }
+
+    private static int findEocd(ByteBuffer map) {
+        int limit = Math.max(0, map.limit() - EOCD_MIN_SIZE - MAX_COMMENT);
+        for (int pos = map.limit() - EOCD_MIN_SIZE; pos >= limit; pos--) {
+            if (map.getInt(pos) == EOCD_SIGNATURE) return pos;
+        }
+        return -1;
+    }
+
+    private static String ascii(ByteBuffer map, int pos, int len) {
+        byte[] b = new byte[len];
+        map.get(pos, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    static ApkInfo parseManifest(byte[] axml) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(axml).order(ByteOrder.LITTLE_ENDIAN);
+        if (axml.length < 8 || Short.toUnsignedInt(b.getShort(0)) != RES_XML_TYPE) {
+            throw new IOException("AndroidManifest.xml не в бинарном формате AXML");
+        }
+
+        String[] strings = new String[0];
+        int[] resourceIds = new int[0];
+
+        int pos = Short.toUnsignedInt(b.getShort(2));
+        while (pos + 8 <= axml.length) {
+            int type = Short.toUnsignedInt(b.getShort(pos));
+            int headerSize = Short.toUnsignedInt(b.getShort(pos + 2));
+            int chunkSize = b.getInt(pos + 4);
+            if (chunkSize < 8 || pos + chunkSize > axml.length) break;
+
+            switch (type) {
+                case RES_STRING_POOL_TYPE -> strings = readStringPool(b, pos);
+                case RES_XML_RESOURCE_MAP_TYPE -> {
+                    int count = (chunkSize - headerSize) / 4;
+                    resourceIds = new int[count];
+                    for (int i = 0; i < count; i++) resourceIds[i] = b.getInt(pos + headerSize + i * 4);
+                }
+                case RES_XML_START_ELEMENT_TYPE -> {
+                    int ext = pos + headerSize;
+                    String name = string(strings, b.getInt(ext + 4));
+                    if ("manifest".equals(name)) {
+                        return readManifestAttributes(b, ext, strings, resourceIds);
+                    }
+                }
+                default -> {
+                }
+            }
+            pos += chunkSize;
+        }
+        throw new IOException("Элемент <manifest> не найден");
+    }
+
+    private static ApkInfo readManifestAttributes(ByteBuffer b, int ext, String[] strings, int[] resourceIds) {
+        int attributeStart = Short.toUnsignedInt(b.getShort(ext + 8));
+        int attributeSize = Short.toUnsignedInt(b.getShort(ext + 10));
+        int attributeCount = Short.toUnsignedInt(b.getShort(ext + 12));
+
+        String pkg = null;
+        long versionCode = 0;
+        String versionName = null;
+
+        for (int i = 0; i < attributeCount; i++) {
+            int a = ext + attributeStart + i * attributeSize;
+            int nameIndex = b.getInt(a + 4);
+            int rawValue = b.getInt(a + 8);
+            int dataType = Byte.toUnsignedInt(b.get(a + 15));
+            int data = b.getInt(a + 16);
+
+            int resId = nameIndex >= 0 && nameIndex < resourceIds.length ? resourceIds[nameIndex] : 0;
+            String attrName = string(strings, nameIndex);
+
+            String value = rawValue >= 0 ? string(strings, rawValue)
+                    : dataType == TYPE_STRING ? string(strings, data) : null;
+
+            if (resId == ATTR_VERSION_CODE || (resId == 0 && "versionCode".equals(attrName))) {
+                if (dataType == TYPE_INT_DEC || dataType == TYPE_INT_HEX) {
+                    versionCode = Integer.toUnsignedLong(data);
+                } else if (value != null) {
+                    try {
+                        versionCode = Long.parseLong(value.trim());
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            } else if (resId == ATTR_VERSION_NAME || (resId == 0 && "versionName".equals(attrName))) {
+                versionName = value;
+            } else if (resId == 0 && "package".equals(attrName)) {
+                pkg = value;
+            }
+        }
+        return new ApkInfo(pkg, versionCode, versionName);
+    }
+
+    private static String[] readStringPool(ByteBuffer b, int pos) {
+        int headerSize = Short.toUnsignedInt(b.getShort(pos + 2));
+        int count = b.getInt(pos + 8);
+        int flags = b.getInt(pos + 16);
+        int stringsStart = b.getInt(pos + 20);
+        boolean utf8 = (flags & UTF8_FLAG) != 0;
+
+        String[] out = new String[count];
+        for (int i = 0; i < count; i++) {
+            int offset = pos + stringsStart + b.getInt(pos + headerSize + i * 4);
+            out[i] = utf8 ? readUtf8(b, offset) : readUtf16(b, offset);
+        }
+        return out;
+    }
+
+    private static String readUtf8(ByteBuffer b, int offset) {
+        // сначала длина в UTF-16 символах, потом в байтах; каждая — 1 или 2 байта
+        int p = offset;
+        p += (b.get(p) & 0x80) != 0 ? 2 : 1;
+        int len = Byte.toUnsignedInt(b.get(p));
+        if ((len & 0x80) != 0) {
+            len = ((len & 0x7F) << 8) | Byte.toUnsignedInt(b.get(p + 1));
+            p += 2;
+        } else {
+            p += 1;
+        }
+        byte[] bytes = new byte[len];
+        b.get(p, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readUtf16(ByteBuffer b, int offset) {
+        int len = Short.toUnsignedInt(b.getShort(offset));
+        int p = offset + 2;
+        if ((len & 0x8000) != 0) {
+            len = ((len & 0x7FFF) << 16) | Short.toUnsignedInt(b.getShort(p));
+            p += 2;
+        }
+        byte[] bytes = new byte[len * 2];
+        b.get(p, bytes);
+        return new String(bytes, StandardCharsets.UTF_16LE);
+    }
+
+    private static String string(String[] strings, int index) {
+        return index >= 0 && index < strings.length ? strings[index] : null;
+    }
+}
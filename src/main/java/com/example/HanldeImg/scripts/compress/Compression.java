@@ -0,0 +1,70 @@
+package com.example.HanldeImg.scripts.compress;
+
+import com.github.luben.zstd.ZstdInputStream;
+import org.tukaani.xz.XZInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Форматы сжатых образов, которые принимаются при загрузке. Формат определяется по первым байтам,
+ * а не по имени файла.
+ */
+public enum Compression {
+    NONE(new byte[0]),
+    GZIP(new byte[]{0x1f, (byte) 0x8b}, ".gz"),
+    XZ(new byte[]{(byte) 0xfd, '7', 'z', 'X', 'Z', 0x00}, ".xz"),
+    ZSTD(new byte[]{0x28, (byte) 0xb5, 0x2f, (byte) 0xfd}, ".zst", ".zstd");
+
+    // сколько байт нужно для определения любого формата
+    public static final int MAGIC_LENGTH = 6;
+
+    private static final int GZIP_BUFFER = 1 << 16;
+
+    private final byte[] magic;
+    private final String[] suffixes;
+
+    Compression(byte[] magic, String... suffixes) {
+        this.magic = magic;
+        this.suffixes = suffixes;
+    }
+
+    public static Compression detect(byte[] head) {
+        for (Compression c : values()) {
+            if (c != NONE && head.length >= c.magic.length
+                    && Arrays.equals(head, 0, c.magic.length, c.magic, 0, c.magic.length)) {
+                return c;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Имя образа после распаковки: system.img.xz -> system.img. Имя без суффикса не меняется.
+     */
+    public String stripSuffix(String fileName) {
+        if (fileName == null) return null;
+        String lower = fileName.toLowerCase(Locale.ROOT);
+        for (String suffix : suffixes) {
+            if (lower.endsWith(suffix) && fileName.length() > suffix.length()) {
+                return fileName.substring(0, fileName.length() - suffix.length());
+            }
+        }
+        return fileName;
+    }
+
+    /**
+     * Потоковый распаковщик. Несколько склеенных потоков/фреймов подряд распаковываются целиком.
+     */
+    public InputStream decoder(InputStream in) throws IOException {
+        return switch (this) {
+            case NONE -> in;
+            case GZIP -> new GZIPInputStream(in, GZIP_BUFFER);
+            case XZ -> new XZInputStream(in);
+            case ZSTD -> new ZstdInputStream(in);
+        };
+    }
+}
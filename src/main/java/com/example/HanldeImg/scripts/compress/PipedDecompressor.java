@@ -0,0 +1,108 @@
+package com.example.HanldeImg.scripts.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Распаковка в отдельном потоке: он читает сжатый вход и распаковывает его блоками по 1 МБ,
+ * а читатель этого потока тем временем хэширует и пишет уже готовые блоки. Сами gzip/xz/zstd
+ * распаковываются последовательно, так что выигрыш — в том, что распаковка не ждёт диска и хэша.
+ * Буферы переиспользуются, в памяти не больше {@code DEPTH + 1} блоков.
+ */
+public class PipedDecompressor extends InputStream {
+
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int DEPTH = 4;
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    private record Block(byte[] data, int length, Throwable error) {
+        static final Block END = new Block(null, -1, null);
+    }
+
+    private final BlockingQueue<Block> filled = new ArrayBlockingQueue<>(DEPTH + 1);
+    private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(DEPTH + 1);
+    private final Thread worker;
+
+    private Block current;
+    private int position;
+    private volatile boolean closed;
+
+    public PipedDecompressor(Compression compression, InputStream compressed) {
+        for (int i = 0; i < DEPTH; i++) free.add(new byte[BLOCK_SIZE]);
+        worker = new Thread(() -> decode(compression, compressed),
+                "decompress-" + compression.name().toLowerCase() + "-" + counter.incrementAndGet());
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void decode(Compression compression, InputStream compressed) {
+        try (InputStream in = compression.decoder(compressed)) {
+            while (!closed) {
+                byte[] buf = free.take();
+                int n = in.readNBytes(buf, 0, buf.length);
+                if (n > 0) filled.put(new Block(buf, n, null));
+                if (n < buf.length) break;
+            }
+            filled.put(Block.END);
+        } catch (InterruptedException e) {
+            // читатель закрыл поток
+        } catch (Throwable e) {
+            filled.clear();
+            filled.offer(new Block(null, -1, e));
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return n < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!nextBlock()) return -1;
+        int n = Math.min(len, current.length() - position);
+        System.arraycopy(current.data(), position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    /**
+     * @return false, если данные кончились
+     */
+    private boolean nextBlock() throws IOException {
+        if (closed) throw new IOException("Поток распаковки закрыт");
+        if (current != null && current.data() != null && position < current.length()) return true;
+        if (current == Block.END) return false;
+
+        if (current != null && current.data() != null) free.offer(current.data());
+        try {
+            current = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Прервано ожидание распаковки");
+        }
+        position = 0;
+        if (current.error() != null) {
+            Throwable error = current.error();
+            current = Block.END;
+            if (error instanceof IOException io) throw new IOException("Ошибка распаковки: " + io.getMessage(), io);
+            throw new IOException("Ошибка распаковки", error);
+        }
+        return current != Block.END;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        worker.interrupt();
+        filled.clear();
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.HanldeImg.scripts.extract;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Источник байтов образа раздела с произвольным доступом.
+ */
+public interface BlockSource extends Closeable {
+
+    long size();
+
+    /**
+     * Заполняет {@code dst} целиком начиная с {@code offset}.
+     */
+    void read(long offset, ByteBuffer dst) throws IOException;
+
+    /**
+     * Копирует {@code length} байт с {@code offset} в {@code out} на позицию {@code outPosition}.
+     * Реализации могут пропускать нулевые участки, оставляя в выходном файле дыры.
+     */
+    default void transferTo(long offset, long length, FileChannel out, long outPosition) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min(length, 1 << 20));
+        long done = 0;
+        while (done < length) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), length - done));
+            read(offset + done, buf);
+            buf.flip();
+            while (buf.hasRemaining()) {
+                done += out.write(buf, outPosition + done);
+            }
+        }
+    }
+}
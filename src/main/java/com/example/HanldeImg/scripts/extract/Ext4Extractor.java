@@ -0,0 +1,218 @@
+package com.example.HanldeImg.scripts.extract;
+
+import com.example.HanldeImg.scripts.extract.Ext4Filesystem.DirEntry;
+import com.example.HanldeImg.scripts.extract.Ext4Filesystem.Inode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Распаковка ext2/3/4 образов внутри процесса: образ отображается в память,
+ * каждое поддерево каталога обрабатывается отдельной fork-join задачей.
+ * Sparse образы читаются напрямую по карте чанков.
+ */
+public class Ext4Extractor implements ImageExtractor {
+
+    private static final Logger log = LoggerFactory.getLogger(Ext4Extractor.class);
+
+    private final int parallelism;
+
+    public Ext4Extractor(int parallelism) {
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public String name() {
+        return "ext4";
+    }
+
+    @Override
+    public boolean supports(Path image) throws IOException {
+        try (BlockSource source = openSource(image)) {
+            return supports(source);
+        }
+    }
+
+    @Override
+    public boolean readsSparse() {
+        return true;
+    }
+
+    static BlockSource openSource(Path image) throws IOException {
+        return SparseImage.isSparse(image) ? new SparseBlockSource(image) : new MappedBlockSource(image);
+    }
+
+    public boolean supports(BlockSource source) throws IOException {
+        return Ext4Filesystem.probe(source);
+    }
+
+    @Override
+    public List<ImageEntry> list(Path image) throws IOException {
+        try (BlockSource source = openSource(image)) {
+            return list(source);
+        }
+    }
+
+    public List<ImageEntry> list(BlockSource source) throws IOException {
+        Ext4Filesystem fs = Ext4Filesystem.open(source);
+        List<ImageEntry> entries = new ArrayList<>();
+        listDir(fs, fs.inode(Ext4Filesystem.ROOT_INODE), "", entries);
+        return entries;
+    }
+
+    private void listDir(Ext4Filesystem fs, Inode dir, String prefix, List<ImageEntry> out) throws IOException {
+        for (DirEntry e : fs.readDirectory(dir)) {
+            Inode inode = fs.inode(e.inode());
+            String path = prefix + e.name();
+            if (inode.isDirectory()) {
+                out.add(new ImageEntry(path, ImageEntry.Type.DIRECTORY, 0, inode.permissions()));
+                listDir(fs, inode, path + "/", out);
+            } else if (inode.isRegular()) {
+                out.add(new ImageEntry(path, ImageEntry.Type.FILE, inode.size(), inode.permissions()));
+            } else if (inode.isSymlink()) {
+                out.add(new ImageEntry(path, ImageEntry.Type.SYMLINK, inode.size(), inode.permissions()));
+            }
+        }
+    }
+
+    @Override
+    public void extract(Path image, Path targetDir, ExtractSelection selection, Consumer<Path> onFile)
+            throws IOException, InterruptedException {
+        try (BlockSource source = openSource(image)) {
+            extract(source, targetDir, selection, onFile);
+        }
+    }
+
+    public void extract(BlockSource source, Path targetDir, ExtractSelection selection, Consumer<Path> onFile)
+            throws IOException, InterruptedException {
+        Ext4Filesystem fs = Ext4Filesystem.open(source);
+        Files.createDirectories(targetDir);
+
+        long started = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        DirTask root = new DirTask(fs, fs.inode(Ext4Filesystem.ROOT_INODE), "", targetDir, selection, onFile);
+        try {
+            pool.submit(root).get();
+        } catch (InterruptedException e) {
+            root.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException io) throw io.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IOException(cause);
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        log.info("ext4 распакован в {} за {} мс", targetDir, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    private static final class DirTask extends RecursiveAction {
+        private final Ext4Filesystem fs;
+        private final Inode dir;
+        private final String path;
+        private final Path out;
+        private final ExtractSelection selection;
+        private final Consumer<Path> onFile;
+
+        DirTask(Ext4Filesystem fs, Inode dir, String path, Path out, ExtractSelection selection, Consumer<Path> onFile) {
+            this.fs = fs;
+            this.dir = dir;
+            this.path = path;
+            this.out = out;
+            this.selection = selection;
+            this.onFile = onFile;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                Files.createDirectories(out);
+                List<DirTask> children = new ArrayList<>();
+
+                for (DirEntry e : fs.readDirectory(dir)) {
+                    if (Thread.currentThread().isInterrupted() || isCancelled()) return;
+
+                    String childPath = path.isEmpty() ? e.name() : path + "/" + e.name();
+                    if (e.name().contains("/")) continue;
+                    Inode inode = fs.inode(e.inode());
+                    Path target = out.resolve(e.name());
+
+                    if (inode.isDirectory()) {
+                        if (selection.mayContain(childPath)) {
+                            children.add(new DirTask(fs, inode, childPath, target, selection, onFile));
+                        }
+                    } else if (selection.matches(childPath)) {
+                        if (inode.isRegular()) {
+                            writeFile(inode, target);
+                            onFile.accept(target);
+                        } else if (inode.isSymlink()) {
+                            Files.deleteIfExists(target);
+                            Files.createSymbolicLink(target, Paths.get(fs.readSymlink(inode)));
+                            onFile.accept(target);
+                        }
+                        // устройства, fifo и сокеты не распаковываем, как и 7z
+                    }
+                }
+
+                ForkJoinTask.invokeAll(children);
+
+                // права каталога выставляем после заполнения, иначе read-only каталог не заполнить
+                applyMetadata(out, dir, true);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeFile(Inode inode, Path target) throws IOException {
+            // прежний файл удаляем, а не обрезаем: на него могут указывать жёсткие ссылки (кэш apktool, staging)
+            Files.deleteIfExists(target);
+            try (FileChannel ch = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                fs.copyFile(inode, ch);
+            }
+            applyMetadata(target, inode, false);
+        }
+    }
+
+    private static void applyMetadata(Path target, Inode inode, boolean directory) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(target, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+        if (view != null) {
+            // владелец всегда должен уметь читать (и заходить в каталоги), иначе дальше не отработают git и очистка
+            int mode = inode.permissions() | (directory ? 0700 : 0600);
+            view.setPermissions(toPermissions(mode));
+        }
+        Files.setLastModifiedTime(target, FileTime.from(inode.mtime(), TimeUnit.SECONDS));
+    }
+
+    private static Set<PosixFilePermission> toPermissions(int mode) {
+        Set<PosixFilePermission> perms = EnumSet.noneOf(PosixFilePermission.class);
+        PosixFilePermission[] order = {
+                PosixFilePermission.OTHERS_EXECUTE, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_READ,
+                PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_READ,
+                PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_READ
+        };
+        for (int i = 0; i < order.length; i++) {
+            if ((mode & (1 << i)) != 0) perms.add(order[i]);
+        }
+        return perms;
+    }
+}
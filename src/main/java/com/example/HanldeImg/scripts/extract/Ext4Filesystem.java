@@ -0,0 +1,334 @@
+package com.example.HanldeImg.scripts.extract;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Чтение ext2/3/4 без монтирования: суперблок, дескрипторы групп, inode, extent-деревья
+ * и классическая карта блоков, линейное чтение каталогов (htree совместим с ним).
+ * Журнал не проигрывается, inline_data/meta_bg/шифрование не поддерживаются — для таких
+ * образов {@link #probe} возвращает false.
+ */
+final class Ext4Filesystem {
+
+    static final long ROOT_INODE = 2;
+
+    private static final int SUPERBLOCK_OFFSET = 1024;
+    private static final int EXT4_MAGIC = 0xEF53;
+    private static final int EXTENT_MAGIC = 0xF30A;
+
+    private static final int INCOMPAT_COMPRESSION = 0x1;
+    private static final int INCOMPAT_FILETYPE = 0x2;
+    private static final int INCOMPAT_JOURNAL_DEV = 0x8;
+    private static final int INCOMPAT_META_BG = 0x10;
+    private static final int INCOMPAT_64BIT = 0x80;
+    private static final int INCOMPAT_INLINE_DATA = 0x8000;
+    private static final int INCOMPAT_ENCRYPT = 0x10000;
+    private static final int INCOMPAT_UNSUPPORTED = INCOMPAT_COMPRESSION | INCOMPAT_JOURNAL_DEV
+            | INCOMPAT_META_BG | INCOMPAT_INLINE_DATA | INCOMPAT_ENCRYPT;
+
+    private static final int EXTENTS_FL = 0x80000;
+    private static final int INLINE_DATA_FL = 0x10000000;
+
+    static final int S_IFMT = 0xF000;
+    static final int S_IFREG = 0x8000;
+    static final int S_IFDIR = 0x4000;
+    static final int S_IFLNK = 0xA000;
+
+    record Inode(long number, int mode, long size, int flags, long mtime, byte[] block) {
+        boolean isDirectory() { return (mode & S_IFMT) == S_IFDIR; }
+        boolean isRegular() { return (mode & S_IFMT) == S_IFREG; }
+        boolean isSymlink() { return (mode & S_IFMT) == S_IFLNK; }
+        int permissions() { return mode & 07777; }
+    }
+
+    record DirEntry(String name, long inode) {}
+
+    /**
+     * Непрерывный участок файла: logical/physical — в блоках, uninitialized читается как нули.
+     */
+    record Extent(long logical, long physical, long length, boolean uninitialized) {}
+
+    private final BlockSource source;
+    private final int blockSize;
+    private final int inodeSize;
+    private final long inodesPerGroup;
+    private final boolean fileTypeInDirents;
+    private final long[] inodeTables;
+
+    private Ext4Filesystem(BlockSource source, ByteBuffer sb) throws IOException {
+        this.source = source;
+        this.blockSize = 1024 << sb.getInt(0x18);
+        this.inodesPerGroup = Integer.toUnsignedLong(sb.getInt(0x28));
+        int revLevel = sb.getInt(0x4C);
+        this.inodeSize = revLevel == 0 ? 128 : Short.toUnsignedInt(sb.getShort(0x58));
+
+        int incompat = sb.getInt(0x60);
+        this.fileTypeInDirents = (incompat & INCOMPAT_FILETYPE) != 0;
+        boolean is64 = (incompat & INCOMPAT_64BIT) != 0;
+        int descSize = is64 ? Math.max(32, Short.toUnsignedInt(sb.getShort(0xFE))) : 32;
+
+        long blocksCount = Integer.toUnsignedLong(sb.getInt(0x4));
+        if (is64) blocksCount |= Integer.toUnsignedLong(sb.getInt(0x150)) << 32;
+        long firstDataBlock = Integer.toUnsignedLong(sb.getInt(0x14));
+        long blocksPerGroup = Integer.toUnsignedLong(sb.getInt(0x20));
+        int groups = (int) ((blocksCount - firstDataBlock + blocksPerGroup - 1) / blocksPerGroup);
+
+        ByteBuffer gdt = read((firstDataBlock + 1) * blockSize, groups * descSize);
+        this.inodeTables = new long[groups];
+        for (int g = 0; g < groups; g++) {
+            int base = g * descSize;
+            long table = Integer.toUnsignedLong(gdt.getInt(base + 0x8));
+            if (is64 && descSize >= 64) table |= Integer.toUnsignedLong(gdt.getInt(base + 0x28)) << 32;
+            inodeTables[g] = table;
+        }
+    }
+
+    static boolean probe(BlockSource source) throws IOException {
+        if (source.size() < SUPERBLOCK_OFFSET + 1024) return false;
+        ByteBuffer sb = readSuperblock(source);
+        if (Short.toUnsignedInt(sb.getShort(0x38)) != EXT4_MAGIC) return false;
+        int logBlockSize = sb.getInt(0x18);
+        if (logBlockSize < 0 || logBlockSize > 6) return false;
+        return (sb.getInt(0x60) & INCOMPAT_UNSUPPORTED) == 0;
+    }
+
+    static Ext4Filesystem open(BlockSource source) throws IOException {
+        if (!probe(source)) {
+            throw new IOException("Образ не является поддерживаемым ext2/3/4");
+        }
+        return new Ext4Filesystem(source, readSuperblock(source));
+    }
+
+    int blockSize() {
+        return blockSize;
+    }
+
+    Inode inode(long number) throws IOException {
+        long group = (number - 1) / inodesPerGroup;
+        long index = (number - 1) % inodesPerGroup;
+        if (group >= inodeTables.length) {
+            throw new IOException("Некорректный номер inode: " + number);
+        }
+        ByteBuffer b = read(inodeTables[(int) group] * blockSize + index * inodeSize, 128);
+
+        int mode = Short.toUnsignedInt(b.getShort(0x0));
+        long size = Integer.toUnsignedLong(b.getInt(0x4)) | (Integer.toUnsignedLong(b.getInt(0x6C)) << 32);
+        long mtime = Integer.toUnsignedLong(b.getInt(0x10));
+        int flags = b.getInt(0x20);
+        byte[] block = new byte[60];
+        b.get(0x28, block);
+
+        if ((flags & INLINE_DATA_FL) != 0) {
+            throw new IOException("inline_data не поддерживается (inode " + number + ")");
+        }
+        return new Inode(number, mode, size, flags, mtime, block);
+    }
+
+    List<DirEntry> readDirectory(Inode dir) throws IOException {
+        List<DirEntry> entries = new ArrayList<>();
+        for (Extent e : extents(dir)) {
+            if (e.uninitialized()) continue;
+            for (long i = 0; i < e.length(); i++) {
+                ByteBuffer block = read((e.physical() + i) * blockSize, blockSize);
+                parseDirBlock(block, entries);
+            }
+        }
+        return entries;
+    }
+
+    private void parseDirBlock(ByteBuffer block, List<DirEntry> out) {
+        int pos = 0;
+        while (pos + 8 <= blockSize) {
+            long ino = Integer.toUnsignedLong(block.getInt(pos));
+            int recLen = Short.toUnsignedInt(block.getShort(pos + 4));
+            int nameLen = fileTypeInDirents
+                    ? Byte.toUnsignedInt(block.get(pos + 6))
+                    : Short.toUnsignedInt(block.getShort(pos + 6));
+            if (recLen < 8 || pos + recLen > blockSize) break;
+
+            if (ino != 0 && nameLen > 0 && 8 + nameLen <= recLen) {
+                byte[] name = new byte[nameLen];
+                block.get(pos + 8, name);
+                String s = new String(name, StandardCharsets.UTF_8);
+                if (!s.equals(".") && !s.equals("..")) {
+                    out.add(new DirEntry(s, ino));
+                }
+            }
+            pos += recLen;
+        }
+    }
+
+    String readSymlink(Inode link) throws IOException {
+        int len = (int) link.size();
+        // короткие ссылки хранятся прямо в i_block
+        if (len < 60 && (link.flags() & EXTENTS_FL) == 0) {
+            return new String(link.block(), 0, len, StandardCharsets.UTF_8);
+        }
+        ByteBuffer data = ByteBuffer.allocate(len);
+        for (Extent e : extents(link)) {
+            if (e.uninitialized()) continue;
+            long start = e.logical() * blockSize;
+            if (start >= len) break;
+            int n = (int) Math.min(e.length() * blockSize, len - start);
+            source.read(e.physical() * blockSize, data.slice((int) start, n));
+        }
+        return new String(data.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Копирует содержимое файла в {@code out}. Дыры и неинициализированные extents не пишутся.
+     */
+    void copyFile(Inode file, FileChannel out) throws IOException {
+        long size = file.size();
+        for (Extent e : extents(file)) {
+            if (e.uninitialized()) continue;
+            long start = e.logical() * blockSize;
+            if (start >= size) break;
+            long length = Math.min(e.length() * blockSize, size - start);
+            source.transferTo(e.physical() * blockSize, length, out, start);
+        }
+        if (out.size() < size) {
+            out.write(ByteBuffer.allocate(1), size - 1);
+        } else if (out.size() > size) {
+            out.truncate(size);
+        }
+    }
+
+    List<Extent> extents(Inode inode) throws IOException {
+        List<Extent> out = new ArrayList<>();
+        if ((inode.flags() & EXTENTS_FL) != 0) {
+            walkExtentNode(ByteBuffer.wrap(inode.block()).order(ByteOrder.LITTLE_ENDIAN), out, 0);
+        } else {
+            walkBlockMap(inode, out);
+        }
+        return out;
+    }
+
+    private void walkExtentNode(ByteBuffer node, List<Extent> out, int level) throws IOException {
+        if (Short.toUnsignedInt(node.getShort(0)) != EXTENT_MAGIC) {
+            throw new IOException("Повреждённое extent-дерево");
+        }
+        if (level > 8) {
+            throw new IOException("Слишком глубокое extent-дерево");
+        }
+        int entries = Short.toUnsignedInt(node.getShort(2));
+        int depth = Short.toUnsignedInt(node.getShort(6));
+
+        for (int i = 0; i < entries; i++) {
+            int base = 12 + i * 12;
+            if (depth == 0) {
+                long logical = Integer.toUnsignedLong(node.getInt(base));
+                int len = Short.toUnsignedInt(node.getShort(base + 4));
+                long physical = (Integer.toUnsignedLong(Short.toUnsignedInt(node.getShort(base + 6))) << 32)
+                        | Integer.toUnsignedLong(node.getInt(base + 8));
+                boolean uninit = len > 32768;
+                out.add(new Extent(logical, physical, uninit ? len - 32768 : len, uninit));
+            } else {
+                long leaf = Integer.toUnsignedLong(node.getInt(base + 4))
+                        | (Integer.toUnsignedLong(Short.toUnsignedInt(node.getShort(base + 8))) << 32);
+                walkExtentNode(read(leaf * blockSize, blockSize), out, level + 1);
+            }
+        }
+    }
+
+    private void walkBlockMap(Inode inode, List<Extent> out) throws IOException {
+        long blocks = (inode.size() + blockSize - 1) / blockSize;
+        ByteBuffer iblock = ByteBuffer.wrap(inode.block()).order(ByteOrder.LITTLE_ENDIAN);
+        BlockMapCollector collector = new BlockMapCollector(out, blocks);
+
+        for (int i = 0; i < 12 && !collector.full(); i++) {
+            collector.add(Integer.toUnsignedLong(iblock.getInt(i * 4)));
+        }
+        for (int level = 1; level <= 3 && !collector.full(); level++) {
+            long ptr = Integer.toUnsignedLong(iblock.getInt((11 + level) * 4));
+            walkIndirect(ptr, level, collector);
+        }
+        collector.flush();
+    }
+
+    private void walkIndirect(long block, int level, BlockMapCollector collector) throws IOException {
+        int perBlock = blockSize / 4;
+        if (block == 0) {
+            long span = 1;
+            for (int i = 0; i < level; i++) span *= perBlock;
+            collector.skip(span);
+            return;
+        }
+        ByteBuffer ptrs = read(block * blockSize, blockSize);
+        for (int i = 0; i < perBlock && !collector.full(); i++) {
+            long ptr = Integer.toUnsignedLong(ptrs.getInt(i * 4));
+            if (level == 1) {
+                collector.add(ptr);
+            } else {
+                walkIndirect(ptr, level - 1, collector);
+            }
+        }
+    }
+
+    /**
+     * Склеивает подряд идущие блоки классической карты в extents.
+     */
+    private static final class BlockMapCollector {
+        private final List<Extent> out;
+        private final long limit;
+        private long logical;
+        private long runLogical = -1;
+        private long runPhysical;
+        private long runLength;
+
+        BlockMapCollector(List<Extent> out, long limit) {
+            this.out = out;
+            this.limit = limit;
+        }
+
+        boolean full() {
+            return logical >= limit;
+        }
+
+        void add(long physical) {
+            if (physical == 0) {
+                skip(1);
+                return;
+            }
+            if (runLogical >= 0 && runPhysical + runLength == physical && runLogical + runLength == logical) {
+                runLength++;
+            } else {
+                flush();
+                runLogical = logical;
+                runPhysical = physical;
+                runLength = 1;
+            }
+            logical++;
+        }
+
+        void skip(long count) {
+            flush();
+            logical += count;
+        }
+
+        void flush() {
+            if (runLogical >= 0) {
+                out.add(new Extent(runLogical, runPhysical, runLength, false));
+                runLogical = -1;
+            }
+        }
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        source.read(offset, b);
+        return b.flip().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer readSuperblock(BlockSource source) throws IOException {
+        ByteBuffer sb = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        source.read(SUPERBLOCK_OFFSET, sb);
+        return sb.flip().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.HanldeImg.scripts.extract;
+
+public enum ExtractEngine {
+    // ext4 читаем сами, всё остальное — через 7z
+    AUTO,
+    SEVEN_ZIP,
+    JAVA
+}
@@ -0,0 +1,91 @@
+package com.example.HanldeImg.scripts.extract;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Профиль выборочной распаковки проекта: glob'ы от корня проекта ({@code system/media/**},
+ * {@code **}{@code /*.odex}, {@code *.ttf}). Для каждого раздела профиль переводится в
+ * {@link ExtractSelection} от корня образа, и фильтрует сам распаковщик — лишнее на диск не пишется.
+ */
+public record ExtractProfile(String name, List<String> includes, List<String> excludes) {
+
+    public static final ExtractProfile ALL = new ExtractProfile("all", List.of(), List.of());
+
+    private static final String TRAILER_PROFILE = "Extract-Profile";
+    private static final String TRAILER_INCLUDE = "Extract-Include";
+    private static final String TRAILER_EXCLUDE = "Extract-Exclude";
+
+    public ExtractProfile {
+        includes = includes == null ? List.of() : includes.stream().map(String::strip).filter(s -> !s.isEmpty()).toList();
+        excludes = excludes == null ? List.of() : excludes.stream().map(String::strip).filter(s -> !s.isEmpty()).toList();
+    }
+
+    public boolean isAll() {
+        return includes.isEmpty() && excludes.isEmpty();
+    }
+
+    /**
+     * Выборка для раздела, который распаковывается в папку {@code partition} проекта.
+     *
+     * @return пусто, если из раздела по профилю ничего не нужно
+     */
+    public Optional<ExtractSelection> forPartition(String partition) {
+        if (isAll()) return Optional.of(ExtractSelection.ALL);
+
+        List<String> partitionIncludes = new ArrayList<>();
+        for (String glob : includes) {
+            String local = relativize(glob, partition);
+            if (local != null) partitionIncludes.add(local.isEmpty() ? "**" : local);
+        }
+        // include'ы есть, но ни один не про этот раздел
+        if (!includes.isEmpty() && partitionIncludes.isEmpty()) return Optional.empty();
+
+        List<String> partitionExcludes = new ArrayList<>();
+        for (String glob : excludes) {
+            String local = relativize(glob, partition);
+            if (local == null) continue;
+            // исключён весь раздел
+            if (local.isEmpty() || local.equals("**")) return Optional.empty();
+            partitionExcludes.add(local);
+        }
+        return Optional.of(ExtractSelection.globs(partitionIncludes, partitionExcludes));
+    }
+
+    /**
+     * Трейлеры коммита, по которым видно, с каким фильтром собран снимок.
+     */
+    public String trailers() {
+        if (isAll()) return "";
+        StringBuilder sb = new StringBuilder();
+        sb.append(TRAILER_PROFILE).append(": ").append(name).append('\n');
+        includes.forEach(g -> sb.append(TRAILER_INCLUDE).append(": ").append(g).append('\n'));
+        excludes.forEach(g -> sb.append(TRAILER_EXCLUDE).append(": ").append(g).append('\n'));
+        return sb.toString();
+    }
+
+    /**
+     * Переводит glob от корня проекта в glob от корня раздела.
+     *
+     * @return null, если glob относится к другому разделу; "" — ко всему разделу
+     */
+    private static String relativize(String glob, String partition) {
+        String g = glob.replace('\\', '/');
+        while (g.startsWith("/")) g = g.substring(1);
+        while (g.endsWith("/")) g = g.substring(0, g.length() - 1);
+
+        // имя на любой глубине и "**/..." подходят к любому разделу как есть;
+        // если такое имя совпало с самим разделом — glob про весь раздел
+        String name = g.startsWith("**/") ? g.substring(3) : g;
+        if (name.indexOf('/') < 0 && ExtractSelection.compile(name).matcher(partition).matches()) return "";
+        if (g.indexOf('/') < 0 || g.startsWith("**/")) return g;
+
+        int slash = g.indexOf('/');
+        String first = g.substring(0, slash);
+        if (!ExtractSelection.compile(first).matcher(partition).matches()) return null;
+        String rest = g.substring(slash + 1);
+        // "system/app" — это каталог в корне раздела, а не имя "app" на любой глубине
+        return rest.indexOf('/') < 0 && !rest.equals("**") ? rest + "/**" : rest;
+    }
+}
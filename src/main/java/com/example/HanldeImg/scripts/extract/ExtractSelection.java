@@ -0,0 +1,138 @@
+package com.example.HanldeImg.scripts.extract;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Какие пути образа распаковывать. {@code paths} — поддеревья, пустой список — всё.
+ * {@code includes}/{@code excludes} — glob'ы от корня образа: {@code *} и {@code ?} внутри имени,
+ * {@code **} — любое число каталогов. Glob без "/" сравнивается с именем на любой глубине.
+ * Glob, совпавший с каталогом, действует на всё его поддерево. Пустой {@code includes} — всё.
+ */
+public record ExtractSelection(List<String> paths, List<String> includes, List<String> excludes) {
+
+    public static final ExtractSelection ALL = new ExtractSelection(List.of(), List.of(), List.of());
+
+    private static final Map<String, Pattern> COMPILED = new ConcurrentHashMap<>();
+
+    public ExtractSelection {
+        paths = paths.stream().map(ExtractSelection::normalize).filter(p -> !p.isEmpty()).toList();
+        includes = includes.stream().map(ExtractSelection::normalize).filter(p -> !p.isEmpty()).toList();
+        excludes = excludes.stream().map(ExtractSelection::normalize).filter(p -> !p.isEmpty()).toList();
+    }
+
+    public ExtractSelection(List<String> paths) {
+        this(paths, List.of(), List.of());
+    }
+
+    public static ExtractSelection of(String... paths) {
+        return new ExtractSelection(List.of(paths));
+    }
+
+    public static ExtractSelection globs(List<String> includes, List<String> excludes) {
+        return new ExtractSelection(List.of(), includes, excludes);
+    }
+
+    public boolean isAll() {
+        return paths.isEmpty() && includes.isEmpty() && excludes.isEmpty();
+    }
+
+    public boolean hasGlobs() {
+        return !includes.isEmpty() || !excludes.isEmpty();
+    }
+
+    public boolean matches(String path) {
+        if (!inPaths(path)) return false;
+        if (!includes.isEmpty() && !anyMatch(includes, path)) return false;
+        return !anyMatch(excludes, path);
+    }
+
+    /**
+     * Нужно ли спускаться в каталог: он сам выбран или лежит на пути к выбранному и не исключён.
+     * Include'ы каталоги не отсекают — нужный файл может лежать на любой глубине.
+     */
+    public boolean mayContain(String dir) {
+        if (dir.isEmpty()) return true;
+        if (!paths.isEmpty()) {
+            boolean onPath = false;
+            for (String p : paths) {
+                if (p.equals(dir) || p.startsWith(dir + "/") || dir.startsWith(p + "/")) {
+                    onPath = true;
+                    break;
+                }
+            }
+            if (!onPath) return false;
+        }
+        return !anyMatch(excludes, dir);
+    }
+
+    private boolean inPaths(String path) {
+        if (paths.isEmpty()) return true;
+        for (String p : paths) {
+            if (path.equals(p) || path.startsWith(p + "/")) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Совпадение с самим путём или с любым из его каталогов.
+     */
+    private static boolean anyMatch(List<String> globs, String path) {
+        for (String glob : globs) {
+            Pattern pattern = compile(glob);
+            if (glob.indexOf('/') < 0) {
+                for (String segment : path.split("/")) {
+                    if (pattern.matcher(segment).matches()) return true;
+                }
+            } else {
+                for (int slash = path.indexOf('/'); ; slash = path.indexOf('/', slash + 1)) {
+                    String prefix = slash < 0 ? path : path.substring(0, slash);
+                    if (pattern.matcher(prefix).matches()) return true;
+                    if (slash < 0) break;
+                }
+            }
+        }
+        return false;
+    }
+
+    static Pattern compile(String glob) {
+        return COMPILED.computeIfAbsent(glob, ExtractSelection::toRegex);
+    }
+
+    private static Pattern toRegex(String glob) {
+        StringBuilder re = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i);
+            if (glob.startsWith("**/", i)) {
+                re.append("(?:.*/)?");
+                i += 3;
+            } else if (glob.startsWith("/**", i) && i + 3 == glob.length()) {
+                re.append("(?:/.*)?");
+                i += 3;
+            } else if (glob.startsWith("**", i)) {
+                re.append(".*");
+                i += 2;
+            } else if (c == '*') {
+                re.append("[^/]*");
+                i++;
+            } else if (c == '?') {
+                re.append("[^/]");
+                i++;
+            } else {
+                re.append(Pattern.quote(String.valueOf(c)));
+                i++;
+            }
+        }
+        return Pattern.compile(re.toString());
+    }
+
+    private static String normalize(String path) {
+        String p = path.strip().replace('\\', '/');
+        while (p.startsWith("/")) p = p.substring(1);
+        while (p.endsWith("/")) p = p.substring(0, p.length() - 1);
+        return p;
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.HanldeImg.scripts.extract;
+
+public record ImageEntry(String path, Type type, long size, int mode) {
+
+    public enum Type {
+        FILE,
+        DIRECTORY,
+        SYMLINK
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.HanldeImg.scripts.extract;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface ImageExtractor {
+
+    String name();
+
+    boolean supports(Path image) throws IOException;
+
+    /**
+     * Умеет ли читать Android sparse образ без предварительного разворачивания.
+     */
+    default boolean readsSparse() {
+        return false;
+    }
+
+    List<ImageEntry> list(Path image) throws IOException, InterruptedException;
+
+    /**
+     * @param onFile вызывается для каждого записанного файла и симлинка, как только он готов (может вызываться из разных потоков)
+     */
+    void extract(Path image, Path targetDir, ExtractSelection selection, Consumer<Path> onFile)
+            throws IOException, InterruptedException;
+
+    default void extract(Path image, Path targetDir) throws IOException, InterruptedException {
+        extract(image, targetDir, ExtractSelection.ALL, p -> {});
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.HanldeImg.scripts.extract;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class ImageExtractors {
+
+    private final ExtractEngine engine;
+    private final Ext4Extractor ext4;
+    private final SevenZipExtractor sevenZip = new SevenZipExtractor();
+    private final boolean verifySparseCrc;
+
+    public ImageExtractors(ExtractEngine engine, int javaThreads, boolean verifySparseCrc) {
+        this.engine = engine;
+        this.ext4 = new Ext4Extractor(javaThreads);
+        this.verifySparseCrc = verifySparseCrc;
+    }
+
+    public static ImageExtractors sevenZipOnly() {
+        return new ImageExtractors(ExtractEngine.SEVEN_ZIP, 1, true);
+    }
+
+    public boolean verifySparseCrc() {
+        return verifySparseCrc;
+    }
+
+    public ImageExtractor forImage(Path image) throws IOException {
+        return switch (engine) {
+            case SEVEN_ZIP -> sevenZip;
+            case JAVA -> {
+                if (!ext4.supports(image)) {
+                    throw new IOException("Образ " + image.getFileName() + " не является поддерживаемым ext4");
+                }
+                yield ext4;
+            }
+            case AUTO -> ext4.supports(image) ? ext4 : sevenZip;
+        };
+    }
+}
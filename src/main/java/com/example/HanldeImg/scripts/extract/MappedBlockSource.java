@@ -0,0 +1,79 @@
+package com.example.HanldeImg.scripts.extract;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Образ, отображённый в память сегментами по 1 ГиБ (MappedByteBuffer ограничен 2 ГиБ).
+ */
+public class MappedBlockSource implements BlockSource {
+
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long size;
+
+    public MappedBlockSource(Path image) throws IOException {
+        this.channel = FileChannel.open(image, StandardOpenOption.READ);
+        this.size = channel.size();
+
+        int count = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+        this.segments = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = (long) i << SEGMENT_SHIFT;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void read(long offset, ByteBuffer dst) throws IOException {
+        int length = dst.remaining();
+        if (offset < 0 || offset + length > size) {
+            throw new EOFException("Чтение за пределами образа: " + offset + "+" + length + " > " + size);
+        }
+        while (dst.hasRemaining()) {
+            ByteBuffer segment = segments[(int) (offset >>> SEGMENT_SHIFT)];
+            int inSegment = (int) (offset & (SEGMENT_SIZE - 1));
+            int n = Math.min(dst.remaining(), segment.limit() - inSegment);
+            dst.put(dst.position(), segment, inSegment, n);
+            dst.position(dst.position() + n);
+            offset += n;
+        }
+    }
+
+    @Override
+    public void transferTo(long offset, long length, FileChannel out, long outPosition) throws IOException {
+        if (offset < 0 || offset + length > size) {
+            throw new EOFException("Чтение за пределами образа: " + offset + "+" + length + " > " + size);
+        }
+        long done = 0;
+        while (done < length) {
+            long pos = offset + done;
+            ByteBuffer segment = segments[(int) (pos >>> SEGMENT_SHIFT)];
+            int inSegment = (int) (pos & (SEGMENT_SIZE - 1));
+            int n = (int) Math.min(length - done, segment.limit() - inSegment);
+            ByteBuffer slice = segment.slice(inSegment, n);
+            while (slice.hasRemaining()) {
+                out.write(slice, outPosition + done + (slice.position()));
+            }
+            done += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
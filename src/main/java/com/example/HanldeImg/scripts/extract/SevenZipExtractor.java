@@ -0,0 +1,217 @@
+package com.example.HanldeImg.scripts.extract;
+
+import com.example.HanldeImg.scripts.process.ProcessRunner;
+import com.example.HanldeImg.scripts.process.ProcessRunner.Command;
+import com.example.HanldeImg.scripts.process.ProcessRunner.Result;
+import com.example.HanldeImg.scripts.process.ToolClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Распаковка через внешний 7z — подходит для любых форматов, которые понимает 7z.
+ */
+public class SevenZipExtractor implements ImageExtractor {
+
+    private static final Logger log = LoggerFactory.getLogger(SevenZipExtractor.class);
+
+    private static String findArchivator() {
+        return ProcessRunner.executable(ToolClass.SEVEN_ZIP);
+    }
+
+    @Override
+    public String name() {
+        return "7z";
+    }
+
+    @Override
+    public boolean supports(Path image) {
+        return true;
+    }
+
+    @Override
+    public List<ImageEntry> list(Path image) throws IOException, InterruptedException {
+        // листинг большой прошивки — сотни тысяч строк, разбираем его по мере чтения
+        ListingParser parser = new ListingParser();
+        run(List.of(findArchivator(), "l", "-ba", "-slt", image.toAbsolutePath().toString()), image, parser);
+        parser.accept("");
+        return parser.entries;
+    }
+
+    private static final class ListingParser implements Consumer<String> {
+        private final List<ImageEntry> entries = new ArrayList<>();
+        private String path;
+        private long size;
+        private String attributes = "";
+
+        @Override
+        public void accept(String line) {
+            line = line.strip();
+            if (line.isEmpty()) {
+                if (path != null) entries.add(toEntry(path, size, attributes));
+                path = null;
+                size = 0;
+                attributes = "";
+            } else if (line.startsWith("Path = ")) {
+                path = line.substring("Path = ".length());
+            } else if (line.startsWith("Size = ")) {
+                try {
+                    size = Long.parseLong(line.substring("Size = ".length()).trim());
+                } catch (NumberFormatException ignored) {
+                }
+            } else if (line.startsWith("Attributes = ")) {
+                attributes = line.substring("Attributes = ".length());
+            }
+        }
+    }
+
+    private static ImageEntry toEntry(String path, long size, String attributes) {
+        // Attributes выглядят как "D drwxr-xr-x" или "A -rw-r--r--"
+        String unix = attributes.contains(" ") ? attributes.substring(attributes.lastIndexOf(' ') + 1) : "";
+        ImageEntry.Type type = attributes.startsWith("D") || unix.startsWith("d")
+                ? ImageEntry.Type.DIRECTORY
+                : unix.startsWith("l") ? ImageEntry.Type.SYMLINK : ImageEntry.Type.FILE;
+        return new ImageEntry(path.replace('\\', '/'), type, size, parseMode(unix));
+    }
+
+    private static int parseMode(String unix) {
+        if (unix.length() != 10) return 0;
+        int mode = 0;
+        for (int i = 1; i < 10; i++) {
+            if (unix.charAt(i) != '-') mode |= 1 << (9 - i);
+        }
+        return mode;
+    }
+
+    @Override
+    public void extract(Path image, Path targetDir, ExtractSelection selection, Consumer<Path> onFile)
+            throws IOException, InterruptedException {
+        // в пустой каталог попадёт только то, что распакуем сейчас; в занятом (повторный LOAD) могут лежать
+        // файлы прошлых прогонов, и о распакованном судим по листингу образа, как Ext4Extractor
+        boolean fresh = isEmpty(targetDir);
+        Files.createDirectories(targetDir);
+
+        List<String> cmd = new ArrayList<>(List.of(
+                findArchivator(),
+                "x",
+                image.toAbsolutePath().toString(),
+                "-o" + targetDir.toAbsolutePath(),
+                "-y"
+        ));
+        cmd.addAll(selection.paths());
+
+        List<String> switches = selection.hasGlobs() ? wildcardSwitches(selection) : List.of();
+        List<ImageEntry> listing = !fresh || switches == null ? list(image) : null;
+
+        Path listFile = null;
+        if (switches == null) {
+            // glob не выразить маской 7z — перечисляем лишнее поимённо по листингу образа
+            listFile = excludeList(image, listing, targetDir, selection);
+            switches = List.of("-scsUTF-8", "-x@" + listFile.toAbsolutePath());
+        }
+        cmd.addAll(switches);
+
+        try {
+            run(cmd, image, null);
+        } finally {
+            if (listFile != null) Files.deleteIfExists(listFile);
+        }
+
+        if (listing == null) {
+            try (Stream<Path> walk = Files.walk(targetDir)) {
+                walk.filter(p -> !Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)).forEach(onFile);
+            }
+            return;
+        }
+        for (ImageEntry entry : listing) {
+            if (entry.type() == ImageEntry.Type.DIRECTORY || !selection.matches(entry.path())) continue;
+            Path file = targetDir.resolve(entry.path());
+            if (Files.exists(file, LinkOption.NOFOLLOW_LINKS)) onFile.accept(file);
+        }
+    }
+
+    private static boolean isEmpty(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return true;
+        try (Stream<Path> list = Files.list(dir)) {
+            return list.findAny().isEmpty();
+        }
+    }
+
+    /**
+     * Переводит glob'ы выборки в ключи 7z: имя на любой глубине — {@code -ir!}/{@code -xr!},
+     * путь от корня образа — {@code -i!}/{@code -x!} (каталог 7z берёт вместе с поддеревом).
+     *
+     * @return null, если какой-то glob маской 7z не выражается ({@code **} в середине пути)
+     */
+    static List<String> wildcardSwitches(ExtractSelection selection) {
+        List<String> switches = new ArrayList<>();
+        for (String glob : selection.includes()) {
+            String sw = wildcard(glob, "-i");
+            if (sw == null) return null;
+            switches.add(sw);
+        }
+        for (String glob : selection.excludes()) {
+            String sw = wildcard(glob, "-x");
+            if (sw == null) return null;
+            switches.add(sw);
+        }
+        return switches;
+    }
+
+    private static String wildcard(String glob, String prefix) {
+        boolean anyDepth = glob.indexOf('/') < 0 || glob.startsWith("**/");
+        String g = glob.startsWith("**/") ? glob.substring(3) : glob;
+        if (g.endsWith("/**")) g = g.substring(0, g.length() - 3);
+        if (g.isEmpty() || g.equals("**")) return prefix + "r!*";
+        if (g.contains("**")) return null;
+        if (anyDepth) {
+            // "**/a/b" — путь на любой глубине, маской 7z не выражается
+            return g.indexOf('/') < 0 ? prefix + "r!" + g : null;
+        }
+        return prefix + "!" + g;
+    }
+
+    /**
+     * Файл со списком путей образа, которые выборка отбрасывает: отброшенные каталоги целиком, файлы поимённо.
+     */
+    private static Path excludeList(Path image, List<ImageEntry> listing, Path targetDir, ExtractSelection selection)
+            throws IOException {
+        List<String> excluded = new ArrayList<>();
+        for (ImageEntry entry : listing) {
+            boolean keep = entry.type() == ImageEntry.Type.DIRECTORY
+                    ? selection.mayContain(entry.path())
+                    : selection.matches(entry.path());
+            if (!keep) excluded.add(entry.path());
+        }
+        Path listFile = Files.createTempFile(targetDir.toAbsolutePath().getParent(), "7z-exclude-", ".lst");
+        Files.write(listFile, excluded, StandardCharsets.UTF_8);
+        log.info("7z: по профилю пропускаем {} путей из {}", excluded.size(), image.getFileName());
+        return listFile;
+    }
+
+    private static void run(List<String> cmd, Path image, Consumer<String> onLine)
+            throws IOException, InterruptedException {
+        Command command = Command.of(ToolClass.SEVEN_ZIP, "7z " + cmd.get(1), cmd);
+        Result result = ProcessRunner.run(onLine != null ? command.onLine(onLine) : command);
+        if (result.ok()) {
+            return;
+        }
+
+        // Игнорируем ошибку из-за ссылок некоторых
+        if (result.exitCode() == 2 && result.tail().contains("Sub items Errors")) {
+            log.warn("7z завершился с предупреждениями (exit=2), но продолжаем:\n{}", result.tail());
+            return;
+        }
+
+        throw new RuntimeException("Ошибка 7z (" + result.exitCode() + ") для " + image.getFileName() + ":\n" + result.tail());
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.HanldeImg.scripts.extract;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Читает развёрнутое содержимое sparse образа прямо по карте чанков, не разворачивая его на диск.
+ * RAW чанки читаются из отображённого в память исходного файла, FILL/DONT_CARE синтезируются.
+ */
+public class SparseBlockSource implements BlockSource {
+
+    private final MappedBlockSource file;
+    private final long size;
+
+    // чанки в порядке развёрнутых смещений
+    private final long[] start;
+    private final long[] length;
+    private final int[] type;
+    private final long[] dataOffset;
+    private final int[] fill;
+
+    public SparseBlockSource(Path image) throws IOException {
+        this.file = new MappedBlockSource(image);
+        try (FileChannel ch = FileChannel.open(image, StandardOpenOption.READ)) {
+            SparseImage.Header header = SparseImage.readHeader(ch);
+
+            int count = (int) header.totalChunks();
+            long[] s = new long[count];
+            long[] l = new long[count];
+            int[] t = new int[count];
+            long[] d = new long[count];
+            int[] f = new int[count];
+
+            long offset = header.fileHeaderSize();
+            long position = 0;
+            int n = 0;
+            ByteBuffer chunkHeader = ByteBuffer.allocate(header.chunkHeaderSize()).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < count; i++) {
+                chunkHeader.clear();
+                file.read(offset, chunkHeader);
+                int chunkType = Short.toUnsignedInt(chunkHeader.getShort(0));
+                long blocks = Integer.toUnsignedLong(chunkHeader.getInt(4));
+                long totalSize = Integer.toUnsignedLong(chunkHeader.getInt(8));
+                long data = offset + header.chunkHeaderSize();
+
+                if (chunkType != SparseImage.CHUNK_CRC32 && blocks > 0) {
+                    s[n] = position;
+                    l[n] = blocks * header.blockSize();
+                    t[n] = chunkType;
+                    d[n] = data;
+                    if (chunkType == SparseImage.CHUNK_FILL) {
+                        ByteBuffer v = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+                        file.read(data, v);
+                        f[n] = v.getInt(0);
+                    } else if (chunkType != SparseImage.CHUNK_RAW && chunkType != SparseImage.CHUNK_DONT_CARE) {
+                        throw new IOException("Неизвестный тип чанка 0x" + Integer.toHexString(chunkType));
+                    }
+                    position += l[n];
+                    n++;
+                }
+                offset += totalSize;
+            }
+
+            this.start = Arrays.copyOf(s, n);
+            this.length = Arrays.copyOf(l, n);
+            this.type = Arrays.copyOf(t, n);
+            this.dataOffset = Arrays.copyOf(d, n);
+            this.fill = Arrays.copyOf(f, n);
+            this.size = position;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void read(long offset, ByteBuffer dst) throws IOException {
+        while (dst.hasRemaining()) {
+            int c = chunkAt(offset);
+            long inChunk = offset - start[c];
+            int n = (int) Math.min(dst.remaining(), length[c] - inChunk);
+            ByteBuffer part = dst.slice(dst.position(), n);
+            switch (type[c]) {
+                case SparseImage.CHUNK_RAW -> file.read(dataOffset[c] + inChunk, part);
+                case SparseImage.CHUNK_FILL -> fillPattern(part, fill[c], inChunk);
+                default -> fillPattern(part, 0, inChunk);
+            }
+            dst.position(dst.position() + n);
+            offset += n;
+        }
+    }
+
+    @Override
+    public void transferTo(long offset, long length, FileChannel out, long outPosition) throws IOException {
+        long done = 0;
+        while (done < length) {
+            long pos = offset + done;
+            int c = chunkAt(pos);
+            long inChunk = pos - start[c];
+            long n = Math.min(length - done, this.length[c] - inChunk);
+            if (type[c] == SparseImage.CHUNK_RAW) {
+                file.transferTo(dataOffset[c] + inChunk, n, out, outPosition + done);
+            } else if (type[c] == SparseImage.CHUNK_FILL && fill[c] != 0) {
+                BlockSource.super.transferTo(pos, n, out, outPosition + done);
+            }
+            // DONT_CARE и нулевой FILL оставляем дырой
+            done += n;
+        }
+    }
+
+    private int chunkAt(long offset) throws IOException {
+        if (offset < 0 || offset >= size) {
+            throw new IOException("Чтение за пределами sparse образа: " + offset);
+        }
+        int i = Arrays.binarySearch(start, offset);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    private static void fillPattern(ByteBuffer part, int value, long inChunk) {
+        byte[] pattern = {
+                (byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24)
+        };
+        int phase = (int) (inChunk & 3);
+        for (int i = 0; i < part.remaining(); i++) {
+            part.put(i, pattern[(phase + i) & 3]);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
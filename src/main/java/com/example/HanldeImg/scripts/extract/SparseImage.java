@@ -0,0 +1,213 @@
+package com.example.HanldeImg.scripts.extract;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Android sparse image (simg): заголовок + чанки RAW / FILL / DONT_CARE / CRC32.
+ * Разворачивается за один потоковый проход позиционными записями: DONT_CARE и нулевой FILL
+ * остаются дырами в выходном файле.
+ */
+public final class SparseImage {
+
+    public static final int MAGIC = 0xED26FF3A;
+
+    static final int CHUNK_RAW = 0xCAC1;
+    static final int CHUNK_FILL = 0xCAC2;
+    static final int CHUNK_DONT_CARE = 0xCAC3;
+    static final int CHUNK_CRC32 = 0xCAC4;
+
+    private static final int FILE_HEADER_SIZE = 28;
+    private static final int CHUNK_HEADER_SIZE = 12;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final byte[] ZEROS = new byte[BUFFER_SIZE];
+
+    record Header(int blockSize, long totalBlocks, long totalChunks, int fileHeaderSize, int chunkHeaderSize, int checksum) {
+        long expandedSize() {
+            return totalBlocks * blockSize;
+        }
+    }
+
+    private SparseImage() {
+    }
+
+    public static boolean isSparse(Path image) throws IOException {
+        if (Files.size(image) < FILE_HEADER_SIZE) return false;
+        try (FileChannel ch = FileChannel.open(image, StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            ch.read(b, 0);
+            return b.flip().remaining() == 4 && b.getInt(0) == MAGIC;
+        }
+    }
+
+    public static boolean hasSparseMagic(byte[] head) {
+        return head.length >= 4
+                && ByteBuffer.wrap(head, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() == MAGIC;
+    }
+
+    public static long expand(Path sparse, Path raw, boolean verifyCrc) throws IOException {
+        try (InputStream in = Files.newInputStream(sparse);
+             FileChannel out = FileChannel.open(raw,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            return expand(Channels.newChannel(in), out, verifyCrc);
+        }
+    }
+
+    /**
+     * Разворачивает sparse-поток в {@code out}.
+     * @return размер развёрнутого образа
+     */
+    public static long expand(ReadableByteChannel in, FileChannel out, boolean verifyCrc) throws IOException {
+        Header header = readHeader(in);
+        CRC32 crc = verifyCrc ? new CRC32() : null;
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer chunkHeader = ByteBuffer.allocate(header.chunkHeaderSize()).order(ByteOrder.LITTLE_ENDIAN);
+
+        long position = 0;
+        for (long i = 0; i < header.totalChunks(); i++) {
+            chunkHeader.clear();
+            readFully(in, chunkHeader);
+            int type = Short.toUnsignedInt(chunkHeader.getShort(0));
+            long blocks = Integer.toUnsignedLong(chunkHeader.getInt(4));
+            long totalSize = Integer.toUnsignedLong(chunkHeader.getInt(8));
+            long dataSize = totalSize - header.chunkHeaderSize();
+            long bytes = blocks * header.blockSize();
+
+            switch (type) {
+                case CHUNK_RAW -> {
+                    if (dataSize != bytes) throw new IOException("Битый RAW чанк #" + i);
+                    long done = 0;
+                    while (done < bytes) {
+                        buf.clear();
+                        buf.limit((int) Math.min(buf.capacity(), bytes - done));
+                        readFully(in, buf);
+                        buf.flip();
+                        if (crc != null) crc.update(buf.array(), 0, buf.limit());
+                        while (buf.hasRemaining()) {
+                            done += out.write(buf, position + done);
+                        }
+                    }
+                }
+                case CHUNK_FILL -> {
+                    if (dataSize != 4) throw new IOException("Битый FILL чанк #" + i);
+                    int fill = readInt(in);
+                    if (fill != 0) {
+                        writeFill(out, position, bytes, fill, crc);
+                    } else if (crc != null) {
+                        updateZeros(crc, bytes);
+                    }
+                }
+                case CHUNK_DONT_CARE -> {
+                    skip(in, dataSize);
+                    if (crc != null) updateZeros(crc, bytes);
+                }
+                case CHUNK_CRC32 -> {
+                    if (dataSize != 4) throw new IOException("Битый CRC32 чанк #" + i);
+                    int expected = readInt(in);
+                    if (crc != null && (int) crc.getValue() != expected) {
+                        throw new IOException("CRC32 sparse образа не совпадает на чанке #" + i);
+                    }
+                }
+                default -> throw new IOException("Неизвестный тип чанка 0x" + Integer.toHexString(type) + " #" + i);
+            }
+            if (type != CHUNK_CRC32) position += bytes;
+        }
+
+        if (position != header.expandedSize()) {
+            throw new IOException("Sparse образ описывает " + position + " байт, а в заголовке " + header.expandedSize());
+        }
+        if (crc != null && header.checksum() != 0 && (int) crc.getValue() != header.checksum()) {
+            throw new IOException("CRC32 sparse образа не совпадает с заголовком");
+        }
+
+        // дыра в конце файла: фиксируем итоговый размер без записи нулей
+        if (out.size() < position) {
+            out.write(ByteBuffer.allocate(1), position - 1);
+        } else if (out.size() > position) {
+            out.truncate(position);
+        }
+        return position;
+    }
+
+    static Header readHeader(ReadableByteChannel in) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(in, b);
+        if (b.getInt(0) != MAGIC) {
+            throw new IOException("Это не Android sparse образ");
+        }
+        int major = Short.toUnsignedInt(b.getShort(4));
+        if (major != 1) {
+            throw new IOException("Неподдерживаемая версия sparse формата: " + major);
+        }
+        int fileHeaderSize = Short.toUnsignedInt(b.getShort(8));
+        int chunkHeaderSize = Short.toUnsignedInt(b.getShort(10));
+        if (fileHeaderSize < FILE_HEADER_SIZE || chunkHeaderSize < CHUNK_HEADER_SIZE) {
+            throw new IOException("Некорректный заголовок sparse образа");
+        }
+        skip(in, fileHeaderSize - FILE_HEADER_SIZE);
+        return new Header(
+                b.getInt(12),
+                Integer.toUnsignedLong(b.getInt(16)),
+                Integer.toUnsignedLong(b.getInt(20)),
+                fileHeaderSize,
+                chunkHeaderSize,
+                b.getInt(24)
+        );
+    }
+
+    private static void writeFill(FileChannel out, long position, long bytes, int fill, CRC32 crc) throws IOException {
+        ByteBuffer pattern = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, bytes)).order(ByteOrder.LITTLE_ENDIAN);
+        while (pattern.remaining() >= 4) pattern.putInt(fill);
+        pattern.flip();
+
+        long done = 0;
+        while (done < bytes) {
+            ByteBuffer chunk = pattern.duplicate();
+            chunk.limit((int) Math.min(chunk.capacity(), bytes - done));
+            if (crc != null) crc.update(chunk.array(), 0, chunk.limit());
+            while (chunk.hasRemaining()) {
+                done += out.write(chunk, position + done);
+            }
+        }
+    }
+
+    private static void updateZeros(CRC32 crc, long bytes) {
+        while (bytes > 0) {
+            int n = (int) Math.min(ZEROS.length, bytes);
+            crc.update(ZEROS, 0, n);
+            bytes -= n;
+        }
+    }
+
+    private static int readInt(ReadableByteChannel in) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(in, b);
+        return b.getInt(0);
+    }
+
+    private static void skip(ReadableByteChannel in, long bytes) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(bytes, 1)));
+        while (bytes > 0) {
+            b.clear();
+            b.limit((int) Math.min(b.capacity(), bytes));
+            readFully(in, b);
+            bytes -= b.limit();
+        }
+    }
+
+    static void readFully(ReadableByteChannel in, ByteBuffer dst) throws IOException {
+        while (dst.hasRemaining()) {
+            if (in.read(dst) < 0) throw new EOFException("Sparse образ оборван");
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.HanldeImg.scripts.extract;
+
+public enum SparseMode {
+    // разворачиваем sparse образ ещё при приёме загрузки
+    EXPAND,
+    // храним как есть: ext4 читается по карте чанков, для 7z разворачиваем перед распаковкой
+    DIRECT
+}
@@ -0,0 +1,52 @@
+package com.example.HanldeImg.scripts.flow;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Все стадии процесса: работающие сейчас и несколько последних завершённых, чтобы после задачи
+ * было видно, какая стадия была узким местом. Скрипты статические, поэтому и реестр общий.
+ */
+public final class FlowMonitor {
+
+    private static final int RECENT = 32;
+
+    private static final Set<Stage<?>> active = ConcurrentHashMap.newKeySet();
+    private static final Deque<Stage.Stats> recent = new ArrayDeque<>();
+
+    private FlowMonitor() {
+    }
+
+    static void started(Stage<?> stage) {
+        active.add(stage);
+    }
+
+    static void finished(Stage<?> stage) {
+        Stage.Stats stats = stage.stats();
+        active.remove(stage);
+        synchronized (recent) {
+            recent.addFirst(stats);
+            while (recent.size() > RECENT) recent.removeLast();
+        }
+    }
+
+    public static List<Stage.Stats> active() {
+        return active.stream()
+                .map(Stage::stats)
+                .sorted(Comparator.comparing(Stage.Stats::flow).thenComparing(Stage.Stats::stage))
+                .toList();
+    }
+
+    /**
+     * Завершённые стадии, последние — первыми.
+     */
+    public static List<Stage.Stats> recent() {
+        synchronized (recent) {
+            return List.copyOf(recent);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.HanldeImg.scripts.flow;
+
+/**
+ * Размеры стадий конвейера распаковка → apktool → хэширование.
+ *
+ * @param hashWorkers потоков хэширования файлов для индекса, 0 — по числу ядер
+ * @param hashQueue   сколько готовых файлов может ждать хэширования
+ * @param decodeQueue сколько найденных APK может ждать apktool
+ */
+public record FlowOptions(int hashWorkers, int hashQueue, int decodeQueue) {
+
+    public static FlowOptions defaults() {
+        return new FlowOptions(0, 4096, 256);
+    }
+
+    public int effectiveHashWorkers() {
+        return hashWorkers > 0 ? hashWorkers : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.HanldeImg.scripts.flow;
+
+import com.example.HanldeImg.scripts.metrics.PipelineMetrics;
+import com.example.HanldeImg.scripts.process.JobContext;
+import io.micrometer.observation.Observation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Стадия потока данных: ограниченная очередь и свой пул потоков. Производитель, упёршийся в полную
+ * очередь, ждёт — быстрая стадия не копит работу для медленной, а время ожидания видно в статистике.
+ * Если обработчик упал, стадия останавливается: очередь сбрасывается, следующий {@link #accept}
+ * бросает исключение, {@link #finish()} — {@link ExecutionException} с причиной.
+ *
+ * <p>Глубина очереди, занятость потоков и ожидание производителей доступны через {@link #stats()}
+ * и {@link FlowMonitor} — по ним подбираются размеры пулов.
+ */
+public final class Stage<T> implements Consumer<T>, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(Stage.class);
+
+    private static final Object END = new Object();
+    private static final long POLL_MILLIS = 50;
+
+    @FunctionalInterface
+    public interface Handler<T> {
+        void handle(T item) throws Exception;
+    }
+
+    /**
+     * @param utilisation        доля времени, которую потоки стадии были заняты, от 0 до 1
+     * @param producerWaitMillis сколько производители суммарно ждали места в очереди
+     */
+    public record Stats(String job, String flow, String stage, int workers, int capacity,
+                        int queued, int maxQueued, int busy, long processed, double utilisation,
+                        long producerWaitMillis, long elapsedMillis, boolean finished) {}
+
+    private final String job = JobContext.current();
+    // span, внутри которого создана стадия: работа в её потоках — его продолжение
+    private final Observation parent = PipelineMetrics.current();
+    private final String flow;
+    private final String name;
+    private final int workers;
+    private final int capacity;
+    private final BlockingQueue<Object> queue;
+    private final Handler<T> handler;
+    private final List<Thread> threads = new ArrayList<>();
+
+    private final long startedNanos = System.nanoTime();
+    private volatile long finishedNanos;
+    // когда поток взял текущий элемент, 0 — простаивает
+    private final AtomicLongArray itemStartedNanos;
+    private final AtomicInteger busy = new AtomicInteger();
+    private final AtomicInteger maxQueued = new AtomicInteger();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong producerWaitNanos = new AtomicLong();
+
+    private volatile Throwable failure;
+    private volatile boolean aborted;
+    private volatile boolean closed;
+
+    /**
+     * @param flow     чей это поток (обычно папка проекта) — для статистики
+     * @param workers  потоков обработки
+     * @param capacity сколько элементов может ждать в очереди
+     */
+    public Stage(String flow, String name, int workers, int capacity, Handler<T> handler) {
+        this.flow = flow;
+        this.name = name;
+        this.workers = Math.max(1, workers);
+        this.capacity = Math.max(1, capacity);
+        this.queue = new ArrayBlockingQueue<>(this.capacity);
+        this.handler = handler;
+        this.itemStartedNanos = new AtomicLongArray(this.workers);
+
+        for (int i = 0; i < this.workers; i++) {
+            int slot = i;
+            Thread t = new Thread(() -> work(slot), name + "-" + (i + 1));
+            t.setDaemon(true);
+            threads.add(t);
+        }
+        FlowMonitor.started(this);
+        threads.forEach(Thread::start);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Ставит элемент в очередь, при полной очереди ждёт.
+     *
+     * @throws CancellationException если стадию остановили или поток прервали
+     */
+    @Override
+    public void accept(T item) {
+        if (closed) throw new IllegalStateException("Стадия " + name + " уже закрыта для новых элементов");
+        check();
+        try {
+            if (!queue.offer(item)) {
+                long begin = System.nanoTime();
+                try {
+                    while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        check();
+                    }
+                } finally {
+                    producerWaitNanos.addAndGet(System.nanoTime() - begin);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Стадия " + name + ": ожидание очереди прервано");
+        }
+        maxQueued.accumulateAndGet(queue.size(), Math::max);
+    }
+
+    /**
+     * Новых элементов не будет: дожидается обработки очереди и останавливает потоки.
+     *
+     * @throws ExecutionException если обработчик упал, причина — его исключение
+     */
+    public void finish() throws InterruptedException, ExecutionException {
+        closed = true;
+        for (int i = 0; i < workers && failure == null && !aborted; i++) {
+            while (!queue.offer(END, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (failure != null || aborted) break;
+            }
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        done();
+        if (failure != null) throw new ExecutionException("Стадия " + name + " упала", failure);
+        if (aborted) throw new CancellationException("Стадия " + name + " остановлена");
+    }
+
+    /**
+     * Останавливает стадию, не дожидаясь очереди: текущие обработчики прерываются.
+     * После {@link #finish()} ничего не делает.
+     */
+    @Override
+    public void close() {
+        if (finishedNanos != 0) return;
+        closed = true;
+        abort();
+        try {
+            for (Thread t : threads) {
+                t.join(TimeUnit.MINUTES.toMillis(1));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        done();
+    }
+
+    public Stats stats() {
+        long now = System.nanoTime();
+        long end = finishedNanos != 0 ? finishedNanos : now;
+        long busyTotal = busyNanos.get();
+        // элементы, которые обрабатываются прямо сейчас, тоже считаются
+        for (int i = 0; i < workers; i++) {
+            long started = itemStartedNanos.get(i);
+            if (started != 0) busyTotal += now - started;
+        }
+        long elapsed = Math.max(1, end - startedNanos);
+        double utilisation = Math.min(1.0, (double) busyTotal / ((double) elapsed * workers));
+        return new Stats(job, flow, name, workers, capacity, queue.size(), maxQueued.get(), busy.get(),
+                processed.get(), Math.round(utilisation * 1000) / 1000.0,
+                producerWaitNanos.get() / 1_000_000, elapsed / 1_000_000, finishedNanos != 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void work(int slot) {
+        try (Observation.Scope scope = parent != null ? parent.openScope() : null) {
+            // обработчик мог проглотить прерывание от abort() — тогда поток выходит по флагу, а не ждёт в take()
+            while (!aborted) {
+                Object item = queue.take();
+                if (item == END || aborted) return;
+
+                long begin = System.nanoTime();
+                itemStartedNanos.set(slot, begin);
+                busy.incrementAndGet();
+                try {
+                    handler.handle((T) item);
+                    processed.incrementAndGet();
+                } catch (Throwable e) {
+                    fail(e);
+                } finally {
+                    busy.decrementAndGet();
+                    itemStartedNanos.set(slot, 0);
+                    busyNanos.addAndGet(System.nanoTime() - begin);
+                }
+            }
+        } catch (InterruptedException e) {
+            // стадию остановили
+        }
+    }
+
+    private void check() {
+        Throwable f = failure;
+        if (f != null) {
+            CancellationException e = new CancellationException("Стадия " + name + " остановлена: " + f);
+            e.initCause(f);
+            throw e;
+        }
+        if (aborted) throw new CancellationException("Стадия " + name + " остановлена");
+    }
+
+    private void fail(Throwable e) {
+        synchronized (this) {
+            // прерывание после остановки — следствие, а не причина
+            if (failure != null || aborted) return;
+            failure = e;
+        }
+        log.warn("Стадия {} ({}) остановлена: {}", name, flow, e.toString());
+        abort();
+    }
+
+    private void abort() {
+        aborted = true;
+        queue.clear();
+        threads.forEach(Thread::interrupt);
+    }
+
+    private synchronized void done() {
+        if (finishedNanos != 0) return;
+        finishedNanos = System.nanoTime();
+        FlowMonitor.finished(this);
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.HanldeImg.scripts.git;
+
+import com.example.HanldeImg.scripts.lfs.LfsOptions;
+import com.example.HanldeImg.scripts.metrics.PipelineMetrics;
+import com.example.HanldeImg.scripts.process.ProcessRunner;
+import com.example.HanldeImg.scripts.process.ProcessRunner.Command;
+import com.example.HanldeImg.scripts.process.ToolClass;
+import io.micrometer.observation.Observation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Внешний git: init / remote / fetch / reset / add / commit / pull / push отдельными процессами.
+ * С LFS файлы в указатели превращает фильтр git-lfs, а загружает его pre-push хук.
+ */
+public class CliGitPublisher implements GitPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(CliGitPublisher.class);
+    private static final Pattern WRITING_OBJECTS =
+            Pattern.compile("Writing objects: 100% \\(\\d+/\\d+\\), ([\\d.]+) (bytes|KiB|MiB|GiB)");
+
+    private final LfsOptions lfs;
+
+    public CliGitPublisher() {
+        this(null);
+    }
+
+    public CliGitPublisher(LfsOptions lfs) {
+        this.lfs = lfs;
+    }
+
+    @Override
+    public String name() {
+        return "cli";
+    }
+
+    @Override
+    public void prepare(Path workTree, String remote, boolean syncWithRemote) throws Exception {
+        Files.createDirectories(workTree);
+
+        if (!Files.exists(workTree.resolve(".git"))) {
+            log.info("Инициализация гит проекта");
+            requireSuccess(git(workTree, "init"), "git init");
+
+            log.info("Создание ветки: main");
+            requireSuccess(git(workTree, "branch", "-M", "main"), "git branch -M main");
+
+            log.info("Создание подключения к проекту в GitLab");
+            requireSuccess(git(workTree, "remote", "add", "origin", remote), "git remote add origin");
+        } else {
+            log.info("Локальный репозиторий уже существует — используем существующий");
+            Result setUrl = git(workTree, "remote", "set-url", "origin", remote);
+            if (setUrl.code() != 0) {
+                log.warn("git remote set-url origin завершился с кодом {}, продолжаем", setUrl.code());
+            }
+        }
+
+        if (lfs != null) {
+            Result lfsInstall = git(workTree, "lfs", "install", "--local");
+            if (lfsInstall.code() != 0) {
+                log.warn("git lfs install завершился с кодом {} — git-lfs не установлен? Крупные файлы уйдут обычными blob'ами.\n{}",
+                        lfsInstall.code(), lfsInstall.output());
+            }
+        }
+
+        if (!syncWithRemote) return;
+
+        log.info("Подтягиваем изменения из origin (fetch)");
+        Result fetch = step("fetch", workTree, "fetch", "origin", "-v");
+        log.info("git fetch exit code = {}", fetch.code());
+        if (fetch.code() != 0) {
+            throw new RuntimeException("git fetch failed with exit code " + fetch.code());
+        }
+
+        log.info("Переключаемся на main");
+        requireSuccess(git(workTree, "checkout", "-B", "main"), "git checkout -B main");
+
+        log.info("Сбрасываем локальные изменения в состояние origin/main (если ветка существует)");
+        Result reset = git(workTree, "reset", "--hard", "origin/main");
+        if (reset.code() != 0) {
+            // Это нормально, если remote пустой и ветки main ещё нет
+            log.warn("git reset --hard origin/main завершился с кодом {} (возможно, remote ещё пустой). Продолжаем.\n{}",
+                    reset.code(), reset.output());
+        }
+    }
+
+    @Override
+    public String publish(Path workTree, String message, boolean rebase) throws Exception {
+        if (lfs != null && lfs.rules().writeAttributes(workTree)) {
+            log.info("Обновлён .gitattributes с правилами LFS");
+        }
+
+        log.info("Добавление файлов образа в проект");
+        requireSuccess(step("add", workTree, "add", "."), "git add .");
+
+        log.info("Коммитим изменения");
+        Result commit = step("commit", workTree, "commit", "--allow-empty", "-m", message);
+        if (commit.code() != 0) {
+            log.warn("git commit завершился с кодом {} (возможно, нечего коммитить)", commit.code());
+        }
+
+        if (rebase) {
+            log.info("Делаем pull --rebase перед push (чтобы не было fetch first)");
+            Result pull = step("pull", workTree, "pull", "--rebase", "origin", "main", "-v");
+            if (pull.code() != 0) {
+                // бывает, если remote пустой/нет main — не критично
+                log.warn("git pull --rebase завершился с кодом {}. Продолжаем.\n{}", pull.code(), pull.output());
+            }
+        }
+
+        log.info("Пушим содержимое в репозиторий");
+        // --progress: без терминала git иначе не пишет, сколько байт отправил
+        Result push = step("push", workTree, "push", "--progress", "-u", "origin", "main", "-v");
+        log.info("git push exit code = {}", push.code());
+        if (push.code() != 0) {
+            throw new RuntimeException("git push failed with exit code " + push.code() + "\nOutput:\n" + push.output());
+        }
+        PipelineMetrics.pushBytes(pushedBytes(push.output()), name());
+
+        Result head = git(workTree, "rev-parse", "HEAD");
+        return head.code() == 0 ? head.output().trim() : null;
+    }
+
+    private record Result(int code, String output) {}
+
+    /**
+     * Размер отправленного пакета из строки {@code Writing objects: 100% (12/12), 1.50 MiB | ...}.
+     *
+     * @return 0, если git ничего не отправлял
+     */
+    static long pushedBytes(String output) {
+        Matcher m = WRITING_OBJECTS.matcher(output);
+        long bytes = 0;
+        while (m.find()) {
+            double value = Double.parseDouble(m.group(1));
+            long unit = switch (m.group(2)) {
+                case "KiB" -> 1L << 10;
+                case "MiB" -> 1L << 20;
+                case "GiB" -> 1L << 30;
+                default -> 1;
+            };
+            // строка прогресса повторяется, последнее значение — итоговое
+            bytes = (long) (value * unit);
+        }
+        return bytes;
+    }
+
+    private static Result step(String step, Path workTree, String... args) throws Exception {
+        Observation observation = PipelineMetrics.start(PipelineMetrics.GIT, "git " + step,
+                "backend", "cli", "step", step);
+        try (Observation.Scope scope = observation.openScope()) {
+            return git(workTree, args);
+        } catch (Exception e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+        }
+    }
+
+    private static void requireSuccess(Result result, String what) {
+        if (result.code() != 0) {
+            throw new RuntimeException(what + " failed with code " + result.code());
+        }
+    }
+
+    private static Result git(Path workTree, String... args) throws Exception {
+        List<String> cmd = new ArrayList<>(args.length + 1);
+        cmd.add(ProcessRunner.executable(ToolClass.GIT));
+        cmd.addAll(List.of(args));
+
+        ProcessRunner.Result result = ProcessRunner.run(Command.of(ToolClass.GIT, "git " + args[0], cmd)
+                .in(workTree)
+                .env("GIT_SSH_COMMAND", "ssh -oBatchMode=yes"));
+        return new Result(result.exitCode(), result.tail());
+    }
+}
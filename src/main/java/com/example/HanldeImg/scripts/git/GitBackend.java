@@ -0,0 +1,20 @@
+package com.example.HanldeImg.scripts.git;
+
+import com.example.HanldeImg.scripts.lfs.LfsOptions;
+
+public enum GitBackend {
+    // цепочка процессов git, как раньше
+    CLI,
+    // JGit внутри процесса: параллельное хэширование, сразу packfile
+    JGIT;
+
+    /**
+     * @param lfs null — без LFS
+     */
+    public GitPublisher create(int threads, LfsOptions lfs) {
+        return switch (this) {
+            case CLI -> new CliGitPublisher(lfs);
+            case JGIT -> new JGitPublisher(threads, lfs);
+        };
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.HanldeImg.scripts.git;
+
+import com.example.HanldeImg.scripts.index.FileIndex;
+
+import java.nio.file.Path;
+
+/**
+ * Работа с git-репозиторием проекта: подготовка рабочего дерева и публикация снимка в origin/main.
+ */
+public interface GitPublisher {
+
+    String name();
+
+    /**
+     * Создаёт репозиторий с веткой main и origin = {@code remote}, если его ещё нет.
+     * При {@code syncWithRemote} подтягивает origin и сбрасывает рабочее дерево на origin/main.
+     */
+    void prepare(Path workTree, String remote, boolean syncWithRemote) throws Exception;
+
+    /**
+     * Фиксирует всё содержимое рабочего дерева одним коммитом и пушит его в origin/main.
+     * При {@code rebase} перед пушем учитываются коммиты, появившиеся в origin.
+     *
+     * @return id созданного коммита
+     */
+    String publish(Path workTree, String message, boolean rebase) throws Exception;
+
+    /**
+     * То же, но список файлов рабочего дерева уже известен из индекса пайплайна, и реализация
+     * может не обходить дерево. По умолчанию индекс не используется.
+     */
+    default String publish(Path workTree, String message, boolean rebase, FileIndex index) throws Exception {
+        return publish(workTree, message, rebase);
+    }
+}
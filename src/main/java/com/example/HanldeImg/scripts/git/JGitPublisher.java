@@ -0,0 +1,653 @@
+package com.example.HanldeImg.scripts.git;
+
+import com.example.HanldeImg.scripts.index.FileIndex;
+import com.example.HanldeImg.scripts.lfs.LfsClient.UploadReport;
+import com.example.HanldeImg.scripts.lfs.LfsOptions;
+import com.example.HanldeImg.scripts.lfs.LfsPointer;
+import com.example.HanldeImg.scripts.lfs.LfsStore;
+import com.example.HanldeImg.scripts.metrics.PipelineMetrics;
+import io.micrometer.observation.Observation;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.ignore.IgnoreNode;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.PackInserter;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Git внутри процесса на JGit. Вместо {@code git add .} дерево обходится один раз, blob'ы
+ * хэшируются параллельно и пишутся сразу в packfile (свой на каждый поток), дерево и коммит
+ * строятся из получившегося индекса. Файлы, не изменившиеся с прошлого индекса, не перечитываются.
+ * С LFS крупные файлы кладутся в .git/lfs/objects, в коммит идёт указатель, а недостающие
+ * на сервере объекты загружаются перед push.
+ */
+public class JGitPublisher implements GitPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(JGitPublisher.class);
+    private static final String BRANCH = "main";
+    private static final String BRANCH_REF = Constants.R_HEADS + BRANCH;
+    private static final String REMOTE_REF = Constants.R_REMOTES + "origin/" + BRANCH;
+
+    private final int threads;
+    private final LfsOptions lfs;
+
+    public JGitPublisher(int threads) {
+        this(threads, null);
+    }
+
+    /**
+     * @param threads сколько потоков хэширует blob'ы, 0 — по числу ядер
+     * @param lfs     null — без LFS
+     */
+    public JGitPublisher(int threads, LfsOptions lfs) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.lfs = lfs;
+    }
+
+    @Override
+    public String name() {
+        return "jgit";
+    }
+
+    @Override
+    public void prepare(Path workTree, String remote, boolean syncWithRemote) throws Exception {
+        Files.createDirectories(workTree);
+
+        boolean exists = Files.exists(workTree.resolve(".git"));
+        if (!exists) {
+            log.info("Инициализация гит проекта (jgit), ветка {}", BRANCH);
+            Git.init().setDirectory(workTree.toFile()).setInitialBranch(BRANCH).call().close();
+        }
+
+        try (Repository repo = open(workTree); Git git = new Git(repo)) {
+            StoredConfig config = repo.getConfig();
+            config.setString("remote", "origin", "url", remote);
+            config.setString("remote", "origin", "fetch", "+refs/heads/*:refs/remotes/origin/*");
+            config.save();
+
+            if (!syncWithRemote) return;
+
+            log.info("Подтягиваем изменения из origin (fetch)");
+            try {
+                git.fetch().setRemote("origin").call();
+            } catch (Exception e) {
+                throw new RuntimeException("git fetch failed: " + e.getMessage(), e);
+            }
+
+            RefUpdate head = repo.updateRef(Constants.HEAD);
+            head.disableRefLog();
+            head.link(BRANCH_REF);
+
+            Ref remoteMain = repo.exactRef(REMOTE_REF);
+            if (remoteMain == null) {
+                // Это нормально, если remote пустой и ветки main ещё нет
+                log.warn("{} не найден (возможно, remote ещё пустой). Продолжаем.", REMOTE_REF);
+                return;
+            }
+            log.info("Сбрасываем рабочее дерево в состояние origin/main");
+            git.reset().setMode(ResetCommand.ResetType.HARD).setRef(REMOTE_REF).call();
+        }
+    }
+
+    @Override
+    public String publish(Path workTree, String message, boolean rebase) throws Exception {
+        return publish(workTree, message, rebase, null);
+    }
+
+    /**
+     * С индексом дерево не обходится, а blob, id которого уже есть в индексе и в репозитории, не перечитывается.
+     */
+    @Override
+    public String publish(Path workTree, String message, boolean rebase, FileIndex fileIndex) throws Exception {
+        try (Steps steps = new Steps()) {
+            try {
+                return commitAndPush(workTree, message, rebase, fileIndex, steps);
+            } catch (Exception e) {
+                steps.error(e);
+                throw e;
+            }
+        }
+    }
+
+    private String commitAndPush(Path workTree, String message, boolean rebase, FileIndex fileIndex, Steps steps)
+            throws Exception {
+        try (Repository repo = open(workTree); Git git = new Git(repo)) {
+            if (!(repo instanceof FileRepository fileRepo)) {
+                throw new IllegalStateException("Ожидался файловый репозиторий: " + workTree);
+            }
+
+            long started = System.nanoTime();
+            steps.begin("add");
+            LfsStore lfsStore = lfs != null ? new LfsStore(repo.getDirectory().toPath()) : null;
+            if (lfs != null && lfs.rules().writeAttributes(workTree, fileIndex)) {
+                log.info("Обновлён .gitattributes с правилами LFS");
+            }
+
+            List<Item> items = fileIndex != null ? itemsFromIndex(workTree, fileIndex) : scan(workTree);
+            if (lfs != null) {
+                for (Item item : items) {
+                    item.lfs = item.mode != FileMode.SYMLINK && lfs.rules().matches(item.path, item.length);
+                }
+            }
+
+            Path indexFile = repo.getIndexFile().toPath();
+            Map<String, DirCacheEntry> previous = previousIndex(repo, indexFile);
+            Instant indexTime = Files.exists(indexFile) ? Files.getLastModifiedTime(indexFile).toInstant() : Instant.MIN;
+
+            List<Item> toHash = new ArrayList<>();
+            try (ObjectReader reader = repo.newObjectReader()) {
+                for (Item item : items) {
+                    if (item.indexId != null) {
+                        // хэш из индекса пайплайна посчитан по содержимому; stat тут не годится: файлы из образа
+                        // часто несут одно и то же mtime, и изменённый файл того же размера выглядел бы прежним
+                        if (!item.lfs && reader.has(item.indexId)) {
+                            item.id = item.indexId;
+                        } else {
+                            toHash.add(item);
+                        }
+                        continue;
+                    }
+                    DirCacheEntry old = previous.get(item.path);
+                    // файл, изменённый позже записи индекса, мог поменяться в ту же секунду — перехэшируем
+                    if (old != null
+                            && old.getFileMode() == item.mode
+                            && old.getLength() == item.length
+                            && old.getLastModifiedInstant().equals(item.modified)
+                            && item.modified.isBefore(indexTime)
+                            && reuse(reader, item, old.getObjectId(), lfsStore)) {
+                        item.id = old.getObjectId();
+                    } else {
+                        toHash.add(item);
+                    }
+                }
+            }
+            log.info("Файлов в дереве: {}, к хэшированию: {}, потоков: {}", items.size(), toHash.size(), threads);
+
+            hashBlobs(fileRepo, toHash, lfsStore);
+            // новое содержимое коммита — его и придётся отправить (до сжатия в пакет)
+            long newBytes = toHash.stream().filter(i -> !i.lfs).mapToLong(i -> i.length).sum();
+
+            steps.begin("commit");
+
+            ObjectId current = repo.resolve(BRANCH_REF);
+            ObjectId parent = rebase ? rebaseParent(repo, git, current) : current;
+
+            ObjectId commitId;
+            DirCache index = repo.lockDirCache();
+            try {
+                DirCacheBuilder builder = index.builder();
+                for (Item item : items) {
+                    DirCacheEntry entry = new DirCacheEntry(item.path);
+                    entry.setFileMode(item.mode);
+                    entry.setLength(item.length);
+                    entry.setLastModified(item.modified);
+                    entry.setObjectId(item.id);
+                    builder.add(entry);
+                }
+                builder.finish();
+
+                try (ObjectInserter inserter = fileRepo.getObjectDatabase().newPackInserter()) {
+                    ObjectId tree = index.writeTree(inserter);
+
+                    PersonIdent ident = new PersonIdent(repo);
+                    CommitBuilder commit = new CommitBuilder();
+                    commit.setTreeId(tree);
+                    if (parent != null) commit.setParentId(parent);
+                    commit.setAuthor(ident);
+                    commit.setCommitter(ident);
+                    commit.setMessage(message.endsWith("\n") ? message : message + "\n");
+                    commitId = inserter.insert(commit);
+                    inserter.flush();
+                }
+
+                index.write();
+                index.commit();
+            } finally {
+                index.unlock();
+            }
+
+            updateBranch(repo, commitId, current, message);
+            log.info("Коммит {} создан за {} мс", commitId.name(), (System.nanoTime() - started) / 1_000_000);
+
+            steps.begin("push");
+            if (lfs != null && lfs.client() != null) {
+                List<LfsPointer> pointers = items.stream().filter(i -> i.pointer != null).map(i -> i.pointer).toList();
+                UploadReport report = lfs.client().upload(pointers, lfsStore);
+                log.info("LFS: в коммите {} объектов, загружено {}", report.total(), report.uploaded());
+            }
+
+            push(git);
+            PipelineMetrics.pushBytes(newBytes, name());
+
+            StoredConfig config = repo.getConfig();
+            config.setString("branch", BRANCH, "remote", "origin");
+            config.setString("branch", BRANCH, "merge", BRANCH_REF);
+            config.save();
+
+            return commitId.name();
+        }
+    }
+
+    /**
+     * Шаги публикации как у git — add (хэширование blob'ов), commit, push (вместе с загрузкой LFS):
+     * каждый своим таймером и span'ом.
+     */
+    private static final class Steps implements AutoCloseable {
+        private Observation current;
+
+        void begin(String step) {
+            close();
+            current = PipelineMetrics.start(PipelineMetrics.GIT, "git " + step, "backend", "jgit", "step", step);
+        }
+
+        void error(Throwable e) {
+            if (current != null) current.error(e);
+        }
+
+        @Override
+        public void close() {
+            if (current != null) current.stop();
+            current = null;
+        }
+    }
+
+    private static Repository open(Path workTree) throws IOException {
+        return new FileRepositoryBuilder()
+                .setWorkTree(workTree.toFile())
+                .setGitDir(workTree.resolve(".git").toFile())
+                .setMustExist(true)
+                .build();
+    }
+
+    /**
+     * Если в origin/main появились чужие коммиты, новый снимок вешается поверх них:
+     * содержимое коммита — это целиком распакованный образ, так что переносить нечего.
+     */
+    private static ObjectId rebaseParent(Repository repo, Git git, ObjectId parent) {
+        try {
+            git.fetch().setRemote("origin").call();
+        } catch (Exception e) {
+            // бывает, если remote пустой/нет main — не критично
+            log.warn("git fetch перед push завершился ошибкой: {}. Продолжаем.", e.getMessage());
+            return parent;
+        }
+
+        try (RevWalk walk = new RevWalk(repo)) {
+            ObjectId remote = repo.resolve(REMOTE_REF);
+            if (remote == null) return parent;
+            if (parent == null) return remote;
+            if (walk.isMergedInto(walk.parseCommit(remote), walk.parseCommit(parent))) return parent;
+
+            log.warn("origin/main ушёл вперёд ({}), новый коммит строим поверх него", remote.name());
+            return remote;
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось сравнить main и origin/main", e);
+        }
+    }
+
+    private static void updateBranch(Repository repo, ObjectId commitId, ObjectId previous, String message)
+            throws IOException {
+        RefUpdate head = repo.updateRef(Constants.HEAD);
+        head.disableRefLog();
+        head.link(BRANCH_REF);
+
+        RefUpdate ru = repo.updateRef(BRANCH_REF);
+        ru.setNewObjectId(commitId);
+        ru.setExpectedOldObjectId(previous != null ? previous : ObjectId.zeroId());
+        ru.setRefLogMessage("commit: " + message, false);
+        RefUpdate.Result result = ru.forceUpdate();
+        switch (result) {
+            case NEW, FORCED, FAST_FORWARD, NO_CHANGE -> {
+            }
+            default -> throw new RuntimeException("Не удалось обновить " + BRANCH_REF + ": " + result);
+        }
+    }
+
+    private static void push(Git git) throws Exception {
+        log.info("Пушим содержимое в репозиторий");
+        Iterable<PushResult> results;
+        try {
+            results = git.push()
+                    .setRemote("origin")
+                    .setRefSpecs(new RefSpec(BRANCH_REF + ":" + BRANCH_REF))
+                    .call();
+        } catch (Exception e) {
+            throw new RuntimeException("git push failed: " + e.getMessage(), e);
+        }
+
+        for (PushResult result : results) {
+            for (RemoteRefUpdate update : result.getRemoteUpdates()) {
+                switch (update.getStatus()) {
+                    case OK, UP_TO_DATE -> log.info("git push {}: {}", update.getRemoteName(), update.getStatus());
+                    default -> throw new RuntimeException("git push failed: " + update.getStatus()
+                            + (update.getMessage() != null ? " " + update.getMessage() : "")
+                            + "\nOutput:\n" + result.getMessages());
+                }
+            }
+        }
+    }
+
+    /**
+     * blob из прошлого индекса годится, только если он того же вида, что нужен сейчас:
+     * правила LFS могли поменяться, а объект в локальном хранилище — пропасть.
+     */
+    private static boolean reuse(ObjectReader reader, Item item, ObjectId id, LfsStore store) throws IOException {
+        if (item.mode == FileMode.SYMLINK) return true;
+        try {
+            long blobSize = reader.getObjectSize(id, Constants.OBJ_BLOB);
+            if (!item.lfs) {
+                return blobSize == item.length;
+            }
+            if (blobSize > LfsPointer.MAX_SIZE) return false;
+            LfsPointer pointer = LfsPointer.parse(reader.open(id, Constants.OBJ_BLOB).getCachedBytes());
+            if (pointer == null || pointer.size() != item.length || !store.contains(pointer)) return false;
+            item.pointer = pointer;
+            return true;
+        } catch (MissingObjectException e) {
+            return false;
+        }
+    }
+
+    private static Map<String, DirCacheEntry> previousIndex(Repository repo, Path indexFile) {
+        Map<String, DirCacheEntry> byPath = new HashMap<>();
+        if (!Files.exists(indexFile)) return byPath;
+        try {
+            DirCache index = repo.readDirCache();
+            for (int i = 0; i < index.getEntryCount(); i++) {
+                DirCacheEntry e = index.getEntry(i);
+                if (e.getStage() == DirCacheEntry.STAGE_0) byPath.put(e.getPathString(), e);
+            }
+        } catch (Exception e) {
+            log.warn("Индекс {} не прочитан, хэшируем все файлы: {}", indexFile, e.getMessage());
+            byPath.clear();
+        }
+        return byPath;
+    }
+
+    /**
+     * Каждый поток пишет свой packfile: PackInserter не потокобезопасен, а так нет ни общей
+     * блокировки, ни промежуточных loose-объектов. Уже существующие объекты повторно не пишутся.
+     */
+    private void hashBlobs(FileRepository repo, List<Item> items, LfsStore lfsStore)
+            throws IOException, InterruptedException {
+        if (items.isEmpty()) return;
+
+        int workers = Math.min(threads, items.size());
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "git-hash-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            List<Future<?>> futures = new ArrayList<>(workers);
+            for (int w = 0; w < workers; w++) {
+                int first = w;
+                futures.add(pool.submit(() -> {
+                    try (PackInserter inserter = repo.getObjectDatabase().newPackInserter()) {
+                        for (int i = first; i < items.size(); i += workers) {
+                            Item item = items.get(i);
+                            item.id = insertBlob(inserter, item, lfsStore);
+                        }
+                        inserter.flush();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re;
+            throw new RuntimeException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static ObjectId insertBlob(ObjectInserter inserter, Item item, LfsStore lfsStore) throws IOException {
+        if (item.lfs) {
+            item.pointer = lfsStore.store(item.file);
+            item.length = item.pointer.size();
+            return inserter.insert(Constants.OBJ_BLOB, item.pointer.toBytes());
+        }
+        if (item.mode == FileMode.SYMLINK) {
+            byte[] target = Files.readSymbolicLink(item.file).toString().getBytes(StandardCharsets.UTF_8);
+            return inserter.insert(Constants.OBJ_BLOB, target);
+        }
+        long length = Files.size(item.file);
+        item.length = length;
+        try (InputStream in = Files.newInputStream(item.file)) {
+            return inserter.insert(Constants.OBJ_BLOB, length, in);
+        }
+    }
+
+    private static final class Item {
+        final String path;
+        final Path file;
+        final FileMode mode;
+        final Instant modified;
+        long length;
+        ObjectId id;
+        // id blob'а из индекса пайплайна, если файл пришёл оттуда
+        ObjectId indexId;
+        boolean lfs;
+        LfsPointer pointer;
+
+        Item(String path, Path file, FileMode mode, long length, Instant modified) {
+            this.path = path;
+            this.file = file;
+            this.mode = mode;
+            this.length = length;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * Обход рабочего дерева с учётом .gitignore на каждом уровне, как у {@code git add .}.
+     */
+    private static List<Item> scan(Path workTree) throws IOException {
+        List<Item> items = new ArrayList<>();
+        Deque<IgnoreFrame> ignores = new ArrayDeque<>();
+
+        Files.walkFileTree(workTree, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(workTree)) {
+                    if (dir.getFileName().toString().equals(Constants.DOT_GIT)) return FileVisitResult.SKIP_SUBTREE;
+                    if (isIgnored(ignores, relative(workTree, dir), true)) return FileVisitResult.SKIP_SUBTREE;
+                }
+                ignores.push(new IgnoreFrame(relative(workTree, dir), loadIgnore(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null) throw exc;
+                ignores.pop();
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String path = relative(workTree, file);
+                if (isIgnored(ignores, path, false)) return FileVisitResult.CONTINUE;
+
+                if (attrs.isSymbolicLink()) {
+                    String target = Files.readSymbolicLink(file).toString();
+                    items.add(new Item(path, file, FileMode.SYMLINK,
+                            target.getBytes(StandardCharsets.UTF_8).length, attrs.lastModifiedTime().toInstant()));
+                } else if (attrs.isRegularFile()) {
+                    FileMode mode = isExecutable(file) ? FileMode.EXECUTABLE_FILE : FileMode.REGULAR_FILE;
+                    items.add(new Item(path, file, mode, attrs.size(), attrs.lastModifiedTime().toInstant()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return items;
+    }
+
+    /**
+     * Файлы из индекса пайплайна плюс файлы корня, которых в нём нет (.gitignore, .gitattributes).
+     * Правила .gitignore применяются те же, что при обходе.
+     */
+    private static List<Item> itemsFromIndex(Path workTree, FileIndex index) throws IOException {
+        Map<String, IgnoreNode> ignores = new HashMap<>();
+        IgnoreNode rootIgnore = loadIgnore(workTree);
+        if (rootIgnore != null) ignores.put("", rootIgnore);
+        for (int i = 0; i < index.size(); i++) {
+            String path = index.path(i);
+            if (path.endsWith("/" + Constants.GITIGNORE_FILENAME)) {
+                String dir = path.substring(0, path.lastIndexOf('/'));
+                IgnoreNode node = loadIgnore(workTree.resolve(dir));
+                if (node != null) ignores.put(dir, node);
+            }
+        }
+
+        Map<String, Boolean> ignoredDirs = new HashMap<>();
+        List<Item> items = new ArrayList<>(index.size() + 4);
+        for (int i = 0; i < index.size(); i++) {
+            String path = index.path(i);
+            if (isIgnored(ignores, ignoredDirs, path)) continue;
+            FileMode mode = switch (index.mode(i)) {
+                case FileIndex.MODE_SYMLINK -> FileMode.SYMLINK;
+                case FileIndex.MODE_EXECUTABLE -> FileMode.EXECUTABLE_FILE;
+                default -> FileMode.REGULAR_FILE;
+            };
+            Item item = new Item(path, workTree.resolve(path), mode, index.size(i), Instant.ofEpochMilli(index.mtime(i)));
+            item.indexId = ObjectId.fromRaw(index.hash(i));
+            items.add(item);
+        }
+
+        try (DirectoryStream<Path> root = Files.newDirectoryStream(workTree)) {
+            for (Path file : root) {
+                String name = file.getFileName().toString();
+                if (name.equals(Constants.DOT_GIT) || index.find(name) >= 0) continue;
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (!attrs.isRegularFile() || isIgnored(ignores, ignoredDirs, name)) continue;
+                FileMode mode = isExecutable(file) ? FileMode.EXECUTABLE_FILE : FileMode.REGULAR_FILE;
+                items.add(new Item(name, file, mode, attrs.size(), attrs.lastModifiedTime().toInstant()));
+            }
+        }
+        return items;
+    }
+
+    private static boolean isIgnored(Map<String, IgnoreNode> ignores, Map<String, Boolean> ignoredDirs, String path) {
+        int slash = path.lastIndexOf('/');
+        String dir = slash < 0 ? "" : path.substring(0, slash);
+        if (!dir.isEmpty() && isIgnoredDir(ignores, ignoredDirs, dir)) return true;
+        return checkIgnored(ignores, dir, path, false);
+    }
+
+    private static boolean isIgnoredDir(Map<String, IgnoreNode> ignores, Map<String, Boolean> ignoredDirs, String dir) {
+        Boolean cached = ignoredDirs.get(dir);
+        if (cached != null) return cached;
+        int slash = dir.lastIndexOf('/');
+        String parent = slash < 0 ? "" : dir.substring(0, slash);
+        boolean ignored = (!parent.isEmpty() && isIgnoredDir(ignores, ignoredDirs, parent))
+                || checkIgnored(ignores, parent, dir, true);
+        ignoredDirs.put(dir, ignored);
+        return ignored;
+    }
+
+    /**
+     * Правила проверяются от папки, где лежит путь, вверх до корня: ближайший .gitignore важнее.
+     */
+    private static boolean checkIgnored(Map<String, IgnoreNode> ignores, String dir, String path, boolean directory) {
+        String d = dir;
+        while (true) {
+            IgnoreNode node = ignores.get(d);
+            if (node != null) {
+                Boolean ignored = node.checkIgnored(d.isEmpty() ? path : path.substring(d.length() + 1), directory);
+                if (ignored != null) return ignored;
+            }
+            if (d.isEmpty()) return false;
+            int slash = d.lastIndexOf('/');
+            d = slash < 0 ? "" : d.substring(0, slash);
+        }
+    }
+
+    private record IgnoreFrame(String dir, IgnoreNode node) {}
+
+    private static IgnoreNode loadIgnore(Path dir) throws IOException {
+        Path gitignore = dir.resolve(Constants.GITIGNORE_FILENAME);
+        if (!Files.isRegularFile(gitignore, LinkOption.NOFOLLOW_LINKS)) return null;
+        IgnoreNode node = new IgnoreNode();
+        try (InputStream in = Files.newInputStream(gitignore)) {
+            node.parse(in);
+        }
+        return node;
+    }
+
+    private static boolean isIgnored(Deque<IgnoreFrame> frames, String path, boolean directory) {
+        // ближайший .gitignore важнее родительских
+        Iterator<IgnoreFrame> it = frames.iterator();
+        while (it.hasNext()) {
+            IgnoreFrame frame = it.next();
+            if (frame.node() == null) continue;
+            String rel = frame.dir().isEmpty() ? path : path.substring(frame.dir().length() + 1);
+            Boolean ignored = frame.node().checkIgnored(rel, directory);
+            if (ignored != null) return ignored;
+        }
+        return false;
+    }
+
+    private static boolean isExecutable(Path file) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(file, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+        return view != null && view.readAttributes().permissions().contains(PosixFilePermission.OWNER_EXECUTE);
+    }
+
+    private static String relative(Path root, Path p) {
+        return root.relativize(p).toString().replace('\\', '/');
+    }
+}
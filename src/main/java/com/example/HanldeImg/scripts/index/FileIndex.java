@@ -0,0 +1,421 @@
+package com.example.HanldeImg.scripts.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Список файлов проекта: путь, размер, режим, время изменения и хэш содержимого. Строится по ходу
+ * распаковки и декодирования, хранится в uploads/.index и заменяет повторные обходы дерева
+ * (поиск APK, синхронизация staging, git add).
+ *
+ * <p>Хранение колоночное: все пути в одном UTF-8 массиве, остальные поля — в массивах примитивов,
+ * так что на файл уходит около 50 байт плюс длина пути. Пути отсортированы побайтно, как в индексе git.
+ * Хэш — id blob'а git (SHA-1 от {@code "blob <size>\0" + содержимое}), его можно класть в коммит как есть.
+ */
+public final class FileIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(FileIndex.class);
+
+    public static final int MODE_FILE = 0100644;
+    public static final int MODE_EXECUTABLE = 0100755;
+    public static final int MODE_SYMLINK = 0120000;
+    public static final int HASH_LENGTH = 20;
+
+    private static final int MAGIC = 0x48494458; // "HIDX"
+    private static final int VERSION = 1;
+    private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+
+    private final byte[] paths;
+    private final int[] offsets;
+    private final long[] sizes;
+    private final long[] mtimes;
+    private final int[] modes;
+    private final byte[] hashes;
+
+    private FileIndex(byte[] paths, int[] offsets, long[] sizes, long[] mtimes, int[] modes, byte[] hashes) {
+        this.paths = paths;
+        this.offsets = offsets;
+        this.sizes = sizes;
+        this.mtimes = mtimes;
+        this.modes = modes;
+        this.hashes = hashes;
+    }
+
+    public int size() {
+        return sizes.length;
+    }
+
+    public String path(int i) {
+        return new String(paths, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+    }
+
+    public long size(int i) {
+        return sizes[i];
+    }
+
+    /**
+     * Время изменения в миллисекундах.
+     */
+    public long mtime(int i) {
+        return mtimes[i];
+    }
+
+    public int mode(int i) {
+        return modes[i];
+    }
+
+    public byte[] hash(int i) {
+        return Arrays.copyOfRange(hashes, i * HASH_LENGTH, (i + 1) * HASH_LENGTH);
+    }
+
+    public String hashHex(int i) {
+        return HexFormat.of().formatHex(hashes, i * HASH_LENGTH, (i + 1) * HASH_LENGTH);
+    }
+
+    public boolean sameContent(int i, FileIndex other, int j) {
+        return sizes[i] == other.sizes[j] && modes[i] == other.modes[j]
+                && Arrays.equals(hashes, i * HASH_LENGTH, (i + 1) * HASH_LENGTH,
+                other.hashes, j * HASH_LENGTH, (j + 1) * HASH_LENGTH);
+    }
+
+    /**
+     * @return номер записи или -1
+     */
+    public int find(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = Arrays.compareUnsigned(paths, offsets[mid], offsets[mid + 1], key, 0, key.length);
+            if (cmp < 0) lo = mid + 1;
+            else if (cmp > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * Совпадает ли файл на диске с записью по размеру и времени изменения — так же git решает,
+     * можно ли не перечитывать файл.
+     */
+    public boolean matchesDisk(int i, Path root) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(root.resolve(path(i)), BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            return !attrs.isDirectory()
+                    && (attrs.isSymbolicLink() || attrs.size() == sizes[i])
+                    && attrs.lastModifiedTime().toMillis() == mtimes[i];
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Записи, путь которых начинается с одного из префиксов (например {@code "system/"}).
+     */
+    public List<String> pathsUnder(List<String> prefixes, String suffix) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < size(); i++) {
+            String p = path(i);
+            if (!p.toLowerCase(Locale.ROOT).endsWith(suffix)) continue;
+            for (String prefix : prefixes) {
+                if (p.startsWith(prefix)) {
+                    result.add(p);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    public long totalBytes() {
+        long total = 0;
+        for (long s : sizes) total += s;
+        return total;
+    }
+
+    // ===== хранение =====
+
+    public void write(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size());
+            out.writeInt(paths.length);
+            out.write(paths);
+            for (int o : offsets) out.writeInt(o);
+            for (long s : sizes) out.writeLong(s);
+            for (long m : mtimes) out.writeLong(m);
+            for (int m : modes) out.writeInt(m);
+            out.write(hashes);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return null, если индекса нет или он не читается — тогда вызывающий обходит дерево как раньше
+     */
+    public static FileIndex read(Path file) {
+        if (file == null || !Files.isRegularFile(file)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.warn("Индекс {} другого формата, игнорируем", file);
+                return null;
+            }
+            int n = in.readInt();
+            byte[] paths = new byte[in.readInt()];
+            in.readFully(paths);
+            int[] offsets = new int[n + 1];
+            for (int i = 0; i <= n; i++) offsets[i] = in.readInt();
+            long[] sizes = new long[n];
+            for (int i = 0; i < n; i++) sizes[i] = in.readLong();
+            long[] mtimes = new long[n];
+            for (int i = 0; i < n; i++) mtimes[i] = in.readLong();
+            int[] modes = new int[n];
+            for (int i = 0; i < n; i++) modes[i] = in.readInt();
+            byte[] hashes = new byte[n * HASH_LENGTH];
+            in.readFully(hashes);
+            return new FileIndex(paths, offsets, sizes, mtimes, modes, hashes);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Индекс {} не прочитан: {}", file, e.toString());
+            return null;
+        }
+    }
+
+    public static void delete(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(commitFile(file));
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Не смог удалить индекс {}", file, e);
+        }
+    }
+
+    /**
+     * Запоминает рядом с индексом коммит, опубликованный из него. Индекс описывает рабочее дерево,
+     * только пока HEAD указывает на этот коммит.
+     */
+    public static void writeCommit(Path file, String commit) {
+        if (file == null || commit == null) return;
+        try {
+            Files.writeString(commitFile(file), commit);
+        } catch (IOException e) {
+            log.warn("Не смог сохранить коммит индекса {}", file, e);
+        }
+    }
+
+    /**
+     * @return null, если индекс ещё не публиковался
+     */
+    public static String readCommit(Path file) {
+        if (file == null || !Files.isRegularFile(commitFile(file))) return null;
+        try {
+            return Files.readString(commitFile(file)).strip();
+        } catch (IOException e) {
+            log.warn("Не прочитан коммит индекса {}: {}", file, e.toString());
+            return null;
+        }
+    }
+
+    private static Path commitFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".commit");
+    }
+
+    // ===== построение =====
+
+    public static Builder builder(Path root) {
+        return new Builder(root);
+    }
+
+    /**
+     * Копит записи из разных потоков (распаковка отдаёт файлы параллельно).
+     */
+    public static final class Builder {
+        private final Path root;
+        private final List<Entry> entries = new ArrayList<>();
+
+        private record Entry(byte[] path, long size, long mtime, int mode, byte[] hash) {}
+
+        private Builder(Path root) {
+            this.root = root;
+        }
+
+        public Path root() {
+            return root;
+        }
+
+        /**
+         * Добавляет файл или симлинк под root, считая хэш содержимого. Папки пропускаются.
+         */
+        public void add(Path file) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (attrs.isDirectory()) return;
+
+                String rel = root.relativize(file).toString().replace('\\', '/');
+                Entry entry;
+                if (attrs.isSymbolicLink()) {
+                    byte[] target = Files.readSymbolicLink(file).toString().getBytes(StandardCharsets.UTF_8);
+                    entry = new Entry(rel.getBytes(StandardCharsets.UTF_8), target.length,
+                            attrs.lastModifiedTime().toMillis(), MODE_SYMLINK, blobId(target));
+                } else if (attrs.isRegularFile()) {
+                    entry = new Entry(rel.getBytes(StandardCharsets.UTF_8), attrs.size(),
+                            attrs.lastModifiedTime().toMillis(), isExecutable(file) ? MODE_EXECUTABLE : MODE_FILE,
+                            blobId(file, attrs.size()));
+                } else {
+                    return;
+                }
+                synchronized (entries) {
+                    entries.add(entry);
+                }
+            } catch (NoSuchFileException e) {
+                // файл успели удалить (временный файл распаковщика) — в индекс не попадает
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Добавляет всё дерево — для результатов apktool, которые появляются целой папкой.
+         */
+        public void addTree(Path dir) throws IOException {
+            if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) return;
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    add(file);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        public FileIndex build() {
+            List<Entry> sorted;
+            synchronized (entries) {
+                sorted = new ArrayList<>(entries);
+            }
+            sorted.sort((a, b) -> Arrays.compareUnsigned(a.path(), b.path()));
+
+            // один и тот же путь мог прийти дважды (файл перезаписан) — оставляем последний
+            List<Entry> unique = new ArrayList<>(sorted.size());
+            for (Entry e : sorted) {
+                if (!unique.isEmpty() && Arrays.equals(unique.get(unique.size() - 1).path(), e.path())) {
+                    unique.set(unique.size() - 1, e);
+                } else {
+                    unique.add(e);
+                }
+            }
+
+            int n = unique.size();
+            int blobLength = 0;
+            for (Entry e : unique) blobLength += e.path().length;
+
+            byte[] paths = new byte[blobLength];
+            int[] offsets = new int[n + 1];
+            long[] sizes = new long[n];
+            long[] mtimes = new long[n];
+            int[] modes = new int[n];
+            byte[] hashes = new byte[n * HASH_LENGTH];
+            int pos = 0;
+            for (int i = 0; i < n; i++) {
+                Entry e = unique.get(i);
+                offsets[i] = pos;
+                System.arraycopy(e.path(), 0, paths, pos, e.path().length);
+                pos += e.path().length;
+                sizes[i] = e.size();
+                mtimes[i] = e.mtime();
+                modes[i] = e.mode();
+                System.arraycopy(e.hash(), 0, hashes, i * HASH_LENGTH, HASH_LENGTH);
+            }
+            offsets[n] = pos;
+            return new FileIndex(paths, offsets, sizes, mtimes, modes, hashes);
+        }
+    }
+
+    /**
+     * Копия индекса с другим временем изменения у части записей — для файлов, которые при синхронизации
+     * остались на месте и сохранили своё время.
+     *
+     * @param overrides по записи на файл, отрицательное — оставить как есть
+     */
+    public FileIndex withMtimes(long[] overrides) {
+        long[] merged = mtimes.clone();
+        for (int i = 0; i < merged.length; i++) {
+            if (overrides[i] >= 0) merged[i] = overrides[i];
+        }
+        return new FileIndex(paths, offsets, sizes, merged, modes, hashes);
+    }
+
+    private static boolean isExecutable(Path file) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(file, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+        return view != null && view.readAttributes().permissions().contains(PosixFilePermission.OWNER_EXECUTE);
+    }
+
+    private static byte[] blobId(byte[] content) {
+        MessageDigest sha1 = newSha1();
+        sha1.update(("blob " + content.length + "\0").getBytes(StandardCharsets.US_ASCII));
+        sha1.update(content);
+        return sha1.digest();
+    }
+
+    private static byte[] blobId(Path file, long size) throws IOException {
+        MessageDigest sha1 = newSha1();
+        sha1.update(("blob " + size + "\0").getBytes(StandardCharsets.US_ASCII));
+        byte[] buf = BUFFERS.get();
+        long read = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                sha1.update(buf, 0, n);
+                read += n;
+            }
+        }
+        if (read != size) {
+            throw new IOException("Файл " + file + " изменился во время индексации");
+        }
+        return sha1.digest();
+    }
+
+    private static MessageDigest newSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.HanldeImg.scripts.lfs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.node.ArrayNode;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Клиент LFS Batch API (basic transfer). Сервер сам говорит, каких объектов у него нет:
+ * для них в ответе есть действие upload, остальные пропускаются.
+ */
+public class LfsClient {
+
+    private static final Logger log = LoggerFactory.getLogger(LfsClient.class);
+    private static final String MEDIA_TYPE = "application/vnd.git-lfs+json";
+    private static final int BATCH_SIZE = 100;
+    private static final JsonMapper JSON = JsonMapper.builder().build();
+
+    private final URI endpoint;
+    private final String authorization;
+    private final int parallelism;
+    private final HttpClient http;
+
+    public record UploadReport(int total, int uploaded, long uploadedBytes) {}
+
+    /**
+     * @param endpoint    адрес LFS, например {@code https://gitlab/group/project.git/info/lfs}
+     * @param username    null — без авторизации
+     * @param parallelism сколько объектов загружается одновременно
+     */
+    public LfsClient(URI endpoint, String username, String password, int parallelism) {
+        this.endpoint = endpoint;
+        this.authorization = username == null ? null : "Basic " + Base64.getEncoder()
+                .encodeToString((username + ":" + (password == null ? "" : password)).getBytes(StandardCharsets.UTF_8));
+        this.parallelism = Math.max(1, parallelism);
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(30))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    public URI endpoint() {
+        return endpoint;
+    }
+
+    public UploadReport upload(List<LfsPointer> pointers, LfsStore store) throws IOException, InterruptedException {
+        Map<String, LfsPointer> unique = new LinkedHashMap<>();
+        for (LfsPointer p : pointers) unique.putIfAbsent(p.oid(), p);
+        List<LfsPointer> objects = new ArrayList<>(unique.values());
+        if (objects.isEmpty()) return new UploadReport(0, 0, 0);
+
+        List<Transfer> transfers = new ArrayList<>();
+        for (int i = 0; i < objects.size(); i += BATCH_SIZE) {
+            transfers.addAll(batch(objects.subList(i, Math.min(objects.size(), i + BATCH_SIZE))));
+        }
+        log.info("LFS: объектов {}, сервер запросил {}", objects.size(), transfers.size());
+        if (transfers.isEmpty()) return new UploadReport(objects.size(), 0, 0);
+
+        int threads = Math.min(parallelism, transfers.size());
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "lfs-upload-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        long bytes = 0;
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Transfer transfer : transfers) {
+                futures.add(pool.submit(() -> {
+                    try {
+                        transfer(transfer, store);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        errors.add(transfer.pointer().oid() + ": interrupted");
+                    } catch (Exception e) {
+                        errors.add(transfer.pointer().oid() + ": " + e.getMessage());
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("LFS upload failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (!errors.isEmpty()) {
+            throw new IOException("LFS upload failed for " + errors.size() + " objects: "
+                    + String.join("; ", errors.subList(0, Math.min(5, errors.size()))));
+        }
+        for (Transfer t : transfers) bytes += t.pointer().size();
+        log.info("LFS: загружено {} объектов, {} байт", transfers.size(), bytes);
+        return new UploadReport(objects.size(), transfers.size(), bytes);
+    }
+
+    private record Action(URI href, Map<String, String> headers) {}
+
+    private record Transfer(LfsPointer pointer, Action upload, Action verify) {}
+
+    private List<Transfer> batch(List<LfsPointer> objects) throws IOException, InterruptedException {
+        ObjectNode body = JSON.createObjectNode();
+        body.put("operation", "upload");
+        body.putArray("transfers").add("basic");
+        ArrayNode list = body.putArray("objects");
+        for (LfsPointer p : objects) {
+            list.addObject().put("oid", p.oid()).put("size", p.size());
+        }
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(endpoint + "/objects/batch"))
+                .timeout(Duration.ofMinutes(1))
+                .header("Accept", MEDIA_TYPE)
+                .header("Content-Type", MEDIA_TYPE)
+                .POST(HttpRequest.BodyPublishers.ofString(JSON.writeValueAsString(body)));
+        if (authorization != null) request.header("Authorization", authorization);
+
+        HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("LFS batch failed: HTTP " + response.statusCode() + " " + response.body());
+        }
+
+        Map<String, LfsPointer> byOid = new LinkedHashMap<>();
+        for (LfsPointer p : objects) byOid.put(p.oid(), p);
+
+        List<Transfer> transfers = new ArrayList<>();
+        for (JsonNode obj : JSON.readTree(response.body()).path("objects")) {
+            LfsPointer pointer = byOid.get(obj.path("oid").asString());
+            if (pointer == null) continue;
+            if (obj.has("error")) {
+                throw new IOException("LFS object " + pointer.oid() + " rejected: "
+                        + obj.path("error").path("code").asInt() + " " + obj.path("error").path("message").asString());
+            }
+            Action upload = action(obj.path("actions").path("upload"));
+            if (upload == null) continue; // объект уже на сервере
+            transfers.add(new Transfer(pointer, upload, action(obj.path("actions").path("verify"))));
+        }
+        return transfers;
+    }
+
+    private void transfer(Transfer transfer, LfsStore store) throws IOException, InterruptedException {
+        LfsPointer pointer = transfer.pointer();
+        HttpRequest.Builder put = HttpRequest.newBuilder(transfer.upload().href())
+                .header("Content-Type", "application/octet-stream")
+                .PUT(HttpRequest.BodyPublishers.ofFile(store.path(pointer.oid())));
+        transfer.upload().headers().forEach(put::header);
+
+        HttpResponse<String> response = http.send(put.build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("HTTP " + response.statusCode() + " " + response.body());
+        }
+
+        if (transfer.verify() != null) {
+            ObjectNode body = JSON.createObjectNode().put("oid", pointer.oid()).put("size", pointer.size());
+            HttpRequest.Builder verify = HttpRequest.newBuilder(transfer.verify().href())
+                    .header("Accept", MEDIA_TYPE)
+                    .header("Content-Type", MEDIA_TYPE)
+                    .POST(HttpRequest.BodyPublishers.ofString(JSON.writeValueAsString(body)));
+            transfer.verify().headers().forEach(verify::header);
+            HttpResponse<String> verified = http.send(verify.build(), HttpResponse.BodyHandlers.ofString());
+            if (verified.statusCode() / 100 != 2) {
+                throw new IOException("verify HTTP " + verified.statusCode() + " " + verified.body());
+            }
+        }
+    }
+
+    private static Action action(JsonNode node) {
+        if (node == null || node.isMissingNode() || !node.has("href")) return null;
+        Map<String, String> headers = new LinkedHashMap<>();
+        node.path("header").properties().forEach(e -> headers.put(e.getKey(), e.getValue().asString()));
+        return new Action(URI.create(node.path("href").asString()), headers);
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.HanldeImg.scripts.lfs;
+
+/**
+ * @param rules  какие файлы идут в LFS
+ * @param client куда загружать объекты; null — загрузку делает git-lfs (CLI)
+ */
+public record LfsOptions(LfsRules rules, LfsClient client) {}
@@ -0,0 +1,32 @@
+package com.example.HanldeImg.scripts.lfs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Указатель LFS, который коммитится вместо содержимого файла.
+ */
+public record LfsPointer(String oid, long size) {
+
+    public static final String VERSION = "https://git-lfs.github.com/spec/v1";
+    // указатель по спецификации меньше 1024 байт, больше нет смысла разбирать
+    public static final int MAX_SIZE = 1024;
+
+    private static final Pattern POINTER = Pattern.compile(
+            "\\Aversion " + Pattern.quote(VERSION) + "\\n(?:[a-z0-9.-]+ [^\\n]*\\n)*?oid sha256:([0-9a-f]{64})\\nsize (\\d+)\\n\\z");
+
+    public byte[] toBytes() {
+        return ("version " + VERSION + "\noid sha256:" + oid + "\nsize " + size + "\n")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return указатель или null, если содержимое им не является
+     */
+    public static LfsPointer parse(byte[] content) {
+        if (content.length > MAX_SIZE) return null;
+        Matcher m = POINTER.matcher(new String(content, StandardCharsets.UTF_8));
+        return m.matches() ? new LfsPointer(m.group(1), Long.parseLong(m.group(2))) : null;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.HanldeImg.scripts.lfs;
+
+import com.example.HanldeImg.scripts.index.FileIndex;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Какие файлы уходят в LFS: по расширению или по размеру. Из этих же правил генерируется
+ * .gitattributes, чтобы обычный git с git-lfs видел то же самое, что и наш коммит.
+ *
+ * @param minSize    файлы не меньше этого размера идут в LFS независимо от расширения, 0 — не учитывать
+ * @param extensions расширения без точки, регистр важен — как в шаблонах .gitattributes
+ */
+public record LfsRules(long minSize, List<String> extensions) {
+
+    static final String BEGIN = "# >>> lfs: generated, do not edit";
+    static final String END = "# <<< lfs";
+    private static final String ATTRS = " filter=lfs diff=lfs merge=lfs -text";
+
+    public LfsRules {
+        extensions = extensions.stream()
+                .map(e -> e.startsWith(".") ? e.substring(1) : e)
+                .filter(e -> !e.isBlank())
+                .distinct()
+                .toList();
+    }
+
+    public boolean matches(String path, long size) {
+        return matchesExtension(path) || (minSize > 0 && size >= minSize);
+    }
+
+    private boolean matchesExtension(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        for (String ext : extensions) {
+            if (name.endsWith("." + ext)) return true;
+        }
+        return false;
+    }
+
+    public boolean writeAttributes(Path workTree) throws IOException {
+        return writeAttributes(workTree, null);
+    }
+
+    /**
+     * Переписывает блок правил в корневом .gitattributes, не трогая строки вне блока.
+     *
+     * @param index файлы рабочего дерева с размерами, null — крупные файлы ищутся обходом дерева
+     * @return true, если файл изменился
+     */
+    public boolean writeAttributes(Path workTree, FileIndex index) throws IOException {
+        List<String> block = new ArrayList<>();
+        block.add(BEGIN);
+        for (String ext : extensions) {
+            block.add("*." + ext + ATTRS);
+        }
+        for (String path : index != null ? largeFiles(index) : largeFiles(workTree)) {
+            block.add("/" + escape(path) + ATTRS);
+        }
+        block.add(END);
+
+        Path file = workTree.resolve(".gitattributes");
+        List<String> lines = Files.exists(file) ? Files.readAllLines(file, StandardCharsets.UTF_8) : List.of();
+
+        List<String> result = new ArrayList<>();
+        boolean inBlock = false;
+        boolean inserted = false;
+        for (String line : lines) {
+            if (line.equals(BEGIN)) {
+                inBlock = true;
+                result.addAll(block);
+                inserted = true;
+            } else if (line.equals(END) && inBlock) {
+                inBlock = false;
+            } else if (!inBlock) {
+                result.add(line);
+            }
+        }
+        if (!inserted) result.addAll(block);
+
+        if (result.equals(lines)) return false;
+        Files.write(file, result, StandardCharsets.UTF_8);
+        return true;
+    }
+
+    /**
+     * Крупные файлы, не попадающие под правила по расширению.
+     */
+    private List<String> largeFiles(FileIndex index) {
+        List<String> large = new ArrayList<>();
+        if (minSize <= 0) return large;
+
+        for (int i = 0; i < index.size(); i++) {
+            String path = index.path(i);
+            if (index.mode(i) != FileIndex.MODE_SYMLINK && index.size(i) >= minSize && !matchesExtension(path)) {
+                large.add(path);
+            }
+        }
+        large.sort(null);
+        return large;
+    }
+
+    private List<String> largeFiles(Path workTree) throws IOException {
+        List<String> large = new ArrayList<>();
+        if (minSize <= 0) return large;
+
+        Files.walkFileTree(workTree, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return dir.getFileName() != null && dir.getFileName().toString().equals(".git")
+                        ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && attrs.size() >= minSize) {
+                    String path = workTree.relativize(file).toString().replace('\\', '/');
+                    if (!matchesExtension(path)) large.add(path);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        large.sort(null);
+        return large;
+    }
+
+    private static String escape(String path) {
+        StringBuilder sb = new StringBuilder(path.length());
+        for (char c : path.toCharArray()) {
+            switch (c) {
+                case ' ' -> sb.append("[[:space:]]");
+                case '*', '?', '[', ']', '\\', '!', '#' -> sb.append('\\').append(c);
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
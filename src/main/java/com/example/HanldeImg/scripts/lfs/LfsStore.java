@@ -0,0 +1,97 @@
+package com.example.HanldeImg.scripts.lfs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Локальное хранилище объектов LFS в {@code .git/lfs/objects/ab/cd/<oid>}, как у git-lfs.
+ */
+public class LfsStore {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path objects;
+    private final Path tmp;
+
+    public LfsStore(Path gitDir) {
+        this.objects = gitDir.resolve("lfs").resolve("objects");
+        this.tmp = gitDir.resolve("lfs").resolve("tmp");
+    }
+
+    public Path path(String oid) {
+        return objects.resolve(oid.substring(0, 2)).resolve(oid.substring(2, 4)).resolve(oid);
+    }
+
+    public boolean contains(LfsPointer pointer) throws IOException {
+        Path p = path(pointer.oid());
+        return Files.isRegularFile(p) && Files.size(p) == pointer.size();
+    }
+
+    /**
+     * Кладёт копию файла в хранилище. Сначала файл только хэшируется: объект, который уже есть, не копируется
+     * заново. Ссылка вместо копии не годится: повторная распаковка в тот же проект может переписать файл
+     * рабочего дерева на месте, а объект LFS с тем же oid меняться не должен.
+     */
+    public LfsPointer store(Path file) throws IOException {
+        LfsPointer pointer = hash(file);
+        if (contains(pointer)) return pointer;
+
+        Files.createDirectories(tmp);
+        Path part = tmp.resolve(UUID.randomUUID().toString());
+        try {
+            MessageDigest sha256 = newSha256();
+            long size;
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file), sha256)) {
+                size = Files.copy(in, part);
+            }
+            if (size != pointer.size() || !HexFormat.of().formatHex(sha256.digest()).equals(pointer.oid())) {
+                throw new IOException("Файл " + file + " изменился во время сохранения в LFS");
+            }
+
+            Path target = path(pointer.oid());
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(part, target);
+            } catch (FileAlreadyExistsException e) {
+                // тот же объект положил параллельный поток
+            }
+            return pointer;
+        } finally {
+            Files.deleteIfExists(part);
+        }
+    }
+
+    private static LfsPointer hash(Path file) throws IOException {
+        MessageDigest sha256 = newSha256();
+        byte[] buf = new byte[BUFFER_SIZE];
+        long size = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                sha256.update(buf, 0, n);
+                size += n;
+            }
+        }
+        return new LfsPointer(HexFormat.of().formatHex(sha256.digest()), size);
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.HanldeImg.scripts.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Метрики и трассировка пайплайна. Скрипты статические, поэтому счётчики пишутся в
+ * {@link Metrics#globalRegistry} (Spring Boot подключает к нему свой реестр, в том числе Prometheus),
+ * а наблюдения берут реестр, выставленный при старте через {@link #configure(ObservationRegistry)}.
+ * Наблюдение — это таймер с тем же именем и span в трассе задачи.
+ */
+public final class PipelineMetrics {
+
+    // наблюдения: таймер + span
+    public static final String JOB = "pipeline.job";
+    public static final String STAGE = "pipeline.stage";
+    public static final String INGEST = "pipeline.ingest";
+    public static final String EXTRACT = "pipeline.extract.partition";
+    public static final String APK_DECODE = "pipeline.apk.decode";
+    public static final String GIT = "pipeline.git";
+    public static final String PROCESS = "pipeline.process";
+
+    public static final String INGEST_BYTES = "pipeline.ingest.bytes";
+    public static final String PUSH_BYTES = "pipeline.push.bytes";
+    public static final String BUILD_APKS = "pipeline.build.apks";
+    public static final String BUILD_FILES = "pipeline.build.files";
+    public static final String ACTIVE_JOBS = "pipeline.jobs.active";
+    public static final String PROCESSES_RUNNING = "pipeline.processes.running";
+    public static final String PROCESSES_WAITING = "pipeline.processes.waiting";
+
+    private static volatile ObservationRegistry observations = ObservationRegistry.NOOP;
+    private static final AtomicInteger activeJobs = new AtomicInteger();
+
+    static {
+        Gauge.builder(ACTIVE_JOBS, activeJobs, AtomicInteger::get)
+                .description("Задачи, которые сейчас выполняются")
+                .register(Metrics.globalRegistry);
+    }
+
+    private PipelineMetrics() {
+    }
+
+    public static void configure(ObservationRegistry registry) {
+        observations = registry != null ? registry : ObservationRegistry.NOOP;
+    }
+
+    public static ObservationRegistry observations() {
+        return observations;
+    }
+
+    /**
+     * Запускает наблюдение; родитель — текущее наблюдение потока. Остановить — {@link Observation#stop()}.
+     *
+     * @param keyValues пары ключ/значение тегов с малым числом значений (попадают и в таймер)
+     */
+    public static Observation start(String name, String contextualName, String... keyValues) {
+        Observation observation = Observation.createNotStarted(name, observations).contextualName(contextualName);
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            observation.lowCardinalityKeyValue(keyValues[i], keyValues[i + 1]);
+        }
+        return observation.start();
+    }
+
+    /**
+     * Текущее наблюдение потока, чтобы открыть его scope в пуле, где продолжается та же работа.
+     */
+    public static Observation current() {
+        return observations.getCurrentObservation();
+    }
+
+    public static void jobStarted() {
+        activeJobs.incrementAndGet();
+    }
+
+    public static void jobFinished() {
+        activeJobs.decrementAndGet();
+    }
+
+    /**
+     * @param compression как образ пришёл по сети: none, gzip, xz, zstd
+     */
+    public static void ingestBytes(long bytes, String compression) {
+        if (bytes <= 0) return;
+        Counter.builder(INGEST_BYTES)
+                .baseUnit("bytes")
+                .description("Принято байт образов (как пришли, до распаковки)")
+                .tag("compression", compression)
+                .register(registry())
+                .increment(bytes);
+    }
+
+    /**
+     * @param backend cli — размер пакета по отчёту git push, jgit — размер новых blob'ов коммита
+     */
+    public static void pushBytes(long bytes, String backend) {
+        if (bytes <= 0) return;
+        Counter.builder(PUSH_BYTES)
+                .baseUnit("bytes")
+                .description("Отправлено байт при push")
+                .tag("backend", backend)
+                .register(registry())
+                .increment(bytes);
+    }
+
+    /**
+     * Размер сборки: сколько APK нашлось и сколько файлов в дереве проекта после декодирования.
+     */
+    public static void build(int apks, long files) {
+        DistributionSummary.builder(BUILD_APKS)
+                .description("APK в сборке")
+                .publishPercentileHistogram()
+                .register(registry())
+                .record(apks);
+        DistributionSummary.builder(BUILD_FILES)
+                .description("Файлов в дереве сборки")
+                .publishPercentileHistogram()
+                .register(registry())
+                .record(files);
+    }
+
+    private static MeterRegistry registry() {
+        return Metrics.globalRegistry;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.HanldeImg.scripts.process;
+
+/**
+ * Какой задаче принадлежит текущий поток. Наследуется потоками, созданными внутри задачи
+ * (пулы распаковки и apktool создаются на каждый вызов), поэтому планировщик видит задачу
+ * и там, где скрипты сами уходят в свои потоки.
+ */
+public final class JobContext {
+
+    public static final String NONE = "-";
+
+    private static final InheritableThreadLocal<String> CURRENT = new InheritableThreadLocal<>();
+
+    private JobContext() {
+    }
+
+    public static String current() {
+        String id = CURRENT.get();
+        return id != null ? id : NONE;
+    }
+
+    public static void run(String jobId, Runnable action) {
+        String previous = CURRENT.get();
+        CURRENT.set(jobId);
+        try {
+            action.run();
+        } finally {
+            if (previous == null) CURRENT.remove(); else CURRENT.set(previous);
+        }
+    }
+}
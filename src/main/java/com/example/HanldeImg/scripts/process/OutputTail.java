@@ -0,0 +1,37 @@
+package com.example.HanldeImg.scripts.process;
+
+/**
+ * Последние строки вывода процесса для сообщений об ошибке. Память ограничена сверху
+ * независимо от того, сколько процесс напечатал.
+ */
+final class OutputTail {
+
+    private final String[] lines;
+    private final int maxLineChars;
+    private int next;
+    private int size;
+
+    OutputTail(int maxLines, int maxLineChars) {
+        this.lines = new String[Math.max(1, maxLines)];
+        this.maxLineChars = maxLineChars;
+    }
+
+    synchronized void add(String line) {
+        if (line.length() > maxLineChars) {
+            line = line.substring(0, maxLineChars) + "…";
+        }
+        lines[next] = line;
+        next = (next + 1) % lines.length;
+        if (size < lines.length) size++;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        int start = (next - size + lines.length) % lines.length;
+        for (int i = 0; i < size; i++) {
+            sb.append(lines[(start + i) % lines.length]).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,323 @@
+package com.example.HanldeImg.scripts.process;
+
+import com.example.HanldeImg.scripts.metrics.PipelineMetrics;
+import com.example.HanldeImg.scripts.process.ProcessScheduler.Permit;
+import io.micrometer.observation.Observation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Запуск внешних программ: слот у {@link ProcessScheduler}, чтение stdout и stderr в отдельных потоках
+ * (процесс никогда не встаёт на полном пайпе), хвост вывода для ошибок вместо всего вывода,
+ * выборочное логирование, таймаут и остановка всего дерева процессов при таймауте или прерывании.
+ */
+public final class ProcessRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessRunner.class);
+
+    private static final int TAIL_LINES = 200;
+    private static final int MAX_LINE_CHARS = 4096;
+    // первые строки каждого процесса пишем в INFO, дальше — каждую SAMPLE_EVERY-ю, остальные в DEBUG
+    private static final int HEAD_LINES = 10;
+    private static final int SAMPLE_EVERY = 500;
+    private static final long KILL_WAIT_SECONDS = 10;
+
+    private static volatile Map<ToolClass, Duration> timeouts = defaultTimeouts();
+    private static volatile Map<ToolClass, String> executables = defaultExecutables();
+    private static final Map<ToolClass, Counters> counters = new EnumMap<>(ToolClass.class);
+
+    static {
+        for (ToolClass tool : ToolClass.values()) counters.put(tool, new Counters());
+    }
+
+    private ProcessRunner() {
+    }
+
+    /**
+     * @param tag      короткое имя для логов, например {@code "git push"}
+     * @param memoryMb сколько памяти займёт процесс, отрицательное — значение по умолчанию для класса
+     * @param timeout  null — таймаут класса из настроек, {@link Duration#ZERO} — без таймаута
+     * @param onLine   получает каждую строку stdout (не stderr), когда вывод нужен целиком
+     */
+    public record Command(ToolClass tool, String tag, List<String> args, Path directory,
+                          Map<String, String> environment, long memoryMb, Duration timeout,
+                          Consumer<String> onLine) {
+
+        public static Command of(ToolClass tool, String tag, List<String> args) {
+            return new Command(tool, tag, List.copyOf(args), null, Map.of(), -1, null, null);
+        }
+
+        public Command in(Path directory) {
+            return new Command(tool, tag, args, directory, environment, memoryMb, timeout, onLine);
+        }
+
+        public Command env(String name, String value) {
+            Map<String, String> env = new LinkedHashMap<>(environment);
+            env.put(name, value);
+            return new Command(tool, tag, args, directory, Map.copyOf(env), memoryMb, timeout, onLine);
+        }
+
+        public Command memoryMb(long memoryMb) {
+            return new Command(tool, tag, args, directory, environment, memoryMb, timeout, onLine);
+        }
+
+        public Command timeout(Duration timeout) {
+            return new Command(tool, tag, args, directory, environment, memoryMb, timeout, onLine);
+        }
+
+        public Command onLine(Consumer<String> onLine) {
+            return new Command(tool, tag, args, directory, environment, memoryMb, timeout, onLine);
+        }
+    }
+
+    /**
+     * @param tail последние строки stdout и stderr вперемешку, в порядке поступления
+     */
+    public record Result(int exitCode, String tail, long lines, long durationMillis) {
+        public boolean ok() {
+            return exitCode == 0;
+        }
+    }
+
+    public record RunStats(long runs, long failures, long timeouts, long totalMillis, long maxMillis) {
+        public long averageMillis() {
+            return runs == 0 ? 0 : totalMillis / runs;
+        }
+    }
+
+    public static void configure(Map<ToolClass, Duration> timeouts) {
+        Map<ToolClass, Duration> merged = defaultTimeouts();
+        merged.putAll(timeouts);
+        ProcessRunner.timeouts = merged;
+    }
+
+    public static Map<ToolClass, Duration> defaultTimeouts() {
+        Map<ToolClass, Duration> defaults = new EnumMap<>(ToolClass.class);
+        defaults.put(ToolClass.SEVEN_ZIP, Duration.ofHours(2));
+        defaults.put(ToolClass.APKTOOL, Duration.ofMinutes(30));
+        defaults.put(ToolClass.GIT, Duration.ofHours(1));
+        return defaults;
+    }
+
+    /**
+     * Пути к программам; пустой или отсутствующий путь оставляет путь по умолчанию.
+     */
+    public static void configureExecutables(Map<ToolClass, String> paths) {
+        Map<ToolClass, String> merged = defaultExecutables();
+        paths.forEach((tool, path) -> {
+            if (path != null && !path.isBlank()) merged.put(tool, path);
+        });
+        ProcessRunner.executables = merged;
+    }
+
+    public static Map<ToolClass, String> defaultExecutables() {
+        Map<ToolClass, String> defaults = new EnumMap<>(ToolClass.class);
+        // 7z из /usr/local/bin, если он там есть, иначе из PATH
+        Path sevenZip = Path.of("/usr/local/bin/7z");
+        defaults.put(ToolClass.SEVEN_ZIP, Files.isExecutable(sevenZip) ? sevenZip.toString() : "7z");
+        defaults.put(ToolClass.APKTOOL, "/usr/local/bin/apktool");
+        defaults.put(ToolClass.GIT, "git");
+        return defaults;
+    }
+
+    public static String executable(ToolClass tool) {
+        return executables.get(tool);
+    }
+
+    public static Map<ToolClass, RunStats> stats() {
+        Map<ToolClass, RunStats> all = new EnumMap<>(ToolClass.class);
+        counters.forEach((tool, c) -> all.put(tool, c.snapshot()));
+        return all;
+    }
+
+    /**
+     * Ненулевой код выхода не считается ошибкой — решает вызывающий по {@link Result#exitCode()}.
+     *
+     * @throws ProcessTimeoutException если процесс не уложился в таймаут
+     * @throws InterruptedException    если поток прервали; процесс и его потомки к этому моменту остановлены
+     */
+    public static Result run(Command command) throws IOException, InterruptedException {
+        // ожидание слота входит в span: по нему видно, что процесс стоял в очереди
+        Observation observation = PipelineMetrics.start(PipelineMetrics.PROCESS, command.tag(),
+                "tool", command.tool().name().toLowerCase());
+        try (Observation.Scope scope = observation.openScope()) {
+            Result result = execute(command);
+            observation.lowCardinalityKeyValue("outcome", result.ok() ? "ok" : "failed");
+            return result;
+        } catch (ProcessTimeoutException e) {
+            observation.lowCardinalityKeyValue("outcome", "timeout");
+            observation.error(e);
+            throw e;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            observation.lowCardinalityKeyValue("outcome", "error");
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+        }
+    }
+
+    private static Result execute(Command command) throws IOException, InterruptedException {
+        Duration timeout = command.timeout() != null ? command.timeout() : timeouts.get(command.tool());
+        Counters stats = counters.get(command.tool());
+
+        ProcessBuilder pb = new ProcessBuilder(command.args());
+        if (command.directory() != null) pb.directory(command.directory().toFile());
+        pb.environment().putAll(command.environment());
+
+        try (Permit permit = ProcessScheduler.global().acquire(command.tool(), command.memoryMb())) {
+            long begin = System.nanoTime();
+            Process process = pb.start();
+            process.getOutputStream().close();
+
+            OutputTail tail = new OutputTail(TAIL_LINES, MAX_LINE_CHARS);
+            AtomicLong lines = new AtomicLong();
+            Thread out = drain(process.getInputStream(), command, "out", tail, lines, command.onLine());
+            Thread err = drain(process.getErrorStream(), command, "err", tail, lines, null);
+
+            int exitCode;
+            try {
+                boolean finished = timeout == null || timeout.isZero() || timeout.isNegative()
+                        ? waitFor(process)
+                        : process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS);
+                if (!finished) {
+                    killTree(process);
+                    out.join(TimeUnit.SECONDS.toMillis(KILL_WAIT_SECONDS));
+                    err.join(TimeUnit.SECONDS.toMillis(KILL_WAIT_SECONDS));
+                    stats.record(System.nanoTime() - begin, false, true);
+                    log.warn("[{}] таймаут {}, дерево процессов остановлено", command.tag(), timeout);
+                    throw new ProcessTimeoutException(command.tag(), timeout, tail.toString());
+                }
+                exitCode = process.exitValue();
+                // после выхода процесса потоки дочитывают остаток пайпа; пайп может держать открытым потомок,
+                // переживший процесс (ssh ControlPersist, git-lfs, credential helper), — его не ждём
+                long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(KILL_WAIT_SECONDS);
+                out.join(Duration.ofNanos(drainDeadline - System.nanoTime()));
+                err.join(Duration.ofNanos(Math.max(0, drainDeadline - System.nanoTime())));
+                if (out.isAlive() || err.isAlive()) {
+                    log.warn("[{}] вывод не закрыт через {} с после выхода процесса, дальше не читаем",
+                            command.tag(), KILL_WAIT_SECONDS);
+                    closeQuietly(process.getInputStream());
+                    closeQuietly(process.getErrorStream());
+                }
+            } catch (InterruptedException e) {
+                killTree(process);
+                stats.record(System.nanoTime() - begin, false, false);
+                log.info("[{}] прерван, дерево процессов остановлено", command.tag());
+                throw e;
+            }
+
+            long elapsed = System.nanoTime() - begin;
+            stats.record(elapsed, exitCode == 0, false);
+            long millis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+            log.info("[{}] код {} за {} мс, строк вывода {}", command.tag(), exitCode, millis, lines.get());
+            return new Result(exitCode, tail.toString(), lines.get(), millis);
+        }
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static boolean waitFor(Process process) throws InterruptedException {
+        process.waitFor();
+        return true;
+    }
+
+    private static void killTree(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+        try {
+            process.waitFor(KILL_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Thread drain(InputStream stream, Command command, String name, OutputTail tail,
+                                AtomicLong lines, Consumer<String> onLine) {
+        return Thread.ofPlatform()
+                .daemon()
+                .name(command.tool().name().toLowerCase() + "-" + name)
+                .start(() -> {
+                    try (InputStream in = stream) {
+                        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+                        byte[] buf = new byte[8192];
+                        int n;
+                        while ((n = in.read(buf)) > 0) {
+                            for (int i = 0; i < n; i++) {
+                                byte b = buf[i];
+                                if (b == '\n') {
+                                    emit(line, command, tail, lines, onLine);
+                                } else if (line.size() < MAX_LINE_CHARS * 4 || onLine != null) {
+                                    line.write(b);
+                                }
+                            }
+                        }
+                        if (line.size() > 0) emit(line, command, tail, lines, onLine);
+                    } catch (IOException e) {
+                        // пайп закрыт — процесс убит, дочитывать нечего
+                        log.debug("[{}] чтение {} прервано: {}", command.tag(), name, e.getMessage());
+                    }
+                });
+    }
+
+    private static void emit(ByteArrayOutputStream buffer, Command command, OutputTail tail,
+                             AtomicLong lines, Consumer<String> onLine) {
+        String line = buffer.toString(StandardCharsets.UTF_8);
+        buffer.reset();
+        if (line.endsWith("\r")) line = line.substring(0, line.length() - 1);
+
+        long number = lines.incrementAndGet();
+        tail.add(line);
+        if (onLine != null) onLine.accept(line);
+
+        if (number <= HEAD_LINES) {
+            log.info("[{}] {}", command.tag(), line);
+        } else if (number % SAMPLE_EVERY == 0) {
+            log.info("[{}] … строка {}: {}", command.tag(), number, line);
+        } else if (log.isDebugEnabled()) {
+            log.debug("[{}] {}", command.tag(), line);
+        }
+    }
+
+    private static final class Counters {
+        private final LongAdder runs = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos, boolean ok, boolean timedOut) {
+            runs.increment();
+            if (!ok) failures.increment();
+            if (timedOut) timeouts.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        RunStats snapshot() {
+            return new RunStats(runs.sum(), failures.sum(), timeouts.sum(),
+                    TimeUnit.NANOSECONDS.toMillis(totalNanos.sum()), TimeUnit.NANOSECONDS.toMillis(maxNanos.get()));
+        }
+    }
+}
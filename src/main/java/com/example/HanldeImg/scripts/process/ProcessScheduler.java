@@ -0,0 +1,274 @@
+package com.example.HanldeImg.scripts.process;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Общий на процесс лимит внешних программ: у каждого класса (7z, apktool, git) свой предел
+ * одновременных процессов и свой бюджет памяти. Свободный слот получает задача, у которой сейчас
+ * меньше всего запущенных процессов, так что одна огромная прошивка с сотнями APK не забирает все слоты себе.
+ *
+ * <p>Скрипты статические, поэтому экземпляр тоже один — {@link #global()}; лимиты выставляются
+ * при старте приложения через {@link #configure(Map)}.
+ */
+public final class ProcessScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessScheduler.class);
+
+    /**
+     * @param maxConcurrent   сколько процессов класса одновременно
+     * @param memoryBudgetMb  сколько памяти все процессы класса могут занимать вместе, 0 — без ограничения
+     * @param processMemoryMb сколько памяти по умолчанию закладываем на один процесс
+     */
+    public record Limits(int maxConcurrent, long memoryBudgetMb, long processMemoryMb) {
+        public Limits {
+            maxConcurrent = Math.max(1, maxConcurrent);
+            memoryBudgetMb = Math.max(0, memoryBudgetMb);
+            processMemoryMb = Math.max(0, processMemoryMb);
+        }
+    }
+
+    public record ToolStats(ToolClass tool, int maxConcurrent, long memoryBudgetMb,
+                            int running, int waiting, long memoryInUseMb,
+                            long started, long totalWaitMillis, long maxWaitMillis) {
+        public long averageWaitMillis() {
+            return started == 0 ? 0 : totalWaitMillis / started;
+        }
+    }
+
+    private static volatile ProcessScheduler global = new ProcessScheduler(defaults());
+
+    private final Map<ToolClass, Pool> pools = new EnumMap<>(ToolClass.class);
+
+    public ProcessScheduler(Map<ToolClass, Limits> limits) {
+        for (ToolClass tool : ToolClass.values()) {
+            pools.put(tool, new Pool(tool, limits.getOrDefault(tool, defaults().get(tool))));
+        }
+    }
+
+    public static ProcessScheduler global() {
+        return global;
+    }
+
+    public static synchronized ProcessScheduler configure(Map<ToolClass, Limits> limits) {
+        global = new ProcessScheduler(limits);
+        limits.forEach((tool, l) -> log.info("Лимит процессов {}: {} одновременно, память {} МБ (по {} МБ на процесс)",
+                tool, l.maxConcurrent(), l.memoryBudgetMb() == 0 ? "без ограничения" : l.memoryBudgetMb(),
+                l.processMemoryMb()));
+        return global;
+    }
+
+    public static Map<ToolClass, Limits> defaults() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        Map<ToolClass, Limits> limits = new EnumMap<>(ToolClass.class);
+        limits.put(ToolClass.SEVEN_ZIP, new Limits(4, 0, 256));
+        limits.put(ToolClass.APKTOOL, new Limits(cores, 0, 1024));
+        limits.put(ToolClass.GIT, new Limits(4, 0, 256));
+        return limits;
+    }
+
+    /**
+     * Ждёт слот с памятью по умолчанию для класса.
+     */
+    public Permit acquire(ToolClass tool) throws InterruptedException {
+        return acquire(tool, -1);
+    }
+
+    /**
+     * @param memoryMb сколько памяти займёт процесс, отрицательное — значение по умолчанию для класса
+     */
+    public Permit acquire(ToolClass tool, long memoryMb) throws InterruptedException {
+        return pools.get(tool).acquire(JobContext.current(), memoryMb);
+    }
+
+    public ToolStats stats(ToolClass tool) {
+        return pools.get(tool).stats();
+    }
+
+    public Map<ToolClass, ToolStats> stats() {
+        Map<ToolClass, ToolStats> all = new EnumMap<>(ToolClass.class);
+        for (ToolClass tool : ToolClass.values()) all.put(tool, stats(tool));
+        return all;
+    }
+
+    /**
+     * Разрешение на запуск одного процесса; закрывать после его завершения.
+     */
+    public static final class Permit implements AutoCloseable {
+        private final Pool pool;
+        private final String job;
+        private final long memoryMb;
+        private final long waitedNanos;
+        private boolean released;
+
+        private Permit(Pool pool, String job, long memoryMb, long waitedNanos) {
+            this.pool = pool;
+            this.job = job;
+            this.memoryMb = memoryMb;
+            this.waitedNanos = waitedNanos;
+        }
+
+        public long waitedMillis() {
+            return waitedNanos / 1_000_000;
+        }
+
+        @Override
+        public void close() {
+            synchronized (pool) {
+                if (released) return;
+                released = true;
+                pool.release(job, memoryMb);
+            }
+        }
+    }
+
+    private static final class Waiter {
+        final long memoryMb;
+        boolean granted;
+
+        Waiter(long memoryMb) {
+            this.memoryMb = memoryMb;
+        }
+    }
+
+    private static final class Pool {
+        private final ToolClass tool;
+        private final Limits limits;
+
+        // очередь ожидающих каждой задачи и круговой порядок задач
+        private final Map<String, Deque<Waiter>> queues = new HashMap<>();
+        private final Deque<String> rotation = new ArrayDeque<>();
+        private final Map<String, Integer> runningByJob = new HashMap<>();
+        // номер последней выдачи каждой задаче; сбрасывается, когда класс простаивает
+        private final Map<String, Long> lastServed = new HashMap<>();
+        private long grants;
+
+        private int running;
+        private int waiting;
+        private long memoryInUse;
+        private long started;
+        private long totalWaitNanos;
+        private long maxWaitNanos;
+
+        Pool(ToolClass tool, Limits limits) {
+            this.tool = tool;
+            this.limits = limits;
+        }
+
+        synchronized Permit acquire(String job, long requestedMb) throws InterruptedException {
+            long memoryMb = requestedMb >= 0 ? requestedMb : limits.processMemoryMb();
+            // процесс больше всего бюджета всё равно должен когда-то запуститься — один
+            if (limits.memoryBudgetMb() > 0) memoryMb = Math.min(memoryMb, limits.memoryBudgetMb());
+
+            long begin = System.nanoTime();
+            Waiter waiter = new Waiter(memoryMb);
+            queues.computeIfAbsent(job, k -> {
+                rotation.addLast(k);
+                return new ArrayDeque<>();
+            }).addLast(waiter);
+            waiting++;
+            dispatch();
+
+            try {
+                while (!waiter.granted) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    release(job, memoryMb);
+                } else {
+                    remove(job, waiter);
+                }
+                throw e;
+            }
+
+            long waited = System.nanoTime() - begin;
+            started++;
+            totalWaitNanos += waited;
+            maxWaitNanos = Math.max(maxWaitNanos, waited);
+            if (waited > 1_000_000_000L) {
+                log.info("{}: задача {} ждала слот {} мс (запущено {}, в очереди {})",
+                        tool, job, waited / 1_000_000, running, waiting);
+            }
+            return new Permit(this, job, memoryMb, waited);
+        }
+
+        /**
+         * Раздаёт свободные слоты: следующий процесс получает задача, у которой сейчас меньше всего
+         * запущенных процессов этого класса, при равенстве — та, что дольше не обслуживалась.
+         */
+        private void dispatch() {
+            while (running < limits.maxConcurrent() && !rotation.isEmpty()) {
+                String chosen = null;
+                int chosenRunning = Integer.MAX_VALUE;
+                long chosenServed = Long.MAX_VALUE;
+                for (String job : rotation) {
+                    int jobRunning = runningByJob.getOrDefault(job, 0);
+                    long served = lastServed.getOrDefault(job, -1L);
+                    boolean better = jobRunning < chosenRunning
+                            || (jobRunning == chosenRunning && served < chosenServed);
+                    if (better && fits(queues.get(job).peekFirst().memoryMb)) {
+                        chosen = job;
+                        chosenRunning = jobRunning;
+                        chosenServed = served;
+                    }
+                }
+                if (chosen == null) break;
+
+                Deque<Waiter> queue = queues.get(chosen);
+                Waiter head = queue.pollFirst();
+                head.granted = true;
+                running++;
+                waiting--;
+                memoryInUse += head.memoryMb;
+                runningByJob.merge(chosen, 1, Integer::sum);
+                lastServed.put(chosen, grants++);
+
+                rotation.remove(chosen);
+                if (queue.isEmpty()) {
+                    queues.remove(chosen);
+                } else {
+                    rotation.addLast(chosen);
+                }
+            }
+            notifyAll();
+        }
+
+        private boolean fits(long memoryMb) {
+            return limits.memoryBudgetMb() == 0
+                    || running == 0
+                    || memoryInUse + memoryMb <= limits.memoryBudgetMb();
+        }
+
+        private void remove(String job, Waiter waiter) {
+            Deque<Waiter> queue = queues.get(job);
+            if (queue != null && queue.remove(waiter)) {
+                waiting--;
+                if (queue.isEmpty()) {
+                    queues.remove(job);
+                    rotation.remove(job);
+                }
+            }
+            dispatch();
+        }
+
+        synchronized void release(String job, long memoryMb) {
+            running--;
+            runningByJob.computeIfPresent(job, (k, n) -> n > 1 ? n - 1 : null);
+            if (running == 0 && waiting == 0) lastServed.clear();
+            memoryInUse -= memoryMb;
+            dispatch();
+        }
+
+        synchronized ToolStats stats() {
+            return new ToolStats(tool, limits.maxConcurrent(), limits.memoryBudgetMb(), running, waiting,
+                    memoryInUse, started, totalWaitNanos / 1_000_000, maxWaitNanos / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.HanldeImg.scripts.process;
+
+import java.time.Duration;
+
+public class ProcessTimeoutException extends RuntimeException {
+
+    public ProcessTimeoutException(String tag, Duration timeout, String tail) {
+        super(tag + " не завершился за " + timeout + ", процесс остановлен. Последний вывод:\n" + tail);
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.HanldeImg.scripts.process;
+
+public enum ToolClass {
+    SEVEN_ZIP,
+    APKTOOL,
+    GIT
+}
@@ -0,0 +1,12 @@
+package com.example.HanldeImg.scripts.upload;
+
+/**
+ * Чанк не принят: не тот диапазон, оборванное тело или не совпала контрольная сумма.
+ * Клиент может прислать его заново.
+ */
+public class ChunkRejectedException extends RuntimeException {
+
+    public ChunkRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.HanldeImg.scripts.upload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Файл, который собирается из чанков в произвольном порядке. Файл сразу получает итоговую длину, но остаётся
+ * разреженным: место на диске заранее не выделяется. Каждый чанк пишется позиционной записью FileChannel
+ * на своё место, поэтому после приёма последнего чанка файл готов и ничего не склеивается.
+ * Чанки разных потоков пишутся параллельно.
+ */
+public class ChunkedFile {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    public record Range(long start, long end) {
+        public long length() {
+            return end - start;
+        }
+    }
+
+    private final Path path;
+    private final long size;
+
+    // принятые диапазоны [start, end), соседние и пересекающиеся склеиваются
+    private final TreeMap<Long, Long> ranges = new TreeMap<>();
+    // диапазоны, в которые сейчас пишутся ещё не проверенные байты
+    private final List<Range> writing = new ArrayList<>();
+    private long received;
+
+    private ChunkedFile(Path path, long size) {
+        this.path = path;
+        this.size = size;
+    }
+
+    /**
+     * Создаёт разреженный файл итоговой длины, место под данные не выделяется.
+     */
+    public static ChunkedFile create(Path path, long size) throws IOException {
+        if (size < 0) throw new ChunkRejectedException("Отрицательный размер файла: " + size);
+        try (FileChannel ch = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            if (size > 0) {
+                ch.write(ByteBuffer.wrap(new byte[1]), size - 1);
+            }
+        }
+        return new ChunkedFile(path, size);
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Пишет чанк {@code [offset, offset + length)} из потока. Диапазон засчитывается, только если пришли все байты
+     * и SHA-256 совпал с {@code sha256Hex}; иначе чанк нужно прислать заново. Чанк в ещё не принятый диапазон
+     * пишется сразу на место. Повтор, задевающий принятые байты, сначала ложится во временный файл рядом
+     * и переносится только после проверки, так что битый повтор их не портит.
+     *
+     * @return сколько байт файла принято всего
+     */
+    public long write(long offset, long length, String sha256Hex, InputStream in) throws IOException {
+        if (offset < 0 || length <= 0 || offset + length > size) {
+            throw new ChunkRejectedException("Чанк [" + offset + ", " + (offset + length)
+                    + ") выходит за размер файла " + size);
+        }
+        byte[] expected = parseSha256(sha256Hex);
+        Range range = new Range(offset, offset + length);
+
+        if (claimFree(range)) {
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                receive(ch, offset, length, expected, in);
+                return record(range.start(), range.end());
+            } finally {
+                release(range);
+            }
+        }
+
+        Path part = path.resolveSibling(path.getFileName() + ".chunk-" + UUID.randomUUID());
+        try (FileChannel staged = FileChannel.open(part, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+            receive(staged, 0, length, expected, in);
+
+            // переносим, когда в этот диапазон никто не пишет непроверенные байты
+            claim(range);
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                ch.position(offset);
+                long moved = 0;
+                while (moved < length) {
+                    moved += staged.transferTo(moved, length - moved, ch);
+                }
+                return record(range.start(), range.end());
+            } finally {
+                release(range);
+            }
+        }
+    }
+
+    /**
+     * Читает {@code length} байт из потока в {@code ch} с позиции {@code position}, считая SHA-256 по ходу.
+     */
+    private static void receive(FileChannel ch, long position, long length, byte[] expected, InputStream in)
+            throws IOException {
+        MessageDigest digest = newSha256();
+        byte[] buf = new byte[(int) Math.min(BUFFER_SIZE, length)];
+        long written = 0;
+        while (written < length) {
+            int n = in.read(buf, 0, (int) Math.min(buf.length, length - written));
+            if (n < 0) {
+                throw new ChunkRejectedException("Чанк с позиции " + position + " оборвался: получено "
+                        + written + " из " + length + " байт");
+            }
+            digest.update(buf, 0, n);
+            ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+            long at = position + written;
+            while (bb.hasRemaining()) {
+                at += ch.write(bb, at);
+            }
+            written += n;
+        }
+        if (!MessageDigest.isEqual(expected, digest.digest())) {
+            throw new ChunkRejectedException("Контрольная сумма чанка с позиции " + position + " не совпала");
+        }
+    }
+
+    /**
+     * Занимает диапазон для записи прямо в файл, если он не задевает ни принятые байты, ни чужую запись.
+     */
+    private synchronized boolean claimFree(Range range) {
+        Map.Entry<Long, Long> before = ranges.lowerEntry(range.end());
+        if (before != null && before.getValue() > range.start()) return false;
+        if (overlapsWriting(range)) return false;
+        writing.add(range);
+        return true;
+    }
+
+    /**
+     * Занимает диапазон под перенос проверенного чанка, дождавшись конца пересекающихся записей.
+     */
+    private synchronized void claim(Range range) throws IOException {
+        while (overlapsWriting(range)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Прервано ожидание записи чанка с позиции " + range.start());
+            }
+        }
+        writing.add(range);
+    }
+
+    private boolean overlapsWriting(Range range) {
+        for (Range w : writing) {
+            if (w.start() < range.end() && range.start() < w.end()) return true;
+        }
+        return false;
+    }
+
+    private synchronized void release(Range range) {
+        writing.remove(range);
+        notifyAll();
+    }
+
+    public synchronized long received() {
+        return received;
+    }
+
+    public synchronized boolean complete() {
+        return received == size;
+    }
+
+    /**
+     * Диапазоны, которые ещё не приняты, по возрастанию.
+     */
+    public synchronized List<Range> missing() {
+        List<Range> missing = new ArrayList<>();
+        long cursor = 0;
+        for (Map.Entry<Long, Long> r : ranges.entrySet()) {
+            if (r.getKey() > cursor) missing.add(new Range(cursor, r.getKey()));
+            cursor = r.getValue();
+        }
+        if (cursor < size) missing.add(new Range(cursor, size));
+        return missing;
+    }
+
+    private synchronized long record(long start, long end) {
+        Map.Entry<Long, Long> before = ranges.floorEntry(start);
+        if (before != null && before.getValue() >= start) {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+        }
+        // поглощаем все диапазоны, начинающиеся внутри нового
+        Map.Entry<Long, Long> next;
+        while ((next = ranges.ceilingEntry(start)) != null && next.getKey() <= end) {
+            end = Math.max(end, next.getValue());
+            ranges.remove(next.getKey());
+        }
+        ranges.put(start, end);
+
+        long total = 0;
+        for (Map.Entry<Long, Long> r : ranges.entrySet()) {
+            total += r.getValue() - r.getKey();
+        }
+        received = total;
+        return received;
+    }
+
+    private static byte[] parseSha256(String hex) {
+        if (hex == null || hex.length() != 64) {
+            throw new ChunkRejectedException("Нужна SHA-256 чанка в hex (64 символа)");
+        }
+        try {
+            return HexFormat.of().parseHex(hex.toLowerCase());
+        } catch (IllegalArgumentException e) {
+            throw new ChunkRejectedException("Некорректная SHA-256 чанка: " + hex);
+        }
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package com.example.HanldeImg.services.build_index_service;
+
+import com.example.HanldeImg.scripts.BuildMetadata;
+
+public record ApkMatch(BuildSummary build, BuildMetadata.Apk apk) {}
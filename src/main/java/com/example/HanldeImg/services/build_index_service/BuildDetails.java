@@ -0,0 +1,12 @@
+package com.example.HanldeImg.services.build_index_service;
+
+import com.example.HanldeImg.scripts.BuildMetadata;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @param properties свойства build.prop по разделам: раздел → имя → значение
+ */
+public record BuildDetails(BuildSummary build, Map<String, Map<String, String>> properties,
+                           List<BuildMetadata.Apk> apks, List<BuildMetadata.Partition> partitions) {}
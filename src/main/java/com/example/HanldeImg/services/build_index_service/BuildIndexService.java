@@ -0,0 +1,35 @@
+package com.example.HanldeImg.services.build_index_service;
+
+import com.example.HanldeImg.scripts.BuildMetadata;
+import com.example.HanldeImg.scripts.BuildRecord;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Индекс опубликованных сборок всех проектов: свойства build.prop, APK и размеры разделов.
+ * Запросы не трогают распакованные деревья и репозитории.
+ */
+public interface BuildIndexService {
+
+    void record(String project, BuildRecord record, BuildMetadata metadata);
+
+    /**
+     * @param project null — последние сборки всех проектов
+     */
+    List<BuildSummary> builds(String project, int limit);
+
+    Optional<BuildDetails> find(long id);
+
+    /**
+     * Сборки, в которых есть пакет {@code packageName} с versionCode не меньше {@code minVersionCode}.
+     *
+     * @param latestOnly только последние сборки проектов
+     */
+    List<ApkMatch> findPackage(String packageName, long minVersionCode, boolean latestOnly, int limit);
+
+    /**
+     * Сборки со свойством {@code name=value} в любом разделе, например с тем же ro.build.fingerprint.
+     */
+    List<BuildSummary> findByProperty(String name, String value, boolean latestOnly, int limit);
+}
@@ -0,0 +1,174 @@
+package com.example.HanldeImg.services.build_index_service;
+
+import com.example.HanldeImg.config.PipelineProperties;
+import com.example.HanldeImg.scripts.BuildMetadata;
+import com.example.HanldeImg.scripts.BuildRecord;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Индекс сборок во встроенной H2 (схема — schema.sql). Поиск идёт по индексам
+ * (package_name, version_code) и (name, prop_value), поэтому не зависит от размера прошивок.
+ * Для каждого проекта хранится {@code pipeline.builds.history} последних сборок.
+ */
+@Service
+@RequiredArgsConstructor
+public class BuildIndexServiceImpl implements BuildIndexService {
+
+    private static final Logger log = LoggerFactory.getLogger(BuildIndexServiceImpl.class);
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int MAX_VALUE_LENGTH = 4096;
+    private static final int MAX_NAME_LENGTH = 255;
+    private static final int MAX_PARTITION_LENGTH = 64;
+    private static final int MAX_PATH_LENGTH = 1024;
+    private static final int MAX_DISPLAY_ID_LENGTH = 512;
+    private static final int MAX_FINGERPRINT_LENGTH = 1024;
+
+    private static final String SUMMARY_COLUMNS =
+            "b.id, b.project, b.commit_id, b.display_id, b.fingerprint, b.latest, b.recorded_at";
+
+    private static final RowMapper<BuildSummary> SUMMARY = (rs, i) -> summary(rs);
+
+    private final JdbcTemplate jdbc;
+    private final PipelineProperties properties;
+
+    @Override
+    @Transactional
+    public void record(String project, BuildRecord record, BuildMetadata metadata) {
+        String fingerprint = metadata.property("ro.build.fingerprint");
+        if (fingerprint == null) fingerprint = metadata.property("ro.system.build.fingerprint");
+
+        jdbc.update("UPDATE builds SET latest = FALSE WHERE project = ? AND latest", project);
+
+        // значения из образа длиннее колонок schema.sql обрезаются, иначе запись сборки падает целиком
+        String fp = truncate(fingerprint, MAX_FINGERPRINT_LENGTH);
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbc.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    INSERT INTO builds (project, commit_id, display_id, fingerprint, images_digest, profile, latest, recorded_at)
+                    VALUES (?, ?, ?, ?, ?, ?, TRUE, ?)""", new String[] {"id"});
+            ps.setString(1, project);
+            ps.setString(2, record.commit());
+            ps.setString(3, truncate(record.buildId(), MAX_DISPLAY_ID_LENGTH));
+            ps.setString(4, fp);
+            ps.setString(5, record.imagesDigest());
+            ps.setString(6, record.filter());
+            ps.setObject(7, record.recordedAt().atOffset(ZoneOffset.UTC));
+            return ps;
+        }, keys);
+        long id = keys.getKey().longValue();
+
+        jdbc.batchUpdate("INSERT INTO build_properties (build_id, partition_name, name, prop_value) VALUES (?, ?, ?, ?)",
+                metadata.properties(), BATCH_SIZE, (ps, p) -> {
+                    ps.setLong(1, id);
+                    ps.setString(2, truncate(p.partition(), MAX_PARTITION_LENGTH));
+                    ps.setString(3, truncate(p.name(), MAX_NAME_LENGTH));
+                    ps.setString(4, truncate(p.value(), MAX_VALUE_LENGTH));
+                });
+        jdbc.batchUpdate("INSERT INTO build_apks (build_id, path, package_name, version_code, version_name) VALUES (?, ?, ?, ?, ?)",
+                metadata.apks(), BATCH_SIZE, (ps, a) -> {
+                    ps.setLong(1, id);
+                    ps.setString(2, truncate(a.path(), MAX_PATH_LENGTH));
+                    ps.setString(3, truncate(a.packageName(), MAX_NAME_LENGTH));
+                    ps.setLong(4, a.versionCode());
+                    ps.setString(5, truncate(a.versionName(), MAX_NAME_LENGTH));
+                });
+        jdbc.batchUpdate("INSERT INTO build_partitions (build_id, name, files, bytes) VALUES (?, ?, ?, ?)",
+                metadata.partitions(), BATCH_SIZE, (ps, p) -> {
+                    ps.setLong(1, id);
+                    ps.setString(2, truncate(p.name(), MAX_PARTITION_LENGTH));
+                    ps.setLong(3, p.files());
+                    ps.setLong(4, p.bytes());
+                });
+
+        int pruned = jdbc.update("""
+                DELETE FROM builds WHERE project = ? AND id NOT IN (
+                    SELECT id FROM builds WHERE project = ? ORDER BY id DESC LIMIT ?)""",
+                project, project, Math.max(1, properties.getBuilds().getHistory()));
+
+        log.info("Сборка {} проекта {} в индексе: свойств {}, APK {}, разделов {}{}", record.buildId(), project,
+                metadata.properties().size(), metadata.apks().size(), metadata.partitions().size(),
+                pruned > 0 ? ", удалено старых сборок " + pruned : "");
+    }
+
+    @Override
+    public List<BuildSummary> builds(String project, int limit) {
+        if (project == null) {
+            return jdbc.query("SELECT " + SUMMARY_COLUMNS + " FROM builds b WHERE b.latest ORDER BY b.project LIMIT ?",
+                    SUMMARY, limit);
+        }
+        return jdbc.query("SELECT " + SUMMARY_COLUMNS + " FROM builds b WHERE b.project = ? ORDER BY b.id DESC LIMIT ?",
+                SUMMARY, project, limit);
+    }
+
+    @Override
+    public Optional<BuildDetails> find(long id) {
+        List<BuildSummary> found = jdbc.query("SELECT " + SUMMARY_COLUMNS + " FROM builds b WHERE b.id = ?", SUMMARY, id);
+        if (found.isEmpty()) return Optional.empty();
+
+        Map<String, Map<String, String>> props = new LinkedHashMap<>();
+        jdbc.query("SELECT partition_name, name, prop_value FROM build_properties WHERE build_id = ? ORDER BY partition_name, name",
+                rs -> {
+                    props.computeIfAbsent(rs.getString(1), k -> new LinkedHashMap<>()).put(rs.getString(2), rs.getString(3));
+                }, id);
+        List<BuildMetadata.Apk> apks = jdbc.query(
+                "SELECT path, package_name, version_code, version_name FROM build_apks WHERE build_id = ? ORDER BY package_name, path",
+                (rs, i) -> apk(rs), id);
+        List<BuildMetadata.Partition> partitions = jdbc.query(
+                "SELECT name, files, bytes FROM build_partitions WHERE build_id = ? ORDER BY name",
+                (rs, i) -> new BuildMetadata.Partition(rs.getString(1), rs.getLong(2), rs.getLong(3)), id);
+
+        return Optional.of(new BuildDetails(found.getFirst(), props, apks, partitions));
+    }
+
+    @Override
+    public List<ApkMatch> findPackage(String packageName, long minVersionCode, boolean latestOnly, int limit) {
+        return jdbc.query("SELECT " + SUMMARY_COLUMNS + ", a.path, a.package_name, a.version_code, a.version_name"
+                        + " FROM build_apks a JOIN builds b ON b.id = a.build_id"
+                        + " WHERE a.package_name = ? AND a.version_code >= ?" + (latestOnly ? " AND b.latest" : "")
+                        + " ORDER BY b.project, b.id DESC, a.path LIMIT ?",
+                (rs, i) -> new ApkMatch(summary(rs), apk(rs)), packageName, minVersionCode, limit);
+    }
+
+    @Override
+    public List<BuildSummary> findByProperty(String name, String value, boolean latestOnly, int limit) {
+        return jdbc.query("SELECT DISTINCT " + SUMMARY_COLUMNS
+                        + " FROM build_properties p JOIN builds b ON b.id = p.build_id"
+                        + " WHERE p.name = ? AND p.prop_value = ?" + (latestOnly ? " AND b.latest" : "")
+                        + " ORDER BY b.project, b.id DESC LIMIT ?",
+                SUMMARY, name, truncate(value, MAX_VALUE_LENGTH), limit);
+    }
+
+    private static BuildSummary summary(ResultSet rs) throws SQLException {
+        return new BuildSummary(rs.getLong("id"), rs.getString("project"), rs.getString("commit_id"),
+                rs.getString("display_id"), rs.getString("fingerprint"), rs.getBoolean("latest"),
+                rs.getObject("recorded_at", OffsetDateTime.class).toInstant());
+    }
+
+    private static BuildMetadata.Apk apk(ResultSet rs) throws SQLException {
+        return new BuildMetadata.Apk(rs.getString("path"), rs.getString("package_name"),
+                rs.getLong("version_code"), rs.getString("version_name"));
+    }
+
+    private static String truncate(String s, int max) {
+        return s != null && s.length() > max ? s.substring(0, max) : s;
+    }
+}
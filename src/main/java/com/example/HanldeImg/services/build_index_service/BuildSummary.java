@@ -0,0 +1,10 @@
+package com.example.HanldeImg.services.build_index_service;
+
+import java.time.Instant;
+
+/**
+ * @param displayId ro.build.display.id, он же сообщение коммита
+ * @param latest    последняя сборка проекта
+ */
+public record BuildSummary(long id, String project, String commit, String displayId, String fingerprint,
+                           boolean latest, Instant recordedAt) {}
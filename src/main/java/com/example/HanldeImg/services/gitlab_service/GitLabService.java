@@ -0,0 +1,15 @@
+package com.example.HanldeImg.services.gitlab_service;
+
+import org.gitlab4j.api.GitLabApiException;
+
+public interface GitLabService {
+    /**
+     * Находит или создаёт группу и проект с включённым LFS.
+     */
+    void ensureProject(String groupName, String projectName) throws GitLabApiException;
+
+    /**
+     * Забывает закэшированные группу и проект, например после 404 от GitLab.
+     */
+    void invalidate(String groupName, String projectName);
+}
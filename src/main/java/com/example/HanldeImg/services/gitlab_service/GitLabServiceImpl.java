@@ -0,0 +1,175 @@
+package com.example.HanldeImg.services.gitlab_service;
+
+import com.example.HanldeImg.config.PipelineProperties;
+import org.gitlab4j.api.GitLabApi;
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Group;
+import org.gitlab4j.api.models.Project;
+import org.gitlab4j.models.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Один GitLabApi на всё приложение (и его пул соединений), кэш групп и проектов с TTL.
+ * Параллельные запросы к одной и той же группе или проекту ждут один общий вызов,
+ * поэтому одновременные загрузки в новую группу не создают её дважды.
+ */
+@Service
+public class GitLabServiceImpl implements GitLabService, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(GitLabServiceImpl.class);
+
+    private final PipelineProperties.GitLab settings;
+    private volatile GitLabApi api;
+
+    private final Map<String, Entry<Group>> groups = new ConcurrentHashMap<>();
+    private final Map<String, Entry<Long>> projects = new ConcurrentHashMap<>();
+
+    private record Entry<T>(CompletableFuture<T> value, long expiresAt) {
+        boolean isFresh(long now) {
+            return expiresAt - now > 0;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Loader<T> {
+        T load() throws GitLabApiException;
+    }
+
+    public GitLabServiceImpl(PipelineProperties properties) {
+        this.settings = properties.getGitlab();
+    }
+
+    @Override
+    public void ensureProject(String groupName, String projectName) throws GitLabApiException {
+        try {
+            ensureProjectOnce(groupName, projectName);
+        } catch (GitLabApiException e) {
+            if (e.getHttpStatus() != 404) throw e;
+            // группу могли удалить, пока она лежала в кэше
+            log.info("GitLab ответил 404 для {}/{}, сбрасываем кэш и пробуем ещё раз", groupName, projectName);
+            invalidate(groupName, projectName);
+            ensureProjectOnce(groupName, projectName);
+        }
+    }
+
+    private void ensureProjectOnce(String groupName, String projectName) throws GitLabApiException {
+        Group group = cached(groups, key(groupName), () -> resolveGroup(groupName));
+        String fullPath = group.getFullPath() + "/" + projectName.toLowerCase(Locale.ROOT);
+        cached(projects, key(fullPath), () -> resolveProject(group, projectName, fullPath));
+    }
+
+    @Override
+    public void invalidate(String groupName, String projectName) {
+        if (groupName != null) groups.remove(key(groupName));
+        if (projectName == null) return;
+
+        // путь группы может отличаться от имени, поэтому ищем проект по хвосту пути
+        String suffix = "/" + key(projectName);
+        projects.keySet().removeIf(k -> k.endsWith(suffix));
+    }
+
+    private Group resolveGroup(String groupName) throws GitLabApiException {
+        GitLabApi gitLab = api();
+        Group found = findGroup(gitLab, groupName);
+        if (found != null) return found;
+
+        try {
+            log.info("Создаём группу GitLab {}", groupName);
+            return gitLab.getGroupApi().addGroup(groupName, groupName.toLowerCase(Locale.ROOT));
+        } catch (GitLabApiException e) {
+            // группу успел создать кто-то другой (другой экземпляр сервиса)
+            Group raced = findGroup(gitLab, groupName);
+            if (raced != null) return raced;
+            throw e;
+        }
+    }
+
+    private static Group findGroup(GitLabApi gitLab, String groupName) throws GitLabApiException {
+        return gitLab.getGroupApi().getGroups(groupName).stream()
+                .filter(g -> g.getName().equalsIgnoreCase(groupName))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private Long resolveProject(Group group, String projectName, String fullPath) throws GitLabApiException {
+        GitLabApi gitLab = api();
+        try {
+            return gitLab.getProjectApi().getProject(fullPath).getId();
+        } catch (GitLabApiException e) {
+            if (e.getHttpStatus() != 404) throw e;
+        }
+
+        Project p = new Project()
+                .withName(projectName)
+                .withPath(projectName.toLowerCase(Locale.ROOT))
+                .withNamespaceId(group.getId())
+                .withLfsEnabled(true);
+        try {
+            log.info("Создаём проект GitLab {}", fullPath);
+            return gitLab.getProjectApi().createProject(p).getId();
+        } catch (GitLabApiException e) {
+            if (e.getHttpStatus() == 404) throw e;
+            try {
+                return gitLab.getProjectApi().getProject(fullPath).getId();
+            } catch (GitLabApiException ignored) {
+                throw e;
+            }
+        }
+    }
+
+    private <T> T cached(Map<String, Entry<T>> cache, String key, Loader<T> loader) throws GitLabApiException {
+        long now = System.nanoTime();
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        Entry<T> entry = cache.compute(key, (k, old) ->
+                old != null && old.isFresh(now) ? old : new Entry<>(mine, now + settings.getCacheTtl().toNanos()));
+
+        if (entry.value() == mine) {
+            try {
+                mine.complete(loader.load());
+            } catch (GitLabApiException | RuntimeException e) {
+                cache.remove(key, entry);
+                mine.completeExceptionally(e);
+            }
+        }
+
+        try {
+            return entry.value().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof GitLabApiException gle) throw gle;
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    private GitLabApi api() {
+        GitLabApi current = api;
+        if (current != null) return current;
+        synchronized (this) {
+            if (api == null) {
+                if (settings.getUrl() == null || settings.getUrl().isBlank()) {
+                    throw new IllegalStateException("Не задан адрес GitLab (pipeline.gitlab.url / GIT_URL)");
+                }
+                api = new GitLabApi(settings.getUrl(), Constants.TokenType.PRIVATE, settings.getToken());
+            }
+            return api;
+        }
+    }
+
+    private static String key(String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public void close() {
+        GitLabApi current = api;
+        if (current != null) current.close();
+    }
+}
@@ -1,10 +1,26 @@
 package com.example.HanldeImg.services.image_service;
 
+import com.example.HanldeImg.scripts.BuildRecord;
+import com.example.HanldeImg.scripts.IngestScripts.IngestedImage;
+import com.example.HanldeImg.scripts.PipelineListener;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
 
 public interface ImageService {
-    void uploadProject(List<MultipartFile> files, String dirName);
-    void updateProject(List<MultipartFile> files, String dirName);
+    List<IngestedImage> ingest(List<MultipartFile> files, String dirName);
+    /**
+     * Принимает образы, уже собранные на диске (докачка по чанкам): файлы переносятся, а не копируются.
+     */
+    List<IngestedImage> adopt(List<Path> files, String dirName);
+    void release(List<IngestedImage> images);
+
+    /**
+     * Последняя опубликованная сборка проекта, если она сделана ровно из этих образов.
+     */
+    Optional<BuildRecord> findPublished(List<IngestedImage> images, String dirName);
+    void uploadProject(List<IngestedImage> images, String dirName, PipelineListener listener);
+    void updateProject(List<IngestedImage> images, String dirName, PipelineListener listener);
 }
@@ -1,105 +1,383 @@
 package com.example.HanldeImg.services.image_service;
 
-import com.example.HanldeImg.scripts.ApkScripts;
+import com.example.HanldeImg.config.PipelineProperties;
+import com.example.HanldeImg.scripts.ApkScripts.ApkPlan;
+import com.example.HanldeImg.scripts.ApkScripts.DecodeOptions;
+import com.example.HanldeImg.scripts.ApkScripts.DecodeReport;
+import com.example.HanldeImg.scripts.BuildMetadata;
+import com.example.HanldeImg.scripts.BuildRecord;
+import com.example.HanldeImg.scripts.DecodeCache;
 import com.example.HanldeImg.scripts.ImageScripts;
+import com.example.HanldeImg.scripts.ImageScripts.Published;
+import com.example.HanldeImg.scripts.ImageScripts.UpdateOptions;
+import com.example.HanldeImg.scripts.IngestScripts;
+import com.example.HanldeImg.scripts.IngestScripts.IngestOptions;
+import com.example.HanldeImg.scripts.IngestScripts.IngestedImage;
+import com.example.HanldeImg.scripts.PipelineListener;
+import com.example.HanldeImg.scripts.PipelineStage;
+import com.example.HanldeImg.scripts.extract.ExtractProfile;
+import com.example.HanldeImg.scripts.extract.ImageExtractors;
+import com.example.HanldeImg.scripts.extract.SparseMode;
+import com.example.HanldeImg.scripts.flow.FlowOptions;
+import com.example.HanldeImg.scripts.git.GitBackend;
+import com.example.HanldeImg.scripts.git.GitPublisher;
+import com.example.HanldeImg.scripts.index.FileIndex;
+import com.example.HanldeImg.scripts.lfs.LfsClient;
+import com.example.HanldeImg.scripts.lfs.LfsOptions;
+import com.example.HanldeImg.scripts.lfs.LfsRules;
+import com.example.HanldeImg.services.build_index_service.BuildIndexService;
+import com.example.HanldeImg.services.gitlab_service.GitLabService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
+import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class ImageServiceImpl implements ImageService {
 
     private static final String BASE_UPLOAD_DIRECTORY = "uploads";
+    private static final String INGEST_DIRECTORY = ".ingest";
+    private static final String STAGING_DIRECTORY = ".staging";
+    private static final String INDEX_DIRECTORY = ".index";
 
     private static final Logger log = LoggerFactory.getLogger(ImageServiceImpl.class);
 
-    private static String baseName(String filename) {
-        if (filename == null) return "unknown";
-        String name = filename;
-        int dot = name.lastIndexOf('.');
-        return (dot > 0) ? name.substring(0, dot) : name;
+    private final PipelineProperties properties;
+    private final ObjectProvider<DecodeCache> decodeCache;
+    private final GitLabService gitLabService;
+    private final BuildIndexService buildIndex;
+
+    private IngestOptions ingestOptions() {
+        PipelineProperties.Sparse sparse = properties.getSparse();
+        return new IngestOptions(sparse.getMode() == SparseMode.EXPAND, sparse.isVerifyCrc());
+    }
+
+    private ImageExtractors extractors() {
+        PipelineProperties.Extract extract = properties.getExtract();
+        return new ImageExtractors(extract.getEngine(), extract.getJavaThreads(), properties.getSparse().isVerifyCrc());
+    }
+
+    private GitPublisher gitPublisher(String projectName) {
+        PipelineProperties.Git git = properties.getGit();
+        return git.getBackend().create(git.getThreads(), lfsOptions(git.getBackend(), projectName));
+    }
+
+    private LfsOptions lfsOptions(GitBackend backend, String projectName) {
+        PipelineProperties.Lfs lfs = properties.getLfs();
+        if (!lfs.isEnabled()) return null;
+
+        LfsRules rules = new LfsRules(lfs.getMinSize().toBytes(), lfs.getExtensions());
+        if (backend != GitBackend.JGIT) return new LfsOptions(rules, null);
+
+        String base = lfs.getUrl() != null && !lfs.getUrl().isBlank() ? lfs.getUrl() : System.getenv("GIT_URL");
+        if (base == null) {
+            throw new RuntimeException("LFS включён, но не задан pipeline.lfs.url и GIT_URL");
+        }
+        URI endpoint = URI.create(base.replaceAll("/+$", "") + "/"
+                + System.getenv("GIT_GROUP_NAME") + "/" + projectName.toLowerCase() + ".git/info/lfs");
+        return new LfsOptions(rules,
+                new LfsClient(endpoint, lfs.getUsername(), System.getenv("GIT_TOKEN"), lfs.getUploadThreads()));
+    }
+
+    private ExtractProfile extractProfile(String projectName) {
+        PipelineProperties.Extract extract = properties.getExtract();
+        String name = extract.getProjectProfiles().entrySet().stream()
+                .filter(e -> e.getKey().equalsIgnoreCase(projectName))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(extract.getDefaultProfile());
+        if (name == null || name.isBlank()) return ExtractProfile.ALL;
+
+        PipelineProperties.Extract.Profile profile = extract.getProfiles().get(name);
+        if (profile == null) {
+            throw new RuntimeException("Профиль распаковки " + name + " для проекта " + projectName + " не описан");
+        }
+        return new ExtractProfile(name, profile.getInclude(), profile.getExclude());
+    }
+
+    private DecodeOptions decodeOptions() {
+        PipelineProperties.Decode decode = properties.getDecode();
+        return new DecodeOptions(decode.getWorkers(), decode.getMaxHeapMb(), decodeCache.getIfAvailable(),
+                decode.isSkipUnchanged());
+    }
+
+    private FlowOptions flowOptions() {
+        PipelineProperties.Flow flow = properties.getFlow();
+        return new FlowOptions(flow.getHashWorkers(), flow.getHashQueue(), flow.getDecodeQueue());
+    }
+
+    private static Path indexFile(String projectName) {
+        return Path.of(BASE_UPLOAD_DIRECTORY, INDEX_DIRECTORY, projectName + ".idx");
+    }
+
+    private static Path buildRecordFile(String projectName) {
+        return Path.of(BASE_UPLOAD_DIRECTORY, INDEX_DIRECTORY, projectName + ".build");
+    }
+
+    /**
+     * Записываем, из каких образов получен коммит. Ошибка записи не валит задачу:
+     * без записи следующая такая же загрузка просто пройдёт пайплайн целиком.
+     */
+    private void recordBuild(List<IngestedImage> images, String projectName, Published published,
+                             BuildMetadata metadata) {
+        BuildRecord record = BuildRecord.of(images, published.commit(), published.buildId(),
+                extractProfile(projectName).trailers());
+        try {
+            record.write(buildRecordFile(projectName));
+        } catch (IOException e) {
+            log.warn("Не смог сохранить запись о сборке проекта {}", projectName, e);
+        }
+        if (metadata == null) return;
+        try {
+            buildIndex.record(projectName, record, metadata);
+        } catch (RuntimeException e) {
+            log.warn("Не смог записать сборку проекта {} в индекс сборок", projectName, e);
+        }
+    }
+
+    /**
+     * Свойства, APK и размеры разделов для индекса сборок, пока дерево на диске.
+     *
+     * @return null, если собрать не удалось — публикация от этого не зависит
+     */
+    private static BuildMetadata buildMetadata(Path targetDir, List<Path> imagePaths, FileIndex index,
+                                               DecodeReport report) {
+        List<String> partitions = imagePaths.stream()
+                .map(p -> ImageScripts.partitionDir(targetDir, p).getFileName().toString())
+                .distinct()
+                .toList();
+        List<ApkPlan> apks = report != null ? report.apks() : List.of();
+        try {
+            return BuildMetadata.collect(targetDir, partitions, index, apks);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не смог собрать метаданные сборки {}", targetDir, e);
+            return null;
+        }
+    }
+
+    private static Path newIngestDir(String projectName) throws IOException {
+        Path root = Path.of(BASE_UPLOAD_DIRECTORY, INGEST_DIRECTORY);
+        Files.createDirectories(root);
+        return Files.createTempDirectory(root, projectName + "_");
+    }
+
+    private static void cleanupIngestDir(Path ingestDir) {
+        if (ingestDir == null || !Files.exists(ingestDir)) return;
+        try (Stream<Path> list = Files.list(ingestDir)) {
+            for (Path p : list.toList()) {
+                Files.deleteIfExists(p);
+            }
+            Files.deleteIfExists(ingestDir);
+        } catch (IOException ex) {
+            log.warn("Не смог удалить ingest папку: {}", ingestDir, ex);
+        }
     }
 
     @Override
-    public void uploadProject(List<MultipartFile> files, String projectName) {
-        Path targetDir = Path.of(BASE_UPLOAD_DIRECTORY, projectName);
+    public List<IngestedImage> ingest(List<MultipartFile> files, String projectName) {
+        Path ingestDir;
+        try {
+            ingestDir = newIngestDir(projectName);
+        } catch (IOException e) {
+            throw new RuntimeException("Не смог создать ingest папку для проекта " + projectName, e);
+        }
 
-        for (MultipartFile file : files) {
-            if (file == null || file.isEmpty()) continue;
+        List<IngestedImage> images = new ArrayList<>();
+        try {
+            for (MultipartFile file : files) {
+                if (file == null || file.isEmpty()) continue;
 
-            try {
-                File tempFile = File.createTempFile("upload_", "_" + file.getOriginalFilename());
-                file.transferTo(tempFile);
+                // Tomcat уже записал часть в spring.servlet.multipart.location; transferTo(File) с абсолютным
+                // путём переносит её rename'ом, а не копирует, если папка на той же ФС, что и uploads
+                String name = IngestScripts.safeFileName(file.getOriginalFilename());
+                Path spooled = ingestDir.resolve(name + ".multipart").toAbsolutePath();
+                try {
+                    file.transferTo(spooled.toFile());
+                    images.add(IngestScripts.adopt(spooled, file.getOriginalFilename(), ingestDir, ingestOptions(), "multipart"));
+                } catch (IOException e) {
+                    throw new RuntimeException("Ошибка при приёме файла " + file.getOriginalFilename()
+                            + " для проекта " + projectName, e);
+                }
+            }
+        } catch (RuntimeException e) {
+            cleanupIngestDir(ingestDir);
+            throw e;
+        }
 
-                String folderName = baseName(file.getOriginalFilename()); // system / vendor
-                Path imageOutDir = targetDir.resolve(folderName);
+        if (images.isEmpty()) {
+            cleanupIngestDir(ingestDir);
+        }
+        return images;
+    }
 
-                ImageScripts.extractImgWith7z(tempFile.toPath(), imageOutDir);
-                tempFile.delete();
+    @Override
+    public List<IngestedImage> adopt(List<Path> files, String projectName) {
+        Path ingestDir;
+        try {
+            ingestDir = newIngestDir(projectName);
+        } catch (IOException e) {
+            throw new RuntimeException("Не смог создать ingest папку для проекта " + projectName, e);
+        }
 
-            } catch (IOException | InterruptedException e) {
-                throw new RuntimeException("Ошибка при обработке файла " + file.getOriginalFilename(), e);
+        List<IngestedImage> images = new ArrayList<>();
+        try {
+            for (Path file : files) {
+                images.add(IngestScripts.adopt(file, file.getFileName().toString(), ingestDir, ingestOptions()));
             }
+        } catch (IOException e) {
+            cleanupIngestDir(ingestDir);
+            throw new RuntimeException("Ошибка при приёме собранных файлов для проекта " + projectName, e);
         }
 
-        ApkScripts.decodeApksToProjectRoot(targetDir);
+        if (images.isEmpty()) {
+            cleanupIngestDir(ingestDir);
+        }
+        return images;
+    }
 
+    @Override
+    public void release(List<IngestedImage> images) {
+        images.stream()
+                .map(i -> i.path().getParent())
+                .distinct()
+                .forEach(ImageServiceImpl::cleanupIngestDir);
+    }
+
+    @Override
+    public Optional<BuildRecord> findPublished(List<IngestedImage> images, String projectName) {
+        BuildRecord record = BuildRecord.read(buildRecordFile(projectName));
+        return record != null && record.matches(images, extractProfile(projectName).trailers())
+                ? Optional.of(record)
+                : Optional.empty();
+    }
+
+    @Override
+    public void uploadProject(List<IngestedImage> images, String projectName, PipelineListener listener) {
+        Path targetDir = Path.of(BASE_UPLOAD_DIRECTORY, projectName);
+
+        // индекс строится по ходу распаковки и декодирования и заменяет обходы дерева на следующих шагах
+        FileIndex.delete(indexFile(projectName));
+        // пока дерево меняется, запись о прошлой сборке недействительна
+        BuildRecord.delete(buildRecordFile(projectName));
+        FileIndex.Builder index = FileIndex.builder(targetDir);
+
+        // распаковка, apktool и хэширование идут одновременно, DECODE — когда распаковка закончилась
+        listener.stage(PipelineStage.EXTRACT);
+        List<Path> imagePaths = images.stream().map(IngestedImage::path).toList();
+        DecodeReport report;
         try {
-            ImageScripts.ensure(System.getenv("GIT_GROUP_NAME"), projectName);
-            ImageScripts.pushToGitLab(targetDir);
+            report = ImageScripts.extractAndDecode(targetDir, imagePaths,
+                    properties.getExtract().getParallelism(), extractors(), extractProfile(projectName),
+                    decodeOptions(), flowOptions(), index, listener);
+            listener.decoded(report);
+
+            for (IngestedImage image : images) {
+                Files.deleteIfExists(image.path());
+            }
+        } catch (IOException | InterruptedException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            throw new RuntimeException("Ошибка при распаковке образов проекта " + projectName, e);
+        }
+
+        FileIndex fileIndex = index.build();
+        try {
+            fileIndex.write(indexFile(projectName));
+        } catch (IOException e) {
+            log.warn("Не смог сохранить индекс проекта {}", projectName, e);
+        }
+        BuildMetadata metadata = buildMetadata(targetDir, imagePaths, fileIndex, report);
+
+        listener.stage(PipelineStage.PUBLISH);
+        try {
+            gitLabService.ensureProject(System.getenv("GIT_GROUP_NAME"), projectName);
+            Published published = ImageScripts.pushToGitLab(targetDir, gitPublisher(projectName), fileIndex,
+                    extractProfile(projectName));
+            FileIndex.writeCommit(indexFile(projectName), published.commit());
+            recordBuild(images, projectName, published, metadata);
         } catch (Exception e) {
             log.info("Ошибка при загрузки образа на gitlab");
+            // проект могли удалить в GitLab — при следующей попытке разрешаем заново
+            gitLabService.invalidate(System.getenv("GIT_GROUP_NAME"), projectName);
             throw new RuntimeException(e.getMessage());
         }
     }
 
     @Override
-    public void updateProject(List<MultipartFile> files, String dirName) {
+    public void updateProject(List<IngestedImage> images, String dirName, PipelineListener listener) {
 
         Path targetDir = Path.of(BASE_UPLOAD_DIRECTORY, dirName);
 
-        List<Path> tempPaths = new ArrayList<>();
-
         try {
-            // 1) Сохраняем MultipartFile во временные файлы -> List<Path>
-            for (MultipartFile file : files) {
-                if (file == null || file.isEmpty()) continue;
+            List<Path> imagePaths = images.stream()
+                    .map(IngestedImage::path)
+                    .toList();
 
-                File tempFile = File.createTempFile("upload_", "_" + file.getOriginalFilename());
-                file.transferTo(tempFile);
-                tempPaths.add(tempFile.toPath());
-            }
+            // 1) ensure проекта в GitLab
+            listener.stage(PipelineStage.GIT_PREPARE);
+            gitLabService.ensureProject(System.getenv("GIT_GROUP_NAME"), dirName);
 
-            // 2) ensure проекта в GitLab
-            ImageScripts.ensure(System.getenv("GIT_GROUP_NAME"), dirName);
-
-            // 3) обновление: очистка папки + распаковка + commit + push
-            ImageScripts.updateImages(targetDir, tempPaths);
+            // 2) обновление: очистка папки + распаковка + commit + push
+            UpdateOptions options = new UpdateOptions(
+                    properties.getUpdate().getMode(),
+                    Path.of(BASE_UPLOAD_DIRECTORY, STAGING_DIRECTORY),
+                    properties.getExtract().getParallelism(),
+                    extractors(),
+                    decodeOptions(),
+                    gitPublisher(dirName),
+                    indexFile(dirName),
+                    extractProfile(dirName),
+                    flowOptions());
+            BuildRecord.delete(buildRecordFile(dirName));
+            DecodeCapture capture = new DecodeCapture(listener);
+            Published published = ImageScripts.updateImages(targetDir, imagePaths, options, capture);
+            recordBuild(images, dirName, published, buildMetadata(targetDir, imagePaths,
+                    FileIndex.read(indexFile(dirName)), capture.report));
 
         } catch (Exception e) {
             log.info("Ошибка при обновлении проекта на gitlab");
+            gitLabService.invalidate(System.getenv("GIT_GROUP_NAME"), dirName);
             throw new RuntimeException(e.getMessage(), e);
-
-        } finally {
-            for (Path p : tempPaths) {
-                try {
-                    Files.deleteIfExists(p);
-                } catch (IOException ex) {
-                    log.warn("Не смог удалить temp файл: {}", p, ex);
-                }
-            }
         }
     }
 
+    /**
+     * Передаёт события слушателю задачи и запоминает отчёт декодирования: updateImages его не возвращает.
+     */
+    private static final class DecodeCapture implements PipelineListener {
+        private final PipelineListener delegate;
+        private volatile DecodeReport report;
 
+        private DecodeCapture(PipelineListener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void stage(PipelineStage stage) {
+            delegate.stage(stage);
+        }
+
+        @Override
+        public void planned(List<ApkPlan> apks) {
+            delegate.planned(apks);
+        }
+
+        @Override
+        public void decoded(DecodeReport report) {
+            this.report = report;
+            delegate.decoded(report);
+        }
+    }
 }
@@ -0,0 +1,124 @@
+package com.example.HanldeImg.services.job_service;
+
+import com.example.HanldeImg.scripts.ApkScripts.ApkFailure;
+import com.example.HanldeImg.scripts.ApkScripts.ApkPlan;
+import com.example.HanldeImg.scripts.BuildRecord;
+import com.example.HanldeImg.scripts.PipelineStage;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@Getter
+public class Job {
+
+    private final String id = UUID.randomUUID().toString();
+    private final JobType type;
+    private final String projectName;
+    // запускать пайплайн, даже если такие же образы уже опубликованы
+    private final boolean force;
+    private final Instant createdAt = Instant.now();
+
+    private volatile JobState state = JobState.QUEUED;
+    private volatile PipelineStage stage;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    private volatile String supersededBy;
+    private volatile BuildRecord unchangedBuild;
+    private volatile List<ApkPlan> apks = List.of();
+    private volatile List<ApkFailure> decodeFailures = List.of();
+
+    // пишутся под synchronized, наружу — только через stageTimingsSnapshot()
+    @Getter(AccessLevel.NONE)
+    private final Map<PipelineStage, Duration> stageTimings = new LinkedHashMap<>();
+    @Getter(AccessLevel.NONE)
+    private Instant stageStartedAt;
+
+    public Job(JobType type, String projectName) {
+        this(type, projectName, false);
+    }
+
+    public Job(JobType type, String projectName, boolean force) {
+        this.type = type;
+        this.projectName = projectName;
+        this.force = force;
+    }
+
+    public synchronized void enterStage(PipelineStage next) {
+        closeStage();
+        stage = next;
+        stageStartedAt = Instant.now();
+    }
+
+    public void recordApks(List<ApkPlan> plans) {
+        this.apks = List.copyOf(plans);
+    }
+
+    public void recordDecodeFailures(List<ApkFailure> failures) {
+        this.decodeFailures = List.copyOf(failures);
+    }
+
+    /**
+     * @return false, если задачу уже вытеснила более новая
+     */
+    public synchronized boolean start() {
+        if (state != JobState.QUEUED) return false;
+        state = JobState.RUNNING;
+        startedAt = Instant.now();
+        return true;
+    }
+
+    /**
+     * @return true, если задача ещё не начиналась и теперь помечена как вытесненная
+     */
+    public synchronized boolean supersede(String newerJobId) {
+        if (state != JobState.QUEUED) return false;
+        supersededBy = newerJobId;
+        finish(JobState.SUPERSEDED, null);
+        return true;
+    }
+
+    /**
+     * Завершает задачу без запуска пайплайна: этот набор образов уже дал коммит {@code build}.
+     */
+    public synchronized void unchanged(BuildRecord build) {
+        unchangedBuild = build;
+        finish(JobState.UNCHANGED, null);
+    }
+
+    public synchronized void succeed() {
+        finish(JobState.SUCCEEDED, null);
+    }
+
+    public synchronized void fail(Throwable e) {
+        finish(JobState.FAILED, e.getMessage() != null ? e.getMessage() : e.getClass().getName());
+    }
+
+    public synchronized Map<PipelineStage, Duration> stageTimingsSnapshot() {
+        Map<PipelineStage, Duration> copy = new LinkedHashMap<>(stageTimings);
+        if (stage != null && stageStartedAt != null && !state.isFinished()) {
+            copy.merge(stage, Duration.between(stageStartedAt, Instant.now()), Duration::plus);
+        }
+        return copy;
+    }
+
+    private void finish(JobState finalState, String message) {
+        closeStage();
+        state = finalState;
+        error = message;
+        finishedAt = Instant.now();
+    }
+
+    private void closeStage() {
+        if (stage != null && stageStartedAt != null) {
+            stageTimings.merge(stage, Duration.between(stageStartedAt, Instant.now()), Duration::plus);
+        }
+        stageStartedAt = null;
+    }
+}
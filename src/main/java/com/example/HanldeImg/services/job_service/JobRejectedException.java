@@ -0,0 +1,21 @@
+package com.example.HanldeImg.services.job_service;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class JobRejectedException extends ResponseStatusException {
+
+    private static final String RETRY_AFTER_SECONDS = "60";
+
+    public JobRejectedException(String reason) {
+        super(HttpStatus.TOO_MANY_REQUESTS, reason);
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+        return headers;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.HanldeImg.services.job_service;
+
+import com.example.HanldeImg.scripts.IngestScripts.IngestedImage;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+public interface JobService {
+    /**
+     * Если проект уже опубликован ровно из этих образов и не задан {@code force}, задача сразу
+     * завершается в состоянии {@link JobState#UNCHANGED}.
+     */
+    Job submit(JobType type, String projectName, boolean force, List<MultipartFile> files);
+
+    /**
+     * То же для образов, которые уже лежат на диске. {@code ingest} вызывается, только если
+     * в очереди есть место.
+     */
+    Job submitIngested(JobType type, String projectName, boolean force, Supplier<List<IngestedImage>> ingest);
+    Optional<Job> find(String id);
+}
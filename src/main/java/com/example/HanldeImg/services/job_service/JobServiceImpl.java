@@ -0,0 +1,277 @@
+package com.example.HanldeImg.services.job_service;
+
+import com.example.HanldeImg.config.PipelineProperties;
+import com.example.HanldeImg.scripts.ApkScripts.ApkPlan;
+import com.example.HanldeImg.scripts.ApkScripts.DecodeReport;
+import com.example.HanldeImg.scripts.BuildRecord;
+import com.example.HanldeImg.scripts.IngestScripts.IngestedImage;
+import com.example.HanldeImg.scripts.PipelineListener;
+import com.example.HanldeImg.scripts.PipelineStage;
+import com.example.HanldeImg.scripts.metrics.PipelineMetrics;
+import com.example.HanldeImg.scripts.process.JobContext;
+import com.example.HanldeImg.services.image_service.ImageService;
+import io.micrometer.observation.Observation;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+@Service
+@RequiredArgsConstructor
+public class JobServiceImpl implements JobService {
+
+    private static final Logger log = LoggerFactory.getLogger(JobServiceImpl.class);
+
+    private final ImageService imageService;
+    private final ThreadPoolExecutor pipelineExecutor;
+    private final PipelineProperties properties;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    // файлы задач, которые ещё не начались: их забирает либо запуск, либо вытеснение
+    private final Map<String, List<IngestedImage>> queuedImages = new ConcurrentHashMap<>();
+    // самое новое ещё не начатое обновление каждого проекта
+    private final Map<String, Job> queuedUpdates = new ConcurrentHashMap<>();
+    /**
+     * Проекты, по которым сейчас идёт задача, и их отложенные задачи. Задачи одного проекта выполняются строго
+     * по очереди: пока проект занят, новые задачи паркуются здесь, а не блокируют поток пайплайна;
+     * освободившийся поток забирает их сам. Запись есть, только пока проект занят.
+     */
+    private final Map<String, Deque<Job>> busyProjects = new ConcurrentHashMap<>();
+    // отложенные задачи держат принятые образы на диске, поэтому считаются в ёмкость очереди
+    private final AtomicInteger parked = new AtomicInteger();
+
+    @Override
+    public Job submit(JobType type, String projectName, boolean force, List<MultipartFile> files) {
+        return submitIngested(type, projectName, force, () -> imageService.ingest(files, projectName));
+    }
+
+    @Override
+    public Job submitIngested(JobType type, String projectName, boolean force, Supplier<List<IngestedImage>> ingest) {
+        evictFinishedJobs();
+
+        // отказываем до приёма файлов, чтобы не копировать гигабайты впустую
+        checkCapacity();
+
+        Job job = new Job(type, projectName, force);
+        jobs.put(job.getId(), job);
+
+        // MultipartFile живёт только до конца запроса, поэтому приём делаем в request-потоке
+        job.enterStage(PipelineStage.INGEST);
+        List<IngestedImage> images;
+        try {
+            images = ingest.get();
+        } catch (RuntimeException e) {
+            job.fail(e);
+            throw e;
+        }
+
+        // SHA-256 образов посчитан при приёме, так что повторная загрузка той же прошивки отсекается здесь же
+        if (skipIfPublished(job, images)) {
+            imageService.release(images);
+            return job;
+        }
+
+        queuedImages.put(job.getId(), images);
+        try {
+            // пока шёл приём, очередь могли занять другие
+            checkCapacity();
+            pipelineExecutor.execute(() -> dispatch(job));
+        } catch (JobRejectedException | RejectedExecutionException e) {
+            queuedImages.remove(job.getId());
+            imageService.release(images);
+            jobs.remove(job.getId());
+            throw new JobRejectedException("Очередь пайплайна заполнена, повторите позже");
+        }
+
+        if (type == JobType.UPDATE) {
+            Job previous = queuedUpdates.put(projectKey(projectName), job);
+            if (previous != null && previous != job && previous.supersede(job.getId())) {
+                log.info("Задача {} для проекта {} вытеснена более новой {}", previous.getId(), projectName, job.getId());
+                busyProjects.computeIfPresent(projectKey(projectName), (k, waiting) -> {
+                    if (waiting.remove(previous)) parked.decrementAndGet();
+                    return waiting;
+                });
+                List<IngestedImage> stale = queuedImages.remove(previous.getId());
+                if (stale != null) imageService.release(stale);
+            }
+        }
+
+        log.info("Задача {} ({}) для проекта {} поставлена в очередь", job.getId(), type, projectName);
+        return job;
+    }
+
+    @Override
+    public Optional<Job> find(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    private void checkCapacity() {
+        int capacity = Math.max(1, properties.getExecutor().getQueueCapacity());
+        if (pipelineExecutor.getQueue().remainingCapacity() == 0
+                || pipelineExecutor.getQueue().size() + parked.get() >= capacity) {
+            throw new JobRejectedException("Очередь пайплайна заполнена, повторите позже");
+        }
+    }
+
+    private void dispatch(Job job) {
+        String key = projectKey(job.getProjectName());
+        boolean[] owner = {false};
+        busyProjects.compute(key, (k, waiting) -> {
+            if (waiting == null) {
+                owner[0] = true;
+                return new ArrayDeque<>();
+            }
+            waiting.add(job);
+            parked.incrementAndGet();
+            return waiting;
+        });
+        if (!owner[0]) return;
+
+        Job next = job;
+        while (next != null) {
+            Job[] polled = {null};
+            try {
+                runIfCurrent(next);
+            } finally {
+                busyProjects.computeIfPresent(key, (k, waiting) -> {
+                    polled[0] = waiting.poll();
+                    if (polled[0] == null) return null;
+                    parked.decrementAndGet();
+                    return waiting;
+                });
+            }
+            next = polled[0];
+        }
+    }
+
+    private void runIfCurrent(Job job) {
+        if (!job.start()) {
+            log.info("Задача {} пропущена: {}", job.getId(), job.getState());
+            return;
+        }
+        queuedUpdates.remove(projectKey(job.getProjectName()), job);
+        List<IngestedImage> images = queuedImages.remove(job.getId());
+        // планировщик процессов делит слоты между задачами по этому id
+        JobContext.run(job.getId(), () -> run(job, images != null ? images : List.of()));
+    }
+
+    /**
+     * @return true, если проект уже опубликован из этих образов и задача завершена без пайплайна
+     */
+    private boolean skipIfPublished(Job job, List<IngestedImage> images) {
+        if (job.isForce()) return false;
+        Optional<BuildRecord> published = imageService.findPublished(images, job.getProjectName());
+        if (published.isEmpty()) return false;
+
+        BuildRecord build = published.get();
+        job.unchanged(build);
+        log.info("Задача {}: проект {} уже опубликован из тех же образов (коммит {}, {}), пайплайн не запускаем",
+                job.getId(), job.getProjectName(), build.commit(), build.buildId());
+        return true;
+    }
+
+    private void run(Job job, List<IngestedImage> images) {
+        // такая же задача могла стоять в очереди перед этой и уже всё опубликовать
+        if (skipIfPublished(job, images)) {
+            imageService.release(images);
+            return;
+        }
+        log.info("Задача {} ({}) для проекта {} запущена", job.getId(), job.getType(), job.getProjectName());
+        // трасса задачи: span задачи, в нём span'ы стадий, в них — 7z, apktool и git
+        Observation observation = PipelineMetrics.start(PipelineMetrics.JOB,
+                "job " + job.getType().name().toLowerCase(), "type", job.getType().name());
+        observation.highCardinalityKeyValue("job.id", job.getId());
+        observation.highCardinalityKeyValue("project", job.getProjectName());
+        PipelineMetrics.jobStarted();
+        try (Observation.Scope scope = observation.openScope(); JobListener listener = new JobListener(job)) {
+            try {
+                switch (job.getType()) {
+                    case LOAD -> imageService.uploadProject(images, job.getProjectName(), listener);
+                    case UPDATE -> imageService.updateProject(images, job.getProjectName(), listener);
+                }
+                job.succeed();
+                log.info("Задача {} завершена успешно", job.getId());
+            } catch (Exception e) {
+                listener.fail(e);
+                observation.error(e);
+                job.fail(e);
+                log.error("Задача {} завершилась с ошибкой", job.getId(), e);
+            }
+        } finally {
+            PipelineMetrics.jobFinished();
+            observation.stop();
+            imageService.release(images);
+        }
+    }
+
+    /**
+     * Переносит события пайплайна в задачу; каждая стадия — отдельный таймер и span внутри span'а задачи.
+     * Стадии сменяются в потоке задачи, там же открывается их scope.
+     */
+    private static final class JobListener implements PipelineListener, AutoCloseable {
+        private final Job job;
+        private Observation stage;
+        private Observation.Scope scope;
+
+        JobListener(Job job) {
+            this.job = job;
+        }
+
+        @Override
+        public void stage(PipelineStage next) {
+            job.enterStage(next);
+            close();
+            stage = PipelineMetrics.start(PipelineMetrics.STAGE, next.name().toLowerCase(),
+                    "stage", next.name(), "type", job.getType().name());
+            scope = stage.openScope();
+        }
+
+        @Override
+        public void planned(List<ApkPlan> apks) {
+            job.recordApks(apks);
+        }
+
+        @Override
+        public void decoded(DecodeReport report) {
+            job.recordDecodeFailures(report.failures());
+        }
+
+        void fail(Throwable e) {
+            if (stage != null) stage.error(e);
+        }
+
+        @Override
+        public void close() {
+            if (stage == null) return;
+            scope.close();
+            stage.stop();
+            stage = null;
+        }
+    }
+
+    private static String projectKey(String projectName) {
+        return projectName.toLowerCase(Locale.ROOT);
+    }
+
+    private void evictFinishedJobs() {
+        Instant threshold = Instant.now().minus(properties.getJobs().getRetention());
+        jobs.values().removeIf(j -> j.getState().isFinished()
+                && j.getFinishedAt() != null
+                && j.getFinishedAt().isBefore(threshold));
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.HanldeImg.services.job_service;
+
+public enum JobState {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED,
+    // более новое обновление того же проекта пришло раньше, чем эта задача успела начаться
+    SUPERSEDED,
+    // этот же набор образов уже опубликован, пайплайн не запускался
+    UNCHANGED;
+
+    public boolean isFinished() {
+        return this == SUCCEEDED || this == FAILED || this == SUPERSEDED || this == UNCHANGED;
+    }
+}
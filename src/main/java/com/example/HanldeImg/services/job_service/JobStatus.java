@@ -0,0 +1,73 @@
+package com.example.HanldeImg.services.job_service;
+
+import com.example.HanldeImg.scripts.PipelineStage;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public record JobStatus(
+        String id,
+        JobType type,
+        String projectName,
+        JobState state,
+        PipelineStage stage,
+        Instant createdAt,
+        Instant startedAt,
+        Instant finishedAt,
+        Map<PipelineStage, Long> stageMillis,
+        String error,
+        String supersededBy,
+        PublishedBuild unchangedFrom,
+        List<ApkSummary> apks,
+        List<DecodeFailure> decodeFailures
+) {
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    public record ApkSummary(String apk, String packageName, Long versionCode, String versionName, boolean skipped) {}
+
+    public record DecodeFailure(String apk, String error) {}
+
+    /**
+     * Сборка, которая уже была сделана из тех же образов.
+     */
+    public record PublishedBuild(String commit, String buildId, Instant publishedAt) {}
+
+    public static JobStatus of(Job job) {
+        Map<PipelineStage, Long> millis = new LinkedHashMap<>();
+        for (Map.Entry<PipelineStage, Duration> e : job.stageTimingsSnapshot().entrySet()) {
+            millis.put(e.getKey(), e.getValue().toMillis());
+        }
+        return new JobStatus(
+                job.getId(),
+                job.getType(),
+                job.getProjectName(),
+                job.getState(),
+                job.getStage(),
+                job.getCreatedAt(),
+                job.getStartedAt(),
+                job.getFinishedAt(),
+                millis,
+                job.getError(),
+                job.getSupersededBy(),
+                job.getUnchangedBuild() == null ? null : new PublishedBuild(job.getUnchangedBuild().commit(),
+                        job.getUnchangedBuild().buildId(), job.getUnchangedBuild().recordedAt()),
+                job.getApks().stream()
+                        .map(p -> p.info() == null
+                                ? new ApkSummary(p.apk().toString(), null, null, null, p.skip())
+                                : new ApkSummary(p.apk().toString(), p.info().packageName(),
+                                        p.info().versionCode(), p.info().versionName(), p.skip()))
+                        .toList(),
+                job.getDecodeFailures().stream()
+                        .map(f -> new DecodeFailure(f.apk().toString(), truncate(f.error())))
+                        .toList()
+        );
+    }
+
+    private static String truncate(String s) {
+        if (s == null || s.length() <= MAX_ERROR_LENGTH) return s;
+        return s.substring(0, MAX_ERROR_LENGTH) + "...";
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.HanldeImg.services.job_service;
+
+public enum JobType {
+    LOAD,
+    UPDATE
+}
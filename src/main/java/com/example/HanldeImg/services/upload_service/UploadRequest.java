@@ -0,0 +1,16 @@
+package com.example.HanldeImg.services.upload_service;
+
+import com.example.HanldeImg.services.job_service.JobType;
+
+import java.util.List;
+
+/**
+ * Тело POST /api/v1/uploads: какие файлы будут присланы чанками и в какую задачу они пойдут.
+ */
+public record UploadRequest(String projectName, JobType type, List<FileSpec> files) {
+
+    /**
+     * @param sha256 SHA-256 всего файла, если клиент его знает; сверяется при завершении
+     */
+    public record FileSpec(String name, long size, String sha256) {}
+}
@@ -0,0 +1,21 @@
+package com.example.HanldeImg.services.upload_service;
+
+import com.example.HanldeImg.services.job_service.Job;
+
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * Докачиваемая загрузка образов: сессия создаётся заранее, файлы приходят чанками в любом
+ * порядке и параллельно, а завершённая сессия превращается в обычную задачу пайплайна.
+ */
+public interface UploadService {
+    UploadStatus create(UploadRequest request);
+    UploadStatus.FileStatus writeChunk(String id, String fileName, long offset, long length, String sha256, InputStream body);
+    Optional<UploadStatus> find(String id);
+    /**
+     * @param force запускать пайплайн, даже если проект уже опубликован из тех же образов
+     */
+    Job complete(String id, boolean force);
+    void abort(String id);
+}
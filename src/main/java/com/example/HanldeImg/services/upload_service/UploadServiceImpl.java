@@ -0,0 +1,258 @@
+package com.example.HanldeImg.services.upload_service;
+
+import com.example.HanldeImg.config.PipelineProperties;
+import com.example.HanldeImg.scripts.IngestScripts;
+import com.example.HanldeImg.scripts.IngestScripts.IngestedImage;
+import com.example.HanldeImg.scripts.TreeDeleter;
+import com.example.HanldeImg.scripts.upload.ChunkRejectedException;
+import com.example.HanldeImg.scripts.upload.ChunkedFile;
+import com.example.HanldeImg.services.image_service.ImageService;
+import com.example.HanldeImg.services.job_service.Job;
+import com.example.HanldeImg.services.job_service.JobRejectedException;
+import com.example.HanldeImg.services.job_service.JobService;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+@RequiredArgsConstructor
+public class UploadServiceImpl implements UploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadServiceImpl.class);
+
+    private final JobService jobService;
+    private final ImageService imageService;
+    private final PipelineProperties properties;
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    @Override
+    public UploadStatus create(UploadRequest request) {
+        evictExpiredSessions();
+        validate(request);
+
+        PipelineProperties.Uploads uploads = properties.getUploads();
+        Path dir;
+        try {
+            Path root = Path.of(uploads.getDir());
+            Files.createDirectories(root);
+            dir = Files.createTempDirectory(root, IngestScripts.safeFileName(request.projectName()) + "_");
+        } catch (IOException e) {
+            throw new RuntimeException("Не смог создать папку загрузки для проекта " + request.projectName(), e);
+        }
+
+        Map<String, ChunkedFile> files = new LinkedHashMap<>();
+        Map<String, String> sha256 = new LinkedHashMap<>();
+        try {
+            for (UploadRequest.FileSpec spec : request.files()) {
+                String name = IngestScripts.safeFileName(spec.name());
+                files.put(name, ChunkedFile.create(dir.resolve(name), spec.size()));
+                if (spec.sha256() != null && !spec.sha256().isBlank()) {
+                    sha256.put(name, spec.sha256().toLowerCase());
+                }
+            }
+        } catch (IOException e) {
+            discard(dir);
+            throw new RuntimeException("Не смог создать файлы загрузки проекта " + request.projectName(), e);
+        }
+
+        UploadSession session = new UploadSession(request.projectName(), request.type(), dir,
+                uploads.getSessionTtl(), files, sha256);
+        sessions.put(session.getId(), session);
+        log.info("Загрузка {} для проекта {} создана: файлов {}, {} МБ", session.getId(), request.projectName(),
+                files.size(), files.values().stream().mapToLong(ChunkedFile::size).sum() / (1024 * 1024));
+        return UploadStatus.of(session);
+    }
+
+    @Override
+    public UploadStatus.FileStatus writeChunk(String id, String fileName, long offset, long length,
+                                              String sha256, InputStream body) {
+        long maxChunk = properties.getUploads().getMaxChunkSize().toBytes();
+        if (length > maxChunk) {
+            throw new ResponseStatusException(HttpStatus.CONTENT_TOO_LARGE,
+                    "Чанк больше " + maxChunk + " байт, разбейте его");
+        }
+
+        UploadSession session = require(id);
+        ChunkedFile file = session.getFiles().get(fileName);
+        if (file == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "В загрузке " + id + " нет файла " + fileName);
+        }
+
+        session.getLock().readLock().lock();
+        try {
+            if (session.isClosed()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Загрузка " + id + " уже завершена");
+            }
+            session.touch();
+            file.write(offset, length, sha256, body);
+            session.touch();
+            return UploadStatus.FileStatus.of(fileName, file);
+        } catch (ChunkRejectedException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IOException e) {
+            // обрыв соединения посреди чанка: диапазон не засчитан, клиент пришлёт его снова
+            throw new RuntimeException("Ошибка записи чанка " + fileName + "@" + offset + " загрузки " + id, e);
+        } finally {
+            session.getLock().readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<UploadStatus> find(String id) {
+        return Optional.ofNullable(sessions.get(id)).map(UploadStatus::of);
+    }
+
+    @Override
+    public Job complete(String id, boolean force) {
+        UploadSession session = require(id);
+        session.getLock().writeLock().lock();
+        try {
+            if (session.isClosed()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Загрузка " + id + " уже завершена");
+            }
+            List<String> incomplete = session.getFiles().entrySet().stream()
+                    .filter(e -> !e.getValue().complete())
+                    .map(Map.Entry::getKey)
+                    .toList();
+            if (!incomplete.isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Не все чанки получены: " + incomplete);
+            }
+
+            // если очередь полна, сессия остаётся, и завершение можно повторить
+            Job job;
+            try {
+                job = jobService.submitIngested(session.getType(), session.getProjectName(), force,
+                        () -> adopt(session));
+            } catch (JobRejectedException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                // файлы могли уже уйти в ingest, такую сессию не продолжить
+                session.close();
+                sessions.remove(id);
+                discard(session.getDir());
+                throw e;
+            }
+            session.close();
+            sessions.remove(id);
+            discard(session.getDir());
+            log.info("Загрузка {} завершена, задача {}", id, job.getId());
+            return job;
+        } finally {
+            session.getLock().writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void abort(String id) {
+        UploadSession session = require(id);
+        session.getLock().writeLock().lock();
+        try {
+            session.close();
+            sessions.remove(id);
+        } finally {
+            session.getLock().writeLock().unlock();
+        }
+        discard(session.getDir());
+        log.info("Загрузка {} отменена", id);
+    }
+
+    /**
+     * Файлы уже собраны на своих местах: переносим их в ingest и сверяем SHA-256, если клиент её прислал.
+     */
+    private List<IngestedImage> adopt(UploadSession session) {
+        List<Path> paths = session.getFiles().values().stream().map(ChunkedFile::path).toList();
+        List<IngestedImage> images = imageService.adopt(paths, session.getProjectName());
+        for (IngestedImage image : images) {
+            String expected = session.getSha256().get(image.name());
+            if (expected != null && !expected.equals(image.sha256())) {
+                imageService.release(images);
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "SHA-256 файла " + image.name()
+                        + " не совпала: ожидали " + expected + ", получили " + image.sha256());
+            }
+        }
+        return images;
+    }
+
+    private void validate(UploadRequest request) {
+        if (request.projectName() == null || request.projectName().isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Не указан projectName");
+        }
+        if (request.type() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Не указан type (LOAD или UPDATE)");
+        }
+        if (request.files() == null || request.files().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Не указаны файлы");
+        }
+        long maxFile = properties.getUploads().getMaxFileSize().toBytes();
+        long distinct = request.files().stream().map(f -> IngestScripts.safeFileName(f.name())).distinct().count();
+        if (distinct != request.files().size()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Имена файлов в загрузке повторяются");
+        }
+        for (UploadRequest.FileSpec spec : request.files()) {
+            if (spec.size() <= 0 || spec.size() > maxFile) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Размер файла " + spec.name() + " должен быть от 1 до " + maxFile + " байт");
+            }
+        }
+    }
+
+    private UploadSession require(String id) {
+        UploadSession session = sessions.get(id);
+        if (session == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Загрузка " + id + " не найдена");
+        }
+        return session;
+    }
+
+    /**
+     * Удаляет сессии без новых чанков дольше pipeline.uploads.session-ttl, а также папки,
+     * оставшиеся от сессий до перезапуска сервиса.
+     */
+    private void evictExpiredSessions() {
+        Instant now = Instant.now();
+        for (UploadSession session : sessions.values()) {
+            if (session.isExpired(now) && sessions.remove(session.getId(), session)) {
+                log.info("Загрузка {} для проекта {} просрочена", session.getId(), session.getProjectName());
+                discard(session.getDir());
+            }
+        }
+
+        Path root = Path.of(properties.getUploads().getDir());
+        if (!Files.isDirectory(root)) return;
+        Instant threshold = now.minus(properties.getUploads().getSessionTtl());
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(root)) {
+            for (Path dir : dirs) {
+                boolean live = sessions.values().stream().anyMatch(s -> s.getDir().equals(dir));
+                if (!live && Files.getLastModifiedTime(dir).toInstant().isBefore(threshold)) {
+                    discard(dir);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Не смог проверить старые загрузки в {}", root, e);
+        }
+    }
+
+    private static void discard(Path dir) {
+        try {
+            TreeDeleter.discard(dir);
+        } catch (IOException e) {
+            log.warn("Не смог удалить папку загрузки {}", dir, e);
+        }
+    }
+}
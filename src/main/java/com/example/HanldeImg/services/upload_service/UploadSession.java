@@ -0,0 +1,64 @@
+package com.example.HanldeImg.services.upload_service;
+
+import com.example.HanldeImg.scripts.upload.ChunkedFile;
+import com.example.HanldeImg.services.job_service.JobType;
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+@Getter
+public class UploadSession {
+
+    private final String id = UUID.randomUUID().toString();
+    private final String projectName;
+    private final JobType type;
+    private final Path dir;
+    private final Duration ttl;
+    private final Instant createdAt = Instant.now();
+
+    // имя файла -> собираемый файл, в порядке из запроса
+    private final Map<String, ChunkedFile> files;
+    // ожидаемые SHA-256 целых файлов, если клиент их прислал
+    private final Map<String, String> sha256;
+
+    private volatile Instant lastActivity = createdAt;
+
+    /**
+     * Чанки пишутся под общей блокировкой и не мешают друг другу, завершение берёт эксклюзивную,
+     * чтобы не забрать файл, в который ещё кто-то пишет.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean closed;
+
+    public UploadSession(String projectName, JobType type, Path dir, Duration ttl,
+                         Map<String, ChunkedFile> files, Map<String, String> sha256) {
+        this.projectName = projectName;
+        this.type = type;
+        this.dir = dir;
+        this.ttl = ttl;
+        this.files = files;
+        this.sha256 = sha256;
+    }
+
+    public void touch() {
+        lastActivity = Instant.now();
+    }
+
+    public Instant expiresAt() {
+        return lastActivity.plus(ttl);
+    }
+
+    public boolean isExpired(Instant now) {
+        return expiresAt().isBefore(now);
+    }
+
+    void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.HanldeImg.services.upload_service;
+
+import com.example.HanldeImg.scripts.upload.ChunkedFile;
+import com.example.HanldeImg.scripts.upload.ChunkedFile.Range;
+import com.example.HanldeImg.services.job_service.JobType;
+
+import java.time.Instant;
+import java.util.List;
+
+public record UploadStatus(
+        String id,
+        String projectName,
+        JobType type,
+        Instant createdAt,
+        Instant expiresAt,
+        boolean complete,
+        List<FileStatus> files
+) {
+    /**
+     * @param missing диапазоны [start, end), которые ещё нужно прислать
+     */
+    public record FileStatus(String name, long size, long received, List<Range> missing) {
+        static FileStatus of(String name, ChunkedFile file) {
+            return new FileStatus(name, file.size(), file.received(), file.missing());
+        }
+    }
+
+    static UploadStatus of(UploadSession session) {
+        List<FileStatus> files = session.getFiles().entrySet().stream()
+                .map(e -> FileStatus.of(e.getKey(), e.getValue()))
+                .toList();
+        return new UploadStatus(
+                session.getId(),
+                session.getProjectName(),
+                session.getType(),
+                session.getCreatedAt(),
+                session.expiresAt(),
+                files.stream().allMatch(f -> f.received() == f.size()),
+                files);
+    }
+}
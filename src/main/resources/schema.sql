@@ -0,0 +1,41 @@
+-- индекс сборок: одна строка builds на опубликованный коммит, остальное — его содержимое
+CREATE TABLE IF NOT EXISTS builds (
+    id            BIGINT AUTO_INCREMENT PRIMARY KEY,
+    project       VARCHAR(255)  NOT NULL,
+    commit_id     VARCHAR(64),
+    display_id    VARCHAR(512),
+    fingerprint   VARCHAR(1024),
+    images_digest VARCHAR(64),
+    profile       VARCHAR(1024),
+    latest        BOOLEAN       NOT NULL,
+    recorded_at   TIMESTAMP WITH TIME ZONE NOT NULL
+);
+CREATE INDEX IF NOT EXISTS builds_project ON builds (project, id);
+CREATE INDEX IF NOT EXISTS builds_fingerprint ON builds (fingerprint);
+
+CREATE TABLE IF NOT EXISTS build_properties (
+    build_id       BIGINT        NOT NULL REFERENCES builds (id) ON DELETE CASCADE,
+    partition_name VARCHAR(64)   NOT NULL,
+    name           VARCHAR(255)  NOT NULL,
+    prop_value     VARCHAR(4096) NOT NULL
+);
+CREATE INDEX IF NOT EXISTS build_properties_build ON build_properties (build_id);
+CREATE INDEX IF NOT EXISTS build_properties_name_value ON build_properties (name, prop_value);
+
+CREATE TABLE IF NOT EXISTS build_apks (
+    build_id     BIGINT        NOT NULL REFERENCES builds (id) ON DELETE CASCADE,
+    path         VARCHAR(1024) NOT NULL,
+    package_name VARCHAR(255)  NOT NULL,
+    version_code BIGINT        NOT NULL,
+    version_name VARCHAR(255)
+);
+CREATE INDEX IF NOT EXISTS build_apks_build ON build_apks (build_id);
+CREATE INDEX IF NOT EXISTS build_apks_package ON build_apks (package_name, version_code);
+
+CREATE TABLE IF NOT EXISTS build_partitions (
+    build_id BIGINT      NOT NULL REFERENCES builds (id) ON DELETE CASCADE,
+    name     VARCHAR(64) NOT NULL,
+    files    BIGINT      NOT NULL,
+    bytes    BIGINT      NOT NULL
+);
+CREATE INDEX IF NOT EXISTS build_partitions_build ON build_partitions (build_id);
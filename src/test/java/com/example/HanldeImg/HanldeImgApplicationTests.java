@@ -3,7 +3,7 @@ package com.example.HanldeImg;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:builds")
 class HanldeImgApplicationTests {
 
 	@Test
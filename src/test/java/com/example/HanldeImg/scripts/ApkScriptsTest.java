@@ -0,0 +1,206 @@
+package com.example.HanldeImg.scripts;
+
+import com.example.HanldeImg.scripts.ApkScripts.ApkFailure;
+import com.example.HanldeImg.scripts.ApkScripts.DecodeOptions;
+import com.example.HanldeImg.scripts.ApkScripts.DecodeReport;
+import com.example.HanldeImg.scripts.apk.TestApks;
+import com.example.HanldeImg.scripts.index.FileIndex;
+import com.example.HanldeImg.scripts.process.ProcessRunner;
+import com.example.HanldeImg.scripts.process.ToolClass;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ApkScriptsTest {
+
+    // как заглушка в benchmarks: пишет манифест и apktool.yml, а на Broken.apk падает с ошибкой
+    private static final String APKTOOL = """
+            #!/bin/sh
+            if [ "$1" = "--version" ]; then echo "2.9.3-test"; exit 0; fi
+            out=""; apk=""
+            while [ $# -gt 0 ]; do
+              case "$1" in
+                -o) out="$2"; shift 2 ;;
+                d|-f|-J*) shift ;;
+                *) apk="$1"; shift ;;
+              esac
+            done
+            name=$(basename "$apk" .apk)
+            mkdir -p "$out/smali"
+            if [ "$name" = "Broken" ]; then echo "brut.androlib.AndrolibException: broken resources" >&2; exit 1; fi
+            printf '<manifest package="com.test.%s"/>\\n' "$name" > "$out/AndroidManifest.xml"
+            printf 'version: 2.9.3-test\\nversionInfo:\\n  versionCode: 1\\n  versionName: 1.0\\n' > "$out/apktool.yml"
+            printf '.class public Lcom/test/%s;\\n' "$name" > "$out/smali/Main.smali"
+            """;
+
+    @TempDir
+    Path tmp;
+
+    Path project;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TreeDeleter.trashRoot(tmp.resolve(".trash"));
+        Path apktool = tmp.resolve("bin/apktool");
+        Files.createDirectories(apktool.getParent());
+        Files.writeString(apktool, APKTOOL, StandardCharsets.UTF_8);
+        Files.setPosixFilePermissions(apktool, PosixFilePermissions.fromString("rwxr-xr-x"));
+        ProcessRunner.configureExecutables(Map.of(ToolClass.APKTOOL, apktool.toString()));
+
+        project = tmp.resolve("project");
+        write("system/app/Settings/Settings.apk");
+        write("system/priv-app/Phone/Phone.apk");
+        write("system/app/Broken/Broken.apk");
+        write("vendor/app/Camera/Camera.apk");
+        // вне system/ и vendor/ APK не декодируются
+        write("product/app/Maps/Maps.apk");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ProcessRunner.configureExecutables(Map.of());
+        TreeDeleter.trashRoot(Path.of("uploads", ".trash"));
+    }
+
+    private void write(String relative) throws IOException {
+        Path file = project.resolve(relative);
+        Files.createDirectories(file.getParent());
+        // не zip: манифест без apktool не прочитается, имя папки берётся из декодированного
+        Files.writeString(file, "not a real apk: " + relative);
+    }
+
+    @Test
+    void decodesInParallelAndReportsFailedApk() throws Exception {
+        DecodeReport report = ApkScripts.decodeApksToProjectRoot(project, new DecodeOptions(3, 0, null, false));
+
+        assertThat(report.total()).isEqualTo(4);
+        assertThat(report.decoded()).isEqualTo(3);
+        assertThat(report.cacheHits()).isZero();
+        assertThat(report.failures()).singleElement().satisfies(f -> {
+            assertThat(f.apk().getFileName()).hasToString("Broken.apk");
+            assertThat(f.error()).contains("apktool failed (1)").contains("broken resources");
+        });
+
+        for (String name : List.of("Settings", "Phone", "Camera")) {
+            Path out = project.resolve("com.test." + name + "_" + name);
+            assertThat(out.resolve("AndroidManifest.xml")).content().contains("com.test." + name);
+            assertThat(out.resolve("smali/Main.smali")).exists();
+        }
+        assertThat(project.resolve("com.test.Maps_Maps")).doesNotExist();
+        assertThat(project.resolve("com.test.Broken_Broken")).doesNotExist();
+    }
+
+    @Test
+    void tmpDecodeDirsAreMovedOrRemoved() throws Exception {
+        DecodeReport report = ApkScripts.decodeApksToProjectRoot(project, new DecodeOptions(2, 0, null, false));
+        assertThat(report.failures()).extracting(ApkFailure::apk).hasSize(1);
+
+        // и удачные, и упавший APK не оставляют _tmp_decode_* в проекте
+        try (Stream<Path> list = Files.list(project)) {
+            assertThat(list.map(p -> p.getFileName().toString()))
+                    .noneMatch(n -> n.startsWith("_tmp_decode_"))
+                    .contains("com.test.Settings_Settings", "com.test.Phone_Phone", "com.test.Camera_Camera");
+        }
+
+        // повторный прогон заменяет прежний результат, а не падает на существующей папке
+        Path marker = project.resolve("com.test.Settings_Settings/stale.txt");
+        Files.writeString(marker, "old");
+        ApkScripts.decodeApksToProjectRoot(project, new DecodeOptions(2, 0, null, false));
+        assertThat(marker).doesNotExist();
+        assertThat(project.resolve("com.test.Settings_Settings/AndroidManifest.xml")).exists();
+    }
+
+    @Test
+    void unchangedApkIsCarriedFromWorkingCopyIntoStaging() throws Exception {
+        // рабочая копия после прошлой сборки: Settings 34 и Phone 1 уже декодированы
+        Path live = tmp.resolve("live");
+        Path previousSettings = live.resolve("com.test.settings_Settings");
+        Files.createDirectories(previousSettings.resolve("smali"));
+        Files.writeString(previousSettings.resolve("AndroidManifest.xml"), "<manifest package=\"com.test.settings\"/>");
+        Files.writeString(previousSettings.resolve("apktool.yml"), "versionInfo:\n  versionCode: '34'\n  versionName: '14'\n");
+        Files.writeString(previousSettings.resolve("smali/Main.smali"), "from previous build");
+        Path previousPhone = live.resolve("com.test.phone_Phone");
+        Files.createDirectories(previousPhone);
+        Files.writeString(previousPhone.resolve("AndroidManifest.xml"), "<manifest package=\"com.test.phone\"/>");
+        Files.writeString(previousPhone.resolve("apktool.yml"), "versionInfo:\n  versionCode: '1'\n  versionName: '1.0'\n");
+
+        // новая сборка в staging: Settings той же версии, Phone обновился
+        Path staging = tmp.resolve("staging");
+        TestApks.write(staging.resolve("system/app/Settings/Settings.apk"), "com.test.settings", 34, "14");
+        TestApks.write(staging.resolve("system/priv-app/Phone/Phone.apk"), "com.test.phone", 2, "2.0");
+        // как после распаковки: APK ищутся по индексу
+        FileIndex.Builder index = FileIndex.builder(staging);
+        index.addTree(staging);
+
+        DecodeReport report = ApkScripts.decodeApksToProjectRoot(staging,
+                new DecodeOptions(2, 0, null, true).withPrevious(live), PipelineListener.NONE, index);
+
+        assertThat(report.skipped()).isEqualTo(1);
+        assertThat(report.decoded()).isEqualTo(1);
+        Path carried = staging.resolve("com.test.settings_Settings/smali/Main.smali");
+        assertThat(carried).content().isEqualTo("from previous build");
+        assertThat(Files.readAttributes(carried, BasicFileAttributes.class).fileKey())
+                .isEqualTo(Files.readAttributes(previousSettings.resolve("smali/Main.smali"), BasicFileAttributes.class).fileKey());
+        assertThat(index.build().find("com.test.settings_Settings/smali/Main.smali")).isNotNegative();
+        assertThat(staging.resolve("com.test.phone_Phone/smali/Main.smali")).content().contains("Phone");
+
+        // синхронизация не удаляет перенесённую папку и не трогает её файлы
+        Object inode = Files.readAttributes(previousSettings.resolve("smali/Main.smali"), BasicFileAttributes.class).fileKey();
+        TreeSync.sync(staging, live, Set.of(".git"));
+        assertThat(Files.readAttributes(previousSettings.resolve("smali/Main.smali"), BasicFileAttributes.class).fileKey())
+                .isEqualTo(inode);
+        assertThat(live.resolve("com.test.phone_Phone/smali/Main.smali")).exists();
+    }
+
+    @Test
+    void withoutPreviousTreeNothingIsSkipped() throws Exception {
+        Path staging = tmp.resolve("staging");
+        TestApks.write(staging.resolve("system/app/Settings/Settings.apk"), "com.test.settings", 34, "14");
+
+        // как после WIPE: прошлого результата нет — декодируем
+        DecodeReport report = ApkScripts.decodeApksToProjectRoot(staging, new DecodeOptions(1, 0, null, true));
+
+        assertThat(report.skipped()).isZero();
+        assertThat(report.decoded()).isEqualTo(1);
+    }
+
+    @Test
+    void failedVersionQueryIsRetriedAfterBackoff() throws Exception {
+        // первый apktool --version падает, следующие отвечают
+        Path flaky = tmp.resolve("bin/apktool-flaky");
+        Path marker = tmp.resolve("version-failed");
+        Files.writeString(flaky, """
+                #!/bin/sh
+                if [ ! -e "%s" ]; then touch "%s"; echo "timeout" >&2; exit 1; fi
+                echo "2.9.3-test"
+                """.formatted(marker, marker), StandardCharsets.UTF_8);
+        Files.setPosixFilePermissions(flaky, PosixFilePermissions.fromString("rwxr-xr-x"));
+        ProcessRunner.configureExecutables(Map.of(ToolClass.APKTOOL, flaky.toString()));
+        ApkScripts.resetApktoolVersion(Duration.ofMillis(200));
+        try {
+            assertThat(ApkScripts.apktoolVersion()).isEqualTo("unknown");
+            // до конца паузы apktool не дёргается на каждый APK
+            assertThat(ApkScripts.apktoolVersion()).isEqualTo("unknown");
+
+            Thread.sleep(300);
+            assertThat(ApkScripts.apktoolVersion()).isEqualTo("2.9.3-test");
+        } finally {
+            ApkScripts.resetApktoolVersion(Duration.ofMinutes(1));
+        }
+    }
+}
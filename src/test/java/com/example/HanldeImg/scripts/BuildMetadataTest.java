@@ -0,0 +1,73 @@
+package com.example.HanldeImg.scripts;
+
+import com.example.HanldeImg.scripts.ApkScripts.ApkPlan;
+import com.example.HanldeImg.scripts.apk.ApkInfo;
+import com.example.HanldeImg.scripts.index.FileIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BuildMetadataTest {
+
+    @TempDir
+    Path project;
+
+    @Test
+    void collectsPropertiesApksAndPartitionSizes() throws Exception {
+        write("system/build.prop", """
+                # begin build properties
+                ro.build.display.id=TP1A.220624.014
+                ro.build.fingerprint=google/raven/raven:13/TP1A.220624.014/8819323:user/release-keys
+                ro.build.version.sdk=32
+
+                import /vendor/default.prop
+                ro.build.version.sdk=33
+                """);
+        write("vendor/build.prop", "ro.vendor.build.fingerprint=google/raven/raven:13/x:user/release-keys\n");
+        write("product/etc/build.prop", "ro.product.name=raven\n");
+        write("system/app/Settings/Settings.apk", "apk");
+        write("vendor/app/Broken/Broken.apk", "apk");
+        // папка apktool в корне проекта — не раздел
+        write("com.android.settings/apktool.yml", "version: 2.9.3\n");
+
+        FileIndex.Builder builder = FileIndex.builder(project);
+        builder.addTree(project);
+        List<ApkPlan> apks = List.of(
+                new ApkPlan(project.resolve("system/app/Settings/Settings.apk"),
+                        new ApkInfo("com.android.settings", 34, "14"), "com.android.settings", false),
+                new ApkPlan(project.resolve("vendor/app/Broken/Broken.apk"), null, null, false));
+
+        BuildMetadata metadata = BuildMetadata.collect(project, List.of("system", "vendor", "product"),
+                builder.build(), apks);
+
+        assertThat(metadata.property("ro.build.fingerprint")).contains(":13/TP1A.220624.014/8819323:user");
+        // повторное свойство перекрывает прежнее
+        assertThat(metadata.property("ro.build.version.sdk")).isEqualTo("33");
+        assertThat(metadata.properties()).contains(new BuildMetadata.Property("product", "ro.product.name", "raven"));
+        assertThat(metadata.properties()).noneMatch(p -> p.name().startsWith("import"));
+
+        assertThat(metadata.apks()).containsExactly(
+                new BuildMetadata.Apk("system/app/Settings/Settings.apk", "com.android.settings", 34, "14"));
+
+        assertThat(metadata.partitions()).extracting(BuildMetadata.Partition::name)
+                .containsExactly("system", "vendor", "product");
+        BuildMetadata.Partition system = metadata.partitions().getFirst();
+        assertThat(system.files()).isEqualTo(2);
+        assertThat(system.bytes()).isEqualTo(Files.size(project.resolve("system/build.prop")) + 3);
+
+        // без индекса — те же размеры обходом папок
+        BuildMetadata walked = BuildMetadata.collect(project, List.of("system", "vendor", "product"), null, apks);
+        assertThat(walked.partitions()).isEqualTo(metadata.partitions());
+    }
+
+    private void write(String path, String content) throws Exception {
+        Path file = project.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.HanldeImg.scripts;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DecodeCacheTest {
+
+    @TempDir
+    Path tmp;
+
+    Path cacheDir;
+
+    @BeforeEach
+    void setUp() {
+        TreeDeleter.trashRoot(tmp.resolve(".trash"));
+        cacheDir = tmp.resolve("cache");
+    }
+
+    @AfterEach
+    void tearDown() {
+        TreeDeleter.trashRoot(Path.of("uploads", ".trash"));
+    }
+
+    private Path decoded(String name, int bytes) throws IOException {
+        Path dir = tmp.resolve("decoded-" + name);
+        Files.createDirectories(dir.resolve("smali"));
+        String manifest = "<manifest package=\"com.test." + name + "\"/>";
+        Files.writeString(dir.resolve("AndroidManifest.xml"), manifest);
+        // вместе с манифестом дерево занимает ровно bytes
+        Files.write(dir.resolve("smali/Main.smali"), new byte[bytes - manifest.length()]);
+        return dir;
+    }
+
+    private static Object inode(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).fileKey();
+    }
+
+    @Test
+    void hitRestoresHardLinksAndMissDoesNothing() throws Exception {
+        DecodeCache cache = new DecodeCache(cacheDir, 1 << 20);
+        Path apk = tmp.resolve("Settings.apk");
+        Files.writeString(apk, "apk bytes");
+        String key = cache.key(apk, "2.9.3", List.of("d", "-f"));
+        assertThat(key).isNotEqualTo(cache.key(apk, "2.10.0", List.of("d", "-f")));
+
+        Path target = tmp.resolve("restored");
+        assertThat(cache.restore(key, target)).isFalse();
+        assertThat(target).doesNotExist();
+
+        cache.store(key, decoded("settings", 100));
+        assertThat(cache.restore(key, target)).isTrue();
+        assertThat(target.resolve("AndroidManifest.xml")).content().contains("com.test.settings");
+        assertThat(inode(target.resolve("smali/Main.smali")))
+                .isEqualTo(inode(cacheDir.resolve(key).resolve("smali/Main.smali")));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedBySizeAndKeepsOrderAcrossRestart() throws Exception {
+        DecodeCache cache = new DecodeCache(cacheDir, 250);
+        cache.store("a", decoded("a", 100));
+        cache.store("b", decoded("b", 100));
+        // a использован позже b — вытеснен будет b
+        assertThat(cache.restore("a", tmp.resolve("ra"))).isTrue();
+        cache.store("c", decoded("c", 100));
+
+        assertThat(cacheDir.resolve("b")).doesNotExist();
+        assertThat(cacheDir.resolve("b.meta")).doesNotExist();
+        assertThat(cache.restore("b", tmp.resolve("rb"))).isFalse();
+        assertThat(cache.restore("c", tmp.resolve("rc"))).isTrue();
+
+        // после перезапуска порядок берётся из mtime .meta: c новее a
+        Files.setLastModifiedTime(cacheDir.resolve("a.meta"), FileTime.fromMillis(1_000));
+        DecodeCache reopened = new DecodeCache(cacheDir, 250);
+        reopened.store("d", decoded("d", 100));
+        assertThat(cacheDir.resolve("a")).doesNotExist();
+        assertThat(reopened.restore("c", tmp.resolve("rc2"))).isTrue();
+        assertThat(reopened.restore("d", tmp.resolve("rd"))).isTrue();
+    }
+
+    @Test
+    void partialAndCorruptedEntriesAreDropped() throws Exception {
+        DecodeCache cache = new DecodeCache(cacheDir, 1 << 20);
+        cache.store("whole", decoded("whole", 100));
+        cache.store("cut", decoded("cut", 100));
+
+        // остатки прерванного store и .meta с мусором убираются при запуске
+        Files.createDirectories(cacheDir.resolve("x.tmp-1/smali"));
+        Files.createDirectories(cacheDir.resolve("garbage"));
+        Files.writeString(cacheDir.resolve("garbage.meta"), "not a number");
+        Files.writeString(cacheDir.resolve("orphan.meta"), "10");
+        // из записи пропал файл — дерево уже не то, что сохраняли
+        Files.delete(cacheDir.resolve("cut/smali/Main.smali"));
+
+        DecodeCache reopened = new DecodeCache(cacheDir, 1 << 20);
+        assertThat(cacheDir.resolve("x.tmp-1")).doesNotExist();
+        assertThat(cacheDir.resolve("garbage.meta")).doesNotExist();
+        assertThat(cacheDir.resolve("orphan.meta")).doesNotExist();
+
+        Path target = tmp.resolve("restored-cut");
+        assertThat(reopened.restore("cut", target)).isFalse();
+        assertThat(target).doesNotExist();
+        assertThat(cacheDir.resolve("cut")).doesNotExist();
+        assertThat(cacheDir.resolve("cut.meta")).doesNotExist();
+
+        // запись можно сохранить заново, соседние не пострадали
+        reopened.store("cut", decoded("cut2", 100));
+        assertThat(reopened.restore("cut", tmp.resolve("restored-cut2"))).isTrue();
+        assertThat(reopened.restore("whole", tmp.resolve("restored-whole"))).isTrue();
+    }
+
+    @Test
+    void pipelineReplacesRestoredFilesInsteadOfWritingThemInPlace() throws Exception {
+        DecodeCache cache = new DecodeCache(cacheDir, 1 << 20);
+        cache.store("k", decoded("app", 100));
+        Path cached = cacheDir.resolve("k/AndroidManifest.xml");
+        String cachedText = Files.readString(cached);
+        Object cachedInode = inode(cached);
+
+        // как в пайплайне: декодированная папка восстанавливается в staging и переносится в проект
+        Path staging = tmp.resolve("staging");
+        Path project = tmp.resolve("project");
+        assertThat(cache.restore("k", staging.resolve("com.test.app_app"))).isTrue();
+        TreeSync.sync(staging, project, Set.of(".git"));
+        assertThat(inode(project.resolve("com.test.app_app/AndroidManifest.xml"))).isEqualTo(cachedInode);
+
+        // следующая сборка с другим результатом apktool для того же файла
+        Path next = tmp.resolve("staging-next/com.test.app_app");
+        Files.createDirectories(next.resolve("smali"));
+        Files.writeString(next.resolve("AndroidManifest.xml"), "<manifest package=\"com.test.app\" changed=\"1\"/>");
+        Files.writeString(next.resolve("smali/Main.smali"), "changed");
+        TreeSync.sync(tmp.resolve("staging-next"), project, Set.of(".git"));
+
+        assertThat(project.resolve("com.test.app_app/AndroidManifest.xml")).content().contains("changed");
+        assertThat(cached).content().isEqualTo(cachedText);
+        assertThat(cache.restore("k", tmp.resolve("again"))).isTrue();
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.HanldeImg.scripts;
+
+import com.example.HanldeImg.scripts.ImageScripts.Partition;
+import com.example.HanldeImg.scripts.ImageScripts.UpdateMode;
+import com.example.HanldeImg.scripts.ImageScripts.UpdateOptions;
+import com.example.HanldeImg.scripts.extract.ExtractProfile;
+import com.example.HanldeImg.scripts.extract.ImageExtractors;
+import com.example.HanldeImg.scripts.flow.FlowOptions;
+import com.example.HanldeImg.scripts.git.GitPublisher;
+import com.example.HanldeImg.scripts.git.JGitPublisher;
+import com.example.HanldeImg.scripts.index.FileIndex;
+import com.example.HanldeImg.scripts.process.ProcessRunner;
+import com.example.HanldeImg.scripts.process.ProcessScheduler;
+import com.example.HanldeImg.scripts.process.ToolClass;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImageScriptsTest {
+
+    // «образ» — файл с путём к дереву раздела; broken.img падает сразу, slow.img пишет файл и висит
+    private static final String SEVEN_ZIP = """
+            #!/bin/sh
+            [ "$1" = "x" ] || exit 0
+            image="$2"
+            out="${3#-o}"
+            mkdir -p "$out"
+            case "$(basename "$image")" in
+              broken.img) echo "ERROR: Can not open the file as archive" >&2; exit 2 ;;
+              slow.img) echo partial > "$out/partial.txt"; sleep 30 ;;
+            esac
+            cp -R "$(cat "$image")/." "$out/"
+            """;
+
+    @TempDir
+    Path tmp;
+
+    Path project;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TreeDeleter.trashRoot(tmp.resolve(".trash"));
+        Path sevenZip = tmp.resolve("bin/7z");
+        Files.createDirectories(sevenZip.getParent());
+        Files.writeString(sevenZip, SEVEN_ZIP, StandardCharsets.UTF_8);
+        Files.setPosixFilePermissions(sevenZip, PosixFilePermissions.fromString("rwxr-xr-x"));
+        ProcessRunner.configureExecutables(Map.of(ToolClass.SEVEN_ZIP, sevenZip.toString()));
+        project = tmp.resolve("project");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ProcessRunner.configureExecutables(Map.of());
+        TreeDeleter.trashRoot(Path.of("uploads", ".trash"));
+    }
+
+    private Path image(String name) throws IOException {
+        Path tree = tmp.resolve("trees").resolve(name);
+        Files.createDirectories(tree);
+        Files.writeString(tree.resolve("build.prop"), "ro.build.display.id=" + name + "\n");
+        Path image = tmp.resolve("images").resolve(name);
+        Files.createDirectories(image.getParent());
+        Files.writeString(image, tree.toString());
+        return image;
+    }
+
+    @Test
+    void failureCancelsOthersAndRemovesOnlyDirsCreatedByThisRun() throws Exception {
+        // vendor остался от прошлой сборки (LOAD в существующий проект) — его удалять нельзя
+        Path vendor = project.resolve("vendor");
+        Files.createDirectories(vendor);
+        Files.writeString(vendor.resolve("live.txt"), "previous build");
+
+        List<Partition> partitions = List.of(
+                new Partition(image("system.img"), project.resolve("system")),
+                new Partition(image("slow.img"), vendor),
+                new Partition(image("broken.img"), project.resolve("product")));
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> ImageScripts.extractPartitions(partitions, 3, ImageExtractors.sevenZipOnly()))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("broken.img");
+
+        // висящий 7z остановлен, а не дождались его sleep 30
+        assertThat(System.nanoTime() - start).isLessThan(20_000_000_000L);
+        assertThat(ProcessScheduler.global().stats(ToolClass.SEVEN_ZIP).running()).isZero();
+
+        assertThat(project.resolve("system")).doesNotExist();
+        assertThat(project.resolve("product")).doesNotExist();
+        assertThat(vendor.resolve("live.txt")).content().isEqualTo("previous build");
+    }
+
+    @Test
+    void extractsAllPartitions() throws Exception {
+        List<Partition> partitions = List.of(
+                new Partition(image("system.img"), project.resolve("system")),
+                new Partition(image("vendor.img"), project.resolve("vendor")));
+
+        ImageScripts.extractPartitions(partitions, 2, ImageExtractors.sevenZipOnly());
+
+        assertThat(project.resolve("system/build.prop")).content().contains("system.img");
+        assertThat(project.resolve("vendor/build.prop")).content().contains("vendor.img");
+    }
+
+    @Test
+    void incrementalUpdateAfterRemoteMovedOnRemovesFilesOutsideTheIndex() throws Exception {
+        Repository remote = Git.init().setBare(true).setDirectory(tmp.resolve("remote.git").toFile())
+                .setInitialBranch("main").call().getRepository();
+        String uri = remote.getDirectory().toURI().toString();
+        JGitPublisher jgit = new JGitPublisher(2);
+        // адрес GitLab в тесте недоступен — ходим в локальный bare
+        GitPublisher git = new GitPublisher() {
+            @Override
+            public String name() {
+                return jgit.name();
+            }
+
+            @Override
+            public void prepare(Path workTree, String ignored, boolean sync) throws Exception {
+                jgit.prepare(workTree, uri, sync);
+            }
+
+            @Override
+            public String publish(Path workTree, String message, boolean rebase) throws Exception {
+                return jgit.publish(workTree, message, rebase);
+            }
+
+            @Override
+            public String publish(Path workTree, String message, boolean rebase, FileIndex index) throws Exception {
+                return jgit.publish(workTree, message, rebase, index);
+            }
+        };
+        UpdateOptions options = new UpdateOptions(UpdateMode.INCREMENTAL, tmp.resolve("staging"), 1,
+                ImageExtractors.sevenZipOnly(), new ApkScripts.DecodeOptions(1, 0, null, false), git,
+                tmp.resolve("index/project.idx"), ExtractProfile.ALL, FlowOptions.defaults());
+
+        ImageScripts.updateImages(project, List.of(image("system.img")), options, PipelineListener.NONE);
+        assertThat(FileIndex.readCommit(options.indexFile())).isNotNull();
+
+        // в origin/main появился файл не из этого пайплайна
+        Path other = tmp.resolve("other");
+        jgit.prepare(other, uri, true);
+        Files.writeString(other.resolve("system/extra.txt"), "pushed elsewhere");
+        jgit.publish(other, "extra", true);
+
+        ImageScripts.updateImages(project, List.of(image("system.img")), options, PipelineListener.NONE);
+
+        // reset вернул extra.txt, которого нет в индексе, — как и при WIPE, его в проекте быть не должно
+        assertThat(project.resolve("system/extra.txt")).doesNotExist();
+        assertThat(project.resolve("system/build.prop")).exists();
+        try (Git opened = Git.open(project.toFile())) {
+            assertThat(opened.status().call().isClean()).isTrue();
+        }
+    }
+}
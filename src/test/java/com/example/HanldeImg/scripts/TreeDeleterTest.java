@@ -0,0 +1,89 @@
+package com.example.HanldeImg.scripts;
+
+import com.example.HanldeImg.scripts.TreeDeleter.DeleteReport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TreeDeleterTest {
+
+    @TempDir
+    Path tmp;
+
+    Path trash;
+
+    @BeforeEach
+    void setUp() {
+        trash = tmp.resolve(".trash");
+        TreeDeleter.trashRoot(trash);
+    }
+
+    private static int createTree(Path root, int depth, int filesPerDir) throws IOException {
+        Files.createDirectories(root);
+        int files = 0;
+        for (int i = 0; i < filesPerDir; i++) {
+            Files.write(root.resolve("f" + i), new byte[100]);
+            files++;
+        }
+        if (depth > 0) {
+            for (int i = 0; i < 3; i++) {
+                files += createTree(root.resolve("d" + i), depth - 1, filesPerDir);
+            }
+        }
+        return files;
+    }
+
+    @Test
+    void discardMovesTreeAwayAndDeletesInBackground() throws Exception {
+        Path tree = tmp.resolve("project").resolve("_tmp_decode_app");
+        int files = createTree(tree, 3, 5);
+
+        var pending = TreeDeleter.discard(tree);
+        // место освобождается сразу, ещё до фонового удаления
+        assertThat(tree).doesNotExist();
+
+        DeleteReport report = pending.get(10, TimeUnit.SECONDS);
+        assertThat(report.files()).isEqualTo(files);
+        assertThat(report.directories()).isEqualTo(1 + 3 + 9 + 27);
+        assertThat(report.bytes()).isEqualTo(files * 100L);
+        try (var left = Files.list(trash)) {
+            assertThat(left).isEmpty();
+        }
+    }
+
+    @Test
+    void clearExceptKeepsTopLevelExclusions() throws Exception {
+        Path project = tmp.resolve("project");
+        createTree(project.resolve(".git").resolve("objects"), 1, 2);
+        Files.writeString(project.resolve(".gitignore"), "*.tmp\n");
+        createTree(project.resolve("system"), 2, 3);
+        Files.writeString(project.resolve("build.prop"), "ro.build.display.id=1\n");
+        // .git глубже корня — обычная папка образа, её удаляем
+        createTree(project.resolve("vendor").resolve(".git"), 0, 1);
+
+        TreeDeleter.clearExcept(project, Set.of(".git", ".gitignore", ".gitattributes")).get(10, TimeUnit.SECONDS);
+
+        try (var left = Files.list(project)) {
+            assertThat(left.map(p -> p.getFileName().toString())).containsExactlyInAnyOrder(".git", ".gitignore");
+        }
+        assertThat(project.resolve(".git").resolve("objects").resolve("f0")).exists();
+    }
+
+    @Test
+    void deleteNowWithoutTrash() throws Exception {
+        Path tree = tmp.resolve("staging");
+        int files = createTree(tree, 2, 4);
+
+        assertThat(TreeDeleter.deleteNow(tree).files()).isEqualTo(files);
+        assertThat(tree).doesNotExist();
+        assertThat(TreeDeleter.deleteNow(tree).files()).isZero();
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.HanldeImg.scripts;
+
+import com.example.HanldeImg.scripts.TreeSync.SyncReport;
+import com.example.HanldeImg.scripts.index.FileIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TreeSyncTest {
+
+    private static final Set<String> KEEP = Set.of(".git", ".gitignore");
+    private static final FileTime OLD = FileTime.fromMillis(1_600_000_000_000L);
+
+    @TempDir
+    Path tmp;
+
+    Path staging;
+    Path target;
+
+    private static void write(Path root, String rel, String content) throws IOException {
+        Path file = root.resolve(rel);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    private static Object inode(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).fileKey();
+    }
+
+    private static FileIndex index(Path root) throws IOException {
+        FileIndex.Builder builder = FileIndex.builder(root);
+        builder.addTree(root);
+        return builder.build();
+    }
+
+    /**
+     * Рабочая копия после прошлой сборки и staging новой: same не менялся, changed поменялся,
+     * gone пропал, new появился, а на месте файла conflict теперь папка.
+     */
+    private void prepare() throws IOException {
+        target = tmp.resolve("target");
+        write(target, "system/same.txt", "same");
+        write(target, "system/changed.txt", "old");
+        write(target, "system/gone/old.txt", "old");
+        write(target, "system/conflict", "was a file");
+        write(target, ".git/HEAD", "ref: refs/heads/main\n");
+        write(target, ".gitignore", "*.tmp\n");
+        Files.setLastModifiedTime(target.resolve("system/same.txt"), OLD);
+
+        staging = tmp.resolve("staging");
+        write(staging, "system/same.txt", "same");
+        write(staging, "system/changed.txt", "new");
+        write(staging, "system/conflict/inner.txt", "now a dir");
+        write(staging, "vendor/new.txt", "new");
+    }
+
+    private void assertSynced(SyncReport report, Object sameInode) throws IOException {
+        assertThat(report.added()).isEqualTo(2);
+        assertThat(report.changed()).isEqualTo(1);
+        assertThat(report.unchanged()).isEqualTo(1);
+
+        assertThat(target.resolve("system/changed.txt")).content().isEqualTo("new");
+        assertThat(target.resolve("vendor/new.txt")).content().isEqualTo("new");
+        assertThat(target.resolve("system/conflict/inner.txt")).content().isEqualTo("now a dir");
+        assertThat(target.resolve("system/gone")).doesNotExist();
+
+        // неизменённый файл не переписан: тот же inode и то же время, индекс git остаётся валидным
+        assertThat(inode(target.resolve("system/same.txt"))).isEqualTo(sameInode);
+        assertThat(Files.getLastModifiedTime(target.resolve("system/same.txt"))).isEqualTo(OLD);
+
+        // .git и .gitignore в корне не трогаются, хотя в staging их нет
+        assertThat(target.resolve(".git/HEAD")).content().startsWith("ref:");
+        assertThat(target.resolve(".gitignore")).exists();
+    }
+
+    @Test
+    void syncByWalkAppliesOnlyTheDiff() throws Exception {
+        prepare();
+        Object sameInode = inode(target.resolve("system/same.txt"));
+        // права неизменённого файла догоняют staging без перезаписи содержимого
+        Files.setPosixFilePermissions(staging.resolve("system/same.txt"), PosixFilePermissions.fromString("rwxr-xr-x"));
+
+        SyncReport report = TreeSync.sync(staging, target, KEEP);
+
+        assertSynced(report, sameInode);
+        // папка gone и файл conflict
+        assertThat(report.removed()).isEqualTo(2);
+        assertThat(report.index()).isNull();
+        assertThat(Files.getPosixFilePermissions(target.resolve("system/same.txt")))
+                .isEqualTo(PosixFilePermissions.fromString("rwxr-xr-x"));
+    }
+
+    @Test
+    void syncByIndexAppliesOnlyTheDiffAndReturnsTargetIndex() throws Exception {
+        prepare();
+        Object sameInode = inode(target.resolve("system/same.txt"));
+        FileIndex targetIndex = index(target);
+
+        SyncReport report = TreeSync.sync(staging, target, KEEP, index(staging), targetIndex);
+
+        assertSynced(report, sameInode);
+        assertThat(report.removed()).isEqualTo(2);
+        // итоговый индекс описывает то, что лежит в target, со временем оставшихся на месте файлов
+        FileIndex synced = report.index();
+        assertThat(synced.size()).isEqualTo(4);
+        assertThat(synced.mtime(synced.find("system/same.txt"))).isEqualTo(OLD.toMillis());
+        for (int i = 0; i < synced.size(); i++) {
+            assertThat(synced.matchesDisk(i, target)).as(synced.path(i)).isTrue();
+        }
+    }
+
+    @Test
+    void syncByIndexDoesNotTrustStaleTargetIndex() throws Exception {
+        prepare();
+        FileIndex targetIndex = index(target);
+        // после индексации файл поменяли на диске: stat не совпадает, содержимое сверяется заново
+        write(target, "system/same.txt", "edited");
+
+        SyncReport report = TreeSync.sync(staging, target, KEEP, index(staging), targetIndex);
+
+        assertThat(report.changed()).isEqualTo(2);
+        assertThat(target.resolve("system/same.txt")).content().isEqualTo("same");
+    }
+
+    @Test
+    void syncByIndexWithoutTargetIndexFindsRemovedFilesByWalk() throws Exception {
+        prepare();
+        Object sameInode = inode(target.resolve("system/same.txt"));
+
+        SyncReport report = TreeSync.sync(staging, target, KEEP, index(staging), null);
+
+        assertSynced(report, sameInode);
+        assertThat(report.removed()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.HanldeImg.scripts.apk;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ApkManifestReaderTest {
+
+    @TempDir
+    Path tmp;
+
+    private Path apk(byte[] manifest, boolean stored) throws IOException {
+        return TestApks.write(tmp.resolve(stored ? "stored.apk" : "deflated.apk"), manifest, stored);
+    }
+
+    @Test
+    void readsDeflatedUtf16Manifest() throws IOException {
+        Path apk = apk(TestApks.axml("com.android.settings", 34, "14-eng", false), false);
+
+        assertThat(ApkManifestReader.read(apk))
+                .isEqualTo(new ApkInfo("com.android.settings", 34, "14-eng"));
+    }
+
+    @Test
+    void readsStoredUtf8Manifest() throws IOException {
+        Path apk = apk(TestApks.axml("com.example.app", 1_000_123, "1.2.3", true), true);
+
+        assertThat(ApkManifestReader.read(apk))
+                .isEqualTo(new ApkInfo("com.example.app", 1_000_123, "1.2.3"));
+    }
+
+    @Test
+    void rejectsNonZipAndTextManifest() throws IOException {
+        Path junk = Files.write(tmp.resolve("junk.apk"), new byte[1024]);
+        assertThatThrownBy(() -> ApkManifestReader.read(junk)).isInstanceOf(IOException.class);
+
+        Path text = apk("<manifest package=\"x\"/>".getBytes(StandardCharsets.UTF_8), false);
+        assertThatThrownBy(() -> ApkManifestReader.read(text)).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.HanldeImg.scripts.apk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * APK для тестов: zip с бинарным манифестом, который читает {@link ApkManifestReader}.
+ */
+public final class TestApks {
+
+    private TestApks() {
+    }
+
+    public static Path write(Path apk, String pkg, int versionCode, String versionName) throws IOException {
+        return write(apk, axml(pkg, versionCode, versionName, false), false);
+    }
+
+    /**
+     * Минимальный бинарный манифест: пул строк, карта ресурсов и один start element {@code <manifest>}.
+     * versionCode — целое с resource id, versionName — строка с resource id, package — без id.
+     */
+    public static byte[] axml(String pkg, int versionCode, String versionName, boolean utf8) {
+        List<String> strings = List.of("versionCode", "versionName", "package", "manifest", pkg, versionName);
+        int[] resourceIds = {0x0101021b, 0x0101021c};
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int[] offsets = new int[strings.size()];
+        for (int i = 0; i < strings.size(); i++) {
+            offsets[i] = data.size();
+            String s = strings.get(i);
+            if (utf8) {
+                byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                data.write(s.length());
+                data.write(b.length);
+                data.writeBytes(b);
+                data.write(0);
+            } else {
+                data.write(s.length() & 0xFF);
+                data.write(s.length() >> 8);
+                data.writeBytes(s.getBytes(StandardCharsets.UTF_16LE));
+                data.write(0);
+                data.write(0);
+            }
+        }
+        while (data.size() % 4 != 0) data.write(0);
+
+        int poolHeader = 28;
+        int poolSize = poolHeader + strings.size() * 4 + data.size();
+        ByteBuffer pool = le(poolSize);
+        pool.putShort((short) 0x0001).putShort((short) poolHeader).putInt(poolSize)
+                .putInt(strings.size()).putInt(0).putInt(utf8 ? 1 << 8 : 0)
+                .putInt(poolHeader + strings.size() * 4).putInt(0);
+        for (int off : offsets) pool.putInt(off);
+        pool.put(data.toByteArray());
+
+        int mapSize = 8 + resourceIds.length * 4;
+        ByteBuffer map = le(mapSize);
+        map.putShort((short) 0x0180).putShort((short) 8).putInt(mapSize);
+        for (int id : resourceIds) map.putInt(id);
+
+        int attrCount = 3;
+        int elemSize = 16 + 20 + attrCount * 20;
+        ByteBuffer elem = le(elemSize);
+        elem.putShort((short) 0x0102).putShort((short) 16).putInt(elemSize).putInt(1).putInt(-1);
+        elem.putInt(-1).putInt(3).putShort((short) 20).putShort((short) 20).putShort((short) attrCount)
+                .putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        attr(elem, 0, -1, 0x10, versionCode);
+        attr(elem, 1, 5, 0x03, 5);
+        attr(elem, 2, 4, 0x03, 4);
+
+        int total = 8 + poolSize + mapSize + elemSize;
+        ByteBuffer file = le(total);
+        file.putShort((short) 0x0003).putShort((short) 8).putInt(total);
+        file.put(pool.array()).put(map.array()).put(elem.array());
+        return file.array();
+    }
+
+    private static void attr(ByteBuffer b, int name, int raw, int type, int value) {
+        b.putInt(-1).putInt(name).putInt(raw).putShort((short) 8).put((byte) 0).put((byte) type).putInt(value);
+    }
+
+    private static ByteBuffer le(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static Path write(Path apk, byte[] manifest, boolean stored) throws IOException {
+        Files.createDirectories(apk.getParent());
+        try (OutputStream out = Files.newOutputStream(apk); ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("classes.dex"));
+            zip.write(new byte[4096]);
+            zip.closeEntry();
+
+            ZipEntry entry = new ZipEntry("AndroidManifest.xml");
+            if (stored) {
+                CRC32 crc = new CRC32();
+                crc.update(manifest);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(manifest.length);
+                entry.setCrc(crc.getValue());
+            }
+            zip.putNextEntry(entry);
+            zip.write(manifest);
+            zip.closeEntry();
+            zip.setComment("signed");
+        }
+        return apk;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.HanldeImg.scripts.compress;
+
+import com.example.HanldeImg.scripts.IngestScripts;
+import com.example.HanldeImg.scripts.IngestScripts.IngestedImage;
+import com.github.luben.zstd.Zstd;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompressedIngestTest {
+
+    @TempDir
+    Path tmp;
+
+    /**
+     * Несколько мегабайт с повторами, чтобы данные сжимались и распаковка шла несколькими блоками.
+     */
+    private static byte[] image() {
+        byte[] data = new byte[5 * 1024 * 1024 + 321];
+        Random random = new Random(3);
+        for (int i = 0; i < data.length; i += 4096) {
+            if ((i / 4096) % 3 == 0) {
+                byte[] block = new byte[Math.min(4096, data.length - i)];
+                random.nextBytes(block);
+                System.arraycopy(block, 0, data, i, block.length);
+            }
+        }
+        return data;
+    }
+
+    private static byte[] compress(Compression compression, byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        switch (compression) {
+            case GZIP -> {
+                try (OutputStream out = new GZIPOutputStream(bytes)) {
+                    out.write(data);
+                }
+            }
+            case XZ -> {
+                try (OutputStream out = new XZOutputStream(bytes, new LZMA2Options(1))) {
+                    out.write(data);
+                }
+            }
+            case ZSTD -> bytes.write(Zstd.compress(data, 3));
+            case NONE -> bytes.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Compression.class)
+    void compressedUploadIsStoredDecompressed(Compression compression) throws Exception {
+        byte[] data = image();
+        byte[] upload = compress(compression, data);
+        assertThat(Compression.detect(Arrays.copyOf(upload, Compression.MAGIC_LENGTH))).isEqualTo(compression);
+
+        String fileName = compression == Compression.NONE ? "system.img" : "system.img" + switch (compression) {
+            case GZIP -> ".gz";
+            case XZ -> ".xz";
+            default -> ".zst";
+        };
+        Path ingestDir = tmp.resolve("ingest");
+        IngestedImage image = IngestScripts.ingest(new ByteArrayInputStream(upload), fileName, upload.length, ingestDir);
+
+        assertThat(image.name()).isEqualTo("system.img");
+        assertThat(image.size()).isEqualTo(data.length);
+        assertThat(image.sha256()).isEqualTo(sha256(data));
+        assertThat(Files.readAllBytes(image.path())).isEqualTo(data);
+        // на диске только распакованный образ
+        try (var files = Files.list(ingestDir)) {
+            assertThat(files).containsExactly(image.path());
+        }
+    }
+
+    @Test
+    void corruptStreamFailsWithoutLeavingFiles() throws Exception {
+        byte[] upload = compress(Compression.XZ, image());
+        byte[] broken = Arrays.copyOf(upload, upload.length / 2);
+        broken[broken.length - 100] ^= 0x55;
+
+        Path ingestDir = tmp.resolve("broken");
+        assertThatThrownBy(() -> IngestScripts.ingest(new ByteArrayInputStream(broken), "vendor.img.xz",
+                broken.length, ingestDir))
+                .isInstanceOf(IOException.class);
+        try (var files = Files.list(ingestDir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.HanldeImg.scripts.extract;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class Ext4ExtractorTest {
+
+    private static final String LONG_LINK_TARGET = "/system/" + "very_long_directory_name/".repeat(4) + "target.so";
+
+    @TempDir
+    static Path tmp;
+
+    static Path source;
+
+    @BeforeAll
+    static void createSourceTree() throws IOException {
+        source = tmp.resolve("src");
+        Files.createDirectories(source.resolve("app/Settings"));
+        Files.createDirectories(source.resolve("lib64"));
+        Files.createDirectories(source.resolve("etc/empty"));
+
+        byte[] big = new byte[300 * 1024 + 17];
+        new Random(42).nextBytes(big);
+        Files.write(source.resolve("app/Settings/Settings.apk"), big);
+        Files.writeString(source.resolve("build.prop"), "ro.build.display.id=TEST.1\n");
+        Files.write(source.resolve("etc/zero"), new byte[0]);
+
+        Path bin = source.resolve("lib64/tool");
+        Files.writeString(bin, "#!/system/bin/sh\n");
+        Files.setPosixFilePermissions(bin, PosixFilePermissions.fromString("rwxr-xr-x"));
+
+        Files.createSymbolicLink(source.resolve("lib64/short"), Path.of("tool"));
+        Files.createSymbolicLink(source.resolve("lib64/long"), Path.of(LONG_LINK_TARGET));
+    }
+
+    private static Path makeImage(String type, int blockSize) throws Exception {
+        Path image = tmp.resolve(type + "_" + blockSize + ".img");
+        Process p;
+        try {
+            p = new ProcessBuilder("mke2fs", "-q", "-F", "-t", type, "-b", Integer.toString(blockSize),
+                    "-d", source.toString(), image.toString(), "4M")
+                    .redirectErrorStream(true)
+                    .start();
+        } catch (IOException e) {
+            assumeTrue(false, "mke2fs недоступен");
+            throw e;
+        }
+        String out = new String(p.getInputStream().readAllBytes());
+        assumeTrue(p.waitFor() == 0, "mke2fs не смог создать образ: " + out);
+        return image;
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ext4", "ext2"})
+    void extractsTreeWithContentPermissionsAndSymlinks(String type) throws Exception {
+        Path image = makeImage(type, 1024);
+        Path out = tmp.resolve("out_" + type);
+
+        Ext4Extractor extractor = new Ext4Extractor(4);
+        assertThat(extractor.supports(image)).isTrue();
+
+        List<Path> produced = new java.util.concurrent.CopyOnWriteArrayList<>();
+        extractor.extract(image, out, ExtractSelection.ALL, produced::add);
+
+        assertThat(Files.mismatch(source.resolve("app/Settings/Settings.apk"), out.resolve("app/Settings/Settings.apk")))
+                .isEqualTo(-1L);
+        assertThat(Files.readString(out.resolve("build.prop"))).isEqualTo("ro.build.display.id=TEST.1\n");
+        assertThat(Files.size(out.resolve("etc/zero"))).isZero();
+        assertThat(Files.isDirectory(out.resolve("etc/empty"))).isTrue();
+
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(out.resolve("lib64/tool"))))
+                .isEqualTo("rwxr-xr-x");
+        assertThat(Files.readSymbolicLink(out.resolve("lib64/short"))).isEqualTo(Path.of("tool"));
+        assertThat(Files.readSymbolicLink(out.resolve("lib64/long"))).isEqualTo(Path.of(LONG_LINK_TARGET));
+
+        assertThat(produced).contains(out.resolve("build.prop"), out.resolve("app/Settings/Settings.apk"));
+    }
+
+    @Test
+    void listsEntriesWithoutExtracting() throws Exception {
+        Path image = makeImage("ext4", 4096);
+
+        List<ImageEntry> entries = new Ext4Extractor(1).list(image);
+
+        assertThat(entries.stream().map(ImageEntry::path).collect(Collectors.toSet()))
+                .contains("app", "app/Settings", "app/Settings/Settings.apk", "build.prop", "lib64/short");
+        assertThat(entries).filteredOn(e -> e.path().equals("app/Settings/Settings.apk"))
+                .singleElement()
+                .satisfies(e -> {
+                    assertThat(e.type()).isEqualTo(ImageEntry.Type.FILE);
+                    assertThat(e.size()).isEqualTo(300 * 1024 + 17);
+                });
+        assertThat(entries).filteredOn(e -> e.path().equals("lib64/long"))
+                .singleElement()
+                .extracting(ImageEntry::type)
+                .isEqualTo(ImageEntry.Type.SYMLINK);
+    }
+
+    @Test
+    void extractsOnlySelectedSubtree() throws Exception {
+        Path image = makeImage("ext4", 4096);
+        Path out = tmp.resolve("out_selected");
+
+        new Ext4Extractor(2).extract(image, out, ExtractSelection.of("app/Settings"), p -> {});
+
+        assertThat(Files.exists(out.resolve("app/Settings/Settings.apk"))).isTrue();
+        assertThat(Files.exists(out.resolve("build.prop"))).isFalse();
+        assertThat(Files.exists(out.resolve("lib64"))).isFalse();
+    }
+
+    @Test
+    void skipsExcludedGlobsWithoutWritingThem() throws Exception {
+        Path image = makeImage("ext4", 4096);
+        Path out = tmp.resolve("out_globs");
+
+        List<Path> produced = new java.util.concurrent.CopyOnWriteArrayList<>();
+        new Ext4Extractor(2).extract(image, out,
+                ExtractSelection.globs(List.of(), List.of("app/**", "*.prop")), produced::add);
+
+        assertThat(Files.exists(out.resolve("app"))).isFalse();
+        assertThat(Files.exists(out.resolve("build.prop"))).isFalse();
+        assertThat(Files.exists(out.resolve("lib64/tool"))).isTrue();
+        assertThat(produced).contains(out.resolve("lib64/tool"))
+                .noneMatch(p -> p.startsWith(out.resolve("app")));
+    }
+
+    @Test
+    void rejectsNonExt4Images() throws Exception {
+        Path junk = tmp.resolve("junk.img");
+        Files.write(junk, new byte[64 * 1024]);
+
+        assertThat(new Ext4Extractor(1).supports(junk)).isFalse();
+    }
+}
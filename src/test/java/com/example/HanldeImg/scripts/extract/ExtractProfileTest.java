@@ -0,0 +1,73 @@
+package com.example.HanldeImg.scripts.extract;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExtractProfileTest {
+
+    private static final ExtractProfile LITE = new ExtractProfile("lite",
+            List.of(),
+            List.of("system/media/**", "**/*.odex", "*.ttf", "vendor/firmware", "product/**"));
+
+    @Test
+    void globsAreAppliedRelativeToEachPartition() {
+        ExtractSelection system = LITE.forPartition("system").orElseThrow();
+        assertThat(system.matches("build.prop")).isTrue();
+        assertThat(system.matches("app/Settings/Settings.apk")).isTrue();
+        assertThat(system.matches("media/audio/ringtones/a.ogg")).isFalse();
+        assertThat(system.mayContain("media")).isFalse();
+        assertThat(system.matches("app/Settings/oat/arm64/Settings.odex")).isFalse();
+        assertThat(system.matches("fonts/Roboto.ttf")).isFalse();
+        // glob другого раздела сюда не относится
+        assertThat(system.matches("firmware/wifi.bin")).isTrue();
+
+        ExtractSelection vendor = LITE.forPartition("vendor").orElseThrow();
+        assertThat(vendor.mayContain("firmware")).isFalse();
+        assertThat(vendor.mayContain("etc/firmware")).isTrue();
+        assertThat(vendor.matches("firmware/wifi.bin")).isFalse();
+        assertThat(vendor.matches("media/x.ogg")).isTrue();
+
+        assertThat(LITE.forPartition("product")).isEmpty();
+    }
+
+    @Test
+    void includesLimitPartitionsAndSubtrees() {
+        ExtractProfile apps = new ExtractProfile("apps", List.of("system/app", "system/priv-app/**", "*.prop"),
+                List.of("**/*.odex"));
+
+        ExtractSelection system = apps.forPartition("system").orElseThrow();
+        assertThat(system.matches("app/Settings/Settings.apk")).isTrue();
+        assertThat(system.matches("priv-app/Phone/Phone.apk")).isTrue();
+        assertThat(system.matches("priv-app/Phone/oat/Phone.odex")).isFalse();
+        assertThat(system.matches("build.prop")).isTrue();
+        assertThat(system.matches("lib64/libc.so")).isFalse();
+        assertThat(system.matches("lib64/app/libfoo.so")).isFalse();
+
+        // из vendor нужен только *.prop
+        ExtractSelection vendor = apps.forPartition("vendor").orElseThrow();
+        assertThat(vendor.matches("build.prop")).isTrue();
+        assertThat(vendor.matches("app/Foo/Foo.apk")).isFalse();
+
+        assertThat(new ExtractProfile("sys", List.of("system/**"), List.of()).forPartition("vendor")).isEmpty();
+    }
+
+    @Test
+    void translatesToSevenZipWildcardsWhenPossible() {
+        ExtractSelection system = LITE.forPartition("system").orElseThrow();
+        assertThat(SevenZipExtractor.wildcardSwitches(system))
+                .containsExactly("-x!media", "-xr!*.odex", "-xr!*.ttf");
+
+        ExtractSelection deep = ExtractSelection.globs(List.of(), List.of("app/**/oat"));
+        assertThat(SevenZipExtractor.wildcardSwitches(deep)).isNull();
+    }
+
+    @Test
+    void trailersDescribeTheFilter() {
+        assertThat(ExtractProfile.ALL.trailers()).isEmpty();
+        assertThat(new ExtractProfile("apps", List.of("system/app"), List.of("**/*.odex")).trailers())
+                .isEqualTo("Extract-Profile: apps\nExtract-Include: system/app\nExtract-Exclude: **/*.odex\n");
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.HanldeImg.scripts.extract;
+
+import com.example.HanldeImg.scripts.process.ProcessRunner;
+import com.example.HanldeImg.scripts.process.ToolClass;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SevenZipExtractorTest {
+
+    // «образ» — файл с путём к дереву раздела; x копирует дерево целиком, ключи выборки не разбирает
+    private static final String SEVEN_ZIP = """
+            #!/bin/sh
+            if [ "$1" = "l" ]; then
+              cd "$(cat "$4")" || exit 2
+              find . -mindepth 1 | sed 's|^\\./||' | while read -r p; do
+                if [ -d "$p" ]; then printf 'Path = %s\\nSize = 0\\nAttributes = D drwxr-xr-x\\n\\n' "$p"
+                else printf 'Path = %s\\nSize = %s\\nAttributes = A -rw-r--r--\\n\\n' "$p" "$(wc -c < "$p")"; fi
+              done
+              exit 0
+            fi
+            [ "$1" = "x" ] || exit 0
+            out="${3#-o}"
+            mkdir -p "$out"
+            cp -R "$(cat "$2")/." "$out/"
+            """;
+
+    @TempDir
+    Path tmp;
+
+    Path image;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path sevenZip = tmp.resolve("bin/7z");
+        Files.createDirectories(sevenZip.getParent());
+        Files.writeString(sevenZip, SEVEN_ZIP, StandardCharsets.UTF_8);
+        Files.setPosixFilePermissions(sevenZip, PosixFilePermissions.fromString("rwxr-xr-x"));
+        ProcessRunner.configureExecutables(Map.of(ToolClass.SEVEN_ZIP, sevenZip.toString()));
+
+        Path tree = tmp.resolve("tree");
+        Files.createDirectories(tree.resolve("media"));
+        Files.writeString(tree.resolve("build.prop"), "ro.build.display.id=X\n");
+        Files.writeString(tree.resolve("media/boot.ogg"), "sound");
+        image = tmp.resolve("system.img");
+        Files.writeString(image, tree.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        ProcessRunner.configureExecutables(Map.of());
+    }
+
+    private List<String> extract(Path target, ExtractSelection selection) throws Exception {
+        List<String> reported = new ArrayList<>();
+        new SevenZipExtractor().extract(image, target, selection,
+                f -> reported.add(target.relativize(f).toString().replace('\\', '/')));
+        return reported;
+    }
+
+    @Test
+    void reportsEverythingExtractedIntoEmptyDir() throws Exception {
+        assertThat(extract(tmp.resolve("fresh"), ExtractSelection.ALL))
+                .containsExactlyInAnyOrder("build.prop", "media/boot.ogg");
+    }
+
+    @Test
+    void reLoadReportsOnlyEntriesSelectedInThisRun() throws Exception {
+        // прошлый LOAD без профиля: распакован весь раздел и лежит файл, которого в образе уже нет
+        Path target = tmp.resolve("project/system");
+        Files.createDirectories(target.resolve("media"));
+        Files.writeString(target.resolve("media/boot.ogg"), "sound");
+        Files.writeString(target.resolve("stale.txt"), "from an older image");
+
+        List<String> reported = extract(target, ExtractSelection.globs(List.of(), List.of("media")));
+
+        assertThat(reported).containsExactly("build.prop");
+    }
+}
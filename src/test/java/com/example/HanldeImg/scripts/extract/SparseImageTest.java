@@ -0,0 +1,176 @@
+package com.example.HanldeImg.scripts.extract;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SparseImageTest {
+
+    private static final int BLOCK = 4096;
+    private static final int FILL = 0xDEADBEEF;
+
+    @TempDir
+    Path tmp;
+
+    /**
+     * Кодирует raw образ: нулевые блоки -> DONT_CARE, блоки из FILL -> FILL, остальное -> RAW, в конце CRC32.
+     */
+    private static byte[] toSparse(byte[] raw, boolean corruptCrc) {
+        int blocks = raw.length / BLOCK;
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        int chunkCount = 0;
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+
+        int i = 0;
+        while (i < blocks) {
+            int kind = kind(raw, i);
+            int j = i;
+            while (j < blocks && kind(raw, j) == kind) j++;
+            int count = j - i;
+
+            switch (kind) {
+                case 0 -> writeChunk(chunks, SparseImage.CHUNK_DONT_CARE, count, new byte[0]);
+                case 1 -> writeChunk(chunks, SparseImage.CHUNK_FILL, count, le(FILL));
+                default -> writeChunk(chunks, SparseImage.CHUNK_RAW, count,
+                        Arrays.copyOfRange(raw, i * BLOCK, j * BLOCK));
+            }
+            chunkCount++;
+            i = j;
+        }
+        int crcValue = (int) crc.getValue();
+        writeChunk(chunks, SparseImage.CHUNK_CRC32, 0, le(corruptCrc ? ~crcValue : crcValue));
+        chunkCount++;
+
+        ByteBuffer header = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(SparseImage.MAGIC).putShort((short) 1).putShort((short) 0)
+                .putShort((short) 28).putShort((short) 12)
+                .putInt(BLOCK).putInt(blocks).putInt(chunkCount).putInt(0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(header.array());
+        out.writeBytes(chunks.toByteArray());
+        return out.toByteArray();
+    }
+
+    private static int kind(byte[] raw, int block) {
+        boolean zero = true;
+        boolean fill = true;
+        byte[] pattern = le(FILL);
+        for (int k = 0; k < BLOCK; k++) {
+            byte b = raw[block * BLOCK + k];
+            if (b != 0) zero = false;
+            if (b != pattern[k & 3]) fill = false;
+        }
+        return zero ? 0 : fill ? 1 : 2;
+    }
+
+    private static void writeChunk(ByteArrayOutputStream out, int type, int blocks, byte[] data) {
+        ByteBuffer h = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        h.putShort((short) type).putShort((short) 0).putInt(blocks).putInt(12 + data.length);
+        out.writeBytes(h.array());
+        out.writeBytes(data);
+    }
+
+    private static byte[] le(int v) {
+        return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(v).array();
+    }
+
+    private static byte[] sampleRaw() {
+        byte[] raw = new byte[BLOCK * 10];
+        Random random = new Random(7);
+        byte[] head = new byte[BLOCK * 2];
+        random.nextBytes(head);
+        System.arraycopy(head, 0, raw, 0, head.length);
+        byte[] pattern = le(FILL);
+        for (int k = BLOCK * 5; k < BLOCK * 7; k++) raw[k] = pattern[k & 3];
+        byte[] tail = new byte[BLOCK];
+        random.nextBytes(tail);
+        System.arraycopy(tail, 0, raw, BLOCK * 8, BLOCK);
+        return raw;
+    }
+
+    @Test
+    void expandsAllChunkTypesAndVerifiesCrc() throws IOException {
+        byte[] raw = sampleRaw();
+        Path sparse = tmp.resolve("system.img");
+        Files.write(sparse, toSparse(raw, false));
+        Path expanded = tmp.resolve("system.raw");
+
+        assertThat(SparseImage.isSparse(sparse)).isTrue();
+        long size = SparseImage.expand(sparse, expanded, true);
+
+        assertThat(size).isEqualTo(raw.length);
+        assertThat(Files.readAllBytes(expanded)).isEqualTo(raw);
+    }
+
+    @Test
+    void rejectsCrcMismatch() throws IOException {
+        Path sparse = tmp.resolve("bad.img");
+        Files.write(sparse, toSparse(sampleRaw(), true));
+
+        assertThatThrownBy(() -> SparseImage.expand(sparse, tmp.resolve("bad.raw"), true))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("CRC32");
+    }
+
+    @Test
+    void blockSourceReadsExpandedContentWithoutExpanding() throws IOException {
+        byte[] raw = sampleRaw();
+        Path sparse = tmp.resolve("vendor.img");
+        Files.write(sparse, toSparse(raw, false));
+
+        try (SparseBlockSource source = new SparseBlockSource(sparse)) {
+            assertThat(source.size()).isEqualTo(raw.length);
+            ByteBuffer all = ByteBuffer.allocate(raw.length);
+            source.read(0, all);
+            assertThat(all.array()).isEqualTo(raw);
+
+            ByteBuffer middle = ByteBuffer.allocate(BLOCK * 3);
+            source.read(BLOCK * 4 + 3, middle);
+            assertThat(middle.array()).isEqualTo(Arrays.copyOfRange(raw, BLOCK * 4 + 3, BLOCK * 7 + 3));
+        }
+    }
+
+    @Test
+    void ext4ExtractorReadsSparseImageDirectly() throws Exception {
+        Path src = tmp.resolve("src");
+        Files.createDirectories(src.resolve("etc"));
+        Files.writeString(src.resolve("etc/hosts"), "127.0.0.1 localhost\n");
+        Path rawImage = tmp.resolve("raw.img");
+
+        Process p;
+        try {
+            p = new ProcessBuilder("mke2fs", "-q", "-F", "-t", "ext4", "-b", "4096",
+                    "-d", src.toString(), rawImage.toString(), "4M").redirectErrorStream(true).start();
+        } catch (IOException e) {
+            assumeTrue(false, "mke2fs недоступен");
+            return;
+        }
+        p.getInputStream().readAllBytes();
+        assumeTrue(p.waitFor() == 0, "mke2fs не смог создать образ");
+
+        Path sparse = tmp.resolve("ext4_sparse.img");
+        Files.write(sparse, toSparse(Files.readAllBytes(rawImage), false));
+        Path out = tmp.resolve("out");
+
+        Ext4Extractor extractor = new Ext4Extractor(2);
+        assertThat(extractor.supports(sparse)).isTrue();
+        extractor.extract(sparse, out);
+
+        assertThat(Files.readString(out.resolve("etc/hosts"))).isEqualTo("127.0.0.1 localhost\n");
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.HanldeImg.scripts.flow;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StageTest {
+
+    @Test
+    void processesEverythingAndReportsStats() throws Exception {
+        List<Integer> seen = new CopyOnWriteArrayList<>();
+        Stage<Integer> stage = new Stage<>("test", "collect", 3, 4, seen::add);
+        for (int i = 0; i < 100; i++) {
+            stage.accept(i);
+        }
+        stage.finish();
+
+        assertThat(seen).hasSize(100).doesNotHaveDuplicates();
+        Stage.Stats stats = stage.stats();
+        assertThat(stats.processed()).isEqualTo(100);
+        assertThat(stats.finished()).isTrue();
+        assertThat(stats.maxQueued()).isLessThanOrEqualTo(4);
+        assertThat(FlowMonitor.active()).noneMatch(s -> s.stage().equals("collect"));
+        assertThat(FlowMonitor.recent()).anyMatch(s -> s.stage().equals("collect") && s.processed() == 100);
+    }
+
+    @Test
+    void producerWaitsWhileQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Stage<Integer> stage = new Stage<>("test", "slow", 1, 2, i -> release.await());
+
+        // один элемент в обработке, два в очереди — четвёртый ждёт места
+        for (int i = 0; i < 3; i++) stage.accept(i);
+        Thread producer = new Thread(() -> stage.accept(3));
+        producer.start();
+        producer.join(200);
+        assertThat(producer.isAlive()).isTrue();
+        assertThat(stage.stats().queued()).isEqualTo(2);
+        assertThat(stage.stats().busy()).isEqualTo(1);
+
+        release.countDown();
+        producer.join(TimeUnit.SECONDS.toMillis(5));
+        stage.finish();
+
+        Stage.Stats stats = stage.stats();
+        assertThat(stats.processed()).isEqualTo(4);
+        assertThat(stats.producerWaitMillis()).isGreaterThanOrEqualTo(150);
+        assertThat(stats.utilisation()).isGreaterThan(0.5);
+    }
+
+    @Test
+    void failureStopsStageAndReachesProducerAndFinish() throws Exception {
+        Stage<Integer> stage = new Stage<>("test", "failing", 2, 8, i -> {
+            if (i == 5) throw new IOException("broken " + i);
+        });
+        assertThatThrownBy(() -> {
+            for (int i = 0; i < 10_000; i++) {
+                stage.accept(i);
+                Thread.sleep(1);
+            }
+        }).isInstanceOf(CancellationException.class).hasCauseInstanceOf(IOException.class);
+
+        assertThatThrownBy(stage::finish)
+                .isInstanceOf(ExecutionException.class)
+                .hasRootCauseMessage("broken 5");
+    }
+
+    @Test
+    @Timeout(10)
+    void workerThatSwallowedInterruptStopsAfterFailure() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        Stage<Integer> stage = new Stage<>("test", "swallow", 2, 4, i -> {
+            if (i == 0) {
+                started.countDown();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException ignored) {
+                    // как внешний процесс, убитый по прерыванию: обработчик просто возвращается
+                }
+                return;
+            }
+            started.await();
+            throw new IOException("boom");
+        });
+        stage.accept(0);
+        stage.accept(1);
+
+        assertThatThrownBy(stage::finish)
+                .isInstanceOf(ExecutionException.class)
+                .hasRootCauseMessage("boom");
+        assertThat(stage.stats().finished()).isTrue();
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.HanldeImg.scripts.git;
+
+import com.example.HanldeImg.scripts.index.FileIndex;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JGitPublisherTest {
+
+    @TempDir
+    Path tmp;
+
+    private Repository bare() throws Exception {
+        return Git.init().setBare(true).setDirectory(tmp.resolve("remote.git").toFile())
+                .setInitialBranch("main").call().getRepository();
+    }
+
+    private static Map<String, FileMode> tree(Repository repo, String commit) throws IOException {
+        Map<String, FileMode> files = new TreeMap<>();
+        try (RevWalk walk = new RevWalk(repo); TreeWalk tw = new TreeWalk(repo)) {
+            RevCommit c = walk.parseCommit(ObjectId.fromString(commit));
+            tw.addTree(c.getTree());
+            tw.setRecursive(true);
+            while (tw.next()) files.put(tw.getPathString(), tw.getFileMode(0));
+        }
+        return files;
+    }
+
+    @Test
+    void publishesSnapshotToBareRemote() throws Exception {
+        Repository remote = bare();
+        String remoteUri = remote.getDirectory().toURI().toString();
+
+        Path work = tmp.resolve("project");
+        Files.createDirectories(work.resolve("system/bin"));
+        Files.writeString(work.resolve("system/build.prop"), "ro.build.display.id=TEST.1\n");
+        Files.writeString(work.resolve("system/bin/sh"), "#!/bin/sh\n");
+        Files.setPosixFilePermissions(work.resolve("system/bin/sh"), PosixFilePermissions.fromString("rwxr-xr-x"));
+        Files.createSymbolicLink(work.resolve("system/bin/ls"), Path.of("toybox"));
+        Files.writeString(work.resolve(".gitignore"), "*.tmp\n");
+        Files.writeString(work.resolve("system/junk.tmp"), "ignored");
+
+        JGitPublisher git = new JGitPublisher(4);
+        git.prepare(work, remoteUri, true);
+        String first = git.publish(work, "TEST.1", true);
+
+        assertThat(remote.resolve("refs/heads/main").name()).isEqualTo(first);
+        assertThat(tree(remote, first)).containsExactlyInAnyOrderEntriesOf(Map.of(
+                ".gitignore", FileMode.REGULAR_FILE,
+                "system/build.prop", FileMode.REGULAR_FILE,
+                "system/bin/sh", FileMode.EXECUTABLE_FILE,
+                "system/bin/ls", FileMode.SYMLINK));
+
+        try (RevWalk walk = new RevWalk(remote)) {
+            RevCommit c = walk.parseCommit(ObjectId.fromString(first));
+            assertThat(c.getFullMessage()).isEqualTo("TEST.1\n");
+            byte[] link = remote.open(TreeWalk.forPath(remote, "system/bin/ls", c.getTree()).getObjectId(0),
+                    Constants.OBJ_BLOB).getBytes();
+            assertThat(new String(link, StandardCharsets.UTF_8)).isEqualTo("toybox");
+        }
+
+        // второй снимок: изменение, удаление и новый файл
+        Files.writeString(work.resolve("system/build.prop"), "ro.build.display.id=TEST.2\n");
+        Files.delete(work.resolve("system/bin/sh"));
+        Files.writeString(work.resolve("system/new.txt"), "new");
+        String second = git.publish(work, "TEST.2", true);
+
+        assertThat(tree(remote, second)).containsOnlyKeys(
+                ".gitignore", "system/build.prop", "system/bin/ls", "system/new.txt");
+        try (RevWalk walk = new RevWalk(remote)) {
+            assertThat(walk.parseCommit(ObjectId.fromString(second)).getParent(0).name()).isEqualTo(first);
+        }
+
+        // индекс совместим с обычным git: рабочее дерево чистое
+        try (Git opened = Git.open(work.toFile())) {
+            assertThat(opened.status().call().isClean()).isTrue();
+        }
+    }
+
+    @Test
+    void prepareResetsFreshCloneToRemote() throws Exception {
+        Repository remote = bare();
+        String remoteUri = remote.getDirectory().toURI().toString();
+
+        Path first = tmp.resolve("first");
+        Files.createDirectories(first.resolve("system"));
+        Files.writeString(first.resolve("system/build.prop"), "ro.build.display.id=A\n");
+        JGitPublisher git = new JGitPublisher(2);
+        git.prepare(first, remoteUri, true);
+        String a = git.publish(first, "A", true);
+
+        // другой рабочий каталог догоняет origin/main и коммитит поверх
+        Path second = tmp.resolve("second");
+        git.prepare(second, remoteUri, true);
+        assertThat(second.resolve("system/build.prop")).hasContent("ro.build.display.id=A");
+
+        Files.writeString(second.resolve("system/build.prop"), "ro.build.display.id=B\n");
+        String b = git.publish(second, "B", true);
+
+        // первый каталог отстал: снимок C вешается поверх B, а не отклоняется при push
+        Files.writeString(first.resolve("system/build.prop"), "ro.build.display.id=C\n");
+        String c = git.publish(first, "C", true);
+
+        try (RevWalk walk = new RevWalk(remote)) {
+            RevCommit head = walk.parseCommit(remote.resolve("refs/heads/main"));
+            assertThat(head.name()).isEqualTo(c);
+            assertThat(head.getParent(0).name()).isEqualTo(b);
+            assertThat(walk.parseCommit(ObjectId.fromString(b)).getParent(0).name()).isEqualTo(a);
+        }
+    }
+
+    @Test
+    void publishFromFileIndexMatchesTreeWalk() throws Exception {
+        Repository remote = bare();
+        String remoteUri = remote.getDirectory().toURI().toString();
+
+        Path work = tmp.resolve("indexed");
+        Files.createDirectories(work.resolve("system/bin"));
+        Files.writeString(work.resolve("system/build.prop"), "ro.build.display.id=TEST.1\n");
+        Files.writeString(work.resolve("system/bin/sh"), "#!/bin/sh\n");
+        Files.setPosixFilePermissions(work.resolve("system/bin/sh"), PosixFilePermissions.fromString("rwxr-xr-x"));
+        Files.createSymbolicLink(work.resolve("system/bin/ls"), Path.of("toybox"));
+        Files.writeString(work.resolve("system/.gitignore"), "*.tmp\n");
+        Files.writeString(work.resolve("system/junk.tmp"), "ignored");
+        Files.writeString(work.resolve(".gitattributes"), "*.bin binary\n");
+
+        FileIndex.Builder builder = FileIndex.builder(work);
+        builder.addTree(work.resolve("system"));
+        FileIndex index = builder.build();
+
+        JGitPublisher git = new JGitPublisher(2);
+        git.prepare(work, remoteUri, true);
+        String commit = git.publish(work, "TEST.1", true, index);
+
+        // корневой .gitattributes не из индекса, но в коммит попадает; .gitignore из индекса действует
+        assertThat(tree(remote, commit)).containsExactlyInAnyOrderEntriesOf(Map.of(
+                ".gitattributes", FileMode.REGULAR_FILE,
+                "system/.gitignore", FileMode.REGULAR_FILE,
+                "system/build.prop", FileMode.REGULAR_FILE,
+                "system/bin/sh", FileMode.EXECUTABLE_FILE,
+                "system/bin/ls", FileMode.SYMLINK));
+        try (Git opened = Git.open(work.toFile())) {
+            assertThat(opened.status().call().isClean()).isTrue();
+        }
+    }
+
+    @Test
+    void indexedFileWithSameSizeAndMtimeIsNotTakenFromOldIndex() throws Exception {
+        Repository remote = bare();
+        String remoteUri = remote.getDirectory().toURI().toString();
+
+        // как из образа: у всех файлов одно фиксированное время
+        FileTime fixed = FileTime.fromMillis(1_230_768_000_000L);
+        Path work = tmp.resolve("fixed-mtime");
+        Path prop = work.resolve("system/build.prop");
+        Files.createDirectories(prop.getParent());
+        Files.writeString(prop, "ro.build.display.id=AAAA\n");
+        Files.setLastModifiedTime(prop, fixed);
+
+        JGitPublisher git = new JGitPublisher(2);
+        git.prepare(work, remoteUri, true);
+        git.publish(work, "A", true, index(work));
+
+        Files.writeString(prop, "ro.build.display.id=BBBB\n");
+        Files.setLastModifiedTime(prop, fixed);
+        String second = git.publish(work, "B", true, index(work));
+
+        try (RevWalk walk = new RevWalk(remote)) {
+            RevCommit c = walk.parseCommit(ObjectId.fromString(second));
+            byte[] blob = remote.open(TreeWalk.forPath(remote, "system/build.prop", c.getTree()).getObjectId(0),
+                    Constants.OBJ_BLOB).getBytes();
+            assertThat(new String(blob, StandardCharsets.UTF_8)).isEqualTo("ro.build.display.id=BBBB\n");
+        }
+    }
+
+    private static FileIndex index(Path work) throws IOException {
+        FileIndex.Builder builder = FileIndex.builder(work);
+        builder.addTree(work.resolve("system"));
+        return builder.build();
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.HanldeImg.scripts.index;
+
+import com.example.HanldeImg.scripts.TreeSync;
+import com.example.HanldeImg.scripts.TreeSync.SyncReport;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileIndexTest {
+
+    @TempDir
+    Path tmp;
+
+    private static void write(Path root, String rel, String content) throws Exception {
+        Path file = root.resolve(rel);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    private static FileIndex index(Path root) throws Exception {
+        FileIndex.Builder builder = FileIndex.builder(root);
+        builder.addTree(root);
+        return builder.build();
+    }
+
+    @Test
+    void buildsSortedIndexWithGitBlobIdsAndSurvivesRoundTrip() throws Exception {
+        Path root = tmp.resolve("project");
+        write(root, "system/build.prop", "ro.build.display.id=1\n");
+        write(root, "system/app/Settings/Settings.apk", "apk");
+        write(root, "vendor/bin/tool", "#!/bin/sh\n");
+        Files.setPosixFilePermissions(root.resolve("vendor/bin/tool"), PosixFilePermissions.fromString("rwxr-xr-x"));
+        Files.createSymbolicLink(root.resolve("system/link"), Path.of("build.prop"));
+
+        FileIndex index = index(root);
+        assertThat(index.size()).isEqualTo(4);
+        assertThat(index.path(0)).isEqualTo("system/app/Settings/Settings.apk");
+        assertThat(index.path(3)).isEqualTo("vendor/bin/tool");
+
+        int prop = index.find("system/build.prop");
+        try (ObjectInserter.Formatter git = new ObjectInserter.Formatter()) {
+            assertThat(index.hashHex(prop)).isEqualTo(git.idFor(Constants.OBJ_BLOB,
+                    Files.readAllBytes(root.resolve("system/build.prop"))).name());
+            assertThat(index.hashHex(index.find("system/link"))).isEqualTo(git.idFor(Constants.OBJ_BLOB,
+                    "build.prop".getBytes()).name());
+        }
+        assertThat(index.mode(index.find("vendor/bin/tool"))).isEqualTo(FileIndex.MODE_EXECUTABLE);
+        assertThat(index.mode(index.find("system/link"))).isEqualTo(FileIndex.MODE_SYMLINK);
+        assertThat(index.find("system/missing")).isEqualTo(-1);
+        assertThat(index.pathsUnder(java.util.List.of("system/", "vendor/"), ".apk"))
+                .containsExactly("system/app/Settings/Settings.apk");
+
+        Path file = tmp.resolve(".index").resolve("project.idx");
+        index.write(file);
+        FileIndex read = FileIndex.read(file);
+        assertThat(read).isNotNull();
+        assertThat(read.size()).isEqualTo(index.size());
+        for (int i = 0; i < index.size(); i++) {
+            assertThat(read.path(i)).isEqualTo(index.path(i));
+            assertThat(read.sameContent(i, index, i)).isTrue();
+            assertThat(read.matchesDisk(i, root)).isTrue();
+        }
+
+        Files.writeString(file, "garbage");
+        assertThat(FileIndex.read(file)).isNull();
+    }
+
+    @Test
+    void syncByIndexSkipsUnchangedAndRemovesMissing() throws Exception {
+        Path target = tmp.resolve("target");
+        write(target, "system/same.txt", "same");
+        write(target, "system/changed.txt", "old");
+        write(target, "system/gone/old.txt", "old");
+        Files.writeString(target.resolve(".gitignore"), "*.tmp\n");
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        Files.setLastModifiedTime(target.resolve("system/same.txt"), old);
+        FileIndex targetIndex = index(target);
+
+        Path staging = tmp.resolve("staging");
+        write(staging, "system/same.txt", "same");
+        write(staging, "system/changed.txt", "new");
+        write(staging, "vendor/new.txt", "new");
+        FileIndex sourceIndex = index(staging);
+
+        SyncReport report = TreeSync.sync(staging, target, Set.of(".git", ".gitignore"), sourceIndex, targetIndex);
+
+        assertThat(report.added()).isEqualTo(1);
+        assertThat(report.changed()).isEqualTo(1);
+        assertThat(report.unchanged()).isEqualTo(1);
+        assertThat(report.removed()).isEqualTo(1);
+        assertThat(target.resolve("system/gone")).doesNotExist();
+        assertThat(target.resolve(".gitignore")).exists();
+        assertThat(Files.readString(target.resolve("system/changed.txt"))).isEqualTo("new");
+        // неизменённый файл остался на месте со своим временем, и итоговый индекс это знает
+        assertThat(Files.getLastModifiedTime(target.resolve("system/same.txt"))).isEqualTo(old);
+        FileIndex synced = report.index();
+        for (int i = 0; i < synced.size(); i++) {
+            assertThat(synced.matchesDisk(i, target)).as(synced.path(i)).isTrue();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.HanldeImg.scripts.lfs;
+
+import com.example.HanldeImg.scripts.git.JGitPublisher;
+import com.example.HanldeImg.scripts.index.FileIndex;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.node.ArrayNode;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LfsPublishTest {
+
+    private static final JsonMapper JSON = JsonMapper.builder().build();
+
+    @TempDir
+    Path tmp;
+
+    private HttpServer server;
+    private final Map<String, byte[]> stored = new ConcurrentHashMap<>();
+    private final AtomicInteger batches = new AtomicInteger();
+    private final AtomicInteger verifies = new AtomicInteger();
+
+    /**
+     * Заглушка LFS сервера: batch отвечает upload-действием только для отсутствующих объектов.
+     */
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        server.createContext("/repo.git/info/lfs/objects/batch", ex -> {
+            batches.incrementAndGet();
+            assertThat(ex.getRequestHeaders().getFirst("Authorization")).startsWith("Basic ");
+            JsonNode req = JSON.readTree(ex.getRequestBody().readAllBytes());
+            ObjectNode resp = JSON.createObjectNode();
+            ArrayNode objects = resp.putArray("objects");
+            for (JsonNode o : req.path("objects")) {
+                String oid = o.path("oid").asString();
+                ObjectNode obj = objects.addObject().put("oid", oid).put("size", o.path("size").asLong());
+                if (!stored.containsKey(oid)) {
+                    ObjectNode actions = obj.putObject("actions");
+                    actions.putObject("upload").put("href", base + "/upload/" + oid)
+                            .putObject("header").put("X-Token", "t");
+                    actions.putObject("verify").put("href", base + "/verify");
+                }
+            }
+            respond(ex, 200, JSON.writeValueAsBytes(resp));
+        });
+        server.createContext("/upload/", ex -> {
+            assertThat(ex.getRequestHeaders().getFirst("X-Token")).isEqualTo("t");
+            String oid = ex.getRequestURI().getPath().substring("/upload/".length());
+            stored.put(oid, ex.getRequestBody().readAllBytes());
+            respond(ex, 200, new byte[0]);
+        });
+        server.createContext("/verify", ex -> {
+            verifies.incrementAndGet();
+            JsonNode req = JSON.readTree(ex.getRequestBody().readAllBytes());
+            respond(ex, stored.containsKey(req.path("oid").asString()) ? 200 : 404, new byte[0]);
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange ex, int code, byte[] body) throws IOException {
+        ex.getResponseHeaders().add("Content-Type", "application/vnd.git-lfs+json");
+        ex.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) ex.getResponseBody().write(body);
+        ex.close();
+    }
+
+    private static byte[] random(int size, long seed) {
+        byte[] b = new byte[size];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    private static byte[] blob(Repository repo, RevCommit commit, String path) throws IOException {
+        try (TreeWalk tw = TreeWalk.forPath(repo, path, commit.getTree())) {
+            return repo.open(tw.getObjectId(0), Constants.OBJ_BLOB).getBytes();
+        }
+    }
+
+    @Test
+    void largeFilesGoToLfsAndOnlyMissingObjectsAreUploaded() throws Exception {
+        Repository remote = Git.init().setBare(true).setDirectory(tmp.resolve("remote.git").toFile())
+                .setInitialBranch("main").call().getRepository();
+
+        Path work = tmp.resolve("project");
+        Files.createDirectories(work.resolve("system/lib64"));
+        byte[] lib = random(5000, 1);
+        byte[] big = random(20000, 2);
+        Files.write(work.resolve("system/lib64/libfoo.so"), lib);
+        Files.write(work.resolve("system/lib64/libbar.so"), lib);
+        Files.write(work.resolve("system/big file.dat"), big);
+        Files.writeString(work.resolve("system/build.prop"), "ro.build.display.id=X\n");
+
+        LfsRules rules = new LfsRules(10_000, List.of("so"));
+        LfsClient client = new LfsClient(
+                URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/repo.git/info/lfs"),
+                "oauth2", "secret", 4);
+        JGitPublisher git = new JGitPublisher(2, new LfsOptions(rules, client));
+
+        git.prepare(work, remote.getDirectory().toURI().toString(), true);
+        String first = git.publish(work, "X", true);
+
+        String attributes = Files.readString(work.resolve(".gitattributes"));
+        assertThat(attributes).contains("*.so filter=lfs diff=lfs merge=lfs -text")
+                .contains("/system/big[[:space:]]file.dat filter=lfs");
+
+        try (RevWalk walk = new RevWalk(remote)) {
+            RevCommit c = walk.parseCommit(remote.resolve(first));
+            LfsPointer libPointer = LfsPointer.parse(blob(remote, c, "system/lib64/libfoo.so"));
+            LfsPointer bigPointer = LfsPointer.parse(blob(remote, c, "system/big file.dat"));
+            assertThat(libPointer).isNotNull();
+            assertThat(bigPointer).isNotNull();
+            assertThat(libPointer.size()).isEqualTo(lib.length);
+            assertThat(blob(remote, c, "system/build.prop")).asString(StandardCharsets.UTF_8)
+                    .isEqualTo("ro.build.display.id=X\n");
+
+            // два одинаковых .so — один объект
+            assertThat(stored).containsOnlyKeys(libPointer.oid(), bigPointer.oid());
+            assertThat(stored.get(libPointer.oid())).isEqualTo(lib);
+            assertThat(stored.get(bigPointer.oid())).isEqualTo(big);
+            assertThat(verifies).hasValue(2);
+        }
+
+        // повторная публикация без изменений ничего не загружает
+        int uploadsBefore = stored.size();
+        git.publish(work, "X again", true);
+        assertThat(stored).hasSize(uploadsBefore);
+        assertThat(verifies).hasValue(2);
+    }
+
+    @Test
+    void storedObjectSurvivesInPlaceRewriteOfWorkTreeFile() throws Exception {
+        LfsStore store = new LfsStore(tmp.resolve(".git"));
+        Path file = tmp.resolve("system/lib64/libfoo.so");
+        Files.createDirectories(file.getParent());
+        byte[] lib = random(5000, 1);
+        Files.write(file, lib);
+
+        LfsPointer pointer = store.store(file);
+        // следующая распаковка переписывает файл рабочего дерева на месте
+        Files.write(file, random(5000, 2));
+
+        assertThat(store.contains(pointer)).isTrue();
+        assertThat(store.path(pointer.oid())).hasBinaryContent(lib);
+        assertThat(store.store(tmp.resolve("system/lib64/libfoo.so"))).isNotEqualTo(pointer);
+        try (Stream<Path> parts = Files.list(tmp.resolve(".git/lfs/tmp"))) {
+            assertThat(parts).isEmpty();
+        }
+    }
+
+    @Test
+    void attributesFromIndexMatchWalk() throws Exception {
+        Path work = tmp.resolve("project");
+        Files.createDirectories(work.resolve("system/lib64"));
+        Files.write(work.resolve("system/lib64/libfoo.so"), random(20000, 1));
+        Files.write(work.resolve("system/big file.dat"), random(20000, 2));
+        Files.write(work.resolve("system/b.dat"), random(20000, 3));
+        Files.writeString(work.resolve("system/build.prop"), "ro.build.display.id=X\n");
+        FileIndex.Builder builder = FileIndex.builder(work);
+        builder.addTree(work);
+        FileIndex index = builder.build();
+        LfsRules rules = new LfsRules(10_000, List.of("so"));
+
+        assertThat(rules.writeAttributes(work)).isTrue();
+        String walked = Files.readString(work.resolve(".gitattributes"));
+        assertThat(rules.writeAttributes(work, index)).isFalse();
+
+        // по индексу дерево не обходится: файл, которого нет в индексе, в правила не попадает
+        Files.write(work.resolve("system/late.dat"), random(20000, 4));
+        assertThat(rules.writeAttributes(work, index)).isFalse();
+        assertThat(work.resolve(".gitattributes")).content().isEqualTo(walked)
+                .contains("/system/b.dat filter=lfs", "/system/big[[:space:]]file.dat filter=lfs")
+                .doesNotContain("libfoo.so", "build.prop");
+    }
+
+    @Test
+    void pointerRoundTrip() {
+        LfsPointer p = new LfsPointer("a".repeat(64), 42);
+        assertThat(LfsPointer.parse(p.toBytes())).isEqualTo(p);
+        assertThat(LfsPointer.parse("not a pointer".getBytes(StandardCharsets.UTF_8))).isNull();
+    }
+}
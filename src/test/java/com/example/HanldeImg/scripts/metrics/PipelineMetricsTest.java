@@ -0,0 +1,83 @@
+package com.example.HanldeImg.scripts.metrics;
+
+import com.example.HanldeImg.scripts.IngestScripts;
+import com.example.HanldeImg.scripts.flow.Stage;
+import com.example.HanldeImg.scripts.process.ProcessRunner;
+import com.example.HanldeImg.scripts.process.ToolClass;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PipelineMetricsTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(meters);
+        ObservationRegistry observations = ObservationRegistry.create();
+        observations.observationConfig().observationHandler(new DefaultMeterObservationHandler(meters));
+        PipelineMetrics.configure(observations);
+    }
+
+    @AfterEach
+    void tearDown() {
+        PipelineMetrics.configure(null);
+        Metrics.removeRegistry(meters);
+        meters.close();
+    }
+
+    @Test
+    void ingestRecordsTimerAndBytes(@TempDir Path dir) throws Exception {
+        byte[] data = new byte[64 * 1024];
+        IngestScripts.ingest(new ByteArrayInputStream(data), "system.img", data.length, dir);
+
+        Timer timer = meters.find(PipelineMetrics.INGEST).tag("source", "stream").timer();
+        assertThat(timer).isNotNull();
+        assertThat(timer.count()).isEqualTo(1);
+        assertThat(meters.get(PipelineMetrics.INGEST_BYTES).tag("compression", "none").counter().count())
+                .isEqualTo(data.length);
+    }
+
+    @Test
+    void processOutcomeIsTagged() throws Exception {
+        ProcessRunner.run(ProcessRunner.Command.of(ToolClass.GIT, "true", List.of("true")));
+        ProcessRunner.run(ProcessRunner.Command.of(ToolClass.GIT, "false", List.of("false")));
+
+        assertThat(meters.get(PipelineMetrics.PROCESS).tags("tool", "git", "outcome", "ok").timer().count()).isEqualTo(1);
+        assertThat(meters.get(PipelineMetrics.PROCESS).tags("tool", "git", "outcome", "failed").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void stageWorkersContinueParentObservation() throws Exception {
+        Map<Integer, Observation> parents = new ConcurrentHashMap<>();
+        Observation job = PipelineMetrics.start(PipelineMetrics.JOB, "job test", "type", "test");
+        try (Observation.Scope scope = job.openScope()) {
+            Stage<Integer> stage = new Stage<>("test", "observed", 2, 4,
+                    i -> parents.put(i, PipelineMetrics.current()));
+            for (int i = 0; i < 10; i++) stage.accept(i);
+            stage.finish();
+        } finally {
+            job.stop();
+        }
+
+        assertThat(parents).hasSize(10);
+        assertThat(parents.values()).allMatch(o -> o == job);
+        assertThat(PipelineMetrics.current()).isNull();
+    }
+}
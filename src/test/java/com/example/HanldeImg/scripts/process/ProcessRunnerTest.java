@@ -0,0 +1,80 @@
+package com.example.HanldeImg.scripts.process;
+
+import com.example.HanldeImg.scripts.process.ProcessRunner.Command;
+import com.example.HanldeImg.scripts.process.ProcessRunner.Result;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProcessRunnerTest {
+
+    private static Command sh(String script) {
+        return Command.of(ToolClass.GIT, "sh", List.of("sh", "-c", script));
+    }
+
+    @Test
+    void drainsBothStreamsAndKeepsOnlyTail() throws Exception {
+        // 200k строк в stdout и stderr: без параллельного чтения процесс встал бы на полном пайпе
+        AtomicLong stdout = new AtomicLong();
+        Result result = ProcessRunner.run(sh("i=0; while [ $i -lt 100000 ]; do echo out$i; echo err$i >&2; i=$((i+1)); done; exit 3")
+                .onLine(line -> stdout.incrementAndGet()));
+
+        assertThat(result.exitCode()).isEqualTo(3);
+        assertThat(result.lines()).isEqualTo(200_000);
+        assertThat(stdout.get()).isEqualTo(100_000);
+        assertThat(result.tail().lines().count()).isLessThanOrEqualTo(200);
+        // какой из потоков дочитал последним — не важно, в хвосте только конец вывода
+        assertThat(result.tail()).containsPattern("(out|err)99999");
+        assertThat(result.tail().lines()).doesNotContain("out0", "err0");
+    }
+
+    @Test
+    void timeoutKillsWholeTree() throws Exception {
+        long before = ProcessRunner.stats().get(ToolClass.GIT).timeouts();
+
+        // внук держит stdout открытым: без остановки дерева чтение никогда бы не закончилось
+        assertThatThrownBy(() -> ProcessRunner.run(sh("echo started; sleep 60 & sleep 60")
+                .timeout(Duration.ofMillis(300))))
+                .isInstanceOf(ProcessTimeoutException.class)
+                .hasMessageContaining("started");
+
+        assertThat(ProcessRunner.stats().get(ToolClass.GIT).timeouts()).isEqualTo(before + 1);
+        assertThat(ProcessScheduler.global().stats(ToolClass.GIT).running()).isZero();
+    }
+
+    @Test
+    void grandchildHoldingPipeDoesNotHangAfterExit() throws Exception {
+        // процесс вышел, а фоновый внук (как ssh ControlPersist) держит stdout ещё долго
+        long begin = System.nanoTime();
+        Result result = ProcessRunner.run(sh("echo pushed; sleep 40 &").timeout(Duration.ofMinutes(1)));
+
+        assertThat(result.ok()).isTrue();
+        assertThat(result.tail()).contains("pushed");
+        assertThat(Duration.ofNanos(System.nanoTime() - begin)).isLessThan(Duration.ofSeconds(30));
+        assertThat(ProcessScheduler.global().stats(ToolClass.GIT).running()).isZero();
+    }
+
+    @Test
+    void interruptStopsProcess() throws Exception {
+        Thread caller = Thread.currentThread();
+        Thread interrupter = new Thread(() -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException ignored) {
+            }
+            caller.interrupt();
+        });
+        interrupter.start();
+
+        long begin = System.nanoTime();
+        assertThatThrownBy(() -> ProcessRunner.run(sh("sleep 60").timeout(Duration.ZERO)))
+                .isInstanceOf(InterruptedException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - begin)).isLessThan(Duration.ofSeconds(20));
+        interrupter.join();
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.HanldeImg.scripts.process;
+
+import com.example.HanldeImg.scripts.process.ProcessScheduler.Limits;
+import com.example.HanldeImg.scripts.process.ProcessScheduler.Permit;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProcessSchedulerTest {
+
+    private static ProcessScheduler scheduler(int maxConcurrent, long budgetMb) {
+        return new ProcessScheduler(Map.of(
+                ToolClass.SEVEN_ZIP, new Limits(maxConcurrent, budgetMb, 100),
+                ToolClass.APKTOOL, new Limits(maxConcurrent, budgetMb, 100),
+                ToolClass.GIT, new Limits(maxConcurrent, budgetMb, 100)));
+    }
+
+    /**
+     * Запускает ожидание слота от имени задачи; выданные слоты складываются в granted в порядке выдачи.
+     */
+    private static Thread waiter(ProcessScheduler scheduler, String job, String name, long memoryMb,
+                                 List<String> granted, List<Permit> permits) {
+        Thread t = new Thread(() -> JobContext.run(job, () -> {
+            try {
+                Permit permit = scheduler.acquire(ToolClass.APKTOOL, memoryMb);
+                granted.add(name);
+                permits.add(permit);
+            } catch (InterruptedException ignored) {
+            }
+        }));
+        t.start();
+        return t;
+    }
+
+    private static void awaitWaiting(ProcessScheduler scheduler, int waiting) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.stats(ToolClass.APKTOOL).waiting() != waiting) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void bigJobDoesNotStarveOthers() throws Exception {
+        ProcessScheduler scheduler = scheduler(1, 0);
+        List<String> granted = Collections.synchronizedList(new ArrayList<>());
+        List<Permit> permits = Collections.synchronizedList(new ArrayList<>());
+
+        CountDownLatch first = new CountDownLatch(1);
+        Permit[] running = new Permit[1];
+        Thread holder = new Thread(() -> JobContext.run("rom", () -> {
+            try {
+                running[0] = scheduler.acquire(ToolClass.APKTOOL);
+                first.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        }));
+        holder.start();
+        first.await();
+
+        // огромная прошивка уже поставила в очередь три APK, потом пришла маленькая задача
+        for (int i = 1; i <= 3; i++) {
+            waiter(scheduler, "rom", "rom-" + i, -1, granted, permits);
+            awaitWaiting(scheduler, i);
+        }
+        waiter(scheduler, "small", "small-1", -1, granted, permits);
+        awaitWaiting(scheduler, 4);
+
+        running[0].close();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        int closed = 0;
+        while (closed < 4) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            // слот один, поэтому каждый выданный закрываем, как только он появился
+            if (!permits.isEmpty()) {
+                permits.remove(0).close();
+                closed++;
+            }
+            Thread.sleep(5);
+        }
+
+        // маленькая задача получает слот сразу после первого освобождения, а не после всей прошивки
+        assertThat(granted.get(0)).isEqualTo("small-1");
+        assertThat(granted.subList(1, 4)).containsExactly("rom-1", "rom-2", "rom-3");
+        assertThat(scheduler.stats(ToolClass.APKTOOL).started()).isEqualTo(5);
+    }
+
+    @Test
+    void memoryBudgetLimitsConcurrency() throws Exception {
+        ProcessScheduler scheduler = scheduler(10, 1000);
+        Permit a = scheduler.acquire(ToolClass.APKTOOL, 600);
+        List<String> granted = Collections.synchronizedList(new ArrayList<>());
+        List<Permit> permits = Collections.synchronizedList(new ArrayList<>());
+
+        Thread t = waiter(scheduler, "job", "b", 600, granted, permits);
+        awaitWaiting(scheduler, 1);
+        assertThat(scheduler.stats(ToolClass.APKTOOL).running()).isEqualTo(1);
+        assertThat(scheduler.stats(ToolClass.APKTOOL).memoryInUseMb()).isEqualTo(600);
+
+        a.close();
+        t.join(5000);
+        assertThat(granted).containsExactly("b");
+        permits.get(0).close();
+
+        // процесс больше всего бюджета запускается, но только один
+        try (Permit huge = scheduler.acquire(ToolClass.APKTOOL, 5000)) {
+            assertThat(scheduler.stats(ToolClass.APKTOOL).memoryInUseMb()).isEqualTo(1000);
+        }
+        assertThat(scheduler.stats(ToolClass.APKTOOL).running()).isZero();
+        assertThat(scheduler.stats(ToolClass.APKTOOL).memoryInUseMb()).isZero();
+    }
+
+    @Test
+    void interruptedWaiterLeavesQueue() throws Exception {
+        ProcessScheduler scheduler = scheduler(1, 0);
+        Permit held = scheduler.acquire(ToolClass.GIT);
+
+        Thread t = new Thread(() -> {
+            try {
+                scheduler.acquire(ToolClass.GIT).close();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        t.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.stats(ToolClass.GIT).waiting() != 1) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+        t.interrupt();
+        t.join(5000);
+
+        assertThat(scheduler.stats(ToolClass.GIT).waiting()).isZero();
+        held.close();
+        held.close();
+        assertThat(scheduler.stats(ToolClass.GIT).running()).isZero();
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.HanldeImg.scripts.upload;
+
+import com.example.HanldeImg.scripts.upload.ChunkedFile.Range;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChunkedFileTest {
+
+    @TempDir
+    Path tmp;
+
+    private static String sha256(byte[] data, int from, int to) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        md.update(data, from, to - from);
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    private static long write(ChunkedFile file, byte[] data, int from, int to) throws Exception {
+        return file.write(from, to - from, sha256(data, from, to),
+                new ByteArrayInputStream(data, from, to - from));
+    }
+
+    @Test
+    void parallelChunksInAnyOrderAssembleTheFile() throws Exception {
+        byte[] data = new byte[5 * 1024 * 1024 + 123];
+        new Random(42).nextBytes(data);
+        ChunkedFile file = ChunkedFile.create(tmp.resolve("system.img"), data.length);
+        assertThat(Files.size(file.path())).isEqualTo(data.length);
+
+        int chunk = 256 * 1024;
+        List<Integer> offsets = new ArrayList<>();
+        for (int off = 0; off < data.length; off += chunk) offsets.add(off);
+        Collections.shuffle(offsets, new Random(7));
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int off : offsets) {
+                futures.add(pool.submit(() -> write(file, data, off, Math.min(data.length, off + chunk))));
+            }
+            for (Future<Long> f : futures) f.get();
+        } finally {
+            pool.shutdown();
+        }
+
+        assertThat(file.complete()).isTrue();
+        assertThat(file.missing()).isEmpty();
+        assertThat(Files.readAllBytes(file.path())).isEqualTo(data);
+    }
+
+    @Test
+    void rejectedChunksAreNotCounted() throws Exception {
+        byte[] data = new byte[1000];
+        new Random(1).nextBytes(data);
+        ChunkedFile file = ChunkedFile.create(tmp.resolve("vendor.img"), data.length);
+
+        write(file, data, 0, 300);
+        write(file, data, 600, 1000);
+        // повтор уже принятого чанка ничего не ломает
+        assertThat(write(file, data, 0, 300)).isEqualTo(700);
+
+        // не та контрольная сумма
+        assertThatThrownBy(() -> file.write(300, 300, sha256(data, 0, 300),
+                new ByteArrayInputStream(data, 300, 300)))
+                .isInstanceOf(ChunkRejectedException.class);
+        // тело оборвалось раньше заявленной длины
+        assertThatThrownBy(() -> file.write(300, 300, sha256(data, 300, 600),
+                new ByteArrayInputStream(data, 300, 100)))
+                .isInstanceOf(ChunkRejectedException.class);
+        // за пределами файла
+        assertThatThrownBy(() -> file.write(950, 100, sha256(data, 0, 100),
+                new ByteArrayInputStream(data, 0, 100)))
+                .isInstanceOf(ChunkRejectedException.class);
+
+        assertThat(file.received()).isEqualTo(700);
+        assertThat(file.missing()).containsExactly(new Range(300, 600));
+
+        write(file, data, 250, 650);
+        assertThat(file.complete()).isTrue();
+        assertThat(Files.readAllBytes(file.path())).isEqualTo(data);
+    }
+
+    @Test
+    void corruptResendDoesNotOverwriteAcceptedChunk() throws Exception {
+        byte[] data = new byte[1000];
+        new Random(3).nextBytes(data);
+        ChunkedFile file = ChunkedFile.create(tmp.resolve("product.img"), data.length);
+        write(file, data, 0, 500);
+
+        // повтор того же диапазона повредился в пути: сумма от исходных байт, тело другое
+        byte[] corrupt = data.clone();
+        corrupt[100] ^= 1;
+        assertThatThrownBy(() -> file.write(0, 500, sha256(data, 0, 500),
+                new ByteArrayInputStream(corrupt, 0, 500)))
+                .isInstanceOf(ChunkRejectedException.class);
+        // оборванный повтор тоже ничего не пишет
+        assertThatThrownBy(() -> file.write(0, 500, sha256(data, 0, 500),
+                new ByteArrayInputStream(corrupt, 0, 200)))
+                .isInstanceOf(ChunkRejectedException.class);
+        // битый чанк, который лишь краем задевает принятое
+        assertThatThrownBy(() -> file.write(400, 300, sha256(data, 400, 700),
+                new ByteArrayInputStream(corrupt, 0, 300)))
+                .isInstanceOf(ChunkRejectedException.class);
+        // битый чанк в непринятый диапазон пишется на место, но не засчитывается
+        assertThatThrownBy(() -> file.write(700, 200, sha256(data, 700, 900),
+                new ByteArrayInputStream(corrupt, 0, 200)))
+                .isInstanceOf(ChunkRejectedException.class);
+        assertThat(file.missing()).containsExactly(new Range(500, 1000));
+
+        write(file, data, 500, 1000);
+        assertThat(file.complete()).isTrue();
+        assertThat(Files.readAllBytes(file.path())).isEqualTo(data);
+        // временные файлы чанков не остаются
+        try (Stream<Path> list = Files.list(tmp)) {
+            assertThat(list).containsExactly(file.path());
+        }
+    }
+}
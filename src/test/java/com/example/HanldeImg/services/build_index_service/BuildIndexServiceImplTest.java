@@ -0,0 +1,126 @@
+package com.example.HanldeImg.services.build_index_service;
+
+import com.example.HanldeImg.config.PipelineProperties;
+import com.example.HanldeImg.scripts.BuildMetadata;
+import com.example.HanldeImg.scripts.BuildRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BuildIndexServiceImplTest {
+
+    private EmbeddedDatabase db;
+    private BuildIndexServiceImpl index;
+
+    @BeforeEach
+    void setUp() {
+        db = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+        PipelineProperties properties = new PipelineProperties();
+        properties.getBuilds().setHistory(2);
+        index = new BuildIndexServiceImpl(new JdbcTemplate(db), properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.shutdown();
+    }
+
+    private static BuildRecord record(String commit, String buildId) {
+        return new BuildRecord("digest-" + commit, List.of(), commit, buildId, "", Instant.now());
+    }
+
+    private static BuildMetadata metadata(String fingerprint, long settingsVersion) {
+        return new BuildMetadata(
+                List.of(new BuildMetadata.Property("system", "ro.build.fingerprint", fingerprint),
+                        new BuildMetadata.Property("system", "ro.build.version.sdk", "34")),
+                List.of(new BuildMetadata.Apk("system/priv-app/Settings/Settings.apk", "com.android.settings",
+                                settingsVersion, "14"),
+                        new BuildMetadata.Apk("system/app/Camera/Camera.apk", "com.android.camera", 7, "7.0")),
+                List.of(new BuildMetadata.Partition("system", 1200, 3_000_000)));
+    }
+
+    @Test
+    void findsPackagesAndSharedFingerprints() {
+        index.record("alpha", record("a1", "A.1"), metadata("fp/one", 30));
+        index.record("alpha", record("a2", "A.2"), metadata("fp/two", 34));
+        index.record("beta", record("b1", "B.1"), metadata("fp/two", 33));
+
+        assertThat(index.findPackage("com.android.settings", 33, true, 100))
+                .extracting(m -> m.build().project() + ":" + m.apk().versionCode())
+                .containsExactly("alpha:34", "beta:33");
+        // старая сборка alpha подходит по пакету, но не последняя
+        assertThat(index.findPackage("com.android.settings", 30, false, 100))
+                .extracting(m -> m.build().commit())
+                .containsExactly("a2", "a1", "b1");
+
+        assertThat(index.findByProperty("ro.build.fingerprint", "fp/two", true, 100))
+                .extracting(BuildSummary::project)
+                .containsExactly("alpha", "beta");
+        assertThat(index.findByProperty("ro.build.fingerprint", "fp/one", true, 100)).isEmpty();
+
+        assertThat(index.builds(null, 100))
+                .extracting(BuildSummary::displayId)
+                .containsExactly("A.2", "B.1");
+    }
+
+    @Test
+    void detailsAndHistoryLimit() {
+        index.record("alpha", record("a1", "A.1"), metadata("fp/one", 30));
+        index.record("alpha", record("a2", "A.2"), metadata("fp/two", 31));
+        index.record("alpha", record("a3", "A.3"), metadata("fp/three", 32));
+
+        List<BuildSummary> builds = index.builds("alpha", 100);
+        assertThat(builds).extracting(BuildSummary::commit).containsExactly("a3", "a2");
+        assertThat(builds.getFirst().latest()).isTrue();
+        assertThat(builds.getFirst().fingerprint()).isEqualTo("fp/three");
+
+        BuildDetails details = index.find(builds.getFirst().id()).orElseThrow();
+        assertThat(details.properties().get("system")).containsEntry("ro.build.version.sdk", "34");
+        assertThat(details.apks()).extracting(BuildMetadata.Apk::packageName)
+                .containsExactly("com.android.camera", "com.android.settings");
+        assertThat(details.partitions()).containsExactly(new BuildMetadata.Partition("system", 1200, 3_000_000));
+
+        // удалённая по истории сборка не находится и по пакетам
+        assertThat(index.findPackage("com.android.settings", 0, false, 100))
+                .extracting(m -> m.build().commit())
+                .containsExactly("a3", "a2");
+    }
+
+    @Test
+    void overlongValuesFromImageAreTruncatedToColumns() {
+        String partition = "p".repeat(100);
+        String path = "system/app/" + "d/".repeat(600) + "X.apk";
+        String pkg = "com." + "x".repeat(300);
+        BuildMetadata metadata = new BuildMetadata(
+                List.of(new BuildMetadata.Property(partition, "ro.build.fingerprint", "f".repeat(2000))),
+                List.of(new BuildMetadata.Apk(path, pkg, 1, "1.0")),
+                List.of(new BuildMetadata.Partition(partition, 1, 1)));
+
+        index.record("alpha", record("a1", "D".repeat(600)), metadata);
+
+        BuildSummary build = index.builds("alpha", 1).getFirst();
+        assertThat(build.displayId()).hasSize(512);
+        assertThat(build.fingerprint()).hasSize(1024);
+        BuildDetails details = index.find(build.id()).orElseThrow();
+        assertThat(details.properties()).containsOnlyKeys(partition.substring(0, 64));
+        assertThat(details.apks()).singleElement().satisfies(a -> {
+            assertThat(a.path()).isEqualTo(path.substring(0, 1024));
+            assertThat(a.packageName()).hasSize(255);
+        });
+        assertThat(details.partitions()).extracting(BuildMetadata.Partition::name)
+                .containsExactly(partition.substring(0, 64));
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.HanldeImg.services.gitlab_service;
+
+import com.example.HanldeImg.config.PipelineProperties;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GitLabServiceImplTest {
+
+    private HttpServer server;
+    private GitLabServiceImpl service;
+
+    private final Map<String, Integer> groupIds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> projectIds = new ConcurrentHashMap<>();
+    private final AtomicInteger ids = new AtomicInteger(100);
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+    /**
+     * Мини-GitLab: поиск и создание групп, получение и создание проектов. Ответы чуть
+     * задерживаются, чтобы параллельные запросы гарантированно пересеклись.
+     */
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+
+        server.createContext("/api/v4/groups", ex -> {
+            pause();
+            if (ex.getRequestMethod().equals("GET")) {
+                count("GET groups");
+                StringBuilder json = new StringBuilder("[");
+                groupIds.forEach((name, id) -> {
+                    if (json.length() > 1) json.append(',');
+                    json.append(group(name, id));
+                });
+                respond(ex, 200, json.append(']').toString());
+            } else {
+                count("POST groups");
+                String name = form(ex).get("name");
+                int id = groupIds.computeIfAbsent(name, n -> ids.incrementAndGet());
+                respond(ex, 201, group(name, id));
+            }
+        });
+
+        server.createContext("/api/v4/projects", ex -> {
+            pause();
+            if (ex.getRequestMethod().equals("GET")) {
+                count("GET project");
+                String path = URLDecoder.decode(ex.getRequestURI().getRawPath()
+                        .substring("/api/v4/projects/".length()), StandardCharsets.UTF_8);
+                Integer id = projectIds.get(path);
+                if (id == null) {
+                    respond(ex, 404, "{\"message\":\"404 Project Not Found\"}");
+                } else {
+                    respond(ex, 200, project(path, id));
+                }
+            } else {
+                count("POST project");
+                Map<String, String> form = form(ex);
+                String namespace = groupIds.entrySet().stream()
+                        .filter(e -> String.valueOf(e.getValue()).equals(form.get("namespace_id")))
+                        .map(e -> e.getKey().toLowerCase())
+                        .findFirst().orElse(null);
+                if (namespace == null) {
+                    respond(ex, 404, "{\"message\":\"404 Namespace Not Found\"}");
+                    return;
+                }
+                String path = namespace + "/" + form.get("path");
+                int id = projectIds.computeIfAbsent(path, p -> ids.incrementAndGet());
+                respond(ex, 201, project(path, id));
+            }
+        });
+        server.start();
+
+        PipelineProperties properties = new PipelineProperties();
+        properties.getGitlab().setUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        properties.getGitlab().setToken("token");
+        properties.getGitlab().setCacheTtl(Duration.ofMinutes(5));
+        service = new GitLabServiceImpl(properties);
+    }
+
+    @AfterEach
+    void stop() {
+        service.close();
+        server.stop(0);
+    }
+
+    private void count(String call) {
+        calls.computeIfAbsent(call, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    private int calls(String call) {
+        AtomicInteger c = calls.get(call);
+        return c == null ? 0 : c.get();
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String group(String name, int id) {
+        String path = name.toLowerCase();
+        return "{\"id\":" + id + ",\"name\":\"" + name + "\",\"path\":\"" + path + "\",\"full_path\":\"" + path + "\"}";
+    }
+
+    private static String project(String fullPath, int id) {
+        String path = fullPath.substring(fullPath.lastIndexOf('/') + 1);
+        return "{\"id\":" + id + ",\"name\":\"" + path + "\",\"path\":\"" + path
+                + "\",\"path_with_namespace\":\"" + fullPath + "\"}";
+    }
+
+    private static Map<String, String> form(HttpExchange ex) throws IOException {
+        Map<String, String> form = new ConcurrentHashMap<>();
+        String body = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        for (String pair : body.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                form.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return form;
+    }
+
+    private static void respond(HttpExchange ex, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().add("Content-Type", "application/json");
+        ex.sendResponseHeaders(code, bytes.length);
+        ex.getResponseBody().write(bytes);
+        ex.close();
+    }
+
+    @Test
+    void concurrentUploadsCreateGroupAndProjectOnce() throws Exception {
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    service.ensureProject("Firmware", "Pixel8");
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(calls("POST groups")).isEqualTo(1);
+        assertThat(calls("POST project")).isEqualTo(1);
+        assertThat(calls("GET groups")).isEqualTo(1);
+        assertThat(projectIds).containsOnlyKeys("firmware/pixel8");
+
+        // повторный вызов целиком из кэша
+        service.ensureProject("firmware", "PIXEL8");
+        assertThat(calls("GET groups")).isEqualTo(1);
+        assertThat(calls("GET project")).isEqualTo(1);
+    }
+
+    @Test
+    void staleGroupIsInvalidatedOn404() throws Exception {
+        service.ensureProject("Firmware", "a");
+        assertThat(calls("POST groups")).isEqualTo(1);
+
+        // группу удалили в GitLab, в кэше она ещё есть
+        groupIds.clear();
+        projectIds.clear();
+
+        service.ensureProject("Firmware", "b");
+        assertThat(calls("POST groups")).isEqualTo(2);
+        assertThat(projectIds).containsOnlyKeys("firmware/b");
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.HanldeImg.services.job_service;
+
+import com.example.HanldeImg.config.PipelineProperties;
+import com.example.HanldeImg.scripts.BuildRecord;
+import com.example.HanldeImg.scripts.IngestScripts.IngestedImage;
+import com.example.HanldeImg.scripts.PipelineListener;
+import com.example.HanldeImg.services.image_service.ImageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JobServiceImplTest {
+
+    private final ThreadPoolExecutor executor =
+            new ThreadPoolExecutor(2, 2, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(16));
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Пайплайн-заглушка: задачи проекта "slow" ждут защёлку, параллельный запуск одного проекта фиксируется.
+     */
+    private static final class FakeImageService implements ImageService {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final List<String> ran = new CopyOnWriteArrayList<>();
+        final List<String> released = new CopyOnWriteArrayList<>();
+        final Map<String, AtomicInteger> active = new ConcurrentHashMap<>();
+        final AtomicInteger maxActivePerProject = new AtomicInteger();
+
+        final Map<String, BuildRecord> published = new ConcurrentHashMap<>();
+
+        @Override
+        public List<IngestedImage> ingest(List<MultipartFile> files, String dirName) {
+            if (dirName.equals("same")) {
+                return List.of(new IngestedImage("system.img", Path.of("system.img"), 10, "aa"));
+            }
+            String name = dirName + "-" + System.nanoTime();
+            return List.of(new IngestedImage(name, Path.of(name), 0, ""));
+        }
+
+        @Override
+        public List<IngestedImage> adopt(List<Path> files, String dirName) {
+            return files.stream().map(f -> new IngestedImage(f.toString(), f, 0, "")).toList();
+        }
+
+        @Override
+        public void release(List<IngestedImage> images) {
+            images.forEach(i -> released.add(i.name()));
+        }
+
+        @Override
+        public Optional<BuildRecord> findPublished(List<IngestedImage> images, String dirName) {
+            return Optional.ofNullable(published.get(dirName)).filter(r -> r.matches(images));
+        }
+
+        @Override
+        public void uploadProject(List<IngestedImage> images, String dirName, PipelineListener listener) {
+            work(images, dirName);
+        }
+
+        @Override
+        public void updateProject(List<IngestedImage> images, String dirName, PipelineListener listener) {
+            work(images, dirName);
+        }
+
+        private void work(List<IngestedImage> images, String project) {
+            AtomicInteger counter = active.computeIfAbsent(project.toLowerCase(), k -> new AtomicInteger());
+            maxActivePerProject.accumulateAndGet(counter.incrementAndGet(), Math::max);
+            try {
+                ran.add(images.get(0).name());
+                published.put(project, BuildRecord.of(images, "commit-" + ran.size(), "BUILD.1"));
+                if (project.equals("slow")) {
+                    firstStarted.countDown();
+                    release.await(10, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                counter.decrementAndGet();
+            }
+        }
+    }
+
+    @Test
+    void queuedUpdatesOfOneProjectAreSupersededByTheNewest() throws Exception {
+        FakeImageService images = new FakeImageService();
+        JobServiceImpl service = new JobServiceImpl(images, executor, new PipelineProperties());
+
+        Job running = service.submit(JobType.UPDATE, "slow", false, List.of());
+        assertThat(images.firstStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        Job second = service.submit(JobType.UPDATE, "slow", false, List.of());
+        Job third = service.submit(JobType.UPDATE, "SLOW", false, List.of());
+        Job newest = service.submit(JobType.UPDATE, "slow", false, List.of());
+        Job other = service.submit(JobType.LOAD, "other", false, List.of());
+
+        // другой проект не ждёт, пока занят "slow"
+        waitFor(other);
+        assertThat(other.getState()).isEqualTo(JobState.SUCCEEDED);
+
+        assertThat(second.getState()).isEqualTo(JobState.SUPERSEDED);
+        assertThat(second.getSupersededBy()).isEqualTo(third.getId());
+        assertThat(third.getState()).isEqualTo(JobState.SUPERSEDED);
+        assertThat(third.getSupersededBy()).isEqualTo(newest.getId());
+        assertThat(newest.getState()).isEqualTo(JobState.QUEUED);
+
+        images.release.countDown();
+        waitFor(running);
+        waitFor(newest);
+
+        assertThat(running.getState()).isEqualTo(JobState.SUCCEEDED);
+        assertThat(newest.getState()).isEqualTo(JobState.SUCCEEDED);
+        assertThat(images.ran).hasSize(3);
+        assertThat(images.maxActivePerProject).hasValue(1);
+        // файлы вытесненных задач освобождены, не дожидаясь очереди
+        assertThat(images.released).hasSize(5);
+    }
+
+    @Test
+    void identicalImagesAreNotProcessedTwiceUnlessForced() throws Exception {
+        FakeImageService images = new FakeImageService();
+        JobServiceImpl service = new JobServiceImpl(images, executor, new PipelineProperties());
+
+        Job first = service.submit(JobType.LOAD, "same", false, List.of());
+        waitFor(first);
+        assertThat(first.getState()).isEqualTo(JobState.SUCCEEDED);
+
+        // повторная загрузка завершается сразу, без очереди
+        Job repeat = service.submit(JobType.UPDATE, "same", false, List.of());
+        assertThat(repeat.getState()).isEqualTo(JobState.UNCHANGED);
+        assertThat(repeat.getUnchangedBuild().commit()).isEqualTo("commit-1");
+        assertThat(repeat.getUnchangedBuild().buildId()).isEqualTo("BUILD.1");
+
+        Job forced = service.submit(JobType.UPDATE, "same", true, List.of());
+        waitFor(forced);
+        assertThat(forced.getState()).isEqualTo(JobState.SUCCEEDED);
+        assertThat(images.ran).hasSize(2);
+        assertThat(images.released).hasSize(3);
+    }
+
+    @Test
+    void parkedJobsCountAgainstQueueCapacity() throws Exception {
+        FakeImageService images = new FakeImageService();
+        PipelineProperties properties = new PipelineProperties();
+        properties.getExecutor().setQueueCapacity(2);
+        JobServiceImpl service = new JobServiceImpl(images, executor, properties);
+
+        Job running = service.submit(JobType.LOAD, "slow", false, List.of());
+        assertThat(images.firstStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // LOAD не вытесняются: обе ждут за первой и держат свои образы
+        Job second = service.submit(JobType.LOAD, "slow", false, List.of());
+        Job third = service.submit(JobType.LOAD, "slow", false, List.of());
+        waitForParked(second, third);
+        assertThatThrownBy(() -> service.submit(JobType.LOAD, "slow", false, List.of()))
+                .isInstanceOf(JobRejectedException.class);
+        assertThatThrownBy(() -> service.submit(JobType.LOAD, "other", false, List.of()))
+                .isInstanceOf(JobRejectedException.class);
+
+        images.release.countDown();
+        waitFor(running);
+        waitFor(second);
+        waitFor(third);
+        assertThat(third.getState()).isEqualTo(JobState.SUCCEEDED);
+
+        // очередь освободилась — снова принимаем
+        Job after = service.submit(JobType.LOAD, "other", false, List.of());
+        waitFor(after);
+        assertThat(after.getState()).isEqualTo(JobState.SUCCEEDED);
+        assertThat(images.maxActivePerProject).hasValue(1);
+    }
+
+    private void waitForParked(Job... parked) throws InterruptedException {
+        // задача уходит из очереди исполнителя, как только свободный поток её отложит
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!executor.getQueue().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        for (Job job : parked) {
+            assertThat(job.getState()).isEqualTo(JobState.QUEUED);
+        }
+    }
+
+    private static void waitFor(Job job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!job.getState().isFinished() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}